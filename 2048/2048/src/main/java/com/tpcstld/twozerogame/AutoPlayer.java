@@ -0,0 +1,242 @@
+package com.tpcstld.twozerogame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Plays 2048 with {@link Expectimax}, searching the four root moves in parallel on a background
+ * pool. Used for in-game hints and for headless, seeded autoplay runs that double as a
+ * reproducible CPU benchmark.
+ */
+public class AutoPlayer {
+
+    public static final int NO_MOVE = -1;
+
+    private static final int CACHE_BITS = 16;
+    private static final int MAX_DEPTH = 12;
+
+    private final ExecutorService executor;
+    // Separate from the search pool, which the hint thread blocks on
+    private final ExecutorService hintExecutor;
+    private final Expectimax[] searchers = new Expectimax[4];
+
+    public interface HintCallback {
+        /**
+         * Called on a background thread with the suggested direction, or {@link #NO_MOVE}.
+         */
+        void onHint(long board, int direction);
+    }
+
+    /**
+     * Headless benchmark: java com.tpcstld.twozerogame.AutoPlayer [games] [depth] [seed]
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 2048;
+        AutoPlayer player = new AutoPlayer();
+        System.out.print(player.autoplay(games, depth, seed));
+        player.shutdown();
+    }
+
+    public AutoPlayer() {
+        ThreadFactory daemonFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AutoPlayer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        executor = Executors.newFixedThreadPool(4, daemonFactory);
+        hintExecutor = Executors.newSingleThreadExecutor(daemonFactory);
+        for (int direction = 0; direction < 4; direction++) {
+            searchers[direction] = new Expectimax(CACHE_BITS);
+        }
+    }
+
+    public void shutdown() {
+        hintExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Fixed-depth search; the result only depends on the board, so runs are reproducible.
+     * Must not be called from a pool thread.
+     */
+    public int bestMove(long board, int depth) {
+        float[] values = evaluateAll(board, depth, 0);
+        return values == null ? NO_MOVE : argMax(values);
+    }
+
+    /**
+     * Iterative deepening: searches depth 2, 3, ... and returns the best move of the deepest
+     * search that finished within {@code budgetNanos}.
+     */
+    public int bestMoveWithin(long board, long budgetNanos) {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int best = NO_MOVE;
+        for (int depth = 2; depth <= MAX_DEPTH; depth++) {
+            float[] values = evaluateAll(board, depth, deadline);
+            if (values == null) {
+                break;
+            }
+            best = argMax(values);
+            // The next depth costs several times as much; don't start it if it can't finish
+            if (System.nanoTime() - start > budgetNanos / 4) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes a hint in the background and hands it to {@code callback}.
+     */
+    public void requestHint(final long board, final long budgetNanos, final HintCallback callback) {
+        hintExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onHint(board, bestMoveWithin(board, budgetNanos));
+            }
+        });
+    }
+
+    /**
+     * @return the value of each root move, NEGATIVE_INFINITY for illegal ones,
+     * or null if the deadline passed or the search was interrupted
+     */
+    private synchronized float[] evaluateAll(final long board, final int depth, final long deadline) {
+        List<Callable<Float>> tasks = new ArrayList<>(4);
+        for (int direction = 0; direction < 4; direction++) {
+            final Expectimax searcher = searchers[direction];
+            final int dir = direction;
+            tasks.add(new Callable<Float>() {
+                @Override
+                public Float call() {
+                    return searcher.evaluateMove(board, dir, depth, deadline);
+                }
+            });
+        }
+        float[] values = new float[4];
+        try {
+            List<Future<Float>> futures = executor.invokeAll(tasks);
+            for (int direction = 0; direction < 4; direction++) {
+                values[direction] = futures.get(direction).get();
+                if (searchers[direction].wasAborted()) {
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return values;
+    }
+
+    private static int argMax(float[] values) {
+        int best = NO_MOVE;
+        for (int direction = 0; direction < values.length; direction++) {
+            if (values[direction] != Float.NEGATIVE_INFINITY
+                    && (best == NO_MOVE || values[direction] > values[best])) {
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays {@code games} complete games at a fixed search depth. Tile spawns come from a
+     * Random seeded with {@code seed}, so the same arguments always replay the same games.
+     */
+    public Stats autoplay(int games, int depth, long seed) {
+        Random random = new Random(seed);
+        Stats stats = new Stats(games);
+        long start = System.nanoTime();
+        long nodesBefore = totalNodes();
+        for (int game = 0; game < games; game++) {
+            long board = BitBoard.spawnRandom(BitBoard.spawnRandom(0, random), random);
+            long score = 0;
+            while (true) {
+                int direction = bestMove(board, depth);
+                if (direction == NO_MOVE) {
+                    break;
+                }
+                score += BitBoard.moveScore(board, direction);
+                board = BitBoard.spawnRandom(BitBoard.move(board, direction), random);
+                stats.moves++;
+            }
+            stats.scores[game] = score;
+            stats.maxTileCounts[BitBoard.maxExponent(board)]++;
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        stats.nodes = totalNodes() - nodesBefore;
+        return stats;
+    }
+
+    private long totalNodes() {
+        long nodes = 0;
+        for (Expectimax searcher : searchers) {
+            nodes += searcher.getNodes();
+        }
+        return nodes;
+    }
+
+    public static class Stats {
+        public final long[] scores;
+        // Indexed by exponent: maxTileCounts[11] is the number of games that reached 2048
+        public final int[] maxTileCounts = new int[BitBoard.MAX_EXPONENT + 1];
+        public long moves;
+        public long nodes;
+        public long elapsedNanos;
+
+        Stats(int games) {
+            scores = new long[games];
+        }
+
+        public double movesPerSecond() {
+            return moves * 1e9 / elapsedNanos;
+        }
+
+        public double nodesPerSecond() {
+            return nodes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            long[] sorted = scores.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long score : sorted) {
+                total += score;
+            }
+            StringBuilder builder = new StringBuilder();
+            builder.append(scores.length).append(" games, ").append(moves).append(" moves, ")
+                    .append(String.format("%.1f moves/s, %.0f nodes/s%n", movesPerSecond(), nodesPerSecond()));
+            if (sorted.length > 0) {
+                builder.append("score min ").append(sorted[0])
+                        .append(" median ").append(sorted[sorted.length / 2])
+                        .append(" mean ").append(total / sorted.length)
+                        .append(" max ").append(sorted[sorted.length - 1]).append('\n');
+            }
+            for (int exponent = 0; exponent < maxTileCounts.length; exponent++) {
+                if (maxTileCounts[exponent] > 0) {
+                    builder.append("max tile ").append(1 << exponent).append(": ")
+                            .append(maxTileCounts[exponent]).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.tpcstld.twozerogame;
+
+import java.util.Random;
+
+/**
+ * A 4x4 board packed into a single long of 4-bit exponents.
+ * <p>
+ * The nibble at index {@code y * 4 + x} holds log2 of the tile value at column x, row y
+ * (0 for an empty cell), so each row is one 16-bit word with x = 0 in the lowest nibble.
+ * Moves look up precomputed 65536-entry row tables; vertical moves transpose the board
+ * first. Nothing here allocates, which makes it suitable for simulation and search.
+ * Exponents saturate at 15 (32768): two such tiles never merge.
+ */
+public final class BitBoard {
+
+    // Same numbering as MainGame.move
+    public static final int UP = 0;
+    public static final int RIGHT = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 3;
+
+    public static final int SIZE = 4;
+    public static final int MAX_EXPONENT = 15;
+
+    private static final long ROW_MASK = 0xFFFFL;
+
+    private static final char[] ROW_LEFT = new char[65536];
+    private static final char[] ROW_RIGHT = new char[65536];
+    private static final int[] ROW_SCORE = new int[65536];
+    private static final boolean[] ROW_HAS_MERGE = new boolean[65536];
+
+    static {
+        int[] line = new int[SIZE];
+        for (int row = 0; row < 65536; row++) {
+            for (int i = 0; i < SIZE; i++) {
+                line[i] = (row >> (4 * i)) & 0xF;
+            }
+            int score = 0;
+            boolean hasMerge = false;
+            for (int i = 0; i < SIZE - 1; i++) {
+                if (line[i] != 0 && line[i] == line[i + 1] && line[i] < MAX_EXPONENT) {
+                    hasMerge = true;
+                }
+            }
+            // Slide towards index 0, merging each tile at most once
+            int[] result = new int[SIZE];
+            int target = 0;
+            int pending = 0;
+            for (int i = 0; i < SIZE; i++) {
+                int value = line[i];
+                if (value == 0) {
+                    continue;
+                }
+                if (pending == value && value < MAX_EXPONENT) {
+                    result[target - 1] = value + 1;
+                    score += 1 << (value + 1);
+                    pending = 0;
+                } else {
+                    result[target++] = value;
+                    pending = value;
+                }
+            }
+            int left = 0;
+            int right = 0;
+            for (int i = 0; i < SIZE; i++) {
+                left |= result[i] << (4 * i);
+                right |= result[i] << (4 * (SIZE - 1 - i));
+            }
+            ROW_LEFT[row] = (char) left;
+            ROW_RIGHT[reverseRow(row)] = (char) right;
+            ROW_SCORE[row] = score;
+            ROW_HAS_MERGE[row] = hasMerge;
+        }
+    }
+
+    private BitBoard() {
+    }
+
+    private static int reverseRow(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4) | ((row >> 4) & 0xF0) | ((row >> 12) & 0xF);
+    }
+
+    /**
+     * Swaps rows and columns, so vertical moves can reuse the row tables.
+     */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    public static int get(long board, int x, int y) {
+        return (int) (board >>> (4 * (y * SIZE + x))) & 0xF;
+    }
+
+    public static long set(long board, int x, int y, int exponent) {
+        int shift = 4 * (y * SIZE + x);
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /**
+     * @return the board after sliding in {@code direction}; equal to {@code board} if nothing moved
+     */
+    public static long move(long board, int direction) {
+        switch (direction) {
+            case LEFT:
+                return moveRows(board, ROW_LEFT);
+            case RIGHT:
+                return moveRows(board, ROW_RIGHT);
+            case UP:
+                return transpose(moveRows(transpose(board), ROW_LEFT));
+            case DOWN:
+                return transpose(moveRows(transpose(board), ROW_RIGHT));
+            default:
+                throw new IllegalArgumentException("Unknown direction " + direction);
+        }
+    }
+
+    private static long moveRows(long board, char[] table) {
+        return (long) table[(int) (board & ROW_MASK)]
+                | ((long) table[(int) ((board >>> 16) & ROW_MASK)] << 16)
+                | ((long) table[(int) ((board >>> 32) & ROW_MASK)] << 32)
+                | ((long) table[(int) ((board >>> 48) & ROW_MASK)] << 48);
+    }
+
+    /**
+     * @return the points scored by {@link #move(long, int)} in the same direction.
+     * Merging runs of equal tiles from either end yields the same pairs' worth,
+     * so one table serves all four directions.
+     */
+    public static int moveScore(long board, int direction) {
+        if (direction == UP || direction == DOWN) {
+            board = transpose(board);
+        }
+        return ROW_SCORE[(int) (board & ROW_MASK)]
+                + ROW_SCORE[(int) ((board >>> 16) & ROW_MASK)]
+                + ROW_SCORE[(int) ((board >>> 32) & ROW_MASK)]
+                + ROW_SCORE[(int) ((board >>> 48) & ROW_MASK)];
+    }
+
+    /**
+     * @return a mask with 0x1 in every empty nibble
+     */
+    static long emptyNibbles(long board) {
+        long x = board | (board >>> 1);
+        x |= x >>> 2;
+        return ~x & 0x1111111111111111L;
+    }
+
+    public static int countEmpty(long board) {
+        return Long.bitCount(emptyNibbles(board));
+    }
+
+    /**
+     * Places a tile on the {@code n}-th empty cell, counting from nibble 0.
+     */
+    public static long spawnAt(long board, int n, int exponent) {
+        long empty = emptyNibbles(board);
+        for (int i = 0; i < n; i++) {
+            empty &= empty - 1;
+        }
+        int shift = Long.numberOfTrailingZeros(empty);
+        return board | ((long) exponent << shift);
+    }
+
+    /**
+     * Adds a 2 (90%) or a 4 (10%) to a random empty cell, like MainGame.addRandomTile.
+     * Returns the board unchanged if it is full.
+     */
+    public static long spawnRandom(long board, Random random) {
+        int empty = countEmpty(board);
+        if (empty == 0) {
+            return board;
+        }
+        int exponent = random.nextInt(10) == 0 ? 2 : 1;
+        return spawnAt(board, random.nextInt(empty), exponent);
+    }
+
+    /**
+     * @return whether any move changes the board, i.e. the game is not lost
+     */
+    public static boolean canMove(long board) {
+        if (emptyNibbles(board) != 0) {
+            return true;
+        }
+        long t = transpose(board);
+        for (int shift = 0; shift < 64; shift += 16) {
+            if (ROW_HAS_MERGE[(int) ((board >>> shift) & ROW_MASK)]
+                    || ROW_HAS_MERGE[(int) ((t >>> shift) & ROW_MASK)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static int maxExponent(long board) {
+        int max = 0;
+        for (int shift = 0; shift < 64; shift += 4) {
+            max = Math.max(max, (int) (board >>> shift) & 0xF);
+        }
+        return max;
+    }
+
+    /**
+     * Packs a Grid into a board. Tiles above 2^15 saturate.
+     */
+    public static long fromGrid(Grid grid) {
+        long board = 0;
+        for (int xx = 0; xx < SIZE; xx++) {
+            for (int yy = 0; yy < SIZE; yy++) {
+                Tile tile = grid.field[xx][yy];
+                if (tile != null) {
+                    int exponent = 31 - Integer.numberOfLeadingZeros(tile.getValue());
+                    board = set(board, xx, yy, Math.min(exponent, MAX_EXPONENT));
+                }
+            }
+        }
+        return board;
+    }
+}
@@ -0,0 +1,196 @@
+package com.tpcstld.twozerogame;
+
+import java.util.Arrays;
+
+/**
+ * Expectimax search over {@link BitBoard} positions.
+ * <p>
+ * Max nodes try the four moves, chance nodes average over every empty cell receiving a 2 (90%)
+ * or a 4 (10%). Leaves are scored with a per-row heuristic table. Chance nodes are cached in a
+ * direct-mapped transposition table keyed by the board. An instance is not thread safe;
+ * {@link AutoPlayer} gives each root move its own.
+ */
+public class Expectimax {
+
+    // Chance branches less likely than this are scored with the heuristic directly
+    private static final float PROBABILITY_CUTOFF = 0.0001f;
+    private static final int DEADLINE_CHECK_INTERVAL = 4096;
+
+    private static final float LOST_PENALTY = 200000f;
+    private static final float MONOTONICITY_POWER = 4f;
+    private static final float MONOTONICITY_WEIGHT = 47f;
+    private static final float SUM_POWER = 3.5f;
+    private static final float SUM_WEIGHT = 11f;
+    private static final float MERGES_WEIGHT = 700f;
+    private static final float EMPTY_WEIGHT = 270f;
+
+    private static final float[] ROW_HEURISTIC = new float[65536];
+
+    static {
+        int[] line = new int[BitBoard.SIZE];
+        for (int row = 0; row < 65536; row++) {
+            for (int i = 0; i < BitBoard.SIZE; i++) {
+                line[i] = (row >> (4 * i)) & 0xF;
+            }
+            float sum = 0;
+            int empty = 0;
+            int merges = 0;
+            int prev = 0;
+            int counter = 0;
+            for (int i = 0; i < BitBoard.SIZE; i++) {
+                int rank = line[i];
+                sum += Math.pow(rank, SUM_POWER);
+                if (rank == 0) {
+                    empty++;
+                } else {
+                    if (prev == rank) {
+                        counter++;
+                    } else if (counter > 0) {
+                        merges += 1 + counter;
+                        counter = 0;
+                    }
+                    prev = rank;
+                }
+            }
+            if (counter > 0) {
+                merges += 1 + counter;
+            }
+            float monotonicityLeft = 0;
+            float monotonicityRight = 0;
+            for (int i = 1; i < BitBoard.SIZE; i++) {
+                double a = Math.pow(line[i - 1], MONOTONICITY_POWER);
+                double b = Math.pow(line[i], MONOTONICITY_POWER);
+                if (line[i - 1] > line[i]) {
+                    monotonicityLeft += a - b;
+                } else {
+                    monotonicityRight += b - a;
+                }
+            }
+            ROW_HEURISTIC[row] = LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+                    - MONOTONICITY_WEIGHT * Math.min(monotonicityLeft, monotonicityRight)
+                    - SUM_WEIGHT * sum;
+        }
+    }
+
+    private final long[] cacheKeys;
+    private final float[] cacheValues;
+    private final byte[] cacheDepths;
+    private final int cacheMask;
+
+    private long deadline;
+    private boolean aborted;
+    private int checkCountdown;
+    private long nodes;
+
+    /**
+     * @param cacheBits log2 of the transposition table size
+     */
+    public Expectimax(int cacheBits) {
+        int size = 1 << cacheBits;
+        cacheKeys = new long[size];
+        cacheValues = new float[size];
+        cacheDepths = new byte[size];
+        cacheMask = size - 1;
+    }
+
+    public static float heuristic(long board) {
+        long t = BitBoard.transpose(board);
+        return ROW_HEURISTIC[(int) (board & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 16) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 32) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 48) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) (t & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((t >>> 16) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((t >>> 32) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((t >>> 48) & 0xFFFF)];
+    }
+
+    /**
+     * Expected heuristic value of playing {@code direction} and searching {@code depth} more moves.
+     *
+     * @param deadline System.nanoTime() after which the search gives up, or 0 for none
+     * @return the value, or {@code Float.NEGATIVE_INFINITY} if the move is illegal or the deadline passed
+     */
+    public float evaluateMove(long board, int direction, int depth, long deadline) {
+        Arrays.fill(cacheKeys, 0);
+        this.deadline = deadline;
+        aborted = false;
+        checkCountdown = DEADLINE_CHECK_INTERVAL;
+        long next = BitBoard.move(board, direction);
+        if (next == board) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        float value = chanceNode(next, depth - 1, 1f);
+        return aborted ? Float.NEGATIVE_INFINITY : value;
+    }
+
+    /**
+     * @return whether the last {@link #evaluateMove} ran out of time
+     */
+    public boolean wasAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return positions visited since construction
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    private float maxNode(long board, int depth, float probability) {
+        float best = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            long next = BitBoard.move(board, direction);
+            if (next != board) {
+                best = Math.max(best, chanceNode(next, depth - 1, probability));
+            }
+        }
+        return best;
+    }
+
+    private float chanceNode(long board, int depth, float probability) {
+        nodes++;
+        if (deadline != 0 && --checkCountdown == 0) {
+            checkCountdown = DEADLINE_CHECK_INTERVAL;
+            if (System.nanoTime() - deadline > 0) {
+                aborted = true;
+            }
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (depth <= 0 || probability < PROBABILITY_CUTOFF) {
+            return heuristic(board);
+        }
+
+        int slot = hash(board) & cacheMask;
+        if (cacheKeys[slot] == board && cacheDepths[slot] >= depth) {
+            return cacheValues[slot];
+        }
+
+        long free = BitBoard.emptyNibbles(board);
+        int empty = Long.bitCount(free);
+        float cellProbability = probability / empty;
+        float sum = 0;
+        while (free != 0) {
+            int shift = Long.numberOfTrailingZeros(free);
+            free &= free - 1;
+            sum += 0.9f * maxNode(board | (1L << shift), depth, cellProbability * 0.9f);
+            sum += 0.1f * maxNode(board | (2L << shift), depth, cellProbability * 0.1f);
+        }
+        float value = sum / empty;
+
+        if (!aborted) {
+            cacheKeys[slot] = board;
+            cacheValues[slot] = value;
+            cacheDepths[slot] = (byte) depth;
+        }
+        return value;
+    }
+
+    private static int hash(long board) {
+        long h = board * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+}
@@ -0,0 +1,27 @@
+package com.tpcstld.twozerogame;
+
+/**
+ * What MainGame needs from its surroundings. MainView implements it on Android; a no-op
+ * implementation lets the rules run headless on a plain JVM for simulation and benchmarks.
+ */
+public interface GameHost {
+
+    /**
+     * The board changed and should be redrawn.
+     */
+    void invalidate();
+
+    /**
+     * Animations were (re)started; restart the frame clock.
+     */
+    void resyncTime();
+
+    /**
+     * Draw one more frame after the game becomes inactive.
+     */
+    void refreshLastTime();
+
+    long getHighScore();
+
+    void recordHighScore(long highScore);
+}
@@ -1,6 +1,6 @@
 package com.tpcstld.twozerogame;
 
-import java.util.ArrayList;
+import java.util.Random;
 
 public class Grid {
 
@@ -16,28 +16,35 @@ public class Grid {
         clearUndoGrid();
     }
 
-    public Cell randomAvailableCell() {
-        ArrayList<Cell> availableCells = getAvailableCells();
-        if (availableCells.size() >= 1) {
-            return availableCells.get((int) Math.floor(Math.random() * availableCells.size()));
+    public Cell randomAvailableCell(Random random) {
+        int available = countAvailableCells();
+        if (available >= 1) {
+            int n = random.nextInt(available);
+            for (int xx = 0; xx < field.length; xx++) {
+                for (int yy = 0; yy < field[0].length; yy++) {
+                    if (field[xx][yy] == null && n-- == 0) {
+                        return new Cell(xx, yy);
+                    }
+                }
+            }
         }
         return null;
     }
 
-    private ArrayList<Cell> getAvailableCells() {
-        ArrayList<Cell> availableCells = new ArrayList<>();
-        for (int xx = 0; xx < field.length; xx++) {
-            for (int yy = 0; yy < field[0].length; yy++) {
-                if (field[xx][yy] == null) {
-                    availableCells.add(new Cell(xx, yy));
+    private int countAvailableCells() {
+        int available = 0;
+        for (Tile[] column : field) {
+            for (Tile tile : column) {
+                if (tile == null) {
+                    available++;
                 }
             }
         }
-        return availableCells;
+        return available;
     }
 
     public boolean isCellsAvailable() {
-        return (getAvailableCells().size() >= 1);
+        return countAvailableCells() >= 1;
     }
 
     public boolean isCellAvailable(Cell cell) {
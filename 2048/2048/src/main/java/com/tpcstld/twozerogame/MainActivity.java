@@ -53,6 +53,9 @@ public class MainActivity extends ActionBarActivity {
         } else if (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) {
             view.game.move(1);
             return true;
+        } else if (keyCode == KeyEvent.KEYCODE_H) {
+            view.requestHint();
+            return true;
         }
         return super.onKeyDown(keyCode, event);
     }
@@ -1,12 +1,9 @@
 package com.tpcstld.twozerogame;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class MainGame {
 
@@ -15,10 +12,11 @@ public class MainGame {
     public static final int MERGE_ANIMATION = 1;
 
     public static final int FADE_GLOBAL_ANIMATION = 0;
-    private static final long MOVE_ANIMATION_TIME = MainView.BASE_ANIMATION_TIME;
-    private static final long SPAWN_ANIMATION_TIME = MainView.BASE_ANIMATION_TIME;
+    static final int BASE_ANIMATION_TIME = 100000000;
+    private static final long MOVE_ANIMATION_TIME = BASE_ANIMATION_TIME;
+    private static final long SPAWN_ANIMATION_TIME = BASE_ANIMATION_TIME;
     private static final long NOTIFICATION_DELAY_TIME = MOVE_ANIMATION_TIME + SPAWN_ANIMATION_TIME;
-    private static final long NOTIFICATION_ANIMATION_TIME = MainView.BASE_ANIMATION_TIME * 5;
+    private static final long NOTIFICATION_ANIMATION_TIME = BASE_ANIMATION_TIME * 5;
     private static final int startingMaxValue = 2048;
     //Odd state = game is not active
     //Even state = game is active
@@ -31,12 +29,11 @@ public class MainGame {
     private int bufferGameState = GAME_NORMAL;
     private static final int GAME_ENDLESS = 2;
     private static final int GAME_ENDLESS_WON = 3;
-    private static final String HIGH_SCORE = "high score";
     private static int endingMaxValue;
     final int numSquaresX = 4;
     final int numSquaresY = 4;
-    private final Context mContext;
-    private final MainView mView;
+    private final GameHost mHost;
+    private final Random mRandom;
     public Grid grid = null;
     public AnimationGrid aGrid;
     public boolean canUndo;
@@ -45,10 +42,17 @@ public class MainGame {
     public long lastScore = 0;
     private long bufferScore = 0;
 
-    public MainGame(Context context, MainView view) {
-        mContext = context;
-        mView = view;
-        endingMaxValue = (int) Math.pow(2, view.numCellTypes - 1);
+    public MainGame(GameHost host, int numCellTypes) {
+        this(host, numCellTypes, new Random());
+    }
+
+    /**
+     * @param random source of tile spawns; seed it to replay the same game
+     */
+    public MainGame(GameHost host, int numCellTypes, Random random) {
+        mHost = host;
+        mRandom = random;
+        endingMaxValue = (int) Math.pow(2, numCellTypes - 1);
     }
 
     public void newGame() {
@@ -68,9 +72,9 @@ public class MainGame {
         score = 0;
         gameState = GAME_NORMAL;
         addStartTiles();
-        mView.refreshLastTime = true;
-        mView.resyncTime();
-        mView.invalidate();
+        mHost.refreshLastTime();
+        mHost.resyncTime();
+        mHost.invalidate();
     }
 
     private void addStartTiles() {
@@ -80,10 +84,10 @@ public class MainGame {
         }
     }
 
-    private void addRandomTile() {
+    void addRandomTile() {
         if (grid.isCellsAvailable()) {
-            int value = Math.random() < 0.9 ? 2 : 4;
-            Tile tile = new Tile(grid.randomAvailableCell(), value);
+            int value = mRandom.nextDouble() < 0.9 ? 2 : 4;
+            Tile tile = new Tile(grid.randomAvailableCell(mRandom), value);
             spawnTile(tile);
         }
     }
@@ -95,15 +99,11 @@ public class MainGame {
     }
 
     private void recordHighScore() {
-        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(mContext);
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putLong(HIGH_SCORE, highScore);
-        editor.commit();
+        mHost.recordHighScore(highScore);
     }
 
     private long getHighScore() {
-        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(mContext);
-        return settings.getLong(HIGH_SCORE, -1);
+        return mHost.getHighScore();
     }
 
     private void prepareTiles() {
@@ -122,14 +122,14 @@ public class MainGame {
         tile.updatePosition(cell);
     }
 
-    private void saveUndoState() {
+    void saveUndoState() {
         grid.saveTiles();
         canUndo = true;
         lastScore = bufferScore;
         lastGameState = bufferGameState;
     }
 
-    private void prepareUndoState() {
+    void prepareUndoState() {
         grid.prepareSaveTiles();
         bufferScore = score;
         bufferGameState = gameState;
@@ -142,8 +142,8 @@ public class MainGame {
             grid.revertTiles();
             score = lastScore;
             gameState = lastGameState;
-            mView.refreshLastTime = true;
-            mView.invalidate();
+            mHost.refreshLastTime();
+            mHost.invalidate();
         }
     }
 
@@ -226,8 +226,8 @@ public class MainGame {
             addRandomTile();
             checkLose();
         }
-        mView.resyncTime();
-        mView.invalidate();
+        mHost.resyncTime();
+        mHost.invalidate();
     }
 
     private void checkLose() {
@@ -293,27 +293,25 @@ public class MainGame {
         return new Cell[]{previous, nextCell};
     }
 
-    private boolean movesAvailable() {
+    boolean movesAvailable() {
         return grid.isCellsAvailable() || tileMatchesAvailable();
     }
 
-    private boolean tileMatchesAvailable() {
+    boolean tileMatchesAvailable() {
         Tile tile;
 
         for (int xx = 0; xx < numSquaresX; xx++) {
             for (int yy = 0; yy < numSquaresY; yy++) {
-                tile = grid.getCellContent(new Cell(xx, yy));
+                tile = grid.getCellContent(xx, yy);
 
                 if (tile != null) {
-                    for (int direction = 0; direction < 4; direction++) {
-                        Cell vector = getVector(direction);
-                        Cell cell = new Cell(xx + vector.getX(), yy + vector.getY());
+                    // Checking right and down neighbours covers every adjacent pair once
+                    Tile right = grid.getCellContent(xx + 1, yy);
+                    Tile down = grid.getCellContent(xx, yy + 1);
 
-                        Tile other = grid.getCellContent(cell);
-
-                        if (other != null && other.getValue() == tile.getValue()) {
-                            return true;
-                        }
+                    if ((right != null && right.getValue() == tile.getValue())
+                            || (down != null && down.getValue() == tile.getValue())) {
+                        return true;
                     }
                 }
             }
@@ -336,8 +334,8 @@ public class MainGame {
 
     public void setEndlessMode() {
         gameState = GAME_ENDLESS;
-        mView.invalidate();
-        mView.refreshLastTime = true;
+        mHost.invalidate();
+        mHost.refreshLastTime();
     }
 
     public boolean canContinue() {
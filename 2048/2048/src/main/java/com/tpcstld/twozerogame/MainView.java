@@ -1,26 +1,31 @@
 package com.tpcstld.twozerogame;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.View;
 
 import java.util.ArrayList;
 
 @SuppressWarnings("deprecation")
-public class MainView extends View {
+public class MainView extends View implements GameHost {
 
     //Internal Constants
-    static final int BASE_ANIMATION_TIME = 100000000;
+    static final int BASE_ANIMATION_TIME = MainGame.BASE_ANIMATION_TIME;
     private static final String TAG = MainView.class.getSimpleName();
+    private static final String HIGH_SCORE = "high score";
     private static final float MERGING_ACCELERATION = (float) -0.5;
     private static final float INITIAL_VELOCITY = (1 - MERGING_ACCELERATION) / 4;
+    private static final long HINT_TIME_BUDGET = BASE_ANIMATION_TIME * 3;
     public final int numCellTypes = 21;
     private final BitmapDrawable[] bitmapCell = new BitmapDrawable[numCellTypes];
     public final MainGame game;
@@ -39,6 +44,11 @@ public class MainView extends View {
     public int iconSize;
     //Misc
     boolean refreshLastTime = true;
+    //Hint
+    private AutoPlayer autoPlayer;
+    private long hintBoard;
+    private int hintDirection = AutoPlayer.NO_MOVE;
+    private final Path hintArrow = new Path();
     //Timing
     private long lastFPSTime = System.nanoTime();
     //Text
@@ -75,7 +85,7 @@ public class MainView extends View {
 
         Resources resources = context.getResources();
         //Loading resources
-        game = new MainGame(context, this);
+        game = new MainGame(this, numCellTypes);
         try {
             //Getting assets
             backgroundRectangle = resources.getDrawable(R.drawable.background_rectangle);
@@ -111,6 +121,8 @@ public class MainView extends View {
 
         drawCells(canvas);
 
+        drawHint(canvas);
+
         if (!game.isActive()) {
             drawEndGameState(canvas);
         }
@@ -130,6 +142,65 @@ public class MainView extends View {
         }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (autoPlayer != null) {
+            autoPlayer.shutdown();
+            autoPlayer = null;
+        }
+    }
+
+    /**
+     * Searches the current position in the background and points an arrow at the best move.
+     */
+    public void requestHint() {
+        if (!game.isActive()) {
+            return;
+        }
+        if (autoPlayer == null) {
+            autoPlayer = new AutoPlayer();
+        }
+        autoPlayer.requestHint(BitBoard.fromGrid(game.grid), HINT_TIME_BUDGET, new AutoPlayer.HintCallback() {
+            @Override
+            public void onHint(final long board, final int direction) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        hintBoard = board;
+                        hintDirection = direction;
+                        invalidate();
+                    }
+                });
+            }
+        });
+    }
+
+    private void drawHint(Canvas canvas) {
+        //A hint is only valid for the board it was computed for
+        if (hintDirection == AutoPlayer.NO_MOVE || !game.isActive()
+                || game.aGrid.isAnimationActive() || BitBoard.fromGrid(game.grid) != hintBoard) {
+            return;
+        }
+        float centerX = (startingX + endingX) / 2f;
+        float centerY = (startingY + endingY) / 2f;
+        float size = cellSize / 2f;
+        //Triangle pointing up, rotated to the hinted direction (0: up, 1: right, 2: down, 3: left)
+        hintArrow.reset();
+        hintArrow.moveTo(0, -size);
+        hintArrow.lineTo(size, size);
+        hintArrow.lineTo(-size, size);
+        hintArrow.close();
+        canvas.save();
+        canvas.translate(centerX, centerY);
+        canvas.rotate(90 * hintDirection);
+        paint.setColor(getResources().getColor(R.color.text_brown));
+        paint.setAlpha(160);
+        canvas.drawPath(hintArrow, paint);
+        paint.setAlpha(255);
+        canvas.restore();
+    }
+
     @Override
     protected void onSizeChanged(int width, int height, int oldW, int oldH) {
         super.onSizeChanged(width, height, oldW, oldH);
@@ -492,10 +563,30 @@ public class MainView extends View {
         lastFPSTime = currentTime;
     }
 
+    @Override
     public void resyncTime() {
         lastFPSTime = System.nanoTime();
     }
 
+    @Override
+    public void refreshLastTime() {
+        refreshLastTime = true;
+    }
+
+    @Override
+    public long getHighScore() {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getContext());
+        return settings.getLong(HIGH_SCORE, -1);
+    }
+
+    @Override
+    public void recordHighScore(long highScore) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getContext());
+        SharedPreferences.Editor editor = settings.edit();
+        editor.putLong(HIGH_SCORE, highScore);
+        editor.commit();
+    }
+
     private void getLayout(int width, int height) {
         cellSize = Math.min(width / (game.numSquaresX + 1), height / (game.numSquaresY + 3));
         gridWidth = cellSize / 7;
@@ -0,0 +1,138 @@
+package com.tpcstld.twozerogame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays batches of random games through MainGame on a plain JVM, exercising the same per-move
+ * code the app runs. Game {@code i} draws its moves and spawns from its own Random derived
+ * from the seed and {@code i}, so the totals do not depend on the number of threads.
+ */
+public class GameSimulator {
+
+    private static final int NUM_CELL_TYPES = 21;
+    private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    /**
+     * java com.tpcstld.twozerogame.GameSimulator [games] [seed] [threads]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 2048;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        System.out.print(simulate(games, seed, threads));
+    }
+
+    public static Stats simulate(final long games, final long seed, final int threads)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Stats>> tasks = new ArrayList<>(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            final int first = thread;
+            tasks.add(new Callable<Stats>() {
+                @Override
+                public Stats call() {
+                    Stats stats = new Stats();
+                    HeadlessHost host = new HeadlessHost();
+                    for (long game = first; game < games; game += threads) {
+                        playGame(host, new Random(seed ^ (game * SEED_MIX)), stats);
+                    }
+                    return stats;
+                }
+            });
+        }
+        long start = System.nanoTime();
+        Stats total = new Stats();
+        try {
+            for (Future<Stats> future : executor.invokeAll(tasks)) {
+                total.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        total.elapsedNanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Presses random directions until the game is lost, continuing in endless mode after a win.
+     */
+    static void playGame(GameHost host, Random random, Stats stats) {
+        MainGame game = new MainGame(host, NUM_CELL_TYPES, random);
+        game.newGame();
+        while (true) {
+            if (!game.isActive()) {
+                if (game.gameWon() && game.canContinue()) {
+                    stats.wins++;
+                    game.setEndlessMode();
+                } else {
+                    break;
+                }
+            }
+            game.move(random.nextInt(4));
+            stats.moves++;
+        }
+        stats.games++;
+        stats.totalScore += game.score;
+        stats.maxScore = Math.max(stats.maxScore, game.score);
+        stats.maxTileCounts[maxExponent(game.grid)]++;
+    }
+
+    private static int maxExponent(Grid grid) {
+        return BitBoard.maxExponent(BitBoard.fromGrid(grid));
+    }
+
+    public static class Stats {
+        // Indexed by exponent: maxTileCounts[11] is the number of games that reached 2048
+        public final long[] maxTileCounts = new long[BitBoard.MAX_EXPONENT + 1];
+        public long games;
+        public long wins;
+        public long moves;
+        public long totalScore;
+        public long maxScore;
+        public long elapsedNanos;
+
+        void add(Stats other) {
+            games += other.games;
+            wins += other.wins;
+            moves += other.moves;
+            totalScore += other.totalScore;
+            maxScore = Math.max(maxScore, other.maxScore);
+            for (int exponent = 0; exponent < maxTileCounts.length; exponent++) {
+                maxTileCounts[exponent] += other.maxTileCounts[exponent];
+            }
+        }
+
+        public double movesPerSecond() {
+            return moves * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(games).append(" games, ").append(moves).append(" moves, ")
+                    .append(String.format("%.0f moves/s%n", movesPerSecond()));
+            if (games > 0) {
+                builder.append("score mean ").append(totalScore / games)
+                        .append(" max ").append(maxScore)
+                        .append(", wins ").append(wins).append('\n');
+            }
+            for (int exponent = 0; exponent < maxTileCounts.length; exponent++) {
+                if (maxTileCounts[exponent] > 0) {
+                    builder.append("max tile ").append(1 << exponent).append(": ")
+                            .append(maxTileCounts[exponent]).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.tpcstld.twozerogame;
+
+/**
+ * Runs MainGame without a view: nothing is drawn and the high score only lives in memory.
+ */
+public class HeadlessHost implements GameHost {
+
+    private long highScore = -1;
+
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void resyncTime() {
+    }
+
+    @Override
+    public void refreshLastTime() {
+    }
+
+    @Override
+    public long getHighScore() {
+        return highScore;
+    }
+
+    @Override
+    public void recordHighScore(long highScore) {
+        this.highScore = highScore;
+    }
+}
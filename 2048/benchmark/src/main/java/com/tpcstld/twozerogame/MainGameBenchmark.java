@@ -0,0 +1,116 @@
+package com.tpcstld.twozerogame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-move hot paths of MainGame, run headless through {@link HeadlessHost}.
+ * Every state is built from a fixed seed so results are comparable between runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MainGameBenchmark {
+
+    private static final int NUM_CELL_TYPES = 21;
+    private static final long SEED = 2048;
+
+    // A mid-game position reached by random play
+    private MainGame game;
+    // A full board without merges, so every check scans all cells
+    private MainGame lostGame;
+    private long board;
+    private int direction;
+
+    @Setup
+    public void setUp() {
+        game = newGame(new Random(SEED));
+        for (int i = 0; i < 50 && game.isActive(); i++) {
+            game.move(i & 3);
+        }
+        board = BitBoard.fromGrid(game.grid);
+
+        lostGame = newGame(new Random(SEED));
+        lostGame.grid.clearGrid();
+        for (int xx = 0; xx < lostGame.numSquaresX; xx++) {
+            for (int yy = 0; yy < lostGame.numSquaresY; yy++) {
+                // A checkerboard of 2 and 4 has no equal neighbours
+                lostGame.grid.insertTile(new Tile(xx, yy, ((xx + yy) & 1) == 0 ? 2 : 4));
+            }
+        }
+    }
+
+    private static MainGame newGame(Random random) {
+        MainGame game = new MainGame(new HeadlessHost(), NUM_CELL_TYPES, random);
+        game.newGame();
+        return game;
+    }
+
+    /**
+     * One key press, including the spawn and lose check that follow a successful move.
+     * Cycles through the directions and restarts the game once it is over.
+     */
+    @Benchmark
+    public long move() {
+        game.move(direction);
+        direction = (direction + 1) & 3;
+        if (!game.isActive()) {
+            game.newGame();
+        }
+        return game.score;
+    }
+
+    @Benchmark
+    public Grid addRandomTile() {
+        if (!game.grid.isCellsAvailable()) {
+            game.grid.clearGrid();
+        }
+        game.addRandomTile();
+        return game.grid;
+    }
+
+    @Benchmark
+    public boolean movesAvailable() {
+        return lostGame.movesAvailable();
+    }
+
+    @Benchmark
+    public boolean tileMatchesAvailable() {
+        return lostGame.tileMatchesAvailable();
+    }
+
+    /**
+     * The undo bookkeeping done around every move, followed by an undo.
+     */
+    @Benchmark
+    public Grid undo() {
+        game.prepareUndoState();
+        game.saveUndoState();
+        game.revertUndoState();
+        return game.grid;
+    }
+
+    /**
+     * The table-driven equivalent of {@link #move()}, for comparison.
+     */
+    @Benchmark
+    public long bitBoardMove() {
+        board = BitBoard.move(board, direction);
+        direction = (direction + 1) & 3;
+        return board;
+    }
+}
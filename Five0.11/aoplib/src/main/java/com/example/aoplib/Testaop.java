@@ -1,19 +1,10 @@
 package com.example.aoplib;
-import android.annotation.TargetApi;
-import android.os.Build;
-import android.provider.Settings;
-import android.util.Log;
+import android.os.Debug;
 
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Created by ZKM on 2017/5/16.
@@ -72,106 +63,17 @@ public class Testaop {
 
     @Around("methodAnnotatedWithDebugTrace()")
     public Object weaveJoinPoint(ProceedingJoinPoint joinPoint) throws Throwable {
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        String className = methodSignature.getDeclaringType().getSimpleName();
-        String methodName = methodSignature.getName();
-
-        final StopWatch stopWatch = new StopWatch();
-       // String[] startCpu=getCpuInfo();
-        double startCpu=cpu("com.example.five");
-        stopWatch.start();
-        Object result = joinPoint.proceed();
-        stopWatch.stop();
-       // String[] endCpu=getCpuInfo();
-        double endCpu=cpu("com.example.five");
-        Log.d(className, buildLogMessage(methodName, stopWatch.getTotalTimeMillis())+ startCpu+endCpu);
-        return result;
-    }
-
-    /**
-     * Create a log message.
-     *
-     * @param methodName A string with the method name.
-     * @param methodDuration Duration of the method in milliseconds.
-     * @return A string representing message.
-     */
-    private static String buildLogMessage(String methodName, long methodDuration) {
-        StringBuilder message = new StringBuilder();
-        message.append("Gintonic --> ");
-        message.append(methodName);
-        message.append(" --> ");
-        message.append("[");
-        message.append(methodDuration);
-        message.append("ms");
-        message.append("]");
-
-        return message.toString();
-    }
-//        String msg =  buildLogMessage(methodName, stopWatch.getTotalTime(1));
-//        DebugLog.outPut(new Path());    //日志存储
-//        DebugLog.ReadIn(new Path());    //日志读取
-public String[] getCpuInfo() {
-    String str1 = "/proc/cpuinfo";
-    String str2="";
-    String[] cpuInfo={"",""};
-    String[] arrayOfString;
-    try {
-        FileReader fr = new FileReader(str1);
-        BufferedReader localBufferedReader = new BufferedReader(fr, 8192);
-        str2 = localBufferedReader.readLine();
-        arrayOfString = str2.split("\\s+");
-        for (int i = 2; i < arrayOfString.length; i++) {
-            cpuInfo[0] = cpuInfo[0] + arrayOfString[i] + " ";
+        TraceSink sink = TraceSink.get();
+        int methodId = sink.methodId(joinPoint.getStaticPart());
+        long startCpu = Debug.threadCpuTimeNanos();
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            long end = System.nanoTime();
+            long endCpu = Debug.threadCpuTimeNanos();
+            int cpuMicros = startCpu < 0 ? TraceSink.NO_SAMPLE : (int) ((endCpu - startCpu) / 1000);
+            sink.record(methodId, start, end, cpuMicros, sink.rssKb());
         }
-        str2 = localBufferedReader.readLine();
-        arrayOfString = str2.split("\\s+");
-        cpuInfo[1] += arrayOfString[2];
-        localBufferedReader.close();
-    } catch (IOException e) {
-    }
-    return cpuInfo;
-}
-    public static double cpu(String PackageName) throws IOException {
-        double Cpu = 0;
-        try{
-            Runtime runtime = Runtime.getRuntime();
-            Process proc = runtime.exec("adb shell top -n 1| grep "+PackageName);
-            try {
-                if (proc.waitFor() != 0) {
-                    System.err.println("exit value = " + proc.exitValue());
-                }
-                BufferedReader in = new BufferedReader(new InputStreamReader(
-                        proc.getInputStream()));
-                StringBuffer stringBuffer = new StringBuffer();
-                String line = null;
-                while ((line = in.readLine()) != null) {
-                    stringBuffer.append(line+" ");
-
-
-                }
-                String str1=stringBuffer.toString();
-                String  str3=str1.substring(str1.indexOf(PackageName)-43,str1.indexOf(PackageName));
-                String cpu= str3.substring(0,4);
-                cpu=cpu.trim();
-                Cpu=Double.parseDouble(cpu);
-
-            } catch (InterruptedException e) {
-                System.err.println(e);
-            }finally{
-                try {
-                    proc.destroy();
-                } catch (Exception e2) {
-                }
-            }
-        }
-        catch (Exception StringIndexOutOfBoundsException)
-        {
-
-            System.out.print("请检查设备是否连接");
-
-        }
-
-        return Cpu;
-
     }
 }
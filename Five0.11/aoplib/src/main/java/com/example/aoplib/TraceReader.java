@@ -0,0 +1,263 @@
+package com.example.aoplib;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读取 TraceSink 写出的段文件，统计每个函数的调用次数、p50/p95/p99 耗时、包含/不含子调用的总耗时、
+ * 线程 CPU 总耗时和调用结束时的最大常驻内存。
+ * 只依赖 JDK，可以在电脑上运行：java com.example.aoplib.TraceReader 段文件目录
+ */
+public final class TraceReader {
+    private final Map<Integer, String> names = new HashMap<Integer, String>();
+    private final Map<Integer, List<Call>> callsByThread = new HashMap<Integer, List<Call>>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: TraceReader <trace dir>");
+            return;
+        }
+        TraceReader reader = new TraceReader();
+        reader.readDirectory(new File(args[0]));
+        print(reader.summarize(), System.out);
+    }
+
+    public void readDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(TraceSink.SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Cannot list " + dir);
+        }
+        Arrays.sort(files);
+        File namesFile = new File(dir, TraceSink.NAMES_FILE);
+        if (namesFile.isFile()) {
+            readNames(namesFile);
+        }
+        for (File file : files) {
+            read(file);
+        }
+    }
+
+    public void read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != TraceSink.MAGIC) {
+                throw new IOException("Not a trace segment: " + file);
+            }
+            if (buffer.getInt(4) != TraceSink.VERSION) {
+                throw new IOException("Unsupported trace version " + buffer.getInt(4));
+            }
+            int recordSize = buffer.getInt(12);
+            int capacity = buffer.getInt(16);
+            int count = buffer.getInt(TraceSink.OFFSET_RECORD_COUNT);
+            long tableOffset = buffer.getLong(TraceSink.OFFSET_TABLE);
+            if (tableOffset == 0) {
+                count = capacity;                                //未收尾的段，扫描全部槽位
+            } else {
+                readTable(file, tableOffset);
+            }
+            for (int slot = 0; slot < count; slot++) {
+                int offset = TraceSink.HEADER_SIZE + slot * recordSize;
+                long enter = buffer.getLong(offset);
+                if (enter == 0) {
+                    continue;
+                }
+                Call call = new Call();
+                call.enter = enter;
+                call.exit = buffer.getLong(offset + 8);
+                int threadId = buffer.getInt(offset + 16);
+                call.methodId = buffer.getInt(offset + 20);
+                call.cpuMicros = buffer.getInt(offset + 24);
+                call.rssKb = buffer.getInt(offset + 28);
+                List<Call> calls = callsByThread.get(threadId);
+                if (calls == null) {
+                    calls = new ArrayList<Call>();
+                    callsByThread.put(threadId, calls);
+                }
+                calls.add(call);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void readTable(File file, long offset) throws IOException {
+        InputStream raw = new FileInputStream(file);
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = raw.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new IOException("Truncated trace segment: " + file);
+                }
+                skipped += n;
+            }
+            DataInputStream in = new DataInputStream(raw);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                names.put(id, in.readUTF());
+            }
+        } finally {
+            raw.close();
+        }
+    }
+
+    /**
+     * 读取后台追加的函数名，进程被杀时最后一条可能不完整，忽略即可
+     */
+    private void readNames(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int id = in.readInt();
+                names.put(id, in.readUTF());
+            }
+        } catch (EOFException e) {
+            //读到末尾
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 按线程重建调用嵌套关系，计算每次调用不含子调用的耗时，再按函数汇总。
+     * @return 按包含子调用的总耗时从大到小排序
+     */
+    public List<MethodStats> summarize() {
+        Map<Integer, MethodStats> stats = new HashMap<Integer, MethodStats>();
+        for (List<Call> calls : callsByThread.values()) {
+            //先进入的在前，同时进入的外层调用在前
+            Collections.sort(calls, new Comparator<Call>() {
+                @Override
+                public int compare(Call a, Call b) {
+                    if (a.enter != b.enter) {
+                        return a.enter < b.enter ? -1 : 1;
+                    }
+                    return a.exit == b.exit ? 0 : (a.exit > b.exit ? -1 : 1);
+                }
+            });
+            List<Call> stack = new ArrayList<Call>();
+            for (Call call : calls) {
+                while (!stack.isEmpty() && stack.get(stack.size() - 1).exit < call.exit) {
+                    stack.remove(stack.size() - 1);
+                }
+                if (!stack.isEmpty()) {
+                    stack.get(stack.size() - 1).children += call.exit - call.enter;
+                }
+                stack.add(call);
+            }
+            for (Call call : calls) {
+                MethodStats s = stats.get(call.methodId);
+                if (s == null) {
+                    String name = names.get(call.methodId);
+                    s = new MethodStats(name != null ? name : "#" + call.methodId);
+                    stats.put(call.methodId, s);
+                }
+                s.add(call.exit - call.enter, call.exit - call.enter - call.children,
+                        call.cpuMicros, call.rssKb);
+            }
+        }
+        List<MethodStats> result = new ArrayList<MethodStats>(stats.values());
+        for (MethodStats s : result) {
+            s.finish();
+        }
+        Collections.sort(result, new Comparator<MethodStats>() {
+            @Override
+            public int compare(MethodStats a, MethodStats b) {
+                return a.inclusiveNanos == b.inclusiveNanos ? 0 : (a.inclusiveNanos > b.inclusiveNanos ? -1 : 1);
+            }
+        });
+        return result;
+    }
+
+    public static void print(List<MethodStats> stats, PrintStream out) {
+        out.println("calls\tp50(us)\tp95(us)\tp99(us)\tinclusive(ms)\texclusive(ms)\tcpu(ms)\tmaxRss(KB)\tmethod");
+        for (MethodStats s : stats) {
+            out.println(s.calls + "\t" + s.p50 / 1000 + "\t" + s.p95 / 1000 + "\t" + s.p99 / 1000 + "\t"
+                    + s.inclusiveNanos / 1000000 + "\t" + s.exclusiveNanos / 1000000 + "\t"
+                    + (s.cpuCalls > 0 ? String.valueOf(s.cpuMicros / 1000) : "-") + "\t"
+                    + (s.maxRssKb != TraceSink.NO_SAMPLE ? String.valueOf(s.maxRssKb) : "-") + "\t" + s.name);
+        }
+    }
+
+    private static final class Call {
+        long enter;
+        long exit;
+        int methodId;
+        int cpuMicros;
+        int rssKb;
+        long children;
+    }
+
+    public static final class MethodStats {
+        public final String name;
+        public int calls;
+        public long inclusiveNanos;
+        public long exclusiveNanos;
+        //有 CPU 采样的调用次数及其线程 CPU 总耗时
+        public int cpuCalls;
+        public long cpuMicros;
+        public int maxRssKb = TraceSink.NO_SAMPLE;
+        public long p50;
+        public long p95;
+        public long p99;
+        private long[] durations = new long[16];
+
+        MethodStats(String name) {
+            this.name = name;
+        }
+
+        void add(long inclusive, long exclusive, int cpu, int rss) {
+            if (cpu != TraceSink.NO_SAMPLE) {
+                cpuCalls++;
+                cpuMicros += cpu;
+            }
+            maxRssKb = Math.max(maxRssKb, rss);
+            if (calls == durations.length) {
+                durations = Arrays.copyOf(durations, calls * 2);
+            }
+            durations[calls++] = inclusive;
+            inclusiveNanos += inclusive;
+            exclusiveNanos += exclusive;
+        }
+
+        void finish() {
+            Arrays.sort(durations, 0, calls);
+            p50 = percentile(50);
+            p95 = percentile(95);
+            p99 = percentile(99);
+            durations = null;
+        }
+
+        //nearest-rank 百分位
+        private long percentile(int p) {
+            int rank = (int) Math.ceil(p / 100.0 * calls);
+            return durations[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.example.aoplib;
+
+import android.os.Environment;
+import android.util.Log;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.Signature;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 把函数耗时以定长二进制记录写入内存映射文件，代替每次调用拼接字符串打 Log。
+ *
+ * 每个段文件的布局（小端）：
+ * 64 字节文件头：int 魔数, int 版本, int 段号, int 记录长度, int 记录容量, int 记录数,
+ * long 字符串表偏移, long 段创建时间(ms)；
+ * 随后是定长记录：long 进入时间(ns), long 退出时间(ns), int 线程号, int 函数编号,
+ * int 线程 CPU 耗时(us，无则为 -1), int RSS(KB，无则为 -1)；
+ * 段写满或关闭时在记录区之后写入字符串表（DataOutput 格式）：int 个数, 依次为 int 编号, UTF 函数名，
+ * 然后回填文件头。进程被杀时最后一段没有字符串表，进入时间为 0 的槽位视为空。
+ * 函数名另外由后台线程在分配编号后追加到目录下的 methods.names（同样是 int 编号, UTF 函数名），
+ * 所以即使没有任何段正常收尾，读者也能解析出函数名。
+ *
+ * 记录槽位用原子计数无锁分配，写完后在该槽位的提交标记上发布，收尾时等所有已分配的槽位提交后再写表头。
+ * 写满时切换到后台预先映射好的下一个段，收尾和映射新段都在同一个后台线程上依次完成，调用线程上没有文件 I/O；
+ * 映射失败时写满的段会丢弃新记录，并每隔一段时间重新尝试映射。
+ * 同一个后台线程定期读取 /proc/self/statm，织入点用 rssKb() 取最近一次的常驻内存。
+ * 进程正常退出时由关闭钩子调用 close()。
+ * 用 TraceReader 在电脑上统计结果。
+ */
+public final class TraceSink {
+    private static final String TAG = "TraceSink";
+
+    static final int MAGIC = 0x43525441;                        //"ATRC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+    static final int OFFSET_RECORD_COUNT = 20;
+    static final int OFFSET_TABLE = 24;
+    static final String SUFFIX = ".trace";
+    static final String NAMES_FILE = "methods.names";
+    static final int NO_SAMPLE = -1;
+
+    private static final int SEGMENT_RECORDS = 128 * 1024;    //每段 4MB
+    private static final int SAMPLE_INTERVAL_MS = 10;
+    private static final int PAGE_KB = 4;
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    private static volatile TraceSink instance;
+    private static File directory = new File(Environment.getExternalStorageDirectory(), "aoptrace");
+
+    private final File dir;
+    private final ConcurrentHashMap<JoinPoint.StaticPart, Integer> ids =
+            new ConcurrentHashMap<JoinPoint.StaticPart, Integer>();
+    private final List<String> names = new ArrayList<String>();
+    //已分配编号、还没写入 methods.names 的函数名
+    private final ConcurrentLinkedQueue<Integer> unsavedNames = new ConcurrentLinkedQueue<Integer>();
+    private volatile int rssKb = NO_SAMPLE;
+    private final Object rotateLock = new Object();
+    private volatile Segment current;
+    private Segment spare;
+    private boolean preparing;                                  //已提交映射下一段的任务
+    private long lastFailure;                                   //上次映射失败的时间(ms)
+    private int nextIndex;
+    private boolean failed;
+    //收尾和映射新段的后台线程
+    private final ExecutorService rotator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "trace-rotate");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private TraceSink(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 在第一次记录之前调用才有效
+     * @param dir 段文件所在目录
+     */
+    public static synchronized void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    public static TraceSink get() {
+        TraceSink sink = instance;
+        if (sink == null) {
+            synchronized (TraceSink.class) {
+                sink = instance;
+                if (sink == null) {
+                    sink = new TraceSink(directory);
+                    sink.start();
+                    instance = sink;
+                    final TraceSink closing = sink;
+                    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            closing.close();
+                        }
+                    }, "trace-close"));
+                }
+            }
+        }
+        return sink;
+    }
+
+    private void start() {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+            failed = true;
+            return;
+        }
+        //段号从 0 开始，清掉上一次会话留下的段，免得读者把两次会话混在一起
+        File[] old = dir.listFiles();
+        if (old != null) {
+            for (File file : old) {
+                if (file.getName().endsWith(SUFFIX) || file.getName().equals(NAMES_FILE)) {
+                    file.delete();
+                }
+            }
+        }
+        try {
+            current = newSegment();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot map trace segment", e);
+            failed = true;
+            return;
+        }
+        prepareSpare();
+        Thread sampler = new Thread(new Sampler(), "trace-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * @return 最近一次采样的常驻内存 (KB)，还没有采样时为 NO_SAMPLE
+     */
+    public int rssKb() {
+        return rssKb;
+    }
+
+    /**
+     * 每个织入点只在第一次执行时生成函数名
+     */
+    public int methodId(JoinPoint.StaticPart site) {
+        Integer id = ids.get(site);
+        if (id != null) {
+            return id;
+        }
+        Signature signature = site.getSignature();
+        String name = signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+        synchronized (names) {
+            id = ids.get(site);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                ids.put(site, id);
+                unsavedNames.offer(id);
+            }
+        }
+        return id;
+    }
+
+    public void record(int methodId, long enterNanos, long exitNanos) {
+        record(methodId, enterNanos, exitNanos, NO_SAMPLE, NO_SAMPLE);
+    }
+
+    /**
+     * @param cpuMicros 本次调用的线程 CPU 时间，没有时为 NO_SAMPLE
+     * @param rssKb 本次调用结束时的常驻内存，没有时为 NO_SAMPLE
+     */
+    public void record(int methodId, long enterNanos, long exitNanos, int cpuMicros, int rssKb) {
+        int threadId = (int) Thread.currentThread().getId();
+        while (true) {
+            Segment segment = current;
+            if (segment == null) {
+                return;
+            }
+            //写满后不再递增，免得一直切换不了段时计数溢出成负数
+            int slot = segment.claimed.get() < SEGMENT_RECORDS ? segment.claimed.getAndIncrement() : -1;
+            if (slot >= 0 && slot < SEGMENT_RECORDS) {
+                segment.put(slot, enterNanos, exitNanos, threadId, methodId, cpuMicros, rssKb);
+                return;
+            }
+            if (!rotate(segment)) {
+                return;                                        //下一个段还没准备好，丢弃本条
+            }
+        }
+    }
+
+    /**
+     * 关闭当前段，写入字符串表。之后的记录会被丢弃。进程正常退出时会自动调用
+     */
+    public void close() {
+        Segment segment;
+        synchronized (rotateLock) {
+            segment = current;
+            current = null;
+        }
+        if (segment != null) {
+            finish(segment);
+        }
+        saveNames();
+    }
+
+    private boolean rotate(Segment full) {
+        final Segment old;
+        synchronized (rotateLock) {
+            if (current != full) {
+                return current != null;
+            }
+            if (spare == null) {
+                //上次映射失败时隔一段时间再试
+                if (!preparing && !failed
+                        && System.currentTimeMillis() - lastFailure >= RETRY_INTERVAL_MS) {
+                    preparing = true;
+                    rotator.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            prepareSpare();
+                        }
+                    });
+                }
+                return false;
+            }
+            current = spare;
+            spare = null;
+            preparing = true;
+            old = full;
+        }
+        rotator.execute(new Runnable() {
+            @Override
+            public void run() {
+                prepareSpare();
+                finish(old);
+            }
+        });
+        return true;
+    }
+
+    private void prepareSpare() {
+        Segment segment = null;
+        try {
+            segment = newSegment();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot map trace segment", e);
+        }
+        synchronized (rotateLock) {
+            spare = segment;
+            preparing = false;
+            if (segment == null) {
+                lastFailure = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int index;
+        synchronized (rotateLock) {
+            if (failed) {
+                throw new IOException("Trace sink disabled");
+            }
+            index = nextIndex++;
+        }
+        File file = new File(dir, String.format("%05d", index) + SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long length = HEADER_SIZE + (long) SEGMENT_RECORDS * RECORD_SIZE;
+        raf.setLength(length);
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, index);
+        buffer.putInt(12, RECORD_SIZE);
+        buffer.putInt(16, SEGMENT_RECORDS);
+        buffer.putInt(OFFSET_RECORD_COUNT, 0);
+        buffer.putLong(OFFSET_TABLE, 0);
+        buffer.putLong(32, System.currentTimeMillis());
+        return new Segment(raf, buffer);
+    }
+
+    private void finish(Segment segment) {
+        //封住该段：之后分配到的槽位都不小于容量，不会再写入
+        int count = Math.min(segment.claimed.getAndAdd(SEGMENT_RECORDS), SEGMENT_RECORDS);
+        //已分配的槽位可能还在被其它线程写入，等它们全部提交
+        for (int slot = 0; slot < count; slot++) {
+            while (segment.committed.get(slot) == 0) {
+                Thread.yield();
+            }
+        }
+        String[] table;
+        synchronized (names) {
+            table = names.toArray(new String[names.size()]);
+        }
+        long tableOffset = HEADER_SIZE + (long) SEGMENT_RECORDS * RECORD_SIZE;
+        try {
+            segment.buffer.force();
+            RandomAccessFile raf = segment.file;
+            raf.seek(tableOffset);
+            raf.writeInt(table.length);
+            for (int id = 0; id < table.length; id++) {
+                raf.writeInt(id);
+                raf.writeUTF(table[id]);
+            }
+            //字符串表写完后再回填文件头，读者据此判断段是否完整
+            segment.buffer.putInt(OFFSET_RECORD_COUNT, count);
+            segment.buffer.putLong(OFFSET_TABLE, tableOffset);
+            segment.buffer.force();
+            raf.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot finish trace segment", e);
+        }
+    }
+
+    /**
+     * 把新分配编号的函数名追加到 methods.names
+     */
+    private void saveNames() {
+        synchronized (unsavedNames) {
+            if (unsavedNames.isEmpty()) {
+                return;
+            }
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(new File(dir, NAMES_FILE), true)));
+                Integer id;
+                while ((id = unsavedNames.peek()) != null) {
+                    String name;
+                    synchronized (names) {
+                        name = names.get(id);
+                    }
+                    out.writeInt(id);
+                    out.writeUTF(name);
+                    unsavedNames.poll();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save method names", e);
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Cannot save method names", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台线程：保存新的函数名并采样常驻内存
+     */
+    private final class Sampler implements Runnable {
+        private final byte[] buffer = new byte[128];
+
+        @Override
+        public void run() {
+            RandomAccessFile statm = null;
+            try {
+                statm = new RandomAccessFile("/proc/self/statm", "r");
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot open /proc/self/statm, RSS will not be recorded");
+            }
+            try {
+                while (true) {
+                    saveNames();
+                    if (statm != null) {
+                        rssKb = readRss(statm);
+                    }
+                    Thread.sleep(SAMPLE_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Trace sampler stopped");
+            } finally {
+                if (statm != null) {
+                    try {
+                        statm.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Cannot close /proc/self/statm", e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * statm 的第二个字段是常驻内存页数
+         */
+        private int readRss(RandomAccessFile statm) {
+            try {
+                statm.seek(0);
+                int n = statm.read(buffer);
+                int i = 0;
+                while (i < n && buffer[i] != ' ') {
+                    i++;
+                }
+                long pages = 0;
+                for (i++; i < n && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                    pages = pages * 10 + buffer[i] - '0';
+                }
+                return (int) (pages * PAGE_KB);
+            } catch (IOException e) {
+                return NO_SAMPLE;
+            }
+        }
+    }
+
+    private static final class Segment {
+        final RandomAccessFile file;
+        final MappedByteBuffer buffer;
+        final AtomicInteger claimed = new AtomicInteger();
+        //每个槽位写完后置 1，收尾时据此等待仍在写入的槽位
+        final AtomicIntegerArray committed = new AtomicIntegerArray(SEGMENT_RECORDS);
+
+        Segment(RandomAccessFile file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        void put(int slot, long enter, long exit, int threadId, int methodId, int cpu, int rss) {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            //绝对位置写入不改变 position，不同槽位可以并发写
+            buffer.putLong(offset, enter);
+            buffer.putLong(offset + 8, exit);
+            buffer.putInt(offset + 16, threadId);
+            buffer.putInt(offset + 20, methodId);
+            buffer.putInt(offset + 24, cpu);
+            buffer.putInt(offset + 28, rss);
+            committed.lazySet(slot, 1);
+        }
+    }
+}
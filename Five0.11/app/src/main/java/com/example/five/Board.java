@@ -0,0 +1,180 @@
+package com.example.five;
+
+/**
+ * λѹ
+ * ÿɫÿÿһ int ¼ӣ i λӦϵĵ i 
+ * ߰кűţ߰кűţ"\"  r - c + 14 ţ"/"  r + c ţ
+ * ߰к⣬ϵλöȡкţбߵЧλһӵ 0 λʼ
+ * 塢ĵж϶Ǽλ㣬ڴ档桢ֵһģ͡
+ */
+public final class Board {
+	public static final int ROWS = GameView.ROWS;
+	public static final int COLS = GameView.COLS;
+	static final int LINES = ROWS + COLS - 1;
+
+	// 0: 1: 2:"\" 3:"/"
+	static final int HORIZONTAL = 0;
+	static final int VERTICAL = 1;
+	static final int DIAGONAL = 2;
+	static final int ANTI_DIAGONAL = 3;
+
+	/**
+	 * ÿڵĸ
+	 */
+	private static final int[][] ON_BOARD = new int[4][LINES];
+	/**
+	 * values()ÿζḴ飬ɫȡʱʹ
+	 */
+	private static final ChessType[] TYPES = ChessType.values();
+
+	static {
+		for (int r = 0; r < ROWS; r++) {
+			for (int c = 0; c < COLS; c++) {
+				for (int dir = 0; dir < 4; dir++) {
+					ON_BOARD[dir][lineIndex(dir, r, c)] |= 1 << linePos(dir, r, c);
+				}
+			}
+		}
+	}
+
+	// ±Ϊ ChessType.ordinal()0 
+	private final int[][][] masks = new int[3][4][LINES];
+	private int stones;
+
+	public Board() {
+	}
+
+	static int lineIndex(int dir, int r, int c) {
+		switch (dir) {
+			case HORIZONTAL:
+				return r;
+			case VERTICAL:
+				return c;
+			case DIAGONAL:
+				return r - c + COLS - 1;
+			default:
+				return r + c;
+		}
+	}
+
+	static int linePos(int dir, int r, int c) {
+		return dir == VERTICAL ? r : c;
+	}
+
+	/**
+	 * @return  dir  line λ pos ĸ r * COLS + c
+	 */
+	static int cellAt(int dir, int line, int pos) {
+		switch (dir) {
+			case HORIZONTAL:
+				return line * COLS + pos;
+			case VERTICAL:
+				return pos * COLS + line;
+			case DIAGONAL:
+				return (pos + line - (COLS - 1)) * COLS + pos;
+			default:
+				return (line - pos) * COLS + pos;
+		}
+	}
+
+	static int onBoard(int dir, int line) {
+		return ON_BOARD[dir][line];
+	}
+
+	/**
+	 * @param color ChessType.ordinal()
+	 */
+	int mask(int color, int dir, int line) {
+		return masks[color][dir][line];
+	}
+
+	public void clear() {
+		for (int color = 0; color < 3; color++) {
+			for (int dir = 0; dir < 4; dir++) {
+				for (int line = 0; line < LINES; line++) {
+					masks[color][dir][line] = 0;
+				}
+			}
+		}
+		stones = 0;
+	}
+
+	public void copyFrom(Board other) {
+		for (int color = 1; color < 3; color++) {
+			for (int dir = 0; dir < 4; dir++) {
+				System.arraycopy(other.masks[color][dir], 0, masks[color][dir], 0, LINES);
+			}
+		}
+		stones = other.stones;
+	}
+
+	public Board copy() {
+		Board board = new Board();
+		board.copyFrom(this);
+		return board;
+	}
+
+	public ChessType get(int r, int c) {
+		return TYPES[getColor(r, c)];
+	}
+
+	int getColor(int r, int c) {
+		int bit = 1 << c;
+		if ((masks[1][HORIZONTAL][r] & bit) != 0) {
+			return 1;
+		}
+		return (masks[2][HORIZONTAL][r] & bit) != 0 ? 2 : 0;
+	}
+
+	public boolean isEmpty(int r, int c) {
+		return ((masks[1][HORIZONTAL][r] | masks[2][HORIZONTAL][r]) & (1 << c)) == 0;
+	}
+
+	public int getStoneCount() {
+		return stones;
+	}
+
+	public void place(int r, int c, ChessType chessType) {
+		place(r, c, chessType.ordinal());
+	}
+
+	void place(int r, int c, int color) {
+		int[][] own = masks[color];
+		for (int dir = 0; dir < 4; dir++) {
+			own[dir][lineIndex(dir, r, c)] |= 1 << linePos(dir, r, c);
+		}
+		stones++;
+	}
+
+	public void remove(int r, int c) {
+		int color = getColor(r, c);
+		if (color == 0) {
+			return;
+		}
+		int[][] own = masks[color];
+		for (int dir = 0; dir < 4; dir++) {
+			own[dir][lineIndex(dir, r, c)] &= ~(1 << linePos(dir, r, c));
+		}
+		stones--;
+	}
+
+	/**
+	 * @return õǷĳ
+	 */
+	public boolean isFive(int r, int c) {
+		int color = getColor(r, c);
+		if (color == 0) {
+			return false;
+		}
+		for (int dir = 0; dir < 4; dir++) {
+			int m = masks[color][dir][lineIndex(dir, r, c)];
+			// ÿ
+			int five = m & (m >>> 1) & (m >>> 2) & (m >>> 3) & (m >>> 4);
+			//  pos - 4  pos ֮žõ
+			if ((five & ((0x1F << linePos(dir, r, c)) >>> 4)) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
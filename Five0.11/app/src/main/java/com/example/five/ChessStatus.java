@@ -1,7 +0,0 @@
-package com.example.five;
-
-public enum ChessStatus {
-	ALIVE,
-	DIED,
-	HALFALIVE
-}
@@ -0,0 +1,37 @@
+package com.example.five;
+
+/**
+ * ѶȵȼԵȺ˼ʱ
+ */
+public enum Difficulty {
+	/**
+	 * ֻ ScoreTable ̰ѡ
+	 */
+	EASY(0, 0, 0, 0),
+	NORMAL(4, 1000, 10, 0),
+	HARD(8, 3000, 16, 6);
+
+	/**
+	 * alpha-beta ȣ0 ʾ
+	 */
+	public final int maxDepth;
+	/**
+	 * ÿ˼ʱ
+	 */
+	public final long timeMillis;
+	/**
+	 * (VCF)߼
+	 */
+	public final int vcfDepth;
+	/**
+	 * Ļ(VCT)߼0 ʾ
+	 */
+	public final int vctDepth;
+
+	Difficulty(int maxDepth, long timeMillis, int vcfDepth, int vctDepth) {
+		this.maxDepth = maxDepth;
+		this.timeMillis = timeMillis;
+		this.vcfDepth = vcfDepth;
+		this.vctDepth = vctDepth;
+	}
+}
@@ -29,9 +29,9 @@ public class GameView extends View {
 	 */
 	public static final int COLS = 15;
 	/**
-	 * ̵ķֲ0Ϊӣ1Ϊ,2Ϊ
+	 * ̵ķֲԹ
 	 */
-	private ChessType[][] chessMap = new ChessType[ROWS][COLS];
+	private Board board = new Board();
 	private static float PADDING = ((float) (screenWidth) / (COLS - 1)) / 2;
 	private static float PADDING_LEFT = ((float) (screenWidth) / (COLS - 1)) / 2;
 	private static float PADDING_TOP = ((float) (screenHeight) / (ROWS - 1)) / 2;
@@ -48,8 +48,12 @@ public class GameView extends View {
 	private ChessType computerType = ChessType.BLACK;
 	// ҵɫ
 	private ChessType playerType = ChessType.WHITE;
-	private ComputerPlayer computerPlayer = new ComputerPlayer(chessMap,
+	private ComputerPlayer computerPlayer = new ComputerPlayer(board,
 			computerType, playerType);
+	// ں̨˼
+	private boolean thinking = false;
+	// ÿּһһֻûĽ
+	private int round = 0;
 
 	public GameView(Context context) {
 		super(context);
@@ -72,11 +76,7 @@ public class GameView extends View {
 	 * ӽгʼ
 	 */
 	public void initChess() {
-		for (int i = 0; i < ROWS; i++) {
-			for (int j = 0; j < COLS; j++) {
-				chessMap[i][j] = ChessType.NONE;
-			}
-		}
+		board.clear();
 		invalidate();
 	}
 	/**
@@ -85,6 +85,52 @@ public class GameView extends View {
 	public void reStart(){
 		initChess();
 		gameOver = false;
+		thinking = false;
+		round++;
+	}
+
+	public void setDifficulty(Difficulty difficulty) {
+		computerPlayer.setDifficulty(difficulty);
+	}
+
+	/**
+	 * ں̨߳úص߳
+	 */
+	private void computerMove() {
+		thinking = true;
+		final int currentRound = round;
+		computerPlayer.startAsync(new ComputerPlayer.OnMoveListener() {
+			@Override
+			public void onMove(final Point p) {
+				post(new Runnable() {
+					@Override
+					public void run() {
+						if (currentRound != round) {
+							return;
+						}
+						thinking = false;
+						if (p.x < 0) {
+							return;
+						}
+						board.place(p.x, p.y, computerType);
+						if (hasWin(p.x, p.y)) {
+							// ʤ
+							gameOver = true;
+							new AlertDialog.Builder(context).setTitle("ʾ")
+									.setMessage("ʤ").setPositiveButton("ȷ", null)
+									.show();
+						}
+						invalidate();
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		computerPlayer.shutdown();
 	}
 	@Override
 	protected void onDraw(Canvas canvas) {
@@ -104,14 +150,14 @@ public class GameView extends View {
 		}
 		for (int r = 0; r < ROWS; r++) {
 			for (int c = 0; c < COLS; c++) {
-				// System.out.print(chessMap[r][c] + " ");
-				if (chessMap[r][c] == ChessType.NONE)
+				ChessType chessType = board.get(r, c);
+				if (chessType == ChessType.NONE)
 					continue;
-				if (chessMap[r][c] == ChessType.BLACK) {
+				if (chessType == ChessType.BLACK) {
 					paint.setColor(Color.BLACK);
 					canvas.drawCircle(r * MARGIN + PADDING_LEFT, c * MARGIN
 							+ PADDING_TOP, MARGIN / 2, paint);
-				} else if (chessMap[r][c] == ChessType.WHITE) {
+				} else if (chessType == ChessType.WHITE) {
 					paint.setColor(Color.WHITE);
 					canvas.drawCircle(r * MARGIN + PADDING_LEFT, c * MARGIN
 							+ PADDING_TOP, MARGIN / 2, paint);
@@ -125,94 +171,7 @@ public class GameView extends View {
 	 * жǷʤ
 	 */
 	public boolean hasWin(int r, int c) {
-		ChessType chessType = chessMap[r][c];
-		System.out.println(chessType);
-		int count = 1;
-		// 
-		for (int i = r + 1; i < r + 5; i++) {
-			if (i >= GameView.ROWS)
-				break;
-			if (chessMap[i][c] == chessType) {
-				count++;
-			} else
-				break;
-		}
-		for (int i = r - 1; i > r - 5; i--) {
-			if (i < 0)
-				break;
-			if (chessMap[i][c] == chessType)
-				count++;
-			else
-				break;
-		}
-		// System.out.println(count +" "+"1");
-		if (count >= 5)
-			return true;
-		// 
-		count = 1;
-		for (int i = c + 1; i < c + 5; i++) {
-			if (i >= GameView.COLS)
-				break;
-			if (chessMap[r][i] == chessType)
-				count++;
-			else
-				break;
-		}
-		for (int i = c - 1; i > c - 5; i--) {
-			if (i < 0)
-				break;
-			if (chessMap[r][i] == chessType)
-				count++;
-			else
-				break;
-		}
-		// System.out.println(count +" " +"2");
-		if (count >= 5)
-			return true;
-		// б"\"
-		count = 1;
-		for (int i = r + 1, j = c + 1; i < r + 5; i++, j++) {
-			if (i >= GameView.ROWS || j >= GameView.COLS) {
-				break;
-			}
-			if (chessMap[i][j] == chessType)
-				count++;
-			else
-				break;
-		}
-		for (int i = r - 1, j = c - 1; i > r - 5; i--, j--) {
-			if (i < 0 || j < 0)
-				break;
-			if (chessMap[i][j] == chessType)
-				count++;
-			else
-				break;
-		}
-		// System.out.println(count +" " +"3");
-		if (count >= 5)
-			return true;
-		// б"/"
-		count = 1;
-		for (int i = r + 1, j = c - 1; i < r + 5; i++, j--) {
-			if (i >= GameView.ROWS || j < 0)
-				break;
-			if (chessMap[i][j] == chessType)
-				count++;
-			else
-				break;
-		}
-		for (int i = r - 1, j = c + 1; i > r - 5; i--, j++) {
-			if (i < 0 || j >= GameView.COLS)
-				break;
-			if (chessMap[i][j] == chessType)
-				count++;
-			else
-				break;
-		}
-		// System.out.println(count +" " +"4");
-		if (count >= 5)
-			return true;
-		return false;
+		return board.isFive(r, c);
 	}
 
 	@Override
@@ -225,9 +184,13 @@ public class GameView extends View {
 		if (!(r >= 0 && r < ROWS && c >= 0 && c < COLS)) {
 			return false;
 		}
+		if (thinking) {
+			// ˼ʱӦ
+			return true;
+		}
 		if (!gameOver) {
-			if (chessMap[r][c] == ChessType.NONE) {
-				chessMap[r][c] = this.playerType;
+			if (board.isEmpty(r, c)) {
+				board.place(r, c, this.playerType);
 				if (this.hasWin(r, c)) {
 					// ʤ
 					this.gameOver = true;
@@ -235,14 +198,8 @@ public class GameView extends View {
 							.setMessage("ʤ").setPositiveButton("ȷ", null)
 							.show();
 				}
-				Point p = computerPlayer.start();
-				chessMap[p.x][p.y] = this.computerType;
-				if (this.hasWin(p.x, p.y)) {
-					// ʤ
-					this.gameOver = true;
-					new AlertDialog.Builder(context).setTitle("ʾ")
-							.setMessage("ʤ").setPositiveButton("ȷ", null)
-							.show();
+				if (!gameOver) {
+					computerMove();
 				}
 			}
 		} else {
@@ -23,6 +23,9 @@ public class MainActivity extends Activity {
 		// Inflate the menu; this adds items to the action bar if it is present.
 		// getMenuInflater().inflate(R.menu.main, menu);
 		menu.add("¿ʼ");
+		menu.add("");
+		menu.add("ͨ");
+		menu.add("");
 		menu.add("˳");
 		return true;
 	}
@@ -31,6 +34,12 @@ public class MainActivity extends Activity {
 	public boolean onOptionsItemSelected(MenuItem item) {
 		if (item.getTitle().equals("¿ʼ")) {
 			gameView.reStart();
+		} else if (item.getTitle().equals("")) {
+			gameView.setDifficulty(Difficulty.EASY);
+		} else if (item.getTitle().equals("ͨ")) {
+			gameView.setDifficulty(Difficulty.NORMAL);
+		} else if (item.getTitle().equals("")) {
+			gameView.setDifficulty(Difficulty.HARD);
 		} else if (item.getTitle().equals("˳")) {
 			finish();
 		}
@@ -0,0 +1,140 @@
+package com.example.five;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lazy SMP 
+ * ̺߳ɸ̶߳ͬһԵֻͨû
+ * Ÿ̴߳һ㿪ʼҸ̴ֺ߳ͬѡ˳򣬾ظͬķ֧
+ * ߳ʱֹ֪ͨ߳ͣȡһ̵߳Ľ
+ */
+public class ParallelSearch {
+	private final TranspositionTable table;
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final SearchEngine[] engines;
+	private final ExecutorService helpers;
+	private long nodes;
+	private int completedDepth;
+
+	/**
+	 * @param threads ߳߳
+	 * @param ttBits ûСȡ 2 Ķ
+	 */
+	public ParallelSearch(int threads, int ttBits) {
+		table = new TranspositionTable(ttBits);
+		engines = new SearchEngine[Math.max(threads, 1)];
+		for (int i = 0; i < engines.length; i++) {
+			engines[i] = new SearchEngine(table, stop, i == 0 ? 0 : 2 * i - 1);
+		}
+		helpers = engines.length > 1 ? Executors.newFixedThreadPool(engines.length - 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "search-helper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+	}
+
+	public int getThreadCount() {
+		return engines.length;
+	}
+
+	/**
+	 * @return ϴ̷߳ʵĽڵ
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return ϴһ
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	public void clearTable() {
+		table.clear();
+	}
+
+	public void shutdown() {
+		stop.set(true);
+		if (helpers != null) {
+			helpers.shutdownNow();
+		}
+	}
+
+	public int search(Board board, ChessType chessType, Difficulty difficulty) {
+		return search(board, chessType, difficulty.maxDepth, difficulty.timeMillis,
+				difficulty.vcfDepth, difficulty.vctDepth);
+	}
+
+	/**
+	 * ڵ߳ͬʱø̰߳æ timeMillis ʱһ
+	 * @return  r * GameView.COLS + cʱΪ SearchEngine.NO_MOVE
+	 */
+	public int search(final Board board, ChessType chessType, final int maxDepth,
+			long timeMillis, int vcfDepth, int vctDepth) {
+		long start = System.nanoTime();
+		final long deadline = start + timeMillis * 1000000;
+		final int color = chessType.ordinal();
+		SearchEngine main = engines[0];
+		stop.set(false);
+		nodes = 0;
+		completedDepth = 0;
+
+		int move = main.prepare(board, color);
+		if (move == SearchEngine.NO_MOVE) {
+			// ɱֻ֮߳һʱ
+			move = main.solveThreats(color, vcfDepth, vctDepth, start + timeMillis * 1000000 / 3);
+		}
+		if (move != SearchEngine.NO_MOVE) {
+			nodes = main.getNodes();
+			return move;
+		}
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 1; i < engines.length; i++) {
+			final SearchEngine helper = engines[i];
+			final int fromDepth = 1 + (i & 1);
+			futures.add(helpers.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					helper.prepare(board, color);
+					return helper.iterate(color, fromDepth, maxDepth, deadline);
+				}
+			}));
+		}
+		int best = main.iterate(color, 1, maxDepth, deadline);
+		completedDepth = main.getCompletedDepth();
+		stop.set(true);
+
+		nodes = main.getNodes();
+		for (int i = 1; i < engines.length; i++) {
+			try {
+				int helperMove = futures.get(i - 1).get();
+				SearchEngine helper = engines[i];
+				nodes += helper.getNodes();
+				if (helper.getCompletedDepth() > completedDepth && helperMove != SearchEngine.NO_MOVE) {
+					completedDepth = helper.getCompletedDepth();
+					best = helperMove;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,390 @@
+package com.example.five;
+
+/**
+ * ιֵ
+ * Ӵ Board ÿÿɫһλ롣ӻʱֻõ 4 ߣ
+ * ȡ 4 Ͼõ 4 ڵĿλĴڣõκͷ
+ * ֵ̹֮άҪÿɨ̡
+ */
+public class PatternEvaluator {
+	private static final int ROWS = Board.ROWS;
+	private static final int COLS = Board.COLS;
+	static final int CELLS = ROWS * COLS;
+	/**
+	 * ѡӵ
+	 */
+	private static final int NEAR = 2;
+	/**
+	 * ˸ 4 λȡʱжԽ
+	 */
+	private static final int PAD = 4;
+	private static final int WINDOW = 9;
+
+	// ϵΣֵԽԽǿ
+	static final int NONE = 0;
+	static final int DEAD_TWO = 1;
+	static final int ALIVE_TWO = 2;
+	static final int DEAD_THREE = 3;
+	static final int ALIVE_THREE = 4;
+	static final int DEAD_FOUR = 5;
+	static final int ALIVE_FOUR = 6;
+	static final int FIVE = 7;
+
+	/**
+	 * Ӻ÷Σ±Ϊ 4 ļλ( 8 λ)赲λ( 8 λ)
+	 */
+	private static final byte[] SHAPE = new byte[1 << 16];
+	/**
+	 * ĸ϶Ӧ ScoreTable ±Ϊ 4  3 λ
+	 */
+	private static final byte[] COMBO = new byte[1 << 12];
+	/**
+	 * ScoreTable Ӧֵ̹Ȩ
+	 */
+	private static final int[] WEIGHT = new int[ScoreTable.FIVE + 1];
+
+	static {
+		for (int key = 0; key < SHAPE.length; key++) {
+			SHAPE[key] = -1;
+		}
+		for (int key = 0; key < SHAPE.length; key++) {
+			if ((key & (key >>> 8)) == 0) {
+				shapeOf(expand(key & 0xFF) | 1 << 4, expand(key >>> 8));
+			} else {
+				SHAPE[key] = NONE;
+			}
+		}
+		for (int key = 0; key < COMBO.length; key++) {
+			int[] count = new int[FIVE + 1];
+			for (int dir = 0; dir < 4; dir++) {
+				count[(key >>> (3 * dir)) & 7]++;
+			}
+			COMBO[key] = (byte) combine(count);
+		}
+		WEIGHT[ScoreTable.FIVE] = 100000;
+		for (int score = ScoreTable.DEAD_FOUR_AND_ALIVE_TWO; score < ScoreTable.FIVE; score++) {
+			WEIGHT[score] = 10000;
+		}
+		WEIGHT[ScoreTable.DOUBLE_ALIVE_THREE] = 5000;
+		WEIGHT[ScoreTable.ALIVE_THREE_AND_DEAD_THREE] = 2000;
+		WEIGHT[ScoreTable.ALIVE_THREE] = 1000;
+		WEIGHT[ScoreTable.DEAD_FOUR] = 600;
+		WEIGHT[ScoreTable.DOUBLE_ALIVE_TWO] = 200;
+		WEIGHT[ScoreTable.DEAD_THREE] = 60;
+		WEIGHT[ScoreTable.ALIVE_TWO] = 40;
+		WEIGHT[ScoreTable.DEAD_TWO] = 8;
+	}
+
+	private final Board board = new Board();
+	// ±Ϊ ChessType.ordinal()
+	private final byte[][][] shapes = new byte[3][4][CELLS];
+	private final byte[][] scores = new byte[3][CELLS];
+	private final int[] totals = new int[3];
+	// Χ NEAR ڵ
+	private final byte[] neighbours = new byte[CELLS];
+
+	public PatternEvaluator() {
+	}
+
+	/**
+	 * 8 λѹ±껹ԭΪ 9 񴰿ڣλ
+	 */
+	private static int expand(int bits) {
+		return (bits & 0xF) | ((bits >>> 4) << 5);
+	}
+
+	private static int compress(int own, int blocked) {
+		return (own & 0xF) | ((own >>> 5) << 4) | ((blocked & 0xF) << 8) | ((blocked >>> 5) << 12);
+	}
+
+	/**
+	 * ݹ鶨ΣһĿλΪģһΪģ
+	 * һܳɻΪɳΪͬ
+	 * @param own 9 񴰿мӣ
+	 * @param blocked Էӻ
+	 */
+	private static int shapeOf(int own, int blocked) {
+		int key = compress(own, blocked);
+		if (SHAPE[key] >= 0) {
+			return SHAPE[key];
+		}
+		int shape = NONE;
+		if (hasFive(own)) {
+			shape = FIVE;
+		} else {
+			int fives = 0;
+			int best = NONE;
+			for (int i = 0; i < WINDOW; i++) {
+				int bit = 1 << i;
+				if (((own | blocked) & bit) != 0) {
+					continue;
+				}
+				int next = shapeOf(own | bit, blocked);
+				if (next == FIVE) {
+					fives++;
+				} else {
+					best = Math.max(best, next);
+				}
+			}
+			if (fives >= 2) {
+				shape = ALIVE_FOUR;
+			} else if (fives == 1) {
+				shape = DEAD_FOUR;
+			} else if (best == ALIVE_FOUR) {
+				shape = ALIVE_THREE;
+			} else if (best == DEAD_FOUR) {
+				shape = DEAD_THREE;
+			} else if (best == ALIVE_THREE) {
+				shape = ALIVE_TWO;
+			} else if (best == DEAD_THREE) {
+				shape = DEAD_TWO;
+			}
+		}
+		SHAPE[key] = (byte) shape;
+		return shape;
+	}
+
+	private static boolean hasFive(int own) {
+		for (int start = 0; start + 5 <= WINDOW; start++) {
+			int five = 0x1F << start;
+			if ((own & five) == five) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * ԭж ScoreTable ˳һ
+	 * @param count γֵķ
+	 */
+	private static int combine(int[] count) {
+		if (count[FIVE] > 0)
+			return ScoreTable.FIVE;
+		if (count[ALIVE_FOUR] >= 2)
+			return ScoreTable.DOUBLE_ALIVE_FOUR;
+		if (count[ALIVE_FOUR] > 0) {
+			if (count[DEAD_FOUR] > 0)
+				return ScoreTable.ALIVE_FOUR_AND_DEAD_FOUR;
+			if (count[ALIVE_THREE] > 0)
+				return ScoreTable.ALIVE_FOUR_AND_ALIVE_THREE;
+			if (count[DEAD_THREE] > 0)
+				return ScoreTable.ALIVE_FOUR_AND_DEAD_THREE;
+			if (count[ALIVE_TWO] > 0)
+				return ScoreTable.ALIVE_FOUR_AND_ALIVE_TWO;
+			return ScoreTable.ALIVE_FOUR;
+		}
+		if (count[DEAD_FOUR] >= 2)
+			return ScoreTable.DOUBLE_DEAD_FOUR;
+		if (count[DEAD_FOUR] > 0 && count[ALIVE_THREE] > 0)
+			return ScoreTable.DEAD_FOUR_AND_ALIVE_THREE;
+		if (count[DEAD_FOUR] > 0 && count[ALIVE_TWO] > 0)
+			return ScoreTable.DEAD_FOUR_AND_ALIVE_TWO;
+		if (count[ALIVE_THREE] >= 2)
+			return ScoreTable.DOUBLE_ALIVE_THREE;
+		if (count[ALIVE_THREE] > 0 && count[DEAD_THREE] > 0)
+			return ScoreTable.ALIVE_THREE_AND_DEAD_THREE;
+		if (count[ALIVE_THREE] > 0)
+			return ScoreTable.ALIVE_THREE;
+		if (count[DEAD_FOUR] > 0)
+			return ScoreTable.DEAD_FOUR;
+		if (count[ALIVE_TWO] >= 2)
+			return ScoreTable.DOUBLE_ALIVE_TWO;
+		if (count[DEAD_THREE] > 0)
+			return ScoreTable.DEAD_THREE;
+		if (count[ALIVE_TWO] > 0)
+			return ScoreTable.ALIVE_TWO;
+		if (count[DEAD_TWO] > 0)
+			return ScoreTable.DEAD_TWO;
+		return ScoreTable.SINGLE;
+	}
+
+	/**
+	 * 
+	 */
+	public void clear() {
+		board.clear();
+		for (int cell = 0; cell < CELLS; cell++) {
+			neighbours[cell] = 0;
+		}
+		for (int color = 0; color < 3; color++) {
+			for (int dir = 0; dir < 4; dir++) {
+				for (int cell = 0; cell < CELLS; cell++) {
+					shapes[color][dir][cell] = NONE;
+				}
+			}
+			for (int cell = 0; cell < CELLS; cell++) {
+				scores[color][cell] = ScoreTable.SINGLE;
+			}
+			totals[color] = 0;
+		}
+	}
+
+	/**
+	 *  other ԱȣֻԷ仯ĵӻ
+	 */
+	public void sync(Board other) {
+		// ӣͬһ㻻ɫʱص
+		for (int pass = 0; pass < 2; pass++) {
+			for (int r = 0; r < ROWS; r++) {
+				for (int color = 1; color < 3; color++) {
+					int mine = board.mask(color, Board.HORIZONTAL, r);
+					int theirs = other.mask(color, Board.HORIZONTAL, r);
+					int changed = pass == 0 ? mine & ~theirs : theirs & ~mine;
+					while (changed != 0) {
+						int c = Integer.numberOfTrailingZeros(changed);
+						changed &= changed - 1;
+						if (pass == 0) {
+							remove(r * COLS + c);
+						} else {
+							place(r * COLS + c, color);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public void place(int r, int c, ChessType chessType) {
+		place(r * COLS + c, chessType.ordinal());
+	}
+
+	public void remove(int r, int c) {
+		remove(r * COLS + c);
+	}
+
+	/**
+	 * @param color ChessType.ordinal()
+	 */
+	void place(int cell, int color) {
+		board.place(cell / COLS, cell % COLS, color);
+		addNeighbours(cell, 1);
+		update(cell);
+	}
+
+	void remove(int cell) {
+		board.remove(cell / COLS, cell % COLS);
+		addNeighbours(cell, -1);
+		update(cell);
+	}
+
+	private void addNeighbours(int cell, int delta) {
+		int r = cell / COLS;
+		int c = cell % COLS;
+		for (int i = Math.max(r - NEAR, 0); i <= Math.min(r + NEAR, ROWS - 1); i++) {
+			for (int j = Math.max(c - NEAR, 0); j <= Math.min(c + NEAR, COLS - 1); j++) {
+				neighbours[i * COLS + j] += delta;
+			}
+		}
+	}
+
+	public ChessType get(int r, int c) {
+		return board.get(r, c);
+	}
+
+	/**
+	 * @return ڸõӵ ScoreTable ʱΪ 0
+	 */
+	public int getScore(int r, int c, ChessType chessType) {
+		return scores[chessType.ordinal()][r * COLS + c];
+	}
+
+	/**
+	 * @return õĳϵ
+	 */
+	int getShape(int r, int c, int dir, ChessType chessType) {
+		return shapes[chessType.ordinal()][dir][r * COLS + c];
+	}
+
+	int getScore(int cell, int color) {
+		return scores[color][cell];
+	}
+
+	/**
+	 * @return ڸõӺĸǿ
+	 */
+	int getMaxShape(int cell, int color) {
+		byte[][] shape = shapes[color];
+		return Math.max(Math.max(shape[0][cell], shape[1][cell]), Math.max(shape[2][cell], shape[3][cell]));
+	}
+
+	int getColor(int cell) {
+		return board.getColor(cell / COLS, cell % COLS);
+	}
+
+	/**
+	 * @return λΧ NEAR ӣֻЩ
+	 */
+	boolean isCandidate(int cell) {
+		return neighbours[cell] != 0 && board.isEmpty(cell / COLS, cell % COLS);
+	}
+
+	int getStoneCount() {
+		return board.getStoneCount();
+	}
+
+	int evaluate(int color) {
+		return totals[color] - totals[3 - color];
+	}
+
+	/**
+	 * ֵ̹˫пλȨ֮͵Ĳ
+	 */
+	public int evaluate(ChessType chessType) {
+		return evaluate(chessType.ordinal());
+	}
+
+	/**
+	 * ¼㾭 cell  4 Ͼ 4 ڵĵ
+	 */
+	private void update(int cell) {
+		int r = cell / COLS;
+		int c = cell % COLS;
+		for (int dir = 0; dir < 4; dir++) {
+			int line = Board.lineIndex(dir, r, c);
+			int onBoard = Board.onBoard(dir, line);
+			int center = Board.linePos(dir, r, c);
+			for (int pos = Math.max(center - 4, 0); pos <= center + 4; pos++) {
+				if ((onBoard & (1 << pos)) == 0) {
+					continue;
+				}
+				int target = Board.cellAt(dir, line, pos);
+				for (int color = 1; color < 3; color++) {
+					shapes[color][dir][target] = (byte) lineShape(dir, line, pos, target, color);
+				}
+			}
+		}
+		// ĸζ֮ٻ
+		for (int dir = 0; dir < 4; dir++) {
+			int line = Board.lineIndex(dir, r, c);
+			int onBoard = Board.onBoard(dir, line);
+			int center = Board.linePos(dir, r, c);
+			for (int pos = Math.max(center - 4, 0); pos <= center + 4; pos++) {
+				if ((onBoard & (1 << pos)) != 0) {
+					int target = Board.cellAt(dir, line, pos);
+					rescore(target, 1);
+					rescore(target, 2);
+				}
+			}
+		}
+	}
+
+	private int lineShape(int dir, int line, int pos, int cell, int color) {
+		if (!board.isEmpty(cell / COLS, cell % COLS)) {
+			return NONE;
+		}
+		// ˸ PAD λͶԷӶ赲
+		int own = ((board.mask(color, dir, line) << PAD) >>> pos) & 0x1FF;
+		int free = Board.onBoard(dir, line) & ~board.mask(3 - color, dir, line);
+		int blocked = (~(free << PAD) >>> pos) & 0x1FF;
+		return SHAPE[compress(own, blocked)];
+	}
+
+	private void rescore(int cell, int color) {
+		byte[][] shape = shapes[color];
+		int score = !board.isEmpty(cell / COLS, cell % COLS) ? ScoreTable.SINGLE
+				: COMBO[shape[0][cell] | shape[1][cell] << 3 | shape[2][cell] << 6 | shape[3][cell] << 9];
+		totals[color] += WEIGHT[score] - WEIGHT[scores[color][cell]];
+		scores[color][cell] = (byte) score;
+	}
+}
@@ -0,0 +1,461 @@
+package com.example.five;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 
+ * һͱصĵ㣬(VCF)Ļ(VCT)ɱ
+ * ôû negamax alpha-beta 
+ * ѡֻȡΧڵĿλ PatternEvaluator ķÿֻչߵļ
+ * ̰߳ȫģÿ߳ԼʵʵԹһû ParallelSearch
+ */
+public class SearchEngine {
+	static final int WIN = 1000000;
+	static final int NO_MOVE = -1;
+	/**
+	 * ֵķʾѾʤû
+	 */
+	private static final int WIN_BOUND = WIN - 1000;
+	private static final int MAX_PLY = 64;
+	private static final int MAX_BRANCH = 12;
+	private static final int CHECK_INTERVAL = 1024;
+
+	private static final int CELLS = PatternEvaluator.CELLS;
+	private static final int BLACK = ChessType.BLACK.ordinal();
+	private static final long[][] ZOBRIST = new long[3][CELLS];
+	// ֵڷʱȥ
+	private static final long SIDE;
+
+	static {
+		// ̶ӣͬһÿεõͬһϣ
+		Random random = new Random(15 * 15);
+		for (int color = 1; color < 3; color++) {
+			for (int cell = 0; cell < CELLS; cell++) {
+				ZOBRIST[color][cell] = random.nextLong();
+			}
+		}
+		SIDE = random.nextLong();
+	}
+
+	private final PatternEvaluator evaluator = new PatternEvaluator();
+	private final TranspositionTable table;
+	// Ϊ true ʱֹͣ
+	private final AtomicBoolean stop;
+	// Ϊ 0 ʱҷͬĺѡ˳òе߲߳ͬķ֧
+	private final int salt;
+	private final int[][] moves = new int[MAX_PLY][CELLS];
+	private final int[][] keys = new int[MAX_PLY][CELLS];
+	private final int[] bestMoves = new int[MAX_PLY];
+	private long hash;
+
+	private long deadline;
+	private boolean aborted;
+	private int countdown;
+	private long nodes;
+	private int completedDepth;
+	private int fallback;
+	// generate ɨʱ˳ҵһĵ
+	private int ownFive;
+	private int oppFive;
+	private int winningMove;
+
+	/**
+	 * @param ttBits ûСȡ 2 Ķÿ 16 ֽ
+	 */
+	public SearchEngine(int ttBits) {
+		this(new TranspositionTable(ttBits), new AtomicBoolean(), 0);
+	}
+
+	SearchEngine(TranspositionTable table, AtomicBoolean stop, int salt) {
+		this.table = table;
+		this.stop = stop;
+		this.salt = salt;
+	}
+
+	/**
+	 * @return  r * GameView.COLS + cʱΪ NO_MOVE
+	 */
+	public int search(Board board, ChessType chessType, Difficulty difficulty) {
+		long start = System.nanoTime();
+		int color = chessType.ordinal();
+		int move = prepare(board, color);
+		if (move != NO_MOVE) {
+			return move;
+		}
+		// ɱ֮һʱ
+		move = solveThreats(color, difficulty.vcfDepth, difficulty.vctDepth,
+				start + difficulty.timeMillis * 1000000 / 3);
+		if (move != NO_MOVE) {
+			return move;
+		}
+		return iterate(color, 1, difficulty.maxDepth, start + difficulty.timeMillis * 1000000);
+	}
+
+	/**
+	 * ͬ
+	 * @return ȷĵ㣺ԪһסԷ壬Ϊ NO_MOVE
+	 */
+	int prepare(Board board, int color) {
+		evaluator.sync(board);
+		hash = 0;
+		for (int cell = 0; cell < CELLS; cell++) {
+			hash ^= ZOBRIST[evaluator.getColor(cell)][cell];
+		}
+		nodes = 0;
+		completedDepth = 0;
+		fallback = NO_MOVE;
+		if (evaluator.getStoneCount() == 0) {
+			return CELLS / 2;
+		}
+		int count = generate(color, 0, NO_MOVE);
+		if (count == 0) {
+			return NO_MOVE;
+		}
+		fallback = moves[0][0];
+		return ownFive != NO_MOVE || oppFive != NO_MOVE ? fallback : NO_MOVE;
+	}
+
+	/**
+	 * @return VCF  VCT ȡʤĵһûҵʱΪ NO_MOVE
+	 */
+	int solveThreats(int color, int vcfDepth, int vctDepth, long deadline) {
+		startClock(deadline);
+		if (vcfDepth > 0 && attack(color, vcfDepth, 0, false)) {
+			return winningMove;
+		}
+		if (vctDepth > 0 && attack(color, vctDepth, 0, true)) {
+			return winningMove;
+		}
+		return NO_MOVE;
+	}
+
+	/**
+	 *  fromDepth ʼ maxDepth ʱ
+	 * @return һѵ㣬һ㶼ûʱΪǰĵ
+	 */
+	int iterate(int color, int fromDepth, int maxDepth, long deadline) {
+		startClock(deadline);
+		int best = fallback;
+		if (best == NO_MOVE) {
+			return NO_MOVE;
+		}
+		for (int depth = fromDepth; depth <= maxDepth; depth++) {
+			int value = negamax(color, depth, -WIN, WIN, 0);
+			if (aborted) {
+				break;
+			}
+			// ûϣͻʱܸϷĵ
+			best = bestMoves[0] >= 0 && evaluator.isCandidate(bestMoves[0]) ? bestMoves[0] : fallback;
+			completedDepth = depth;
+			if (value >= WIN_BOUND || value <= -WIN_BOUND) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return ϴʵĽڵ
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return ϴ alpha-beta 
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	private void startClock(long deadline) {
+		this.deadline = deadline;
+		aborted = false;
+		countdown = CHECK_INTERVAL;
+	}
+
+	private boolean checkAbort() {
+		nodes++;
+		if (--countdown <= 0) {
+			countdown = CHECK_INTERVAL;
+			if (System.nanoTime() - deadline > 0 || stop.get()) {
+				aborted = true;
+			}
+		}
+		return aborted;
+	}
+
+	private void play(int cell, int color) {
+		evaluator.place(cell, color);
+		hash ^= ZOBRIST[color][cell];
+	}
+
+	private void undo(int cell, int color) {
+		evaluator.remove(cell);
+		hash ^= ZOBRIST[color][cell];
+	}
+
+	private int negamax(int color, int depth, int alpha, int beta, int ply) {
+		if (checkAbort()) {
+			return 0;
+		}
+		long key = color == BLACK ? hash ^ SIDE : hash;
+		long data = table.probe(key);
+		int ttMove = NO_MOVE;
+		if (data != 0) {
+			ttMove = TranspositionTable.move(data);
+			if (TranspositionTable.depth(data) >= depth) {
+				int value = fromTable(TranspositionTable.value(data), ply);
+				int flag = TranspositionTable.flag(data);
+				if (flag == TranspositionTable.EXACT || (flag == TranspositionTable.LOWER && value >= beta)
+						|| (flag == TranspositionTable.UPPER && value <= alpha)) {
+					bestMoves[ply] = ttMove;
+					return value;
+				}
+			}
+		}
+
+		int count = generate(color, ply, ttMove);
+		if (count == 0) {
+			return 0;                                        // 
+		}
+		if (ownFive != NO_MOVE) {
+			bestMoves[ply] = ownFive;
+			return WIN - ply;
+		}
+		if (depth <= 0 || ply >= MAX_PLY - 1) {
+			return evaluator.evaluate(color);
+		}
+
+		int alphaOrig = alpha;
+		int best = -WIN;
+		int bestMove = moves[ply][0];
+		for (int i = 0; i < count; i++) {
+			int cell = moves[ply][i];
+			play(cell, color);
+			int value = -negamax(3 - color, depth - 1, -beta, -alpha, ply + 1);
+			undo(cell, color);
+			if (aborted) {
+				return 0;
+			}
+			if (value > best) {
+				best = value;
+				bestMove = cell;
+				if (value > alpha) {
+					alpha = value;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		int flag = best <= alphaOrig ? TranspositionTable.UPPER
+				: (best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT);
+		table.store(key, toTable(best, ply), bestMove, depth, flag);
+		bestMoves[ply] = bestMove;
+		return best;
+	}
+
+	/**
+	 * ʤִԵǰڵĲӱ·ͬһʱȻȷ
+	 */
+	private static int toTable(int value, int ply) {
+		if (value >= WIN_BOUND) {
+			return value + ply;
+		}
+		return value <= -WIN_BOUND ? value - ply : value;
+	}
+
+	private static int fromTable(int value, int ply) {
+		if (value >= WIN_BOUND) {
+			return value - ply;
+		}
+		return value <= -WIN_BOUND ? value + ply : value;
+	}
+
+	/**
+	 * ɲѡ㣬ŵ moves[ply]
+	 * һĵʱֻԷܳʱֻطص㣻
+	 * ԷлʱֻܵסԼܳĵĵ
+	 * @return ѡ MAX_BRANCH
+	 */
+	private int generate(int color, int ply, int ttMove) {
+		int opp = 3 - color;
+		int[] list = moves[ply];
+		int[] order = keys[ply];
+		int count = 0;
+		boolean oppThree = false;
+		ownFive = NO_MOVE;
+		oppFive = NO_MOVE;
+		for (int cell = 0; cell < CELLS; cell++) {
+			if (!evaluator.isCandidate(cell)) {
+				continue;
+			}
+			int own = evaluator.getScore(cell, color);
+			int other = evaluator.getScore(cell, opp);
+			if (own == ScoreTable.FIVE) {
+				ownFive = cell;
+			} else if (other == ScoreTable.FIVE) {
+				oppFive = cell;
+			} else if (evaluator.getMaxShape(cell, opp) == PatternEvaluator.ALIVE_FOUR) {
+				oppThree = true;
+			}
+			list[count] = cell;
+			order[count] = cell == ttMove ? Integer.MAX_VALUE
+					: (Math.max(own, other) * 256 + own + other) * 8 + ((cell * salt) & 7);
+			count++;
+		}
+		if (ownFive != NO_MOVE || oppFive != NO_MOVE) {
+			list[0] = ownFive != NO_MOVE ? ownFive : oppFive;
+			return 1;
+		}
+		if (oppThree) {
+			int kept = 0;
+			for (int i = 0; i < count; i++) {
+				int cell = list[i];
+				if (evaluator.getMaxShape(cell, opp) >= PatternEvaluator.DEAD_FOUR
+						|| evaluator.getMaxShape(cell, color) >= PatternEvaluator.DEAD_FOUR) {
+					list[kept] = cell;
+					order[kept] = order[i];
+					kept++;
+				}
+			}
+			count = kept;
+		}
+		return selectBest(list, order, count, MAX_BRANCH);
+	}
+
+	/**
+	 *  key  limit 㰴ӴСŵǰ
+	 */
+	private static int selectBest(int[] list, int[] order, int count, int limit) {
+		int n = Math.min(count, limit);
+		for (int i = 0; i < n; i++) {
+			int max = i;
+			for (int j = i + 1; j < count; j++) {
+				if (order[j] > order[max]) {
+					max = j;
+				}
+			}
+			int cell = list[i];
+			list[i] = list[max];
+			list[max] = cell;
+			int key = order[i];
+			order[i] = order[max];
+			order[max] = key;
+		}
+		return n;
+	}
+
+	/**
+	 * ɱֻ߳(threes Ϊ false ʱ VCF)ĺͻ(VCT)طÿӦԡ
+	 * طܳгķʱصΪʧܡ
+	 * @param depth ߵĲ
+	 * @return ܷȡʤply Ϊ 0 ʱһ winningMove
+	 */
+	private boolean attack(int color, int depth, int ply, boolean threes) {
+		if (checkAbort()) {
+			return false;
+		}
+		int opp = 3 - color;
+		int[] list = moves[ply];
+		int[] order = keys[ply];
+		int count = 0;
+		boolean oppCanWin = false;
+		for (int cell = 0; cell < CELLS; cell++) {
+			if (!evaluator.isCandidate(cell)) {
+				continue;
+			}
+			int own = evaluator.getScore(cell, color);
+			if (own == ScoreTable.FIVE) {
+				winningMove = cell;
+				return true;
+			}
+			if (evaluator.getScore(cell, opp) == ScoreTable.FIVE) {
+				oppCanWin = true;
+			}
+			int shape = evaluator.getMaxShape(cell, color);
+			if (shape >= PatternEvaluator.DEAD_FOUR || (threes && shape == PatternEvaluator.ALIVE_THREE)) {
+				list[count] = cell;
+				order[count] = own;
+				count++;
+			}
+		}
+		if (oppCanWin || depth <= 0 || ply >= MAX_PLY - 2) {
+			return false;
+		}
+		count = selectBest(list, order, count, count);
+		for (int i = 0; i < count; i++) {
+			int cell = list[i];
+			play(cell, color);
+			boolean win = defend(color, depth, ply + 1, threes);
+			undo(cell, color);
+			if (aborted) {
+				return false;
+			}
+			if (win) {
+				winningMove = cell;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * ֵطcolor Ϊ
+	 * @return طӦԶסʱΪ true
+	 */
+	private boolean defend(int color, int depth, int ply, boolean threes) {
+		int opp = 3 - color;
+		int[] list = moves[ply];
+		int count = 0;
+		int fivePoint = NO_MOVE;
+		int fives = 0;
+		boolean openFour = false;
+		boolean counterFour = false;
+		for (int cell = 0; cell < CELLS; cell++) {
+			if (!evaluator.isCandidate(cell)) {
+				continue;
+			}
+			if (evaluator.getScore(cell, opp) == ScoreTable.FIVE) {
+				return false;
+			}
+			if (evaluator.getScore(cell, color) == ScoreTable.FIVE) {
+				fivePoint = cell;
+				fives++;
+			}
+			int shape = evaluator.getMaxShape(cell, color);
+			if (shape == PatternEvaluator.ALIVE_FOUR) {
+				openFour = true;
+			}
+			if (shape >= PatternEvaluator.DEAD_FOUR) {
+				list[count++] = cell;
+			}
+			if (evaluator.getMaxShape(cell, opp) >= PatternEvaluator.DEAD_FOUR) {
+				counterFour = true;
+			}
+		}
+		if (fives >= 2) {
+			return true;
+		}
+		if (fives == 1) {
+			list[0] = fivePoint;
+			count = 1;
+		} else if (!threes || !openFour || counterFour) {
+			// ǻطȣ߷طܳķ
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			int cell = list[i];
+			play(cell, opp);
+			boolean win = attack(color, depth - 1, ply + 1, threes);
+			undo(cell, opp);
+			if (!win || aborted) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.five;
+
+/**
+ * ̹߳û
+ * ÿ longkey ^ data  dataд벻ԭӵģ߳̿ܶ¾ɸһ룬
+ * ʱ key У鲻ͨûУԶдҪͬ
+ */
+public final class TranspositionTable {
+	static final int EXACT = 0;
+	static final int LOWER = 1;
+	static final int UPPER = 2;
+
+	// Чλ֤ data Ϊ 0
+	private static final long VALID = 1L << 62;
+
+	private final long[] entries;
+	private final int mask;
+
+	/**
+	 * @param bits ȡ 2 Ķÿ 16 ֽ
+	 */
+	public TranspositionTable(int bits) {
+		entries = new long[2 << bits];
+		mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * @return ݣûʱΪ 0
+	 */
+	long probe(long key) {
+		int index = ((int) key & mask) << 1;
+		long data = entries[index + 1];
+		long check = entries[index];
+		return (check ^ data) == key ? data : 0;
+	}
+
+	void store(long key, int value, int move, int depth, int flag) {
+		long data = VALID | ((long) flag << 56) | ((long) depth << 48)
+				| ((long) (move & 0xFFFF) << 32) | (value & 0xFFFFFFFFL);
+		int index = ((int) key & mask) << 1;
+		entries[index] = key ^ data;
+		entries[index + 1] = data;
+	}
+
+	public void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = 0;
+		}
+	}
+
+	static int value(long data) {
+		return (int) data;
+	}
+
+	static int move(long data) {
+		return (short) (data >>> 32);
+	}
+
+	static int depth(long data) {
+		return (int) (data >>> 48) & 0xFF;
+	}
+
+	static int flag(long data) {
+		return (int) (data >>> 56) & 0x3;
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.five;
+
+/**
+ * Ļ׼ԣԹ̶ļѵ̶ȣ߳ 1 ӵ N
+ * ÿ߳ܺʱ(time-to-depth)ÿڵԵ̵߳ļٱȡ
+ * ֻõ Android ࣬ڵԪԴУӦá
+ * 뵥ԪԺڵУ
+ * java -cp build/intermediates/classes/debug:build/intermediates/classes/test/debug
+ *     com.example.five.SearchBenchmark [߳] []
+ */
+public class SearchBenchmark {
+	/**
+	 * ÿһ ","ڰ׽棬
+	 */
+	private static final String[] POSITIONS = {
+			"7,7 7,8 8,8 6,6 8,7 8,6 9,7",
+			"7,7 8,8 7,8 7,9 6,7 8,7 8,9 6,9 9,10 5,10",
+			"7,7 6,8 8,8 6,6 6,7 8,6 9,9 5,5 4,4 7,9 9,7",
+			"7,7 7,6 8,6 6,8 9,5 8,7 6,6 10,4 9,6 9,7 10,7",
+			"7,7 8,6 6,8 8,8 6,6 6,7 8,7 5,7 9,6 7,5 9,8 10,9",
+	};
+	// ֹֻͣ
+	private static final long NO_TIME_LIMIT = 24 * 3600 * 1000L;
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		// Ԥ JIT
+		run(1, depth);
+		System.out.println("threads\ttime(ms)\tnodes/s\tspeedup");
+		long single = 0;
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			long[] result = run(threads, depth);
+			long elapsed = result[0];
+			long nodes = result[1];
+			if (threads == 1) {
+				single = elapsed;
+			}
+			System.out.println(threads + "\t" + elapsed / 1000000 + "\t" + nodes * 1000000000L / elapsed
+					+ "\t" + String.format("%.2f", (double) single / elapsed));
+		}
+	}
+
+	/**
+	 * @return оܺʱ(ns)ܽڵ
+	 */
+	private static long[] run(int threads, int depth) {
+		ParallelSearch search = new ParallelSearch(threads, 20);
+		long elapsed = 0;
+		long nodes = 0;
+		for (String position : POSITIONS) {
+			Board board = new Board();
+			ChessType toMove = load(position, board);
+			search.clearTable();
+			long start = System.nanoTime();
+			search.search(board, toMove, depth, NO_TIME_LIMIT, 0, 0);
+			elapsed += System.nanoTime() - start;
+			nodes += search.getNodes();
+		}
+		search.shutdown();
+		return new long[] {elapsed, nodes};
+	}
+
+	/**
+	 * @return ֵһ
+	 */
+	private static ChessType load(String position, Board board) {
+		ChessType turn = ChessType.BLACK;
+		for (String move : position.split(" ")) {
+			String[] rc = move.split(",");
+			board.place(Integer.parseInt(rc[0]), Integer.parseInt(rc[1]), turn);
+			turn = turn == ChessType.BLACK ? ChessType.WHITE : ChessType.BLACK;
+		}
+		return turn;
+	}
+}
@@ -1,7 +1,5 @@
 package com.example.aoplibrary;
 
-import android.util.Log;
-
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -10,22 +8,17 @@ import org.aspectj.lang.annotation.Pointcut;
 @Aspect
 public class AopClass {
     private static final String ACTIVITY_CREATE_EXECUTION = "execution(* com.hitomi.fungamerefreshdemo.*.*(..))";
-    private static final String LOG_TAG="AOP";
     @Pointcut(ACTIVITY_CREATE_EXECUTION)
     public void activityCreateExecution(){
     }
     @Around("activityCreateExecution()")
-    public void aroundActivityCreateExecution(ProceedingJoinPoint joinPoint) throws Throwable {
-        String logClas = "+++++++++++++++++++++" + joinPoint.getThis().toString() + "++++++++++++++++++++++++++";
-
-        FuncPerformance funcPerformance = new FuncPerformance(joinPoint.getThis().toString() +".."+ joinPoint.getSignature().getName());
-        funcPerformance.initFunc();
-        new Thread(funcPerformance).start();
-        joinPoint.proceed();
-        funcPerformance.stopFunc();
-        Log.d(LOG_TAG, funcPerformance.toString());
-
-        String logFunc = "+++++++++++++++++++++" + joinPoint.getSignature().getName() + "++++++++++++++++++++++++++";
+    public Object aroundActivityCreateExecution(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = SamplingProfiler.begin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            SamplingProfiler.end(joinPoint.getStaticPart(), start);
+        }
     }
 }
 
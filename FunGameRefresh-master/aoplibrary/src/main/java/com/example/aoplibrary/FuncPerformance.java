@@ -111,7 +111,7 @@ public class FuncPerformance implements Runnable {
      * @param virtualMemory,realMemory
      * @return
      */
-    private String formatByte(double virtualMemory, double realMemory, double pss, double uss){
+    static String formatByte(double virtualMemory, double realMemory, double pss, double uss){
         DecimalFormat format = new DecimalFormat("##.##");
         String memorySize;
         memorySize = "virtualMemory: ";
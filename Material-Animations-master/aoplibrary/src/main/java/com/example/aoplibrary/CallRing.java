@@ -0,0 +1,96 @@
+package com.example.aoplibrary;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 单线程写、采样线程读的调用记录环形缓冲区。
+ * 每个被织入的线程持有一个，记录时只写预分配数组中的一格，不产生任何对象。
+ * 读取按 seqlock 的方式进行：先复制一格，再重新读取 written，
+ * 如果这期间生产者可能已经开始覆盖该格，就丢弃复制的内容。
+ * 各格用原子数组存取，保证复制一定发生在重新读取 written 之前。
+ */
+final class CallRing {
+    private final WeakReference<Thread> owner;
+    final String threadName;
+
+    private final AtomicReferenceArray<Object> sites;
+    //第 i 格的开始和结束时间分别在 2i 和 2i + 1
+    private final AtomicLongArray times;
+    private final int mask;
+
+    //生产者已写入的记录总数，volatile 写即为发布
+    private volatile long written;
+    //消费者已读取的记录总数，只由采样线程访问
+    private long read;
+    //被覆盖而未能统计的记录数，只由采样线程访问
+    long lost;
+
+    /**
+     * @param capacity 容量，会向上取整为 2 的幂
+     */
+    CallRing(Thread owner, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.owner = new WeakReference<Thread>(owner);
+        this.threadName = owner.getName();
+        this.sites = new AtomicReferenceArray<Object>(size);
+        this.times = new AtomicLongArray(size * 2);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 只允许所属线程调用
+     */
+    void record(Object site, long start, long end) {
+        long w = written;
+        int i = (int) (w & mask);
+        sites.set(i, site);
+        times.set(i * 2, start);
+        times.set(i * 2 + 1, end);
+        written = w + 1;
+    }
+
+    boolean isOwnerAlive() {
+        Thread t = owner.get();
+        return t != null && t.isAlive();
+    }
+
+    boolean isDrained() {
+        return read == written;
+    }
+
+    /**
+     * 依次交给 visitor 处理结束时间不晚于 until 的记录，遇到更晚的记录即停止，留待下次处理。
+     * 只允许采样线程调用。
+     */
+    void drain(long until, Visitor visitor) {
+        int capacity = mask + 1;
+        long w = written;
+        if (w - read > capacity) {
+            lost += w - capacity - read;
+            read = w - capacity;
+        }
+        while (read < w) {
+            int i = (int) (read & mask);
+            Object site = sites.get(i);
+            long start = times.get(i * 2);
+            long end = times.get(i * 2 + 1);
+            //复制之后重新读取 written：生产者已写到下一圈的这一格时，复制的内容可能不完整
+            if (written - read >= capacity) {
+                lost++;
+                read++;
+                continue;
+            }
+            if (end > until) {
+                return;
+            }
+            visitor.visit(this, site, start, end);
+            read++;
+        }
+    }
+
+    interface Visitor {
+        void visit(CallRing ring, Object site, long start, long end);
+    }
+}
@@ -64,6 +64,7 @@ public class GPUImage {
     private GPUImageFilter mFilter;
     private Bitmap mCurrentBitmap;
     private ScaleType mScaleType = ScaleType.CENTER_CROP;
+    private GPUImageCpuRenderer mCpuRenderer;
 
     /**
      * Instantiates a new GPUImage object.
@@ -115,6 +116,17 @@ public class GPUImage {
         mGlSurfaceView.requestRender();
     }
 
+    /**
+     * Sets a renderer that {@link #getBitmapWithFilterApplied(Bitmap)} uses instead of an
+     * offscreen GL buffer whenever the current filter can be rendered on the CPU.
+     * 设置CPU渲染器，当前滤镜支持时getBitmapWithFilterApplied改为在CPU上处理，不需要创建GL环境
+     *
+     * @param cpuRenderer the CPU renderer, or null to always render with OpenGL
+     */
+    public void setCpuRenderer(final GPUImageCpuRenderer cpuRenderer) {
+        mCpuRenderer = cpuRenderer;
+    }
+
     /**
      * Request the preview to be rendered again.
      * 请求再次渲染
@@ -153,7 +165,7 @@ public class GPUImage {
         if (Build.VERSION.SDK_INT > Build.VERSION_CODES.GINGERBREAD_MR1) {
             setUpCameraGingerbread(camera);
         } else {
-            camera.setPreviewCallback(mRenderer);
+            mRenderer.setUpPreviewCallback(camera);
             camera.startPreview();
         }
         /*选择旋转角度*/
@@ -303,6 +315,11 @@ public class GPUImage {
      * @return the bitmap with filter applied
      */
     public Bitmap getBitmapWithFilterApplied(final Bitmap bitmap) {
+        // 输出与输入同样大小，不翻转时缩放类型不影响结果
+        if (mCpuRenderer != null && !mRenderer.isFlippedHorizontally()
+                && !mRenderer.isFlippedVertically() && GPUImageCpuRenderer.isSupported(mFilter)) {
+            return mCpuRenderer.render(mFilter, bitmap);
+        }
         if (mGlSurfaceView != null) {
             mRenderer.deleteImage();
             mRenderer.runOnDraw(new Runnable() {
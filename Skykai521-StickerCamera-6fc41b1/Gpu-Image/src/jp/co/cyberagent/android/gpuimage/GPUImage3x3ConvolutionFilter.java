@@ -98,6 +98,19 @@ public class GPUImage3x3ConvolutionFilter extends GPUImage3x3TextureSamplingFilt
         setConvolutionKernel(mConvolutionKernel);
     }
 
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        return createCpuKernel(mConvolutionKernel);
+    }
+
+    /**
+     * 用给定的结构元素创建CPU上的实现
+     */
+    GPUImageCpuKernel createCpuKernel(final float[] convolutionKernel) {
+        int step = getPixelStep();
+        return step > 0 ? GPUImageCpuKernel.convolution3x3(convolutionKernel, step) : null;
+    }
+
     /**
      * Sets the convolution kernel.
      * 设置结构元素进行卷积操作
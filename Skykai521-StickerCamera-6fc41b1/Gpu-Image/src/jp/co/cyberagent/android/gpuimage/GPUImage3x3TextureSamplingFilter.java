@@ -154,6 +154,17 @@ public class GPUImage3x3TextureSamplingFilter extends GPUImageFilter {
         updateTexelValues();
     }
 
+    /**
+     * CPU处理时相邻采样点之间的像素数
+     * @return 单独设置过贴图宽度或高度，或者行数不是整数时返回0，此时无法在CPU上处理
+     */
+    int getPixelStep() {
+        if (mHasOverriddenImageSizeFactor || mLineSize != Math.round(mLineSize)) {
+            return 0;
+        }
+        return Math.round(mLineSize);
+    }
+
     /**
      * 更新图像的相关值
      */
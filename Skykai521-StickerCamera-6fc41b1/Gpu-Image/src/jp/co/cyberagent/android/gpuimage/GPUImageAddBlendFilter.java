@@ -63,4 +63,21 @@ public class GPUImageAddBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageAddBlendFilter() {
         super(ADD_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    if (overlay[i] * base[3] + base[i] * overlay[3] >= overlay[3] * base[3]) {
+                        base[i] = overlay[3] * base[3] + overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                    } else {
+                        base[i] = overlay[i] + base[i];
+                    }
+                }
+                base[3] = overlay[3] + base[3] - overlay[3] * base[3];
+            }
+        };
+    }
 }
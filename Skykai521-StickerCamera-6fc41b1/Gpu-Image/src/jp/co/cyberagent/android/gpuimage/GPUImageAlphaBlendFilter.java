@@ -52,4 +52,18 @@ public class GPUImageAlphaBlendFilter extends GPUImageMixBlendFilter{
     public GPUImageAlphaBlendFilter(float mix) {
         super(ALPHA_BLEND_FRAGMENT_SHADER, mix);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        final float mix = getMix();
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float amount = overlay[3] * mix;
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] * (1.0f - amount) + overlay[i] * amount;
+                }
+            }
+        };
+    }
 }
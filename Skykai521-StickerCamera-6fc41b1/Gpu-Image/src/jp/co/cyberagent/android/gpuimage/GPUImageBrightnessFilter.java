@@ -55,6 +55,20 @@ public class GPUImageBrightnessFilter extends GPUImageFilter {
         mBrightness = brightness;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = GPUImageCpuKernel.toByte(i / 255.0 + mBrightness);
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, null);
+    }
+
     /**
      * 初始化
      */
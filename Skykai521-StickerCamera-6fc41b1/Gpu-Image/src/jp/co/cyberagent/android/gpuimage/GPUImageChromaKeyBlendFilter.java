@@ -108,4 +108,27 @@ public class GPUImageChromaKeyBlendFilter extends GPUImageTwoInputFilter {
         mColorToReplace = new float[]{redComponent, greenComponent, blueComponent};
         setFloatVec3(mColorToReplaceLocation, mColorToReplace);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        final float[] replace = mColorToReplace;
+        final float threshold = mThresholdSensitivity;
+        final float smoothing = mSmoothing;
+        final float maskY = 0.2989f * replace[0] + 0.5866f * replace[1] + 0.1145f * replace[2];
+        final float maskCr = 0.7132f * (replace[0] - maskY);
+        final float maskCb = 0.5647f * (replace[2] - maskY);
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                float y = 0.2989f * base[0] + 0.5866f * base[1] + 0.1145f * base[2];
+                float cr = 0.7132f * (base[0] - y) - maskCr;
+                float cb = 0.5647f * (base[2] - y) - maskCb;
+                float t = Math.min(Math.max(((float) Math.sqrt(cr * cr + cb * cb) - threshold) / smoothing, 0.0f), 1.0f);
+                float amount = 1.0f - t * t * (3.0f - 2.0f * t);
+                for (int i = 0; i < 4; i++) {
+                    base[i] = base[i] * (1.0f - amount) + overlay[i] * amount;
+                }
+            }
+        };
+    }
 }
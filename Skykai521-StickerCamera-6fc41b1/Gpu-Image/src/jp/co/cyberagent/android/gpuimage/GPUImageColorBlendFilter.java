@@ -63,4 +63,18 @@ public class GPUImageColorBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageColorBlendFilter() {
         super(COLOR_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                float[] color = {overlay[0], overlay[1], overlay[2]};
+                GPUImageCpuKernel.setLum(color, GPUImageCpuKernel.lum(base));
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] * (1.0f - overlay[3]) + color[i] * overlay[3];
+                }
+            }
+        };
+    }
 }
@@ -46,4 +46,25 @@ public class GPUImageColorDodgeBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageColorDodgeBlendFilter() {
         super(COLOR_DODGE_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float product = overlay[3] * base[3];
+                final float overlayAlpha = Math.min(Math.max(overlay[3], 0.01f), 1.0f);
+                for (int i = 0; i < 3; i++) {
+                    float rightHand = overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                    if (product >= overlay[i] * base[3] + base[i] * overlay[3]) {
+                        float overlayColor = Math.min(Math.max(overlay[i] / overlayAlpha, 0.0f), 0.99f);
+                        base[i] = (base[i] * overlay[3]) / (1.0f - overlayColor) + rightHand;
+                    } else {
+                        base[i] = product + rightHand;
+                    }
+                }
+                base[3] = 1.0f;
+            }
+        };
+    }
 }
@@ -36,4 +36,13 @@ public class GPUImageColorInvertFilter extends GPUImageFilter {
     public GPUImageColorInvertFilter() {
         super(NO_FILTER_VERTEX_SHADER, COLOR_INVERT_FRAGMENT_SHADER);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = 255 - i;
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, null);
+    }
 }
@@ -59,6 +59,21 @@ public class GPUImageColorMatrixFilter extends GPUImageFilter {
         mColorMatrix = colorMatrix;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        // 按强度与单位矩阵混合
+        float[] matrix = new float[16];
+        for (int i = 0; i < 16; i++) {
+            matrix[i] = mIntensity * mColorMatrix[i] + (i % 5 == 0 ? 1.0f - mIntensity : 0.0f);
+        }
+        return GPUImageCpuKernel.colorMatrix(matrix);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
@@ -51,6 +51,20 @@ public class GPUImageContrastFilter extends GPUImageFilter {
         mContrast = contrast;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = GPUImageCpuKernel.toByte((i / 255.0 - 0.5) * mContrast + 0.5);
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, null);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
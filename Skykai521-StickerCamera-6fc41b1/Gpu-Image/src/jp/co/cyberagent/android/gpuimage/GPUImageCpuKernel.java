@@ -0,0 +1,700 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+/**
+ * 滤镜在CPU上的实现，由{@link GPUImageFilter#createCpuKernel()}创建，
+ * 创建时取滤镜当前的参数，之后与滤镜无关，可以在多个线程中同时使用。
+ * 像素为ARGB格式的int，与{@link android.graphics.Bitmap#getPixels}一致
+ */
+public abstract class GPUImageCpuKernel {
+    /*定点数运算的小数位数*/
+    private static final int FIXED_SHIFT = 16;
+    private static final int FIXED_ONE = 1 << FIXED_SHIFT;
+    private static final int FIXED_HALF = FIXED_ONE >> 1;
+    /*RGBA各通道在ARGB像素中的位置*/
+    private static final int[] RGBA_SHIFTS = {16, 8, 0, 24};
+
+    /**
+     * 输出像素是否只取决于同一位置的输入像素。
+     * 是的话src和dst可以是同一个数组，并可以接在前一个内核之后在同一分块内处理
+     */
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    /**
+     * 处理startRow(含)到endRow(不含)之间的行
+     *
+     * @param src 整幅输入图像
+     * @param dst 与输入同样大小的输出图像，只写入这些行
+     */
+    public abstract void process(int[] src, int[] dst, int width, int height,
+                                 int startRow, int endRow);
+
+    /**
+     * 把0到1之间的颜色值转换为0到255，与GL写入8位帧缓冲时相同
+     */
+    public static int toByte(final double value) {
+        return (int) (Math.min(Math.max(value, 0.0), 1.0) * 255.0 + 0.5);
+    }
+
+    /**
+     * 原样输出
+     */
+    public static GPUImageCpuKernel identity() {
+        return new GPUImageCpuKernel() {
+            @Override
+            public void process(int[] src, int[] dst, int width, int height,
+                                int startRow, int endRow) {
+                if (src != dst) {
+                    System.arraycopy(src, startRow * width, dst, startRow * width,
+                            (endRow - startRow) * width);
+                }
+            }
+        };
+    }
+
+    /**
+     * 每个通道分别查表
+     *
+     * @param red   256个0到255之间的值，null代表不变
+     * @param green 同上
+     * @param blue  同上
+     * @param alpha 同上
+     */
+    public static GPUImageCpuKernel lookup(final int[] red, final int[] green, final int[] blue,
+                                           final int[] alpha) {
+        return new LookupKernel(red, green, blue, alpha);
+    }
+
+    /**
+     * 颜色矩阵，与GLSL中的vec4 * mat4相同，即输出的第j个通道为输入与矩阵第j列的点积
+     *
+     * @param matrix 按列排列的4x4矩阵，与glUniformMatrix4fv上传的顺序一致，通道顺序为RGBA
+     */
+    public static GPUImageCpuKernel colorMatrix(final float[] matrix) {
+        return new ColorMatrixKernel(matrix);
+    }
+
+    /**
+     * 3x3卷积，超出边界的像素取最近的边缘像素，与GL_CLAMP_TO_EDGE一致
+     *
+     * @param kernel 按行排列的3x3卷积核，第一行对应上一行像素
+     * @param step   相邻采样点之间的像素数
+     */
+    public static GPUImageCpuKernel convolution3x3(final float[] kernel, final int step) {
+        return new ConvolutionKernel(kernel, step);
+    }
+
+    /**
+     * 逐像素的颜色变换，用于不便查表或写成矩阵的滤镜，写法与着色器中的计算一一对应
+     *
+     * @param function 颜色值为0到1之间的浮点数
+     */
+    public static GPUImageCpuKernel color(final ColorFunction function) {
+        return new ColorKernel(function);
+    }
+
+    /**
+     * 与第二张图像混合，第二张图像拉伸到输入图像的大小后双线性采样，与GL_LINEAR一致
+     *
+     * @param pixels 第二张图像，与{@link android.graphics.Bitmap#getPixels}一致为非预乘的ARGB，
+     *               混合时与GL纹理中一样使用预乘透明度后的值
+     */
+    public static GPUImageCpuKernel blend(final int[] pixels, final int width, final int height,
+                                          final Blend blend) {
+        return new BlendKernel(pixels, width, height, blend);
+    }
+
+    /**
+     * 512x512、由8x8个64x64小块组成的颜色查找表，与{@link GPUImageLookupFilter}的着色器相同
+     *
+     * @param pixels 查找表图像
+     */
+    public static GPUImageCpuKernel colorLookup(final int[] pixels, final int width,
+                                                final int height) {
+        return new ColorLookupKernel(pixels, width, height);
+    }
+
+    /**
+     * 锐化，与{@link GPUImageSharpenFilter}相同，透明度取上一行的像素
+     */
+    public static GPUImageCpuKernel sharpen(final float sharpness) {
+        return new SharpenKernel(sharpness);
+    }
+
+    /**
+     * 马赛克，与{@link GPUImagePixelationFilter}相同，输出不透明
+     *
+     * @param pixel 每个色块的像素数
+     */
+    public static GPUImageCpuKernel pixelation(final float pixel) {
+        return new PixelationKernel(pixel);
+    }
+
+    /**
+     * 带方向的Sobel边缘检测，只使用输入的红色通道，
+     * 输出的红色为梯度大小，绿色和蓝色为量化后的方向
+     *
+     * @param step 相邻采样点之间的像素数
+     */
+    public static GPUImageCpuKernel directionalSobel(final int step) {
+        return new DirectionalSobelKernel(step);
+    }
+
+    /**
+     * 逐像素的颜色变换
+     */
+    public interface ColorFunction {
+        /**
+         * @param rgba 输入的颜色，结果直接写回，超出0到1的值输出时截断
+         */
+        void apply(float[] rgba);
+    }
+
+    /**
+     * 两张图像同一位置像素的混合方式
+     */
+    public interface Blend {
+        /**
+         * @param base    第一张图像的RGBA，结果直接写回，超出0到1的值输出时截断
+         * @param overlay 第二张图像的RGBA，只读
+         */
+        void blend(float[] base, float[] overlay);
+    }
+
+    /**
+     * 颜色、色相、饱和度和明度混合共用的计算，与着色器中的同名函数相同，只处理RGB
+     */
+    static float lum(final float[] c) {
+        return c[0] * 0.3f + c[1] * 0.59f + c[2] * 0.11f;
+    }
+
+    static float sat(final float[] c) {
+        return Math.max(Math.max(c[0], c[1]), c[2]) - Math.min(Math.min(c[0], c[1]), c[2]);
+    }
+
+    static void setLum(final float[] c, final float l) {
+        final float d = l - lum(c);
+        c[0] += d;
+        c[1] += d;
+        c[2] += d;
+        // clipcolor
+        final float lum = lum(c);
+        final float n = Math.min(Math.min(c[0], c[1]), c[2]);
+        final float x = Math.max(Math.max(c[0], c[1]), c[2]);
+        if (n < 0.0f) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = lum + ((c[i] - lum) * lum) / (lum - n);
+            }
+        }
+        if (x > 1.0f) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = lum + ((c[i] - lum) * (1.0f - lum)) / (x - lum);
+            }
+        }
+    }
+
+    static void setSat(final float[] c, final float s) {
+        int max;
+        int mid;
+        int min;
+        if (c[0] > c[1]) {
+            if (c[0] > c[2]) {
+                max = 0;
+                if (c[1] > c[2]) {
+                    mid = 1;
+                    min = 2;
+                } else {
+                    mid = 2;
+                    min = 1;
+                }
+            } else {
+                // 着色器在这里把算好的红色又置为0，绿色保持不变，这里照样处理
+                c[2] = s;
+                c[0] = 0.0f;
+                return;
+            }
+        } else if (c[0] > c[2]) {
+            max = 1;
+            mid = 0;
+            min = 2;
+        } else if (c[1] > c[2]) {
+            max = 1;
+            mid = 2;
+            min = 0;
+        } else if (c[2] > c[1]) {
+            max = 2;
+            mid = 1;
+            min = 0;
+        } else {
+            c[0] = 0.0f;
+            c[1] = 0.0f;
+            c[2] = 0.0f;
+            return;
+        }
+        c[mid] = ((c[mid] - c[min]) * s) / (c[max] - c[min]);
+        c[max] = s;
+        c[min] = 0.0f;
+    }
+
+    private static void toRgba(final int color, final float[] rgba) {
+        rgba[0] = ((color >> 16) & 0xff) / 255.0f;
+        rgba[1] = ((color >> 8) & 0xff) / 255.0f;
+        rgba[2] = (color & 0xff) / 255.0f;
+        rgba[3] = (color >>> 24) / 255.0f;
+    }
+
+    private static int toColor(final float[] rgba) {
+        return toByte(rgba[3]) << 24 | toByte(rgba[0]) << 16 | toByte(rgba[1]) << 8
+                | toByte(rgba[2]);
+    }
+
+    /**
+     * 与GL_LINEAR、GL_CLAMP_TO_EDGE相同的双线性采样
+     *
+     * @param x 以像素为单位的坐标，像素中心在整数位置上
+     * @param y 同上
+     */
+    private static void sample(final int[] pixels, final int width, final int height,
+                               final float x, final float y, final float[] rgba) {
+        final int x0 = (int) Math.floor(x);
+        final int y0 = (int) Math.floor(y);
+        final float fx = x - x0;
+        final float fy = y - y0;
+        final int left = Math.min(Math.max(x0, 0), width - 1);
+        final int right = Math.min(Math.max(x0 + 1, 0), width - 1);
+        final int top = Math.min(Math.max(y0, 0), height - 1) * width;
+        final int bottom = Math.min(Math.max(y0 + 1, 0), height - 1) * width;
+        final int c00 = pixels[top + left];
+        final int c10 = pixels[top + right];
+        final int c01 = pixels[bottom + left];
+        final int c11 = pixels[bottom + right];
+        for (int i = 0; i < 4; i++) {
+            final int shift = RGBA_SHIFTS[i];
+            final float v0 = ((c00 >>> shift) & 0xff) * (1.0f - fx) + ((c10 >>> shift) & 0xff) * fx;
+            final float v1 = ((c01 >>> shift) & 0xff) * (1.0f - fx) + ((c11 >>> shift) & 0xff) * fx;
+            rgba[i] = (v0 * (1.0f - fy) + v1 * fy) / 255.0f;
+        }
+    }
+
+    private static int toFixed(final float value) {
+        return Math.round(value * FIXED_ONE);
+    }
+
+    private static int clampFixed(final int value) {
+        int result = (value + FIXED_HALF) >> FIXED_SHIFT;
+        return result < 0 ? 0 : result > 255 ? 255 : result;
+    }
+
+    private static class LookupKernel extends GPUImageCpuKernel {
+        /*已经移到各自通道的位置上，查表后直接合并*/
+        private final int[] mRed;
+        private final int[] mGreen;
+        private final int[] mBlue;
+        private final int[] mAlpha;
+
+        LookupKernel(final int[] red, final int[] green, final int[] blue, final int[] alpha) {
+            mRed = createTable(red, 16);
+            mGreen = createTable(green, 8);
+            mBlue = createTable(blue, 0);
+            mAlpha = createTable(alpha, 24);
+        }
+
+        private static int[] createTable(final int[] values, final int shift) {
+            int[] table = new int[256];
+            for (int i = 0; i < 256; i++) {
+                int value = values != null ? Math.min(Math.max(values[i], 0), 255) : i;
+                table[i] = value << shift;
+            }
+            return table;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final int[] red = mRed;
+            final int[] green = mGreen;
+            final int[] blue = mBlue;
+            final int[] alpha = mAlpha;
+            final int end = endRow * width;
+            for (int i = startRow * width; i < end; i++) {
+                final int color = src[i];
+                dst[i] = alpha[color >>> 24] | red[(color >> 16) & 0xff]
+                        | green[(color >> 8) & 0xff] | blue[color & 0xff];
+            }
+        }
+    }
+
+    private static class ColorMatrixKernel extends GPUImageCpuKernel {
+        /*定点数表示的矩阵，mWeights[j * 4 + i]是输入通道i对输出通道j的权重*/
+        private final int[] mWeights = new int[16];
+
+        ColorMatrixKernel(final float[] matrix) {
+            for (int i = 0; i < 16; i++) {
+                mWeights[i] = toFixed(matrix[i]);
+            }
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final int[] w = mWeights;
+            final int end = endRow * width;
+            for (int i = startRow * width; i < end; i++) {
+                final int color = src[i];
+                final int a = color >>> 24;
+                final int r = (color >> 16) & 0xff;
+                final int g = (color >> 8) & 0xff;
+                final int b = color & 0xff;
+                dst[i] = clampFixed(r * w[12] + g * w[13] + b * w[14] + a * w[15]) << 24
+                        | clampFixed(r * w[0] + g * w[1] + b * w[2] + a * w[3]) << 16
+                        | clampFixed(r * w[4] + g * w[5] + b * w[6] + a * w[7]) << 8
+                        | clampFixed(r * w[8] + g * w[9] + b * w[10] + a * w[11]);
+            }
+        }
+    }
+
+    private static class ConvolutionKernel extends GPUImageCpuKernel {
+        private final int[] mWeights = new int[9];
+        private final int mStep;
+
+        ConvolutionKernel(final float[] kernel, final int step) {
+            for (int i = 0; i < 9; i++) {
+                mWeights[i] = toFixed(kernel[i]);
+            }
+            mStep = step;
+        }
+
+        @Override
+        public boolean isPerPixel() {
+            return false;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final int[] w = mWeights;
+            final int[] rows = new int[3];
+            final int[] columns = new int[3];
+            for (int y = startRow; y < endRow; y++) {
+                rows[0] = Math.max(y - mStep, 0) * width;
+                rows[1] = y * width;
+                rows[2] = Math.min(y + mStep, height - 1) * width;
+                for (int x = 0; x < width; x++) {
+                    columns[0] = Math.max(x - mStep, 0);
+                    columns[1] = x;
+                    columns[2] = Math.min(x + mStep, width - 1);
+                    int a = 0;
+                    int r = 0;
+                    int g = 0;
+                    int b = 0;
+                    for (int row = 0, k = 0; row < 3; row++) {
+                        for (int column = 0; column < 3; column++, k++) {
+                            final int color = src[rows[row] + columns[column]];
+                            final int weight = w[k];
+                            a += (color >>> 24) * weight;
+                            r += ((color >> 16) & 0xff) * weight;
+                            g += ((color >> 8) & 0xff) * weight;
+                            b += (color & 0xff) * weight;
+                        }
+                    }
+                    dst[rows[1] + x] = clampFixed(a) << 24 | clampFixed(r) << 16
+                            | clampFixed(g) << 8 | clampFixed(b);
+                }
+            }
+        }
+    }
+
+    private static class ColorKernel extends GPUImageCpuKernel {
+        private final ColorFunction mFunction;
+
+        ColorKernel(final ColorFunction function) {
+            mFunction = function;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final float[] rgba = new float[4];
+            // 相邻像素经常相同，直接使用上一次的结果
+            int lastColor = 0;
+            int lastResult = 0;
+            boolean hasLast = false;
+            final int end = endRow * width;
+            for (int i = startRow * width; i < end; i++) {
+                final int color = src[i];
+                if (!hasLast || color != lastColor) {
+                    toRgba(color, rgba);
+                    mFunction.apply(rgba);
+                    lastColor = color;
+                    lastResult = toColor(rgba);
+                    hasLast = true;
+                }
+                dst[i] = lastResult;
+            }
+        }
+    }
+
+    private static class BlendKernel extends GPUImageCpuKernel {
+        private final int[] mPixels;
+        private final int mWidth;
+        private final int mHeight;
+        private final Blend mBlend;
+
+        BlendKernel(final int[] pixels, final int width, final int height, final Blend blend) {
+            // GL纹理中保存的是预乘透明度后的颜色
+            mPixels = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                final int color = pixels[i];
+                final int a = color >>> 24;
+                mPixels[i] = a == 255 ? color : a << 24
+                        | premultiply((color >> 16) & 0xff, a) << 16
+                        | premultiply((color >> 8) & 0xff, a) << 8
+                        | premultiply(color & 0xff, a);
+            }
+            mWidth = width;
+            mHeight = height;
+            mBlend = blend;
+        }
+
+        private static int premultiply(final int value, final int alpha) {
+            return (value * alpha + 127) / 255;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final float[] base = new float[4];
+            final float[] overlay = new float[4];
+            final boolean sameSize = width == mWidth && height == mHeight;
+            final float scaleX = (float) mWidth / width;
+            final float scaleY = (float) mHeight / height;
+            for (int y = startRow; y < endRow; y++) {
+                final float overlayY = (y + 0.5f) * scaleY - 0.5f;
+                for (int x = 0, i = y * width; x < width; x++, i++) {
+                    if (sameSize) {
+                        toRgba(mPixels[i], overlay);
+                    } else {
+                        sample(mPixels, mWidth, mHeight, (x + 0.5f) * scaleX - 0.5f, overlayY,
+                                overlay);
+                    }
+                    toRgba(src[i], base);
+                    mBlend.blend(base, overlay);
+                    dst[i] = toColor(base);
+                }
+            }
+        }
+    }
+
+    private static class ColorLookupKernel extends GPUImageCpuKernel {
+        private final int[] mPixels;
+        private final int mWidth;
+        private final int mHeight;
+
+        ColorLookupKernel(final int[] pixels, final int width, final int height) {
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final float[] color = new float[4];
+            final float[] color1 = new float[4];
+            final float[] color2 = new float[4];
+            int lastColor = 0;
+            int lastResult = 0;
+            boolean hasLast = false;
+            final int end = endRow * width;
+            for (int i = startRow * width; i < end; i++) {
+                final int input = src[i];
+                if (!hasLast || input != lastColor) {
+                    toRgba(input, color);
+                    final float blue = color[2] * 63.0f;
+                    final float quad1 = (float) Math.floor(blue);
+                    final float quad2 = (float) Math.ceil(blue);
+                    lookup(quad1, color, color1);
+                    lookup(quad2, color, color2);
+                    final float fraction = blue - quad1;
+                    for (int c = 0; c < 3; c++) {
+                        color[c] = color1[c] + (color2[c] - color1[c]) * fraction;
+                    }
+                    lastColor = input;
+                    lastResult = toColor(color);
+                    hasLast = true;
+                }
+                dst[i] = lastResult;
+            }
+        }
+
+        /**
+         * 在第quad个小块中按红色和绿色采样
+         */
+        private void lookup(final float quad, final float[] color, final float[] result) {
+            final float quadY = (float) Math.floor(quad / 8.0f);
+            final float quadX = quad - quadY * 8.0f;
+            final float u = quadX * 0.125f + 0.5f / 512.0f + (0.125f - 1.0f / 512.0f) * color[0];
+            final float v = quadY * 0.125f + 0.5f / 512.0f + (0.125f - 1.0f / 512.0f) * color[1];
+            sample(mPixels, mWidth, mHeight, u * mWidth - 0.5f, v * mHeight - 0.5f, result);
+        }
+    }
+
+    private static class SharpenKernel extends GPUImageCpuKernel {
+        private final int mCenterWeight;
+        private final int mEdgeWeight;
+
+        SharpenKernel(final float sharpness) {
+            mCenterWeight = toFixed(1.0f + 4.0f * sharpness);
+            mEdgeWeight = toFixed(sharpness);
+        }
+
+        @Override
+        public boolean isPerPixel() {
+            return false;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            final int center = mCenterWeight;
+            final int edge = mEdgeWeight;
+            for (int y = startRow; y < endRow; y++) {
+                final int row = y * width;
+                // 着色器中的bottom在纹理坐标中向下，即上一行
+                final int previous = Math.max(y - 1, 0) * width;
+                final int next = Math.min(y + 1, height - 1) * width;
+                for (int x = 0; x < width; x++) {
+                    final int left = Math.max(x - 1, 0);
+                    final int right = Math.min(x + 1, width - 1);
+                    final int c = src[row + x];
+                    final int l = src[row + left];
+                    final int r = src[row + right];
+                    final int t = src[next + x];
+                    final int b = src[previous + x];
+                    int value = 0;
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        final int sum = ((l >> shift) & 0xff) + ((r >> shift) & 0xff)
+                                + ((t >> shift) & 0xff) + ((b >> shift) & 0xff);
+                        value |= clampFixed(((c >> shift) & 0xff) * center - sum * edge) << shift;
+                    }
+                    dst[row + x] = (b & 0xff000000) | value;
+                }
+            }
+        }
+    }
+
+    private static class PixelationKernel extends GPUImageCpuKernel {
+        private final float mPixel;
+
+        PixelationKernel(final float pixel) {
+            mPixel = pixel;
+        }
+
+        @Override
+        public boolean isPerPixel() {
+            return false;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            // 与着色器一样先得到色块左上角的纹理坐标，再换算为像素坐标
+            final float[] columns = new float[width];
+            for (int x = 0; x < width; x++) {
+                columns[x] = blockStart(x, width);
+            }
+            final float[] rgba = new float[4];
+            for (int y = startRow; y < endRow; y++) {
+                final float row = blockStart(y, height);
+                for (int x = 0, i = y * width; x < width; x++, i++) {
+                    sample(src, width, height, columns[x], row, rgba);
+                    rgba[3] = 1.0f;
+                    dst[i] = toColor(rgba);
+                }
+            }
+        }
+
+        private float blockStart(final int position, final int size) {
+            final float d = mPixel * (1.0f / size);
+            final float coordinate = d * (float) Math.floor(((position + 0.5f) / size) / d);
+            return coordinate * size - 0.5f;
+        }
+    }
+
+    private static class DirectionalSobelKernel extends GPUImageCpuKernel {
+        /*1-sin(pi/8)，靠近坐标轴的方向量化为0*/
+        private static final float DIRECTION_OFFSET = 0.617316f;
+
+        private final int mStep;
+
+        DirectionalSobelKernel(final int step) {
+            mStep = step;
+        }
+
+        @Override
+        public boolean isPerPixel() {
+            return false;
+        }
+
+        @Override
+        public void process(int[] src, int[] dst, int width, int height,
+                            int startRow, int endRow) {
+            for (int y = startRow; y < endRow; y++) {
+                final int top = Math.max(y - mStep, 0) * width;
+                final int row = y * width;
+                final int bottom = Math.min(y + mStep, height - 1) * width;
+                for (int x = 0; x < width; x++) {
+                    final int left = Math.max(x - mStep, 0);
+                    final int right = Math.min(x + mStep, width - 1);
+                    final float topLeft = red(src[top + left]);
+                    final float topRight = red(src[top + right]);
+                    final float bottomLeft = red(src[bottom + left]);
+                    final float bottomRight = red(src[bottom + right]);
+                    final float gx = -bottomLeft - 2.0f * red(src[row + left]) - topLeft
+                            + bottomRight + 2.0f * red(src[row + right]) + topRight;
+                    final float gy = -topLeft - 2.0f * red(src[top + x]) - topRight
+                            + bottomLeft + 2.0f * red(src[bottom + x]) + bottomRight;
+                    final float magnitude = (float) Math.sqrt(gx * gx + gy * gy);
+                    dst[row + x] = 0xff000000 | toByte(magnitude) << 16
+                            | toByte(direction(gx, magnitude)) << 8
+                            | toByte(direction(gy, magnitude));
+                }
+            }
+        }
+
+        private static float red(final int color) {
+            return ((color >> 16) & 0xff) / 255.0f;
+        }
+
+        /**
+         * 把归一化后的分量量化为-1、0或1，再映射到0到1之间
+         */
+        private static float direction(final float value, final float magnitude) {
+            if (magnitude == 0.0f) {
+                // normalize(vec2(0.0))没有定义，取无方向
+                return 0.5f;
+            }
+            final float normalized = value / magnitude;
+            final float quantized = Math.signum(normalized)
+                    * (float) Math.floor(Math.abs(normalized) + DIRECTION_OFFSET);
+            return (quantized + 1.0f) * 0.5f;
+        }
+    }
+}
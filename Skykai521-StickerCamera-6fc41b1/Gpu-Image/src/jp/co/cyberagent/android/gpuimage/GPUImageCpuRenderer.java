@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 不需要OpenGL环境的渲染器，用滤镜的{@link GPUImageCpuKernel}在CPU上处理图像。
+ * 可用于没有GPU的批量导出，也可以作为GPU渲染结果的对照。
+ * 图像按行分块，由多个线程同时处理，连续的逐像素内核在同一分块内依次完成
+ */
+public class GPUImageCpuRenderer {
+    /*每个分块的行数，整行在内存中连续，方便顺序读写*/
+    private static final int TILE_ROWS = 32;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * 每个处理器核心一个线程
+     */
+    public GPUImageCpuRenderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public GPUImageCpuRenderer(final int threadCount) {
+        mExecutor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+    }
+
+    /**
+     * 滤镜(及滤镜组中的所有滤镜)是否都有CPU实现
+     */
+    public static boolean isSupported(final GPUImageFilter filter) {
+        return createKernels(filter) != null;
+    }
+
+    /**
+     * 处理Bitmap，返回新的ARGB_8888格式的Bitmap
+     */
+    public Bitmap render(final GPUImageFilter filter, final Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        int[] result = render(filter, pixels, width, height);
+        return Bitmap.createBitmap(result, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 处理ARGB格式的像素，输入数组不会被修改
+     *
+     * @return 处理后的像素
+     * @throws IllegalArgumentException 滤镜不支持CPU处理时
+     */
+    public int[] render(final GPUImageFilter filter, final int[] pixels,
+                        final int width, final int height) {
+        List<GPUImageCpuKernel> kernels = createKernels(filter);
+        if (kernels == null) {
+            throw new IllegalArgumentException(filter.getClass().getSimpleName()
+                    + " can't be rendered on the CPU");
+        }
+        if (kernels.isEmpty()) {
+            kernels.add(GPUImageCpuKernel.identity());
+        }
+
+        int[] src = pixels;
+        int[] dst = new int[width * height];
+        int start = 0;
+        while (start < kernels.size()) {
+            // 第一个内核之后的逐像素内核可以直接在输出的分块上处理
+            int end = start + 1;
+            while (end < kernels.size() && kernels.get(end).isPerPixel()) {
+                end++;
+            }
+            runPass(kernels.subList(start, end), src, dst, width, height);
+            start = end;
+
+            if (start < kernels.size()) {
+                // 上一次的输入已经用完，可以作为下一次的输出，但不能写入调用者的数组
+                int[] output = dst;
+                dst = src != pixels ? src : new int[width * height];
+                src = output;
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * 结束线程，之后不能再使用
+     */
+    public void shutdown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    private void runPass(final List<GPUImageCpuKernel> kernels, final int[] src, final int[] dst,
+                         final int width, final int height) {
+        int tileCount = (height + TILE_ROWS - 1) / TILE_ROWS;
+        if (mExecutor == null || tileCount < 2) {
+            processTile(kernels, src, dst, width, height, 0, height);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(tileCount);
+        for (int startRow = 0; startRow < height; startRow += TILE_ROWS) {
+            final int tileStart = startRow;
+            final int tileEnd = Math.min(startRow + TILE_ROWS, height);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    processTile(kernels, src, dst, width, height, tileStart, tileEnd);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static void processTile(final List<GPUImageCpuKernel> kernels, final int[] src,
+                                    final int[] dst, final int width, final int height,
+                                    final int startRow, final int endRow) {
+        kernels.get(0).process(src, dst, width, height, startRow, endRow);
+        for (int i = 1; i < kernels.size(); i++) {
+            kernels.get(i).process(dst, dst, width, height, startRow, endRow);
+        }
+    }
+
+    /**
+     * @return 按顺序排列的内核，有滤镜不支持CPU处理时返回null
+     */
+    private static List<GPUImageCpuKernel> createKernels(final GPUImageFilter filter) {
+        List<GPUImageCpuKernel> kernels = new ArrayList<GPUImageCpuKernel>();
+        return addKernels(filter, kernels) ? kernels : null;
+    }
+
+    private static boolean addKernels(final GPUImageFilter filter,
+                                      final List<GPUImageCpuKernel> kernels) {
+        if (filter instanceof GPUImageFilterGroup || filter instanceof GPUImageFusedFilter) {
+            List<GPUImageFilter> filters = filter instanceof GPUImageFilterGroup
+                    ? ((GPUImageFilterGroup) filter).getMergedFilters()
+                    : ((GPUImageFusedFilter) filter).getFilters();
+            if (filters != null) {
+                for (GPUImageFilter child : filters) {
+                    if (!addKernels(child, kernels)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        GPUImageCpuKernel kernel = filter.createCpuKernel();
+        if (kernel == null) {
+            return false;
+        }
+        kernels.add(kernel);
+        return true;
+    }
+}
@@ -34,4 +34,18 @@ public class GPUImageDarkenBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageDarkenBlendFilter() {
         super(DARKEN_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = Math.min(overlay[i] * base[3], base[i] * overlay[3])
+                            + overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                }
+                base[3] = 1.0f;
+            }
+        };
+    }
 }
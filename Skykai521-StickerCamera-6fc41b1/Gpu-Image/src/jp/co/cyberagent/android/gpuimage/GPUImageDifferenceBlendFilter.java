@@ -33,4 +33,16 @@ public class GPUImageDifferenceBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageDifferenceBlendFilter() {
         super(DIFFERENCE_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = Math.abs(overlay[i] - base[i]);
+                }
+            }
+        };
+    }
 }
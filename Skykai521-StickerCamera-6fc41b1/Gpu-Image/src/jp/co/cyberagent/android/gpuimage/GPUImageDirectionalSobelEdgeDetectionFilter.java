@@ -61,4 +61,10 @@ public class GPUImageDirectionalSobelEdgeDetectionFilter extends GPUImage3x3Text
     public GPUImageDirectionalSobelEdgeDetectionFilter() {
         super(DIRECTIONAL_SOBEL_EDGE_DETECTION_FRAGMENT_SHADER);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int step = getPixelStep();
+        return step > 0 ? GPUImageCpuKernel.directionalSobel(step) : null;
+    }
 }
@@ -44,4 +44,17 @@ public class GPUImageDissolveBlendFilter extends GPUImageMixBlendFilter{
     public GPUImageDissolveBlendFilter(float mix) {
         super(DISSOLVE_BLEND_FRAGMENT_SHADER, mix);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        final float mix = getMix();
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = base[i] * (1.0f - mix) + overlay[i] * mix;
+                }
+            }
+        };
+    }
 }
@@ -56,4 +56,22 @@ public class GPUImageDivideBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageDivideBlendFilter() {
         super(DIVIDE_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    float rest = overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                    if (overlay[3] == 0.0f || base[i] / overlay[i] > base[3] / overlay[3]) {
+                        base[i] = overlay[3] * base[3] + rest;
+                    } else {
+                        base[i] = (base[i] * overlay[3] * overlay[3]) / overlay[i] + rest;
+                    }
+                }
+                base[3] = overlay[3] + base[3] - overlay[3] * base[3];
+            }
+        };
+    }
 }
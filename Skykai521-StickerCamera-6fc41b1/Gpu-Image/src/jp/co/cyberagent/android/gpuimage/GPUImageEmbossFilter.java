@@ -43,11 +43,21 @@ public class GPUImageEmbossFilter extends GPUImage3x3ConvolutionFilter {
 
     public void setIntensity(final float intensity) {
         mIntensity = intensity;
-        setConvolutionKernel(new float[] {
+        setConvolutionKernel(createEmbossKernel(intensity));
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        // 结构元素在onInit时才设置，这里直接按强度计算
+        return createCpuKernel(createEmbossKernel(mIntensity));
+    }
+
+    private static float[] createEmbossKernel(final float intensity) {
+        return new float[] {
                 intensity * (-2.0f), -intensity, 0.0f,
                 -intensity, 1.0f, intensity,
                 0.0f, intensity, intensity * 2.0f,
-        });
+        };
     }
 
     public float getIntensity() {
@@ -36,4 +36,17 @@ public class GPUImageExclusionBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageExclusionBlendFilter() {
         super(EXCLUSION_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = (overlay[i] * base[3] + base[i] * overlay[3] - 2.0f * overlay[i] * base[i])
+                            + overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                }
+            }
+        };
+    }
 }
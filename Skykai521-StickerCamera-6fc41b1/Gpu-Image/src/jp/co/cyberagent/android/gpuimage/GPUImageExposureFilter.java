@@ -47,6 +47,21 @@ public class GPUImageExposureFilter extends GPUImageFilter {
         mExposure = exposure;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        double scale = Math.pow(2.0, mExposure);
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = GPUImageCpuKernel.toByte(i / 255.0 * scale);
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, null);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
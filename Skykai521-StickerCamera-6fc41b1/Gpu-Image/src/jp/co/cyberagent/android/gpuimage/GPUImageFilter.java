@@ -23,7 +23,9 @@ import android.opengl.GLES20;
 
 import java.io.InputStream;
 import java.nio.FloatBuffer;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 /**
  * GPUImageFilter滤镜类，再类中定义有关滤镜的操作，其他相关类集成该类
@@ -51,6 +53,8 @@ public class GPUImageFilter {
             "}";
 
     private final LinkedList<Runnable> mRunOnDraw;
+    /*最近一次设置的各uniform值，以便合并到其他程序中时重新设置*/
+    private final Map<Integer, UniformSetter> mUniformSetters;
     /*顶点着色*/
     private final String mVertexShader;
     /*像素点着色*/
@@ -76,19 +80,25 @@ public class GPUImageFilter {
      */
     public GPUImageFilter(final String vertexShader, final String fragmentShader) {
         mRunOnDraw = new LinkedList<Runnable>();
+        mUniformSetters = new HashMap<Integer, UniformSetter>();
         mVertexShader = vertexShader;
         mFragmentShader = fragmentShader;
     }
 
 
     public final void init() {
+        synchronized (mUniformSetters) {
+            // 初始化之前的位置值是无效的
+            mUniformSetters.clear();
+        }
         onInit();
         mIsInitialized = true;
         onInitialized();
     }
 
     public void onInit() {
-        mGLProgId = OpenGlUtils.loadProgram(mVertexShader, mFragmentShader);
+        // 源码相同的程序在同一个上下文中只编译一次
+        mGLProgId = GPUImageProgramCache.acquire(mVertexShader, mFragmentShader);
         mGLAttribPosition = GLES20.glGetAttribLocation(mGLProgId, "position");
         mGLUniformTexture = GLES20.glGetUniformLocation(mGLProgId, "inputImageTexture");
         mGLAttribTextureCoordinate = GLES20.glGetAttribLocation(mGLProgId,
@@ -100,11 +110,14 @@ public class GPUImageFilter {
     }
 
     /**
-     * 销毁对象，将对象的操作撤销
+     * 销毁对象，将对象的操作撤销。未初始化或已经销毁时不做任何事
      */
     public final void destroy() {
+        if (!mIsInitialized) {
+            return;
+        }
         mIsInitialized = false;
-        GLES20.glDeleteProgram(mGLProgId);
+        GPUImageProgramCache.release(mGLProgId);
         onDestroy();
     }
 
@@ -130,6 +143,10 @@ public class GPUImageFilter {
     public void onDraw(final int textureId, final FloatBuffer cubeBuffer,
                        final FloatBuffer textureBuffer) {
         GLES20.glUseProgram(mGLProgId);
+        // 程序与其他滤镜共用时，上次可能是其他滤镜设置的uniform
+        if (GPUImageProgramCache.bind(mGLProgId, this)) {
+            applyUniforms();
+        }
         runPendingOnDrawTasks();
         if (!mIsInitialized) {
             return;
@@ -162,6 +179,15 @@ public class GPUImageFilter {
         }
     }
 
+    /**
+     * 是否有等待在绘制时执行的操作
+     */
+    boolean hasPendingOnDrawTasks() {
+        synchronized (mRunOnDraw) {
+            return !mRunOnDraw.isEmpty();
+        }
+    }
+
     public boolean isInitialized() {
         return mIsInitialized;
     }
@@ -190,15 +216,78 @@ public class GPUImageFilter {
         return mGLUniformTexture;
     }
 
+    public String getVertexShader() {
+        return mVertexShader;
+    }
+
+    public String getFragmentShader() {
+        return mFragmentShader;
+    }
+
+    /**
+     * 滤镜是否逐像素处理，即每个输出像素只取决于输入图像中同一位置的像素。
+     * 这样的滤镜可以由{@link GPUImageFilterGroup}合并到同一个着色器中，一次绘制完成
+     * @return 默认为false，需要子类明确声明
+     */
+    public boolean isPerPixel() {
+        return false;
+    }
+
+    /**
+     * 创建这个滤镜在CPU上的实现，供{@link GPUImageCpuRenderer}在没有OpenGL环境时使用，
+     * 参数取当前设置的值
+     * @return 不支持CPU处理时返回null。只有原样输出的本类直接支持，子类需要自己实现
+     */
+    public GPUImageCpuKernel createCpuKernel() {
+        return getClass() == GPUImageFilter.class ? GPUImageCpuKernel.identity() : null;
+    }
+
+    /**
+     * 在合并后的程序中绑定该滤镜除输入图像以外的输入，例如第二张纹理
+     * @param program 合并后的程序
+     * @param prefix 该滤镜的变量在合并后的着色器中的前缀
+     * @param textureUnit 第一个可用的纹理单元
+     * @return 下一个可用的纹理单元
+     */
+    protected int onBindFusedInputs(final int program, final String prefix, final int textureUnit) {
+        return textureUnit;
+    }
+
+    /**
+     * 将该滤镜最近设置的uniform值设置到合并后的程序中
+     * @param locations 该滤镜程序中的位置到合并后程序中的位置的映射
+     */
+    void applyUniforms(final Map<Integer, Integer> locations) {
+        synchronized (mUniformSetters) {
+            for (Map.Entry<Integer, UniformSetter> entry : mUniformSetters.entrySet()) {
+                Integer location = locations.get(entry.getKey());
+                if (location != null) {
+                    entry.getValue().set(location);
+                }
+            }
+        }
+    }
+
+    /**
+     * 将该滤镜最近设置的uniform值重新设置到自己的程序中
+     */
+    private void applyUniforms() {
+        synchronized (mUniformSetters) {
+            for (Map.Entry<Integer, UniformSetter> entry : mUniformSetters.entrySet()) {
+                entry.getValue().set(entry.getKey());
+            }
+        }
+    }
+
     /**
      * 多线程，将location的值设置为int型的值
      * @param location 位置值
      * @param intValue int型的值
      */
     protected void setInteger(final int location, final int intValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform1i(location, intValue);
             }
         });
@@ -210,45 +299,45 @@ public class GPUImageFilter {
      * @param floatValue 浮点数
      */
     protected void setFloat(final int location, final float floatValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform1f(location, floatValue);
             }
         });
     }
 
     protected void setFloatVec2(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform2fv(location, 1, FloatBuffer.wrap(arrayValue));
             }
         });
     }
 
     protected void setFloatVec3(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform3fv(location, 1, FloatBuffer.wrap(arrayValue));
             }
         });
     }
 
     protected void setFloatVec4(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform4fv(location, 1, FloatBuffer.wrap(arrayValue));
             }
         });
     }
 
     protected void setFloatArray(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniform1fv(location, arrayValue.length, FloatBuffer.wrap(arrayValue));
             }
         });
@@ -260,10 +349,10 @@ public class GPUImageFilter {
      * @param point 点的坐标
      */
     protected void setPoint(final int location, final PointF point) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
 
             @Override
-            public void run() {
+            public void set(int location) {
                 float[] vec2 = new float[2];
                 vec2[0] = point.x;
                 vec2[1] = point.y;
@@ -273,25 +362,49 @@ public class GPUImageFilter {
     }
 
     protected void setUniformMatrix3f(final int location, final float[] matrix) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
 
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniformMatrix3fv(location, 1, false, matrix, 0);
             }
         });
     }
 
     protected void setUniformMatrix4f(final int location, final float[] matrix) {
-        runOnDraw(new Runnable() {
+        setUniform(location, new UniformSetter() {
 
             @Override
-            public void run() {
+            public void set(int location) {
                 GLES20.glUniformMatrix4fv(location, 1, false, matrix, 0);
             }
         });
     }
 
+    /**
+     * 记录uniform的值，并在下次绘制时设置到该滤镜的程序中
+     * @param location 位置
+     * @param setter 设置值的操作
+     */
+    private void setUniform(final int location, final UniformSetter setter) {
+        synchronized (mUniformSetters) {
+            mUniformSetters.put(location, setter);
+        }
+        runOnDraw(new Runnable() {
+            @Override
+            public void run() {
+                setter.set(location);
+            }
+        });
+    }
+
+    /**
+     * 设置uniform值的操作，可以作用于不同程序中的位置
+     */
+    private interface UniformSetter {
+        void set(int location);
+    }
+
     /**
      * 运行绘制操作
      * @param runnable 多线程
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 滤镜合并：把连续的逐像素滤镜（见{@link GPUImageFilter#isPerPixel()}）的片段着色器改写成函数，
+ * 生成一个依次调用这些函数的着色器，这样一串滤镜只需要一次全屏绘制，不需要中间的帧缓冲。
+ * 需要读取相邻像素的滤镜（卷积、模糊、Kuwahara等）仍然单独绘制。
+ *
+ * 这里只处理着色器字符串和滤镜列表，不调用OpenGL，可以直接在JVM上测试
+ */
+final class GPUImageFilterFusion {
+    /*纹理单元0用于输入图像，OpenGL ES 2.0至少保证8个纹理单元*/
+    static final int MAX_EXTRA_TEXTURES = 7;
+    /*每个第二输入需要一个顶点属性和一个varying，OpenGL ES 2.0至少保证8个*/
+    static final int MAX_SECOND_INPUTS = 6;
+
+    private static final String INPUT_TEXTURE = "inputImageTexture";
+    private static final String TEXTURE_COORDINATE = "textureCoordinate";
+    private static final String TEXTURE_COORDINATE_2 = "textureCoordinate2";
+
+    private static final Pattern COMMENT = Pattern.compile("//[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern INPUT_SAMPLE = Pattern.compile(
+            "texture2D\\s*\\(\\s*" + INPUT_TEXTURE + "\\s*,\\s*" + TEXTURE_COORDINATE + "\\s*\\)");
+    private static final Pattern FORBIDDEN = Pattern.compile(
+            "\\b(discard|gl_FragCoord|gl_FragData|gl_PointCoord)\\b");
+    private static final Pattern RETURN = Pattern.compile("\\breturn\\b");
+
+    private GPUImageFilterFusion() {
+    }
+
+    /**
+     * 改写成函数后的单个滤镜
+     */
+    static final class Stage {
+        /*变量前缀*/
+        final String prefix;
+        /*改名后的全局声明和函数，包括该滤镜的main函数*/
+        final String source;
+        /*需要从原滤镜同步值的uniform（原名）*/
+        final List<String> uniforms;
+        /*除输入图像以外的纹理（原名）*/
+        final List<String> samplers;
+        /*是否使用第二输入的纹理坐标*/
+        final boolean usesSecondInput;
+
+        Stage(String prefix, String source, List<String> uniforms, List<String> samplers,
+              boolean usesSecondInput) {
+            this.prefix = prefix;
+            this.source = source;
+            this.uniforms = uniforms;
+            this.samplers = samplers;
+            this.usesSecondInput = usesSecondInput;
+        }
+
+        String getFunctionName() {
+            return prefix + "main";
+        }
+    }
+
+    static String getPrefix(int index) {
+        return "s" + index + "_";
+    }
+
+    /**
+     * 把滤镜列表分成绘制的次数
+     * @param filters 依次应用的滤镜
+     * @return 每一项是一次绘制，包含多个滤镜的项可以合并
+     */
+    static List<List<GPUImageFilter>> planPasses(List<GPUImageFilter> filters) {
+        List<List<GPUImageFilter>> passes = new ArrayList<List<GPUImageFilter>>();
+        List<GPUImageFilter> chain = null;
+        int extraTextures = 0;
+        int secondInputs = 0;
+        for (GPUImageFilter filter : filters) {
+            Stage stage = parse(filter, getPrefix(0));
+            if (stage == null) {
+                passes.add(Collections.singletonList(filter));
+                chain = null;
+                continue;
+            }
+            int stageSecondInputs = stage.usesSecondInput ? 1 : 0;
+            if (chain == null
+                    || extraTextures + stage.samplers.size() > MAX_EXTRA_TEXTURES
+                    || secondInputs + stageSecondInputs > MAX_SECOND_INPUTS) {
+                chain = new ArrayList<GPUImageFilter>();
+                passes.add(chain);
+                extraTextures = 0;
+                secondInputs = 0;
+            }
+            chain.add(filter);
+            extraTextures += stage.samplers.size();
+            secondInputs += stageSecondInputs;
+        }
+        return passes;
+    }
+
+    /**
+     * @return 合并后的各个滤镜，若其中有无法合并的滤镜则抛出IllegalArgumentException
+     */
+    static List<Stage> parseStages(List<GPUImageFilter> filters) {
+        List<Stage> stages = new ArrayList<Stage>(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            Stage stage = parse(filters.get(i), getPrefix(i));
+            if (stage == null) {
+                throw new IllegalArgumentException(filters.get(i) + " can't be fused");
+            }
+            stages.add(stage);
+        }
+        return stages;
+    }
+
+    /**
+     * @return 改写后的滤镜，若该滤镜不是逐像素的则返回null
+     */
+    static Stage parse(GPUImageFilter filter, String prefix) {
+        if (!filter.isPerPixel()) {
+            return null;
+        }
+        String vertexShader = filter.getVertexShader();
+        boolean twoInput = GPUImageTwoInputFilter.VERTEX_SHADER.equals(vertexShader);
+        if (!twoInput && !GPUImageFilter.NO_FILTER_VERTEX_SHADER.equals(vertexShader)) {
+            return null;
+        }
+        Stage stage = parse(filter.getFragmentShader(), prefix);
+        if (stage == null || (stage.usesSecondInput && !twoInput)) {
+            return null;
+        }
+        return stage;
+    }
+
+    /**
+     * 把片段着色器改写成一个以输入颜色为参数、返回输出颜色的函数，所有全局名称都加上前缀
+     * @return 改写后的滤镜，若着色器不是只在当前位置读取输入图像则返回null
+     */
+    static Stage parse(String fragmentShader, String prefix) {
+        String shader = COMMENT.matcher(fragmentShader).replaceAll(" ");
+        if (shader.indexOf('#') >= 0) {
+            return null;
+        }
+        StringBuilder declarations = new StringBuilder();
+        String mainBody = null;
+        Set<String> names = new LinkedHashSet<String>();
+        List<String> uniforms = new ArrayList<String>();
+        List<String> samplers = new ArrayList<String>();
+
+        int depth = 0;
+        int start = 0;
+        int bodyStart = 0;
+        String header = null;
+        for (int i = 0; i < shader.length(); i++) {
+            char c = shader.charAt(i);
+            if (c == '{') {
+                if (depth == 0) {
+                    header = shader.substring(start, i).trim();
+                    bodyStart = i + 1;
+                }
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+                if (depth == 0) {
+                    String body = shader.substring(bodyStart, i);
+                    String name = getFunctionName(header);
+                    if (name == null) {
+                        return null;
+                    } else if (name.equals("main")) {
+                        mainBody = body;
+                    } else {
+                        names.add(name);
+                        declarations.append(header).append("\n{").append(body).append("}\n");
+                    }
+                    start = i + 1;
+                }
+            } else if (c == ';' && depth == 0) {
+                String declaration = shader.substring(start, i).trim();
+                start = i + 1;
+                if (!parseDeclaration(declaration, declarations, names, uniforms, samplers)) {
+                    return null;
+                }
+            }
+        }
+        if (depth != 0 || mainBody == null || !shader.substring(start).trim().isEmpty()) {
+            return null;
+        }
+
+        String inputColor = prefix + "inputColor";
+        String outputColor = prefix + "outputColor";
+        if (RETURN.matcher(mainBody).find()) {
+            return null;
+        }
+        mainBody = INPUT_SAMPLE.matcher(mainBody).replaceAll(inputColor);
+        mainBody = mainBody.replaceAll("\\bgl_FragColor\\b", outputColor);
+        String source = declarations.toString()
+                + "mediump vec4 " + prefix + "main(mediump vec4 " + inputColor + ")\n"
+                + "{\n"
+                + "    mediump vec4 " + outputColor + " = " + inputColor + ";\n"
+                + mainBody + "\n"
+                + "    return " + outputColor + ";\n"
+                + "}\n";
+        // 剩下的输入图像读取都不是在当前位置
+        if (Pattern.compile("\\b(" + INPUT_TEXTURE + "|" + TEXTURE_COORDINATE + "|gl_FragColor)\\b")
+                .matcher(source).find() || FORBIDDEN.matcher(source).find()) {
+            return null;
+        }
+
+        names.add(TEXTURE_COORDINATE_2);
+        for (String name : names) {
+            source = source.replaceAll("(?<![A-Za-z0-9_.])" + name + "\\b",
+                    Matcher.quoteReplacement(prefix + name));
+        }
+        boolean usesSecondInput = Pattern.compile("\\b" + prefix + TEXTURE_COORDINATE_2 + "\\b")
+                .matcher(source).find();
+        return new Stage(prefix, source, uniforms, samplers, usesSecondInput);
+    }
+
+    /**
+     * 处理一条全局声明
+     * @return 若该声明无法合并则返回false
+     */
+    private static boolean parseDeclaration(String declaration, StringBuilder declarations,
+                                            Set<String> names, List<String> uniforms,
+                                            List<String> samplers) {
+        if (declaration.isEmpty()) {
+            return true;
+        }
+        List<String> identifiers = getIdentifiers(declaration);
+        String qualifier = identifiers.get(0);
+        if (qualifier.equals("precision")) {
+            // 合并后的着色器统一声明默认精度
+            return true;
+        } else if (qualifier.equals("varying")) {
+            String name = identifiers.get(identifiers.size() - 1);
+            return name.equals(TEXTURE_COORDINATE) || name.equals(TEXTURE_COORDINATE_2);
+        } else if (qualifier.equals("attribute") || qualifier.equals("struct")) {
+            return false;
+        } else if (qualifier.equals("uniform")) {
+            String type = null;
+            for (String identifier : identifiers.subList(1, identifiers.size())) {
+                if (!identifier.equals("lowp") && !identifier.equals("mediump")
+                        && !identifier.equals("highp")) {
+                    type = identifier;
+                    break;
+                }
+            }
+            if (type == null) {
+                return false;
+            }
+            List<String> declared = getDeclaredNames(
+                    declaration.substring(declaration.indexOf(type) + type.length()));
+            if (declared.contains(INPUT_TEXTURE)) {
+                // 输入图像由合并后的着色器统一声明
+                return declared.size() == 1 && type.equals("sampler2D");
+            }
+            for (String name : declared) {
+                if (type.equals("sampler2D")) {
+                    samplers.add(name);
+                } else {
+                    uniforms.add(name);
+                }
+            }
+            names.addAll(declared);
+        } else if (declaration.indexOf('(') >= 0 && (declaration.indexOf('=') < 0
+                || declaration.indexOf('(') < declaration.indexOf('='))) {
+            // 函数声明
+            String name = getFunctionName(declaration);
+            if (name == null) {
+                return false;
+            }
+            names.add(name);
+        } else {
+            // 常量和全局变量：类型之后的第一个名称在等号之前
+            int end = declaration.indexOf('=');
+            String beforeValue = end >= 0 ? declaration.substring(0, end) : declaration;
+            List<String> beforeIdentifiers = getIdentifiers(beforeValue.split(",")[0]);
+            names.add(beforeIdentifiers.get(beforeIdentifiers.size() - 1));
+            String[] others = splitTopLevel(declaration);
+            for (int i = 1; i < others.length; i++) {
+                names.add(getIdentifiers(others[i]).get(0));
+            }
+        }
+        declarations.append(declaration).append(";\n");
+        return true;
+    }
+
+    /**
+     * @return 函数头中的函数名
+     */
+    private static String getFunctionName(String header) {
+        if (header == null) {
+            return null;
+        }
+        int parenthesis = header.indexOf('(');
+        if (parenthesis < 0) {
+            return null;
+        }
+        List<String> identifiers = getIdentifiers(header.substring(0, parenthesis));
+        return identifiers.isEmpty() ? null : identifiers.get(identifiers.size() - 1);
+    }
+
+    /**
+     * @return 逗号分隔的声明中的名称，例如"a, b[2]"中的a和b
+     */
+    private static List<String> getDeclaredNames(String declarators) {
+        List<String> names = new ArrayList<String>();
+        for (String declarator : splitTopLevel(declarators)) {
+            List<String> identifiers = getIdentifiers(declarator);
+            if (!identifiers.isEmpty()) {
+                names.add(identifiers.get(0));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 按不在括号中的逗号分割
+     */
+    private static String[] splitTopLevel(String text) {
+        List<String> parts = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    private static List<String> getIdentifiers(String text) {
+        List<String> identifiers = new ArrayList<String>();
+        Matcher matcher = IDENTIFIER.matcher(text);
+        while (matcher.find()) {
+            identifiers.add(matcher.group());
+        }
+        return identifiers;
+    }
+
+    /**
+     * 生成合并后的顶点着色器，为每个使用第二输入的滤镜传递其纹理坐标
+     */
+    static String generateVertexShader(List<Stage> stages) {
+        StringBuilder shader = new StringBuilder();
+        shader.append("attribute vec4 position;\n")
+                .append("attribute vec4 inputTextureCoordinate;\n");
+        for (Stage stage : stages) {
+            if (stage.usesSecondInput) {
+                shader.append("attribute vec4 ").append(stage.prefix)
+                        .append("inputTextureCoordinate2;\n");
+            }
+        }
+        shader.append(" \n")
+                .append("varying vec2 textureCoordinate;\n");
+        for (Stage stage : stages) {
+            if (stage.usesSecondInput) {
+                shader.append("varying vec2 ").append(stage.prefix)
+                        .append(TEXTURE_COORDINATE_2).append(";\n");
+            }
+        }
+        shader.append(" \n")
+                .append("void main()\n")
+                .append("{\n")
+                .append("    gl_Position = position;\n")
+                .append("    textureCoordinate = inputTextureCoordinate.xy;\n");
+        for (Stage stage : stages) {
+            if (stage.usesSecondInput) {
+                shader.append("    ").append(stage.prefix).append(TEXTURE_COORDINATE_2)
+                        .append(" = ").append(stage.prefix).append("inputTextureCoordinate2.xy;\n");
+            }
+        }
+        shader.append("}");
+        return shader.toString();
+    }
+
+    /**
+     * 生成合并后的片段着色器：读取一次输入图像，依次调用各滤镜的函数
+     */
+    static String generateFragmentShader(List<Stage> stages) {
+        StringBuilder shader = new StringBuilder();
+        shader.append("#ifdef GL_FRAGMENT_PRECISION_HIGH\n")
+                .append("precision highp float;\n")
+                .append("#else\n")
+                .append("precision mediump float;\n")
+                .append("#endif\n")
+                .append("varying highp vec2 textureCoordinate;\n");
+        for (Stage stage : stages) {
+            if (stage.usesSecondInput) {
+                shader.append("varying highp vec2 ").append(stage.prefix)
+                        .append(TEXTURE_COORDINATE_2).append(";\n");
+            }
+        }
+        shader.append(" \n")
+                .append("uniform sampler2D inputImageTexture;\n")
+                .append(" \n");
+        for (Stage stage : stages) {
+            shader.append(stage.source).append(" \n");
+        }
+        shader.append("void main()\n")
+                .append("{\n")
+                .append("    mediump vec4 color = texture2D(inputImageTexture, textureCoordinate);\n");
+        for (Stage stage : stages) {
+            // 分开绘制时每次的结果都写入帧缓冲，会被限制在0到1之间
+            shader.append("    color = clamp(").append(stage.getFunctionName())
+                    .append("(color), 0.0, 1.0);\n");
+        }
+        shader.append("    gl_FragColor = color;\n")
+                .append("}");
+        return shader.toString();
+    }
+}
@@ -37,6 +37,8 @@ public class GPUImageFilterGroup extends GPUImageFilter {
 
     protected List<GPUImageFilter> mFilters;
     protected List<GPUImageFilter> mMergedFilters;
+    /*由连续的逐像素滤镜合并而成、在mMergedFilters中代替它们的滤镜*/
+    private final List<GPUImageFusedFilter> mFusedFilters = new ArrayList<GPUImageFusedFilter>();
     private int[] mFrameBuffers;
     private int[] mFrameBufferTextures;
 
@@ -99,6 +101,9 @@ public class GPUImageFilterGroup extends GPUImageFilter {
         for (GPUImageFilter filter : mFilters) {
             filter.init();
         }
+        for (GPUImageFilter filter : mFusedFilters) {
+            filter.init();
+        }
     }
 
     /*
@@ -108,6 +113,9 @@ public class GPUImageFilterGroup extends GPUImageFilter {
     @Override
     public void onDestroy() {
         destroyFramebuffers();
+        for (GPUImageFilter filter : mFusedFilters) {
+            filter.destroy();
+        }
         for (GPUImageFilter filter : mFilters) {
             filter.destroy();
         }
@@ -142,6 +150,9 @@ public class GPUImageFilterGroup extends GPUImageFilter {
         for (int i = 0; i < size; i++) {
             mFilters.get(i).onOutputSizeChanged(width, height);
         }
+        for (GPUImageFilter filter : mFusedFilters) {
+            filter.onOutputSizeChanged(width, height);
+        }
 
         if (mMergedFilters != null && mMergedFilters.size() > 0) {
             size = mMergedFilters.size();
@@ -237,6 +248,7 @@ public class GPUImageFilterGroup extends GPUImageFilter {
             mMergedFilters.clear();
         }
 
+        List<GPUImageFilter> flattenedFilters = new ArrayList<GPUImageFilter>();
         List<GPUImageFilter> filters;
         for (GPUImageFilter filter : mFilters) {
             if (filter instanceof GPUImageFilterGroup) {
@@ -244,10 +256,39 @@ public class GPUImageFilterGroup extends GPUImageFilter {
                 filters = ((GPUImageFilterGroup) filter).getMergedFilters();
                 if (filters == null || filters.isEmpty())
                     continue;
-                mMergedFilters.addAll(filters);
+                flattenedFilters.addAll(filters);
                 continue;
             }
-            mMergedFilters.add(filter);
+            flattenedFilters.add(filter);
+        }
+
+        // 连续的逐像素滤镜合并为一次绘制，省去中间帧缓冲的读写
+        final List<GPUImageFusedFilter> oldFusedFilters = new ArrayList<GPUImageFusedFilter>(mFusedFilters);
+        final List<GPUImageFusedFilter> newFusedFilters = new ArrayList<GPUImageFusedFilter>();
+        mFusedFilters.clear();
+        for (List<GPUImageFilter> pass : GPUImageFilterFusion.planPasses(flattenedFilters)) {
+            if (pass.size() == 1) {
+                mMergedFilters.add(pass.get(0));
+            } else {
+                GPUImageFusedFilter fusedFilter = new GPUImageFusedFilter(pass);
+                mMergedFilters.add(fusedFilter);
+                mFusedFilters.add(fusedFilter);
+                newFusedFilters.add(fusedFilter);
+            }
+        }
+        if (isInitialized() && (!oldFusedFilters.isEmpty() || !newFusedFilters.isEmpty())) {
+            runOnDraw(new Runnable() {
+                @Override
+                public void run() {
+                    for (GPUImageFilter filter : oldFusedFilters) {
+                        filter.destroy();
+                    }
+                    for (GPUImageFilter filter : newFusedFilters) {
+                        filter.init();
+                        filter.onOutputSizeChanged(getOutputWidth(), getOutputHeight());
+                    }
+                }
+            });
         }
     }
 }
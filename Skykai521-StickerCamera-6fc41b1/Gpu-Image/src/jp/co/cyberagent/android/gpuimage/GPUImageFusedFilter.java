@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由{@link GPUImageFilterFusion}合并的一串逐像素滤镜，一次绘制完成。
+ * 原滤镜仍然需要初始化，参数照常在原滤镜上设置，绘制时再同步到合并后的程序中
+ */
+class GPUImageFusedFilter extends GPUImageFilter {
+    private final List<GPUImageFilter> mFilters;
+    private final List<GPUImageFilterFusion.Stage> mStages;
+    /*每个原滤镜程序中的uniform位置到合并后程序中位置的映射*/
+    private final List<Map<Integer, Integer>> mUniformLocations;
+
+    GPUImageFusedFilter(List<GPUImageFilter> filters) {
+        this(filters, GPUImageFilterFusion.parseStages(filters));
+    }
+
+    private GPUImageFusedFilter(List<GPUImageFilter> filters,
+                                List<GPUImageFilterFusion.Stage> stages) {
+        super(GPUImageFilterFusion.generateVertexShader(stages),
+                GPUImageFilterFusion.generateFragmentShader(stages));
+        mFilters = new ArrayList<GPUImageFilter>(filters);
+        mStages = stages;
+        mUniformLocations = new ArrayList<Map<Integer, Integer>>(filters.size());
+    }
+
+    public List<GPUImageFilter> getFilters() {
+        return mFilters;
+    }
+
+    /**
+     * 原滤镜必须先初始化
+     */
+    @Override
+    public void onInit() {
+        super.onInit();
+        mUniformLocations.clear();
+        for (int i = 0; i < mFilters.size(); i++) {
+            GPUImageFilter filter = mFilters.get(i);
+            GPUImageFilterFusion.Stage stage = mStages.get(i);
+            Map<Integer, Integer> locations = new HashMap<Integer, Integer>();
+            for (String uniform : stage.uniforms) {
+                int location = GLES20.glGetUniformLocation(filter.getProgram(), uniform);
+                int fusedLocation = GLES20.glGetUniformLocation(getProgram(),
+                        stage.prefix + uniform);
+                if (location != -1 && fusedLocation != -1) {
+                    locations.put(location, fusedLocation);
+                }
+            }
+            mUniformLocations.add(locations);
+        }
+    }
+
+    @Override
+    public void onDraw(final int textureId, final FloatBuffer cubeBuffer,
+                       final FloatBuffer textureBuffer) {
+        // 原滤镜排队的操作使用的是各自程序中的位置。程序可能与其他滤镜共用，
+        // 需要记录下来，让其他滤镜绘制时重新设置自己的uniform
+        for (GPUImageFilter filter : mFilters) {
+            if (!filter.hasPendingOnDrawTasks()) {
+                continue;
+            }
+            GLES20.glUseProgram(filter.getProgram());
+            GPUImageProgramCache.bind(filter.getProgram(), filter);
+            filter.runPendingOnDrawTasks();
+        }
+        super.onDraw(textureId, cubeBuffer, textureBuffer);
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        int textureUnit = 1;
+        for (int i = 0; i < mFilters.size(); i++) {
+            GPUImageFilter filter = mFilters.get(i);
+            filter.applyUniforms(mUniformLocations.get(i));
+            textureUnit = filter.onBindFusedInputs(getProgram(), mStages.get(i).prefix,
+                    textureUnit);
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    }
+}
@@ -47,6 +47,20 @@ public class GPUImageGammaFilter extends GPUImageFilter {
         mGamma = gamma;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = GPUImageCpuKernel.toByte(Math.pow(i / 255.0, mGamma));
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, null);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
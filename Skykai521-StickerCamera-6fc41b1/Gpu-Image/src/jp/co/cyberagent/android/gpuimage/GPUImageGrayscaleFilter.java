@@ -40,4 +40,14 @@ public class GPUImageGrayscaleFilter extends GPUImageFilter {
     public GPUImageGrayscaleFilter() {
         super(NO_FILTER_VERTEX_SHADER, GRAYSCALE_FRAGMENT_SHADER);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        return GPUImageCpuKernel.colorMatrix(new float[] {
+                0.2125f, 0.7154f, 0.0721f, 0.0f,
+                0.2125f, 0.7154f, 0.0721f, 0.0f,
+                0.2125f, 0.7154f, 0.0721f, 0.0f,
+                0.0f, 0.0f, 0.0f, 1.0f
+        });
+    }
 }
@@ -57,4 +57,22 @@ public class GPUImageHardLightBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageHardLightBlendFilter() {
         super(HARD_LIGHT_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    float rest = overlay[i] * (1.0f - base[3]) + base[i] * (1.0f - overlay[3]);
+                    if (2.0f * overlay[i] < overlay[3]) {
+                        base[i] = 2.0f * overlay[i] * base[i] + rest;
+                    } else {
+                        base[i] = overlay[3] * base[3] - 2.0f * (base[3] - base[i]) * (overlay[3] - overlay[i]) + rest;
+                    }
+                }
+                base[3] = 1.0f;
+            }
+        };
+    }
 }
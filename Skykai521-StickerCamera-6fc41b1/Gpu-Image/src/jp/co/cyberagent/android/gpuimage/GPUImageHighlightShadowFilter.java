@@ -83,4 +83,28 @@ public class GPUImageHighlightShadowFilter extends GPUImageFilter {
         mShadows = shadows;
         setFloat(mShadowsLocation, mShadows);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        final double shadows = mShadows;
+        final double highlights = mHighlights;
+        return GPUImageCpuKernel.color(new GPUImageCpuKernel.ColorFunction() {
+            @Override
+            public void apply(float[] rgba) {
+                double luminance = 0.3 * (rgba[0] + rgba[1] + rgba[2]);
+                if (luminance <= 0.0) {
+                    // 着色器中除以0，纯黑的像素保持不变
+                    return;
+                }
+                double shadow = Math.min(Math.max(Math.pow(luminance, 1.0 / (shadows + 1.0))
+                        - 0.76 * Math.pow(luminance, 2.0 / (shadows + 1.0)) - luminance, 0.0), 1.0);
+                double highlight = Math.min(Math.max(1.0 - (Math.pow(1.0 - luminance, 1.0 / (2.0 - highlights))
+                        - 0.8 * Math.pow(1.0 - luminance, 2.0 / (2.0 - highlights))) - luminance, -1.0), 0.0);
+                double scale = (luminance + shadow + highlight) / luminance;
+                rgba[0] *= scale;
+                rgba[1] *= scale;
+                rgba[2] *= scale;
+            }
+        });
+    }
 }
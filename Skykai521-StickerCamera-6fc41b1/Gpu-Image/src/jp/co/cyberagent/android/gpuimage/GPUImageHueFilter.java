@@ -93,4 +93,25 @@ public class GPUImageHueFilter extends GPUImageFilter {
         float hueAdjust = (mHue % 360.0f) * (float) Math.PI / 180.0f;
         setFloat(mHueLocation, hueAdjust);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        final float hueAdjust = (mHue % 360.0f) * (float) Math.PI / 180.0f;
+        return GPUImageCpuKernel.color(new GPUImageCpuKernel.ColorFunction() {
+            @Override
+            public void apply(float[] rgba) {
+                // 转换到YIQ空间，旋转色相后再转换回来
+                float y = 0.299f * rgba[0] + 0.587f * rgba[1] + 0.114f * rgba[2];
+                float i = 0.595716f * rgba[0] - 0.274453f * rgba[1] - 0.321263f * rgba[2];
+                float q = 0.211456f * rgba[0] - 0.522591f * rgba[1] + 0.31135f * rgba[2];
+                double hue = Math.atan2(q, i) - hueAdjust;
+                double chroma = Math.sqrt(i * i + q * q);
+                q = (float) (chroma * Math.sin(hue));
+                i = (float) (chroma * Math.cos(hue));
+                rgba[0] = y + 0.9563f * i + 0.6210f * q;
+                rgba[1] = y - 0.2721f * i - 0.6474f * q;
+                rgba[2] = y - 1.1070f * i + 1.7046f * q;
+            }
+        });
+    }
 }
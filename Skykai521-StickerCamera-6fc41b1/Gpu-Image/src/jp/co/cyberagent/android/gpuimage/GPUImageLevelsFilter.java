@@ -66,6 +66,29 @@ public class GPUImageLevelsFilter extends GPUImageFilter{
         setMin(0.0f, 1.0f, 1.0f, 0.0f, 1.0f);
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        return GPUImageCpuKernel.lookup(createLevelsTable(0), createLevelsTable(1),
+                createLevelsTable(2), null);
+    }
+
+    private int[] createLevelsTable(final int channel) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            double value = Math.min(Math.max(i / 255.0 - mMin[channel], 0.0)
+                    / (mMax[channel] - mMin[channel]), 1.0);
+            value = Math.pow(value, 1.0 / mMid[channel]);
+            table[i] = GPUImageCpuKernel.toByte(mMinOutput[channel]
+                    + (mMaxOutput[channel] - mMinOutput[channel]) * value);
+        }
+        return table;
+    }
+
     /**
      * 初始化，并对象需要使用的设置相关值
      */
@@ -34,4 +34,16 @@ public class GPUImageLightenBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageLightenBlendFilter() {
         super(LIGHTEN_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = Math.max(base[i], overlay[i]);
+                }
+            }
+        };
+    }
 }
@@ -34,4 +34,16 @@ public class GPUImageLinearBurnBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageLinearBurnBlendFilter() {
         super(LINEAR_BURN_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = Math.min(Math.max(base[i] + overlay[i] - 1.0f, 0.0f), 1.0f);
+                }
+            }
+        };
+    }
 }
@@ -57,4 +57,9 @@ public class GPUImageLookupFilter extends GPUImageTwoInputFilter {
     public GPUImageLookupFilter() {
         super(LOOKUP_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel createCpuKernel(final int[] pixels, final int width, final int height) {
+        return GPUImageCpuKernel.colorLookup(pixels, width, height);
+    }
 }
@@ -63,4 +63,18 @@ public class GPUImageLuminosityBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageLuminosityBlendFilter() {
         super(LUMINOSITY_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                float[] color = {base[0], base[1], base[2]};
+                GPUImageCpuKernel.setLum(color, GPUImageCpuKernel.lum(overlay));
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] * (1.0f - overlay[3]) + color[i] * overlay[3];
+                }
+            }
+        };
+    }
 }
@@ -64,4 +64,11 @@ public class GPUImageMixBlendFilter extends GPUImageTwoInputFilter {
         mMix = mix;
         setFloat(mMixLocation, mMix);
     }
+
+    /**
+     * 当前的混合程度
+     */
+    public float getMix() {
+        return mMix;
+    }
 }
@@ -98,4 +98,23 @@ public class GPUImageMonochromeFilter extends GPUImageFilter {
     public void setColorRed(final float red, final float green, final float blue) {
         setFloatVec3(mFilterColorLocation, new float[]{ red, green, blue });
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        final float intensity = mIntensity;
+        final float[] color = mColor.clone();
+        return GPUImageCpuKernel.color(new GPUImageCpuKernel.ColorFunction() {
+            @Override
+            public void apply(float[] rgba) {
+                // 先去色，再与filterColor做叠加混合
+                float luminance = 0.2125f * rgba[0] + 0.7154f * rgba[1] + 0.0721f * rgba[2];
+                for (int i = 0; i < 3; i++) {
+                    float overlay = luminance < 0.5f
+                            ? 2.0f * luminance * color[i]
+                            : 1.0f - 2.0f * (1.0f - luminance) * (1.0f - color[i]);
+                    rgba[i] = rgba[i] * (1.0f - intensity) + overlay * intensity;
+                }
+            }
+        });
+    }
 }
@@ -34,4 +34,17 @@ public class GPUImageMultiplyBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageMultiplyBlendFilter() {
         super(MULTIPLY_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float baseAlpha = base[3];
+                for (int i = 0; i < 4; i++) {
+                    base[i] = overlay[i] * base[i] + overlay[i] * (1.0f - baseAlpha) + base[i] * (1.0f - overlay[3]);
+                }
+            }
+        };
+    }
 }
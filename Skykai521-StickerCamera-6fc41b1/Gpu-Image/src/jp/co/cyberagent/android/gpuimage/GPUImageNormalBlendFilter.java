@@ -58,4 +58,18 @@ public class GPUImageNormalBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageNormalBlendFilter() {
         super(NORMAL_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float baseAlpha = base[3];
+                for (int i = 0; i < 3; i++) {
+                    base[i] = overlay[i] + base[i] * baseAlpha * (1.0f - overlay[3]);
+                }
+                base[3] = overlay[3] + baseAlpha * (1.0f - overlay[3]);
+            }
+        };
+    }
 }
@@ -64,4 +64,13 @@ public class GPUImageOpacityFilter extends GPUImageFilter {
         mOpacity = opacity;
         setFloat(mOpacityLocation, mOpacity);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] alpha = new int[256];
+        for (int i = 0; i < 256; i++) {
+            alpha[i] = GPUImageCpuKernel.toByte(i / 255.0 * mOpacity);
+        }
+        return GPUImageCpuKernel.lookup(null, null, null, alpha);
+    }
 }
@@ -71,4 +71,9 @@ public class GPUImagePixelationFilter extends GPUImageFilter {
       mPixel = pixel;
       setFloat(mPixelLocation, mPixel);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        return GPUImageCpuKernel.pixelation(mPixel);
+    }
 }
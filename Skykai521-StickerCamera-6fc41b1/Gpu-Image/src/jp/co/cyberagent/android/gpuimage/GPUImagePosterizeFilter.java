@@ -49,6 +49,17 @@ public class GPUImagePosterizeFilter extends GPUImageFilter {
         mColorLevels = colorLevels;
     }
 
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        // 与着色器一样，透明度也同样分级
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = GPUImageCpuKernel.toByte(
+                    Math.floor(i / 255.0 * mColorLevels + 0.5) / mColorLevels);
+        }
+        return GPUImageCpuKernel.lookup(table, table, table, table);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
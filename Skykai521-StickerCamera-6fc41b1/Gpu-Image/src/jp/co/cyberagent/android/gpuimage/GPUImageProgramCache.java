@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+
+/**
+ * 按EGL上下文缓存链接好的着色器程序，顶点和像素着色器源码相同的滤镜共用同一个程序。
+ * 没有滤镜使用的程序先保留下来，超过上限时删除最久没有使用的，
+ * 这样切换滤镜时通常不需要重新编译。所有方法都要在GL线程中调用
+ */
+public class GPUImageProgramCache {
+    /*每个上下文最多保留的空闲程序数*/
+    private static final int MAX_IDLE_PROGRAMS = 16;
+
+    private static final Map<EGLContext, ContextPrograms> sContexts =
+            new HashMap<EGLContext, ContextPrograms>();
+
+    private GPUImageProgramCache() {
+    }
+
+    /**
+     * 获得程序，缓存中没有时编译并链接，用完后需要调用{@link #release(int)}
+     * @param vertexShader 顶点着色
+     * @param fragmentShader 像素点着色
+     * @return 程序ID，失败时返回0
+     */
+    public static synchronized int acquire(final String vertexShader, final String fragmentShader) {
+        ContextPrograms programs = getPrograms(true);
+        if (programs == null) {
+            return OpenGlUtils.loadProgram(vertexShader, fragmentShader);
+        }
+        String key = vertexShader + '\0' + fragmentShader;
+        Program program = programs.byKey.get(key);
+        if (program == null) {
+            int id = OpenGlUtils.loadProgram(vertexShader, fragmentShader);
+            if (id == 0) {
+                return 0;
+            }
+            program = new Program(key, id);
+            programs.byKey.put(key, program);
+            programs.byId.put(id, program);
+        } else if (program.refCount == 0) {
+            programs.idle.remove(key);
+        }
+        program.refCount++;
+        return program.id;
+    }
+
+    /**
+     * 不再使用程序，没有其他滤镜使用时放入空闲列表。不是从缓存中获得的程序直接删除，
+     * 已经在空闲列表中的程序忽略，重复释放不会影响其他滤镜
+     * @param id 程序ID
+     */
+    public static synchronized void release(final int id) {
+        ContextPrograms programs = getPrograms(false);
+        Program program = programs != null ? programs.byId.get(id) : null;
+        if (program == null) {
+            GLES20.glDeleteProgram(id);
+            return;
+        }
+        if (program.refCount <= 0) {
+            return;
+        }
+        if (--program.refCount > 0) {
+            return;
+        }
+        program.owner = null;
+        programs.idle.put(program.key, program);
+        if (programs.idle.size() > MAX_IDLE_PROGRAMS) {
+            Iterator<Program> iterator = programs.idle.values().iterator();
+            Program eldest = iterator.next();
+            iterator.remove();
+            programs.byKey.remove(eldest.key);
+            programs.byId.remove(eldest.id);
+            GLES20.glDeleteProgram(eldest.id);
+        }
+    }
+
+    /**
+     * 记录即将用程序绘制的滤镜
+     * @return 上次用该程序绘制的是其他滤镜时返回true，此时uniform的值需要重新设置
+     */
+    public static synchronized boolean bind(final int id, final Object owner) {
+        ContextPrograms programs = getPrograms(false);
+        Program program = programs != null ? programs.byId.get(id) : null;
+        if (program == null || program.owner == owner) {
+            return false;
+        }
+        program.owner = owner;
+        return true;
+    }
+
+    /**
+     * 当前线程创建了新的上下文，新上下文可能与已销毁的上下文相同，之前的缓存都已失效
+     */
+    public static synchronized void onContextCreated() {
+        EGLContext context = getCurrentContext();
+        if (context != null) {
+            sContexts.remove(context);
+        }
+    }
+
+    /**
+     * 当前线程的上下文即将销毁，其中的程序会随上下文一起释放
+     */
+    public static synchronized void onContextDestroyed() {
+        onContextCreated();
+    }
+
+    private static ContextPrograms getPrograms(final boolean create) {
+        EGLContext context = getCurrentContext();
+        if (context == null) {
+            return null;
+        }
+        ContextPrograms programs = sContexts.get(context);
+        if (programs == null && create) {
+            programs = new ContextPrograms();
+            sContexts.put(context, programs);
+        }
+        return programs;
+    }
+
+    private static EGLContext getCurrentContext() {
+        EGLContext context = ((EGL10) EGLContext.getEGL()).eglGetCurrentContext();
+        return context == null || EGL10.EGL_NO_CONTEXT.equals(context) ? null : context;
+    }
+
+    private static class ContextPrograms {
+        final Map<String, Program> byKey = new HashMap<String, Program>();
+        final Map<Integer, Program> byId = new HashMap<Integer, Program>();
+        /*按放入的先后排列，最前面的是最久没有使用的*/
+        final LinkedHashMap<String, Program> idle = new LinkedHashMap<String, Program>();
+    }
+
+    private static class Program {
+        final String key;
+        final int id;
+        int refCount;
+        /*最近一次用该程序绘制的滤镜*/
+        Object owner;
+
+        Program(final String key, final int id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+}
@@ -59,6 +59,27 @@ public class GPUImageRGBFilter extends GPUImageFilter {
         mBlue = blue;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        int[] red = new int[256];
+        int[] green = new int[256];
+        int[] blue = new int[256];
+        int[] alpha = new int[256];
+        for (int i = 0; i < 256; i++) {
+            red[i] = GPUImageCpuKernel.toByte(i / 255.0 * mRed);
+            green[i] = GPUImageCpuKernel.toByte(i / 255.0 * mGreen);
+            blue[i] = GPUImageCpuKernel.toByte(i / 255.0 * mBlue);
+            // 着色器输出的透明度固定为1.0
+            alpha[i] = 255;
+        }
+        return GPUImageCpuKernel.lookup(red, green, blue, alpha);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
@@ -19,6 +19,7 @@ package jp.co.cyberagent.android.gpuimage;
 import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.PreviewCallback;
@@ -34,7 +35,6 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -48,6 +48,8 @@ import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE
 public class GPUImageRenderer implements Renderer, PreviewCallback {
     //定义常量NO_IMAGE为-1，即无图像时为-1
     public static final int NO_IMAGE = -1;
+    /*预览缓冲的个数：相机正在填充的、等待上传的和一个备用的*/
+    private static final int PREVIEW_BUFFER_COUNT = 3;
     static final float CUBE[] = {
             -1.0f, -1.0f,
             1.0f, -1.0f,
@@ -65,7 +67,17 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
     private SurfaceTexture mSurfaceTexture = null;
     private final FloatBuffer mGLCubeBuffer;
     private final FloatBuffer mGLTextureBuffer;
-    private IntBuffer mGLRgbBuffer;
+    /*在GPU上转换预览帧*/
+    private GPUImageYuvConverter mYuvConverter;
+
+    /*还没有上传的最新一帧，渲染跟不上时旧的帧直接还给相机*/
+    private final Object mPreviewLock = new Object();
+    private byte[] mPreviewFrame;
+    private Camera mPreviewCamera;
+    /*缓冲是否由setUpPreviewCallback分配，需要交还给相机*/
+    private boolean mRecyclePreviewBuffers;
+    private int mPreviewWidth;
+    private int mPreviewHeight;
 
     private int mOutputWidth;
     private int mOutputHeight;
@@ -109,6 +121,9 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
      */
     @Override
     public void onSurfaceCreated(final GL10 unused, final EGLConfig config) {
+        GPUImageProgramCache.onContextCreated();
+        // 之前的GL对象已经随旧的上下文释放
+        mYuvConverter = new GPUImageYuvConverter();
         GLES20.glClearColor(0, 0, 0, 1);
         GLES20.glDisable(GLES20.GL_DEPTH_TEST);
         mFilter.init();
@@ -141,6 +156,7 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
     public void onDrawFrame(final GL10 gl) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
         runAll(mRunOnDraw);
+        uploadPreviewFrame();
         mFilter.onDraw(mGLTextureId, mGLCubeBuffer, mGLTextureBuffer);
         runAll(mRunOnDrawEnd);
         if (mSurfaceTexture != null) {
@@ -161,32 +177,84 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
     }
 
     /**
-     * 重写继承类中的onPreviewFrame方法
+     * 重写继承类中的onPreviewFrame方法，只保留最新的一帧，在下次绘制时上传
      * @param data 数据
      * @param camera 相机对象
      */
     @Override
     public void onPreviewFrame(final byte[] data, final Camera camera) {
-        final Size previewSize = camera.getParameters().getPreviewSize();
-        if (mGLRgbBuffer == null) {
-            mGLRgbBuffer = IntBuffer.allocate(previewSize.width * previewSize.height);
+        byte[] droppedFrame;
+        boolean recycle;
+        synchronized (mPreviewLock) {
+            if (camera != mPreviewCamera) {
+                // 没有通过setUpPreviewCallback设置的相机，每帧都是新的数组，不需要交还
+                Size previewSize = camera.getParameters().getPreviewSize();
+                mPreviewCamera = camera;
+                mPreviewWidth = previewSize.width;
+                mPreviewHeight = previewSize.height;
+                mRecyclePreviewBuffers = false;
+            }
+            droppedFrame = mPreviewFrame;
+            mPreviewFrame = data;
+            recycle = mRecyclePreviewBuffers;
         }
-        if (mRunOnDraw.isEmpty()) {
-            runOnDraw(new Runnable() {
-                @Override
-                public void run() {
-                    GPUImageNativeLibrary.YUVtoRBGA(data, previewSize.width, previewSize.height,
-                            mGLRgbBuffer.array());
-                    mGLTextureId = OpenGlUtils.loadTexture(mGLRgbBuffer, previewSize, mGLTextureId);
-                    camera.addCallbackBuffer(data);
-
-                    if (mImageWidth != previewSize.width) {
-                        mImageWidth = previewSize.width;
-                        mImageHeight = previewSize.height;
-                        adjustImageScaling();
-                    }
-                }
-            });
+        if (droppedFrame != null && recycle) {
+            camera.addCallbackBuffer(droppedFrame);
+        }
+    }
+
+    /**
+     * 为相机预先分配预览缓冲并设置回调，缓冲在上传后交还给相机重复使用
+     * @param camera 相机对象，预览格式为默认的NV21
+     */
+    public void setUpPreviewCallback(final Camera camera) {
+        Camera.Parameters parameters = camera.getParameters();
+        Size previewSize = parameters.getPreviewSize();
+        int bufferSize = previewSize.width * previewSize.height
+                * ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+        synchronized (mPreviewLock) {
+            mPreviewCamera = camera;
+            mPreviewWidth = previewSize.width;
+            mPreviewHeight = previewSize.height;
+            mPreviewFrame = null;
+            mRecyclePreviewBuffers = true;
+        }
+        for (int i = 0; i < PREVIEW_BUFFER_COUNT; i++) {
+            camera.addCallbackBuffer(new byte[bufferSize]);
+        }
+        camera.setPreviewCallbackWithBuffer(this);
+    }
+
+    /**
+     * 上传并转换最新的预览帧
+     */
+    private void uploadPreviewFrame() {
+        final byte[] data;
+        final Camera camera;
+        final int width;
+        final int height;
+        final boolean recycle;
+        synchronized (mPreviewLock) {
+            data = mPreviewFrame;
+            mPreviewFrame = null;
+            camera = mPreviewCamera;
+            width = mPreviewWidth;
+            height = mPreviewHeight;
+            recycle = mRecyclePreviewBuffers;
+        }
+        if (data == null) {
+            return;
+        }
+        mGLTextureId = mYuvConverter.convert(data, width, height);
+        GLES20.glViewport(0, 0, mOutputWidth, mOutputHeight);
+        if (recycle) {
+            camera.addCallbackBuffer(data);
+        }
+
+        if (mImageWidth != width) {
+            mImageWidth = width;
+            mImageHeight = height;
+            adjustImageScaling();
         }
     }
 
@@ -199,7 +267,7 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
                 mSurfaceTexture = new SurfaceTexture(textures[0]);
                 try {
                     camera.setPreviewTexture(mSurfaceTexture);
-                    camera.setPreviewCallback(GPUImageRenderer.this);
+                    setUpPreviewCallback(camera);
                     camera.startPreview();
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -237,9 +305,13 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
 
             @Override
             public void run() {
-                GLES20.glDeleteTextures(1, new int[]{
-                        mGLTextureId
-                }, 0);
+                if (isPreviewTexture()) {
+                    mYuvConverter.destroy();
+                } else {
+                    GLES20.glDeleteTextures(1, new int[]{
+                            mGLTextureId
+                    }, 0);
+                }
                 mGLTextureId = NO_IMAGE;
             }
         });
@@ -275,8 +347,10 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
                     mAddedPadding = 0;
                 }
 
+                // 预览转换用的纹理大小不同，不能直接写入
                 mGLTextureId = OpenGlUtils.loadTexture(
-                        resizedBitmap != null ? resizedBitmap : bitmap, mGLTextureId, recycle);
+                        resizedBitmap != null ? resizedBitmap : bitmap,
+                        isPreviewTexture() ? OpenGlUtils.NO_TEXTURE : mGLTextureId, recycle);
                 if (resizedBitmap != null) {
                     resizedBitmap.recycle();
                 }
@@ -287,6 +361,14 @@ public class GPUImageRenderer implements Renderer, PreviewCallback {
         });
     }
 
+    /**
+     * 当前显示的纹理是否是预览帧转换的结果
+     */
+    private boolean isPreviewTexture() {
+        return mGLTextureId != NO_IMAGE && mYuvConverter != null
+                && mGLTextureId == mYuvConverter.getOutputTexture();
+    }
+
     public void setScaleType(GPUImage.ScaleType scaleType) {
         mScaleType = scaleType;
     }
@@ -113,4 +113,19 @@ public class GPUImageSaturationBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageSaturationBlendFilter() {
         super(SATURATION_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                float[] color = {base[0], base[1], base[2]};
+                GPUImageCpuKernel.setSat(color, GPUImageCpuKernel.sat(overlay));
+                GPUImageCpuKernel.setLum(color, GPUImageCpuKernel.lum(base));
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] * (1.0f - overlay[3]) + color[i] * overlay[3];
+                }
+            }
+        };
+    }
 }
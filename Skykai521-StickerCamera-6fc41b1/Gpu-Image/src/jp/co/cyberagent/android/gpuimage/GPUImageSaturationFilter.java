@@ -53,6 +53,26 @@ public class GPUImageSaturationFilter extends GPUImageFilter {
         mSaturation = saturation;
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        // mix(luminance, color, saturation)展开成颜色矩阵
+        float[] weights = {0.2125f, 0.7154f, 0.0721f};
+        float[] matrix = new float[16];
+        for (int j = 0; j < 3; j++) {
+            for (int i = 0; i < 3; i++) {
+                matrix[j * 4 + i] = (1.0f - mSaturation) * weights[i]
+                        + (i == j ? mSaturation : 0.0f);
+            }
+        }
+        matrix[15] = 1.0f;
+        return GPUImageCpuKernel.colorMatrix(matrix);
+    }
+
     @Override
     public void onInit() {
         super.onInit();
@@ -34,4 +34,16 @@ public class GPUImageScreenBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageScreenBlendFilter() {
         super(SCREEN_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = 1.0f - (1.0f - overlay[i]) * (1.0f - base[i]);
+                }
+            }
+        };
+    }
 }
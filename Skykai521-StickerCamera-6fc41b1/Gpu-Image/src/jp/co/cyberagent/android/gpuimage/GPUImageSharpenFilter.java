@@ -117,4 +117,9 @@ public class GPUImageSharpenFilter extends GPUImageFilter {
         mSharpness = sharpness;
         setFloat(mSharpnessLocation, mSharpness);
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        return GPUImageCpuKernel.sharpen(mSharpness);
+    }
 }
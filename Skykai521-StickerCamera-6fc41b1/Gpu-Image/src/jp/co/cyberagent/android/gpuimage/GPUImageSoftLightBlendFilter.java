@@ -34,4 +34,19 @@ public class GPUImageSoftLightBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageSoftLightBlendFilter() {
         super(SOFT_LIGHT_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float baseAlpha = base[3];
+                for (int i = 0; i < 4; i++) {
+                    float ratio = base[i] / baseAlpha;
+                    base[i] = base[i] * (overlay[3] * ratio + 2.0f * overlay[i] * (1.0f - ratio))
+                            + overlay[i] * (1.0f - baseAlpha) + base[i] * (1.0f - overlay[3]);
+                }
+            }
+        };
+    }
 }
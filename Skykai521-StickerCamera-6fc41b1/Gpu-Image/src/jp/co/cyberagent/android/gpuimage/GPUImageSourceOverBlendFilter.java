@@ -34,4 +34,17 @@ public class GPUImageSourceOverBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageSourceOverBlendFilter() {
         super(SOURCE_OVER_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                final float amount = overlay[3];
+                for (int i = 0; i < 4; i++) {
+                    base[i] = base[i] * (1.0f - amount) + overlay[i] * amount;
+                }
+            }
+        };
+    }
 }
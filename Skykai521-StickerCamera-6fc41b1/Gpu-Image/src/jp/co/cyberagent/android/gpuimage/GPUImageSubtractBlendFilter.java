@@ -34,4 +34,16 @@ public class GPUImageSubtractBlendFilter extends GPUImageTwoInputFilter {
     public GPUImageSubtractBlendFilter() {
         super(SUBTRACT_BLEND_FRAGMENT_SHADER);
     }
+
+    @Override
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return new GPUImageCpuKernel.Blend() {
+            @Override
+            public void blend(float[] base, float[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] - overlay[i];
+                }
+            }
+        };
+    }
 }
@@ -97,7 +97,32 @@ public class GPUImageToneCurveFilter extends GPUImageFilter {
         }
     }
 
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    protected int onBindFusedInputs(final int program, final String prefix, final int textureUnit) {
+        if (mToneCurveTexture[0] == OpenGlUtils.NO_TEXTURE) {
+            return textureUnit;
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + textureUnit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mToneCurveTexture[0]);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, prefix + "toneCurveTexture"), textureUnit);
+        return textureUnit + 1;
+    }
+
     public void setFromCurveFileInputStream(InputStream input) {
+        setControlPoints(readCurveFile(input));
+    }
+
+    /**
+     * 读取Photoshop的.acv曲线文件，读完后关闭输入流。
+     * 结果可以缓存起来，之后用{@link #setControlPoints(PointF[][])}设置给其他滤镜
+     * @return 依次为RGB、红、绿、蓝四条曲线的控制点，读取失败时返回null
+     */
+    public static PointF[][] readCurveFile(InputStream input) {
         try {
             int version = readShort(input);
             int totalCurves = readShort(input);
@@ -126,16 +151,28 @@ public class GPUImageToneCurveFilter extends GPUImageFilter {
             }
             input.close();
 
-            mRgbCompositeControlPoints = curves.get(0);
-            mRedControlPoints = curves.get(1);
-            mGreenControlPoints = curves.get(2);
-            mBlueControlPoints = curves.get(3);
+            return new PointF[][]{curves.get(0), curves.get(1), curves.get(2), curves.get(3)};
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 同时设置四条曲线的控制点，在初始化时才计算曲线
+     * @param curves {@link #readCurveFile(InputStream)}的结果，为null时不变
+     */
+    public void setControlPoints(PointF[][] curves) {
+        if (curves == null) {
+            return;
         }
+        mRgbCompositeControlPoints = curves[0];
+        mRedControlPoints = curves[1];
+        mGreenControlPoints = curves[2];
+        mBlueControlPoints = curves[3];
     }
 
-    private short readShort(InputStream input) throws IOException {
+    private static short readShort(InputStream input) throws IOException {
         return (short) (input.read() << 8 | input.read());
     }
 
@@ -170,13 +207,16 @@ public class GPUImageToneCurveFilter extends GPUImageFilter {
                 GLES20.glActiveTexture(GLES20.GL_TEXTURE3);
                 GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mToneCurveTexture[0]);
 
-                if ((mRedCurve.size() >= 256) && (mGreenCurve.size() >= 256) && (mBlueCurve.size() >= 256) && (mRgbCompositeCurve.size() >= 256)) {
+                int[] redValues = getCurveValues(mRedCurve, mRgbCompositeCurve);
+                int[] greenValues = getCurveValues(mGreenCurve, mRgbCompositeCurve);
+                int[] blueValues = getCurveValues(mBlueCurve, mRgbCompositeCurve);
+                if (redValues != null && greenValues != null && blueValues != null) {
                     byte[] toneCurveByteArray = new byte[256 * 4];
                     for (int currentCurveIndex = 0; currentCurveIndex < 256; currentCurveIndex++) {
                         // BGRA for upload to texture
-                        toneCurveByteArray[currentCurveIndex * 4 + 2] = (byte) ((int) Math.min(Math.max(currentCurveIndex + mBlueCurve.get(currentCurveIndex) + mRgbCompositeCurve.get(currentCurveIndex), 0), 255) & 0xff);
-                        toneCurveByteArray[currentCurveIndex * 4 + 1] = (byte) ((int) Math.min(Math.max(currentCurveIndex + mGreenCurve.get(currentCurveIndex) + mRgbCompositeCurve.get(currentCurveIndex), 0), 255) & 0xff);
-                        toneCurveByteArray[currentCurveIndex * 4] = (byte) ((int) Math.min(Math.max(currentCurveIndex + mRedCurve.get(currentCurveIndex) + mRgbCompositeCurve.get(currentCurveIndex), 0), 255) & 0xff);
+                        toneCurveByteArray[currentCurveIndex * 4 + 2] = (byte) (blueValues[currentCurveIndex] & 0xff);
+                        toneCurveByteArray[currentCurveIndex * 4 + 1] = (byte) (greenValues[currentCurveIndex] & 0xff);
+                        toneCurveByteArray[currentCurveIndex * 4] = (byte) (redValues[currentCurveIndex] & 0xff);
                         toneCurveByteArray[currentCurveIndex * 4 + 3] = (byte) (255 & 0xff);
                     }
 
@@ -196,6 +236,52 @@ public class GPUImageToneCurveFilter extends GPUImageFilter {
         });
     }
 
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        // 曲线在onInitialized时才计算，这里直接从控制点计算
+        ArrayList<Float> compositeCurve = createSplineCurve(mRgbCompositeControlPoints);
+        int[] redValues = getCurveValues(createSplineCurve(mRedControlPoints), compositeCurve);
+        int[] greenValues = getCurveValues(createSplineCurve(mGreenControlPoints), compositeCurve);
+        int[] blueValues = getCurveValues(createSplineCurve(mBlueControlPoints), compositeCurve);
+        if (redValues == null || greenValues == null || blueValues == null) {
+            return null;
+        }
+        return GPUImageCpuKernel.lookup(createLookupTable(redValues),
+                createLookupTable(greenValues), createLookupTable(blueValues), null);
+    }
+
+    /**
+     * 单个通道最终的曲线，即曲线纹理中的值
+     * @return 曲线不足256个点时返回null
+     */
+    private static int[] getCurveValues(ArrayList<Float> curve, ArrayList<Float> compositeCurve) {
+        if (curve == null || compositeCurve == null
+                || curve.size() < 256 || compositeCurve.size() < 256) {
+            return null;
+        }
+        int[] values = new int[256];
+        for (int i = 0; i < 256; i++) {
+            values[i] = (int) Math.min(Math.max(i + curve.get(i) + compositeCurve.get(i), 0), 255);
+        }
+        return values;
+    }
+
+    /**
+     * 与着色器相同，在256个像素宽的曲线纹理上线性插值采样
+     */
+    private static int[] createLookupTable(int[] curveValues) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            double position = i / 255.0 * 256.0 - 0.5;
+            int index = (int) Math.floor(position);
+            double fraction = position - index;
+            int low = curveValues[Math.min(Math.max(index, 0), 255)];
+            int high = curveValues[Math.min(Math.max(index + 1, 0), 255)];
+            table[i] = GPUImageCpuKernel.toByte((low + (high - low) * fraction) / 255.0);
+        }
+        return table;
+    }
+
     private ArrayList<Float> createSplineCurve(PointF[] points) {
         if (points == null || points.length <= 0) {
             return null;
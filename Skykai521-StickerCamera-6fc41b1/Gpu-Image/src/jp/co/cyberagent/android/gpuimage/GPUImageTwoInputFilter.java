@@ -25,7 +25,7 @@ import android.graphics.Bitmap;
 import android.opengl.GLES20;
 
 public class GPUImageTwoInputFilter extends GPUImageFilter {
-    private static final String VERTEX_SHADER = "attribute vec4 position;\n" +
+    static final String VERTEX_SHADER = "attribute vec4 position;\n" +
             "attribute vec4 inputTextureCoordinate;\n" +
             "attribute vec4 inputTextureCoordinate2;\n" +
             " \n" +
@@ -44,6 +44,8 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
     public int mFilterSourceTexture2 = OpenGlUtils.NO_TEXTURE;
     private ByteBuffer mTexture2CoordinatesBuffer;
     private Bitmap mBitmap;
+    /*第二张图像是否经过旋转或翻转，CPU上的实现不处理这种情况*/
+    private boolean mTexture2Transformed;
 
     public GPUImageTwoInputFilter(String fragmentShader) {
         this(VERTEX_SHADER, fragmentShader);
@@ -118,8 +120,62 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
         GLES20.glVertexAttribPointer(mFilterSecondTextureCoordinateAttribute, 2, GLES20.GL_FLOAT, false, 0, mTexture2CoordinatesBuffer);
     }
 
+    /**
+     * 混合和查找表滤镜只读取两张图像中同一位置的像素
+     */
+    @Override
+    public boolean isPerPixel() {
+        return true;
+    }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        Bitmap bitmap = mBitmap;
+        if (mTexture2Transformed || bitmap == null || bitmap.isRecycled()) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return createCpuKernel(pixels, width, height);
+    }
+
+    /**
+     * 用第二张图像的像素创建CPU上的实现
+     * @param pixels 第二张图像，与{@link Bitmap#getPixels}一致
+     * @return 默认使用{@link #createCpuBlend()}，不支持时返回null
+     */
+    protected GPUImageCpuKernel createCpuKernel(final int[] pixels, final int width, final int height) {
+        GPUImageCpuKernel.Blend blend = createCpuBlend();
+        return blend != null ? GPUImageCpuKernel.blend(pixels, width, height, blend) : null;
+    }
+
+    /**
+     * 混合方式在CPU上的实现，与着色器中的计算相同
+     * @return 默认返回null，即不支持CPU处理
+     */
+    protected GPUImageCpuKernel.Blend createCpuBlend() {
+        return null;
+    }
+
+    @Override
+    protected int onBindFusedInputs(final int program, final String prefix, final int textureUnit) {
+        int textureCoordinateAttribute = GLES20.glGetAttribLocation(program, prefix + "inputTextureCoordinate2");
+        if (textureCoordinateAttribute != -1) {
+            GLES20.glEnableVertexAttribArray(textureCoordinateAttribute);
+            mTexture2CoordinatesBuffer.position(0);
+            GLES20.glVertexAttribPointer(textureCoordinateAttribute, 2, GLES20.GL_FLOAT, false, 0, mTexture2CoordinatesBuffer);
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + textureUnit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mFilterSourceTexture2);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, prefix + "inputImageTexture2"), textureUnit);
+        return textureUnit + 1;
+    }
+
     public void setRotation(final Rotation rotation, final boolean flipHorizontal, final boolean flipVertical) {
         float[] buffer = TextureRotationUtil.getRotation(rotation, flipHorizontal, flipVertical);
+        mTexture2Transformed = rotation != Rotation.NORMAL || flipHorizontal || flipVertical;
 
         ByteBuffer bBuffer = ByteBuffer.allocateDirect(32).order(ByteOrder.nativeOrder());
         FloatBuffer fBuffer = bBuffer.asFloatBuffer();
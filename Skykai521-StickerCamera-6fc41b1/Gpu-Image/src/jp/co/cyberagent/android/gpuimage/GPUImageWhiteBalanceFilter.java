@@ -53,6 +53,8 @@ public class GPUImageWhiteBalanceFilter extends GPUImageFilter {
             "	gl_FragColor = vec4(mix(rgb, processed, temperature), source.a);\n" +
             "}";
 
+    private static final float[] WARM_FILTER = {0.93f, 0.54f, 0.0f};
+
     private int mTemperatureLocation;
     private float mTemperature;
     private int mTintLocation;
@@ -88,4 +90,32 @@ public class GPUImageWhiteBalanceFilter extends GPUImageFilter {
         mTint = tint;
         setFloat(mTintLocation, (float)(mTint/100.0));
     }
+
+    @Override
+    public GPUImageCpuKernel createCpuKernel() {
+        final float temperature = mTemperature < 5000 ? (float) (0.0004 * (mTemperature - 5000.0))
+                : (float) (0.00006 * (mTemperature - 5000.0));
+        final float tint = (float) (mTint / 100.0);
+        return GPUImageCpuKernel.color(new GPUImageCpuKernel.ColorFunction() {
+            @Override
+            public void apply(float[] rgba) {
+                // GLSL的mat3按列构造，这里按列展开矩阵乘法
+                float y = 0.299f * rgba[0] + 0.596f * rgba[1] + 0.212f * rgba[2];
+                float i = 0.587f * rgba[0] - 0.274f * rgba[1] - 0.523f * rgba[2];
+                float q = 0.114f * rgba[0] - 0.322f * rgba[1] + 0.311f * rgba[2];
+                q = Math.min(Math.max(q + tint * 0.5226f * 0.1f, -0.5226f), 0.5226f);
+                float[] rgb = {
+                        y + 1.0f * i + 1.0f * q,
+                        0.956f * y - 0.272f * i - 1.105f * q,
+                        0.621f * y - 0.647f * i + 1.702f * q
+                };
+                for (int c = 0; c < 3; c++) {
+                    float processed = rgb[c] < 0.5f
+                            ? 2.0f * rgb[c] * WARM_FILTER[c]
+                            : 1.0f - 2.0f * (1.0f - rgb[c]) * (1.0f - WARM_FILTER[c]);
+                    rgba[c] = rgb[c] * (1.0f - temperature) + processed * temperature;
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * 在GPU上把相机预览的NV21数据转换为RGBA纹理。
+ * Y平面作为亮度纹理、交错的VU平面作为亮度-透明度纹理直接从相机缓冲上传，
+ * 再用一次绘制转换到RGBA纹理中，之后的滤镜与使用图片时一样读取该纹理。
+ * 所有方法都要在GL线程中调用
+ */
+class GPUImageYuvConverter {
+    private static final String VERTEX_SHADER = "" +
+            "attribute vec4 position;\n" +
+            "attribute vec4 inputTextureCoordinate;\n" +
+            " \n" +
+            "varying vec2 textureCoordinate;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = inputTextureCoordinate.xy;\n" +
+            "}";
+    // 系数与原来的YUVtoRBGA相同，为全范围的BT.601
+    private static final String FRAGMENT_SHADER = "" +
+            "varying highp vec2 textureCoordinate;\n" +
+            " \n" +
+            "uniform sampler2D yTexture;\n" +
+            "uniform sampler2D vuTexture;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "    lowp float y = texture2D(yTexture, textureCoordinate).r;\n" +
+            "    lowp vec2 vu = texture2D(vuTexture, textureCoordinate).ra - 0.5;\n" +
+            "    gl_FragColor = vec4(y + 1.370705 * vu.x,\n" +
+            "                        y - 0.698001 * vu.x - 0.337633 * vu.y,\n" +
+            "                        y + 1.732446 * vu.y,\n" +
+            "                        1.0);\n" +
+            "}";
+    /*纹理的第一行对应图像的第一行，与上传RGBA数据时方向相同*/
+    private static final float TEXTURE_COORDINATES[] = {
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            0.0f, 1.0f,
+            1.0f, 1.0f,
+    };
+
+    private final FloatBuffer mCubeBuffer;
+    private final FloatBuffer mTextureBuffer;
+    private int mProgram;
+    private int mAttribPosition;
+    private int mAttribTextureCoordinate;
+    private int mUniformYTexture;
+    private int mUniformVuTexture;
+    /*依次为Y纹理、VU纹理和输出的RGBA纹理*/
+    private final int[] mTextures = new int[]{
+            OpenGlUtils.NO_TEXTURE, OpenGlUtils.NO_TEXTURE, OpenGlUtils.NO_TEXTURE
+    };
+    private final int[] mFrameBuffer = new int[1];
+    private int mWidth;
+    private int mHeight;
+
+    GPUImageYuvConverter() {
+        mCubeBuffer = ByteBuffer.allocateDirect(GPUImageRenderer.CUBE.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        mCubeBuffer.put(GPUImageRenderer.CUBE).position(0);
+        mTextureBuffer = ByteBuffer.allocateDirect(TEXTURE_COORDINATES.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        mTextureBuffer.put(TEXTURE_COORDINATES).position(0);
+    }
+
+    /**
+     * 转换一帧，返回后data可以交还给相机
+     * @param data NV21格式的预览数据
+     * @return 转换结果所在的RGBA纹理，之后的帧会继续写入同一个纹理
+     */
+    int convert(final byte[] data, final int width, final int height) {
+        if (mProgram == 0) {
+            mProgram = GPUImageProgramCache.acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+            mAttribPosition = GLES20.glGetAttribLocation(mProgram, "position");
+            mAttribTextureCoordinate = GLES20.glGetAttribLocation(mProgram, "inputTextureCoordinate");
+            mUniformYTexture = GLES20.glGetUniformLocation(mProgram, "yTexture");
+            mUniformVuTexture = GLES20.glGetUniformLocation(mProgram, "vuTexture");
+        }
+        if (width != mWidth || height != mHeight) {
+            destroyTextures();
+            createTextures(width, height);
+        }
+
+        // glTexSubImage2D返回前已经复制了数据
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, ByteBuffer.wrap(data, 0, width * height));
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[1]);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width / 2, height / 2,
+                GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE,
+                ByteBuffer.wrap(data, width * height, width * height / 2).slice());
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBuffer[0]);
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glUseProgram(mProgram);
+        GLES20.glUniform1i(mUniformYTexture, 0);
+        GLES20.glUniform1i(mUniformVuTexture, 1);
+        GLES20.glVertexAttribPointer(mAttribPosition, 2, GLES20.GL_FLOAT, false, 0, mCubeBuffer);
+        GLES20.glEnableVertexAttribArray(mAttribPosition);
+        GLES20.glVertexAttribPointer(mAttribTextureCoordinate, 2, GLES20.GL_FLOAT, false, 0, mTextureBuffer);
+        GLES20.glEnableVertexAttribArray(mAttribTextureCoordinate);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glDisableVertexAttribArray(mAttribPosition);
+        GLES20.glDisableVertexAttribArray(mAttribTextureCoordinate);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        return mTextures[2];
+    }
+
+    /**
+     * 转换结果所在的纹理
+     * @return 还没有转换过时返回{@link OpenGlUtils#NO_TEXTURE}
+     */
+    int getOutputTexture() {
+        return mTextures[2];
+    }
+
+    /**
+     * 删除所有GL对象，之后再转换时重新创建
+     */
+    void destroy() {
+        destroyTextures();
+        if (mProgram != 0) {
+            GPUImageProgramCache.release(mProgram);
+            mProgram = 0;
+        }
+    }
+
+    private void createTextures(final int width, final int height) {
+        GLES20.glGenTextures(3, mTextures, 0);
+        setUpTexture(mTextures[0], GLES20.GL_LUMINANCE, width, height);
+        setUpTexture(mTextures[1], GLES20.GL_LUMINANCE_ALPHA, width / 2, height / 2);
+        setUpTexture(mTextures[2], GLES20.GL_RGBA, width, height);
+
+        GLES20.glGenFramebuffers(1, mFrameBuffer, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBuffer[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mTextures[2], 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        mWidth = width;
+        mHeight = height;
+    }
+
+    private static void setUpTexture(final int texture, final int format,
+                                     final int width, final int height) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0,
+                format, GLES20.GL_UNSIGNED_BYTE, null);
+    }
+
+    private void destroyTextures() {
+        if (mTextures[0] != OpenGlUtils.NO_TEXTURE) {
+            GLES20.glDeleteFramebuffers(1, mFrameBuffer, 0);
+            GLES20.glDeleteTextures(3, mTextures, 0);
+            mTextures[0] = OpenGlUtils.NO_TEXTURE;
+            mTextures[1] = OpenGlUtils.NO_TEXTURE;
+            mTextures[2] = OpenGlUtils.NO_TEXTURE;
+        }
+        mWidth = 0;
+        mHeight = 0;
+    }
+}
@@ -157,6 +157,7 @@ public class PixelBuffer {
     public void destroy() {
         mRenderer.onDrawFrame(mGL);
         mRenderer.onDrawFrame(mGL);
+        GPUImageProgramCache.onContextDestroyed();
         mEGL.eglMakeCurrent(mEGLDisplay, EGL10.EGL_NO_SURFACE,
                 EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
 
@@ -0,0 +1,1002 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.PointF;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 把CPU上的实现与按着色器逐行翻译的双精度参考实现对比，
+ * 参考实现只在这里使用，不依赖被测代码
+ */
+public class GPUImageCpuKernelTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 17;
+
+    @Test
+    public void hue() {
+        for (final float hue : new float[]{90.0f, 200.0f, -30.0f, 400.0f}) {
+            final double adjust = (hue % 360.0f) * (float) Math.PI / 180.0f;
+            assertColorKernel("hue " + hue, new GPUImageHueFilter(hue).createCpuKernel(), new Reference() {
+                @Override
+                public void apply(double[] c) {
+                    double y = dot(c, 0.299, 0.587, 0.114);
+                    double i = dot(c, 0.595716, -0.274453, -0.321263);
+                    double q = dot(c, 0.211456, -0.522591, 0.31135);
+                    double h = Math.atan2(q, i) - adjust;
+                    double chroma = Math.sqrt(i * i + q * q);
+                    q = chroma * Math.sin(h);
+                    i = chroma * Math.cos(h);
+                    c[0] = y + 0.9563 * i + 0.6210 * q;
+                    c[1] = y - 0.2721 * i - 0.6474 * q;
+                    c[2] = y - 1.1070 * i + 1.7046 * q;
+                }
+            }, 1, false);
+        }
+    }
+
+    @Test
+    public void opacity() {
+        assertColorKernel("opacity", new GPUImageOpacityFilter(0.35f).createCpuKernel(), new Reference() {
+            @Override
+            public void apply(double[] c) {
+                c[3] *= 0.35f;
+            }
+        }, 1, true);
+    }
+
+    @Test
+    public void monochrome() {
+        final float[] color = {0.2f, 0.7f, 0.9f, 1.0f};
+        assertColorKernel("monochrome", new GPUImageMonochromeFilter(0.7f, color).createCpuKernel(),
+                new Reference() {
+                    @Override
+                    public void apply(double[] c) {
+                        double l = dot(c, 0.2125, 0.7154, 0.0721);
+                        for (int i = 0; i < 3; i++) {
+                            double overlay = l < 0.5 ? 2.0 * l * color[i]
+                                    : 1.0 - 2.0 * (1.0 - l) * (1.0 - color[i]);
+                            c[i] = mix(c[i], overlay, 0.7f);
+                        }
+                    }
+                }, 1, true);
+    }
+
+    @Test
+    public void highlightShadow() {
+        final double shadows = 0.5f;
+        final double highlights = 0.6f;
+        assertColorKernel("highlight shadow",
+                new GPUImageHighlightShadowFilter((float) shadows, (float) highlights).createCpuKernel(),
+                new Reference() {
+                    @Override
+                    public void apply(double[] c) {
+                        double l = dot(c, 0.3, 0.3, 0.3);
+                        if (l == 0.0) {
+                            return;
+                        }
+                        double shadow = clamp(Math.pow(l, 1.0 / (shadows + 1.0))
+                                + (-0.76) * Math.pow(l, 2.0 / (shadows + 1.0)) - l, 0.0, 1.0);
+                        double highlight = clamp(1.0 - (Math.pow(1.0 - l, 1.0 / (2.0 - highlights))
+                                + (-0.8) * Math.pow(1.0 - l, 2.0 / (2.0 - highlights))) - l, -1.0, 0.0);
+                        for (int i = 0; i < 3; i++) {
+                            c[i] = (l + shadow + highlight) * (c[i] / l);
+                        }
+                    }
+                }, 1, true);
+    }
+
+    @Test
+    public void whiteBalance() {
+        for (final float[] setting : new float[][]{{3000.0f, 20.0f}, {7500.0f, -40.0f}}) {
+            final double temperature = setting[0] < 5000 ? 0.0004 * (setting[0] - 5000.0)
+                    : 0.00006 * (setting[0] - 5000.0);
+            final double tint = setting[1] / 100.0;
+            assertColorKernel("white balance " + setting[0],
+                    new GPUImageWhiteBalanceFilter(setting[0], setting[1]).createCpuKernel(),
+                    new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            // mat3(...)按列填充
+                            double[] yiq = multiply(new double[]{
+                                    0.299, 0.587, 0.114, 0.596, -0.274, -0.322, 0.212, -0.523, 0.311}, c);
+                            yiq[2] = clamp(yiq[2] + tint * 0.5226 * 0.1, -0.5226, 0.5226);
+                            double[] rgb = multiply(new double[]{
+                                    1.0, 0.956, 0.621, 1.0, -0.272, -0.647, 1.0, -1.105, 1.702}, yiq);
+                            double[] warm = {0.93, 0.54, 0.0};
+                            for (int i = 0; i < 3; i++) {
+                                double processed = rgb[i] < 0.5 ? 2.0 * rgb[i] * warm[i]
+                                        : 1.0 - 2.0 * (1.0 - rgb[i]) * (1.0 - warm[i]);
+                                c[i] = mix(rgb[i], processed, temperature);
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void sharpen() {
+        final float sharpness = 0.8f;
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(1), true);
+        int[] expected = new int[src.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double[] center = texel(src, x, y);
+                double[] result = new double[4];
+                for (int i = 0; i < 3; i++) {
+                    double edges = texel(src, x - 1, y)[i] + texel(src, x + 1, y)[i]
+                            + texel(src, x, y + 1)[i] + texel(src, x, y - 1)[i];
+                    result[i] = center[i] * (1.0 + 4.0 * sharpness) - edges * sharpness;
+                }
+                // 透明度取bottomTextureCoordinate，即纹理坐标减去一行
+                result[3] = texel(src, x, y - 1)[3];
+                expected[y * WIDTH + x] = toColor(result);
+            }
+        }
+        assertImage("sharpen", expected, run(new GPUImageSharpenFilter(sharpness).createCpuKernel(), src), 1);
+    }
+
+    @Test
+    public void pixelation() {
+        final int pixel = 4;
+        GPUImagePixelationFilter filter = new GPUImagePixelationFilter();
+        filter.setPixel(pixel);
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(2), true);
+        int[] expected = new int[src.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            // 采样点落在色块第一个像素之前半个像素处，GL_LINEAR取前后两个像素的平均
+            int row = y / pixel * pixel;
+            for (int x = 0; x < WIDTH; x++) {
+                int column = x / pixel * pixel;
+                double[] result = new double[4];
+                for (int dy = -1; dy <= 0; dy++) {
+                    for (int dx = -1; dx <= 0; dx++) {
+                        double[] color = texel(src, column + dx, row + dy);
+                        for (int i = 0; i < 3; i++) {
+                            result[i] += color[i] / 4.0;
+                        }
+                    }
+                }
+                result[3] = 1.0;
+                expected[y * WIDTH + x] = toColor(result);
+            }
+        }
+        assertImage("pixelation", expected, run(filter.createCpuKernel(), src), 1);
+    }
+
+    @Test
+    public void directionalSobel() {
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(3), false);
+        int[] expected = new int[src.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double topLeft = texel(src, x - 1, y - 1)[0];
+                double top = texel(src, x, y - 1)[0];
+                double topRight = texel(src, x + 1, y - 1)[0];
+                double left = texel(src, x - 1, y)[0];
+                double right = texel(src, x + 1, y)[0];
+                double bottomLeft = texel(src, x - 1, y + 1)[0];
+                double bottom = texel(src, x, y + 1)[0];
+                double bottomRight = texel(src, x + 1, y + 1)[0];
+                double gx = -bottomLeft - 2.0 * left - topLeft + bottomRight + 2.0 * right + topRight;
+                double gy = -topLeft - 2.0 * top - topRight + bottomLeft + 2.0 * bottom + bottomRight;
+                double length = Math.sqrt(gx * gx + gy * gy);
+                double[] result = {length, 0.5, 0.5, 1.0};
+                if (length > 0.0) {
+                    result[1] = (Math.signum(gx / length) * Math.floor(Math.abs(gx / length) + 0.617316) + 1.0) * 0.5;
+                    result[2] = (Math.signum(gy / length) * Math.floor(Math.abs(gy / length) + 0.617316) + 1.0) * 0.5;
+                }
+                expected[y * WIDTH + x] = toColor(result);
+            }
+        }
+        assertImage("directional sobel", expected,
+                run(new GPUImageDirectionalSobelEdgeDetectionFilter().createCpuKernel(), src), 1);
+    }
+
+    @Test
+    public void identityLookupTable() {
+        // 标准的512x512查找表，原样输出颜色
+        int[] table = new int[512 * 512];
+        for (int blue = 0; blue < 64; blue++) {
+            for (int green = 0; green < 64; green++) {
+                for (int red = 0; red < 64; red++) {
+                    int x = blue % 8 * 64 + red;
+                    int y = blue / 8 * 64 + green;
+                    table[y * 512 + x] = 0xff000000 | Math.round(red * 255 / 63.0f) << 16
+                            | Math.round(green * 255 / 63.0f) << 8 | Math.round(blue * 255 / 63.0f);
+                }
+            }
+        }
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(4), true);
+        GPUImageCpuKernel kernel = new GPUImageLookupFilter().createCpuKernel(table, 512, 512);
+        assertImage("lookup", src, run(kernel, src), 2);
+    }
+
+    @Test
+    public void separableBlends() {
+        assertBlend(new GPUImageAddBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    if (overlay[i] * base[3] + base[i] * overlay[3] >= overlay[3] * base[3]) {
+                        base[i] = overlay[3] * base[3] + overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+                    } else {
+                        base[i] = overlay[i] + base[i];
+                    }
+                }
+                base[3] = overlay[3] + base[3] - overlay[3] * base[3];
+            }
+        });
+        assertBlend(new GPUImageAlphaBlendFilter(0.6f), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = mix(base[i], overlay[i], overlay[3] * 0.6f);
+                }
+            }
+        });
+        assertBlend(new GPUImageColorBurnBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = 1.0 - (1.0 - base[i]) / overlay[i];
+                }
+            }
+        });
+        assertBlend(new GPUImageColorDodgeBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                double product = overlay[3] * base[3];
+                for (int i = 0; i < 3; i++) {
+                    double rightHand = overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+                    double first = product + rightHand;
+                    double overlayRgb = clamp((overlay[i] / clamp(overlay[3], 0.01, 1.0))
+                            * (overlay[3] < 0.0 ? 0.0 : 1.0), 0.0, 0.99);
+                    double second = (base[i] * overlay[3]) / (1.0 - overlayRgb) + rightHand;
+                    double choice = product < overlay[i] * base[3] + base[i] * overlay[3] ? 0.0 : 1.0;
+                    base[i] = mix(first, second, choice);
+                }
+                base[3] = 1.0;
+            }
+        });
+        assertBlend(new GPUImageDarkenBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = Math.min(overlay[i] * base[3], base[i] * overlay[3])
+                            + overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+                }
+                base[3] = 1.0;
+            }
+        });
+        assertBlend(new GPUImageDifferenceBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = Math.abs(overlay[i] - base[i]);
+                }
+            }
+        });
+        assertBlend(new GPUImageDissolveBlendFilter(0.3f), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = mix(base[i], overlay[i], 0.3f);
+                }
+            }
+        });
+        assertBlend(new GPUImageDivideBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    double rest = overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+                    if (overlay[3] == 0.0 || base[i] / overlay[i] > base[3] / overlay[3]) {
+                        base[i] = overlay[3] * base[3] + rest;
+                    } else {
+                        base[i] = (base[i] * overlay[3] * overlay[3]) / overlay[i] + rest;
+                    }
+                }
+                base[3] = overlay[3] + base[3] - overlay[3] * base[3];
+            }
+        });
+        assertBlend(new GPUImageExclusionBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = (overlay[i] * base[3] + base[i] * overlay[3] - 2.0 * overlay[i] * base[i])
+                            + overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+                }
+            }
+        });
+        assertBlend(new GPUImageHardLightBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = hardLight(overlay[i], overlay[3], base, overlay, i);
+                }
+                base[3] = 1.0;
+            }
+        });
+        assertBlend(new GPUImageOverlayBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = hardLight(base[i], base[3], base, overlay, i);
+                }
+                base[3] = 1.0;
+            }
+        });
+        assertBlend(new GPUImageLightenBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = Math.max(base[i], overlay[i]);
+                }
+            }
+        });
+        assertBlend(new GPUImageLinearBurnBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = clamp(base[i] + overlay[i] - 1.0, 0.0, 1.0);
+                }
+            }
+        });
+        assertBlend(new GPUImageMultiplyBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                double[] b = base.clone();
+                for (int i = 0; i < 4; i++) {
+                    base[i] = overlay[i] * b[i] + overlay[i] * (1.0 - b[3]) + b[i] * (1.0 - overlay[3]);
+                }
+            }
+        });
+        assertBlend(new GPUImageNormalBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = overlay[i] + base[i] * base[3] * (1.0 - overlay[3]);
+                }
+                base[3] = overlay[3] + base[3] * (1.0 - overlay[3]);
+            }
+        });
+        assertBlend(new GPUImageScreenBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 4; i++) {
+                    base[i] = 1.0 - (1.0 - overlay[i]) * (1.0 - base[i]);
+                }
+            }
+        });
+        assertBlend(new GPUImageSoftLightBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                double[] b = base.clone();
+                for (int i = 0; i < 4; i++) {
+                    base[i] = b[i] * (overlay[3] * (b[i] / b[3]) + (2.0 * overlay[i] * (1.0 - (b[i] / b[3]))))
+                            + overlay[i] * (1.0 - b[3]) + b[i] * (1.0 - overlay[3]);
+                }
+            }
+        });
+        assertBlend(new GPUImageSourceOverBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                double amount = overlay[3];
+                for (int i = 0; i < 4; i++) {
+                    base[i] = mix(base[i], overlay[i], amount);
+                }
+            }
+        });
+        assertBlend(new GPUImageSubtractBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                for (int i = 0; i < 3; i++) {
+                    base[i] = base[i] - overlay[i];
+                }
+            }
+        });
+    }
+
+    @Test
+    public void nonSeparableBlends() {
+        assertBlend(new GPUImageColorBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                mixRgb(base, setlum(rgb(overlay), lum(base)), overlay[3]);
+            }
+        });
+        assertBlend(new GPUImageHueBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                mixRgb(base, setlum(setsat(rgb(overlay), sat(base)), lum(base)), overlay[3]);
+            }
+        });
+        assertBlend(new GPUImageSaturationBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                mixRgb(base, setlum(setsat(rgb(base), sat(overlay)), lum(base)), overlay[3]);
+            }
+        });
+        assertBlend(new GPUImageLuminosityBlendFilter(), new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                mixRgb(base, setlum(rgb(base), lum(overlay)), overlay[3]);
+            }
+        });
+    }
+
+    @Test
+    public void chromaKey() {
+        GPUImageChromaKeyBlendFilter filter = new GPUImageChromaKeyBlendFilter();
+        filter.setColorToReplace(0.1f, 0.8f, 0.3f);
+        filter.setThresholdSensitivity(0.2f);
+        filter.setSmoothing(0.15f);
+        assertBlend(filter, new BlendReference() {
+            @Override
+            public void blend(double[] base, double[] overlay) {
+                double maskY = 0.2989 * 0.1f + 0.5866 * 0.8f + 0.1145 * 0.3f;
+                double maskCr = 0.7132 * (0.1f - maskY);
+                double maskCb = 0.5647 * (0.3f - maskY);
+                double y = 0.2989 * base[0] + 0.5866 * base[1] + 0.1145 * base[2];
+                double cr = 0.7132 * (base[0] - y);
+                double cb = 0.5647 * (base[2] - y);
+                double distance = Math.hypot(cr - maskCr, cb - maskCb);
+                double t = clamp((distance - 0.2f) / ((0.2f + 0.15f) - 0.2f), 0.0, 1.0);
+                double amount = 1.0 - t * t * (3.0 - 2.0 * t);
+                for (int i = 0; i < 4; i++) {
+                    base[i] = mix(base[i], overlay[i], amount);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void blendStretchesSecondImage() {
+        // 纯色的第二张图像无论多大，拉伸后都是同一个颜色
+        int[] overlay = new int[3 * 5];
+        Arrays.fill(overlay, 0xff3366cc);
+        GPUImageCpuKernel kernel = GPUImageCpuKernel.blend(overlay, 3, 5,
+                new GPUImageNormalBlendFilter().createCpuBlend());
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(5), true);
+        int[] expected = new int[src.length];
+        Arrays.fill(expected, 0xff3366cc);
+        assertImage("stretched overlay", expected, run(kernel, src), 0);
+    }
+
+    @Test
+    public void rotatedSecondImageIsNotSupported() {
+        GPUImageNormalBlendFilter filter = new GPUImageNormalBlendFilter();
+        filter.setRotation(Rotation.ROTATION_90, false, false);
+        assertTrue(filter.createCpuKernel() == null);
+    }
+
+    @Test
+    public void brightness() {
+        for (final float brightness : new float[]{-0.3f, 0.4f}) {
+            assertColorKernel("brightness " + brightness,
+                    new GPUImageBrightnessFilter(brightness).createCpuKernel(), new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            for (int i = 0; i < 3; i++) {
+                                c[i] += brightness;
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void contrast() {
+        for (final float contrast : new float[]{0.4f, 1.6f}) {
+            assertColorKernel("contrast " + contrast,
+                    new GPUImageContrastFilter(contrast).createCpuKernel(), new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            for (int i = 0; i < 3; i++) {
+                                c[i] = (c[i] - 0.5) * contrast + 0.5;
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void gamma() {
+        for (final float gamma : new float[]{0.5f, 2.2f}) {
+            assertColorKernel("gamma " + gamma, new GPUImageGammaFilter(gamma).createCpuKernel(),
+                    new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            for (int i = 0; i < 3; i++) {
+                                c[i] = Math.pow(c[i], gamma);
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void exposure() {
+        for (final float exposure : new float[]{-0.8f, 1.3f}) {
+            assertColorKernel("exposure " + exposure,
+                    new GPUImageExposureFilter(exposure).createCpuKernel(), new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            for (int i = 0; i < 3; i++) {
+                                c[i] *= Math.pow(2.0, exposure);
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void colorInvert() {
+        assertColorKernel("invert", new GPUImageColorInvertFilter().createCpuKernel(), new Reference() {
+            @Override
+            public void apply(double[] c) {
+                for (int i = 0; i < 3; i++) {
+                    c[i] = 1.0 - c[i];
+                }
+            }
+        }, 0, true);
+    }
+
+    @Test
+    public void posterize() {
+        final int levels = 6;
+        assertColorKernel("posterize", new GPUImagePosterizeFilter(levels).createCpuKernel(),
+                new Reference() {
+                    @Override
+                    public void apply(double[] c) {
+                        // 着色器对透明度也分级
+                        for (int i = 0; i < 4; i++) {
+                            c[i] = Math.floor(c[i] * levels + 0.5) / levels;
+                        }
+                    }
+                }, 1, true);
+    }
+
+    @Test
+    public void rgb() {
+        final float[] scale = {0.6f, 1.2f, 0.9f};
+        assertColorKernel("rgb", new GPUImageRGBFilter(scale[0], scale[1], scale[2]).createCpuKernel(),
+                new Reference() {
+                    @Override
+                    public void apply(double[] c) {
+                        for (int i = 0; i < 3; i++) {
+                            c[i] *= scale[i];
+                        }
+                        c[3] = 1.0;
+                    }
+                }, 1, true);
+    }
+
+    @Test
+    public void levels() {
+        final float[] min = {0.1f, 0.1f, 0.2f};
+        final float[] mid = {1.4f, 1.4f, 0.7f};
+        final float[] max = {0.9f, 0.9f, 0.8f};
+        final float[] minOut = {0.05f, 0.05f, 0.0f};
+        final float[] maxOut = {0.95f, 0.95f, 1.0f};
+        GPUImageLevelsFilter filter = new GPUImageLevelsFilter();
+        filter.setMin(min[0], mid[0], max[0], minOut[0], maxOut[0]);
+        filter.setBlueMin(min[2], mid[2], max[2], minOut[2], maxOut[2]);
+        assertColorKernel("levels", filter.createCpuKernel(), new Reference() {
+            @Override
+            public void apply(double[] c) {
+                for (int i = 0; i < 3; i++) {
+                    double value = Math.min(Math.max(c[i] - min[i], 0.0) / (max[i] - min[i]), 1.0);
+                    c[i] = mix(minOut[i], maxOut[i], Math.pow(value, 1.0 / mid[i]));
+                }
+            }
+        }, 1, true);
+    }
+
+    @Test
+    public void toneCurve() {
+        // 两个控制点的曲线是直线，曲线纹理中第k个像素为0.2 + 0.6 * k / 255
+        GPUImageToneCurveFilter filter = new GPUImageToneCurveFilter();
+        filter.setRgbCompositeControlPoints(new PointF[]{new PointF(0.0f, 0.2f), new PointF(1.0f, 0.8f)});
+        assertColorKernel("tone curve", filter.createCpuKernel(), new Reference() {
+            @Override
+            public void apply(double[] c) {
+                for (int i = 0; i < 3; i++) {
+                    // 在256个像素宽的纹理上线性插值，像素中心在(k + 0.5) / 256
+                    double position = clamp(c[i] * 256.0 - 0.5, 0.0, 255.0);
+                    c[i] = 0.2 + 0.6 * position / 255.0;
+                }
+            }
+        }, 1, true);
+    }
+
+    @Test
+    public void grayscale() {
+        assertColorKernel("grayscale", new GPUImageGrayscaleFilter().createCpuKernel(), new Reference() {
+            @Override
+            public void apply(double[] c) {
+                double luminance = dot(c, 0.2125, 0.7154, 0.0721);
+                c[0] = c[1] = c[2] = luminance;
+            }
+        }, 1, true);
+    }
+
+    @Test
+    public void saturation() {
+        for (final float saturation : new float[]{0.3f, 1.8f}) {
+            assertColorKernel("saturation " + saturation,
+                    new GPUImageSaturationFilter(saturation).createCpuKernel(), new Reference() {
+                        @Override
+                        public void apply(double[] c) {
+                            double luminance = dot(c, 0.2125, 0.7154, 0.0721);
+                            for (int i = 0; i < 3; i++) {
+                                c[i] = mix(luminance, c[i], saturation);
+                            }
+                        }
+                    }, 1, true);
+        }
+    }
+
+    @Test
+    public void colorMatrix() {
+        final float intensity = 0.7f;
+        final float[] matrix = {
+                0.3588f, 0.7044f, 0.1368f, 0.0f,
+                0.2990f, 0.5870f, 0.1140f, 0.0f,
+                0.2392f, 0.4696f, 0.0912f, 0.0f,
+                0.1f, 0.0f, 0.0f, 0.9f
+        };
+        assertColorKernel("color matrix", new GPUImageColorMatrixFilter(intensity, matrix).createCpuKernel(),
+                new Reference() {
+                    @Override
+                    public void apply(double[] c) {
+                        // vec4 * mat4：输出的第j个通道是输入与第j列的点积，上传的数组按列排列
+                        double[] output = new double[4];
+                        for (int j = 0; j < 4; j++) {
+                            for (int i = 0; i < 4; i++) {
+                                output[j] += c[i] * matrix[j * 4 + i];
+                            }
+                        }
+                        for (int j = 0; j < 4; j++) {
+                            c[j] = intensity * output[j] + (1.0 - intensity) * c[j];
+                        }
+                    }
+                }, 1, true);
+    }
+
+    @Test
+    public void convolution() {
+        float[] kernel = {
+                0.1f, -0.3f, 0.2f,
+                0.4f, 0.9f, -0.2f,
+                -0.1f, 0.3f, -0.3f
+        };
+        assertConvolution("convolution", kernel, new GPUImage3x3ConvolutionFilter(kernel).createCpuKernel());
+    }
+
+    @Test
+    public void emboss() {
+        float intensity = 1.5f;
+        float[] kernel = {
+                -2.0f * intensity, -intensity, 0.0f,
+                -intensity, 1.0f, intensity,
+                0.0f, intensity, 2.0f * intensity
+        };
+        assertConvolution("emboss", kernel, new GPUImageEmbossFilter(intensity).createCpuKernel());
+    }
+
+    @Test
+    public void rendererThreadsGiveSameResult() {
+        // 高度超过多个分块且最后一块不满，组中间有需要相邻像素的滤镜
+        int width = 41;
+        int height = 150;
+        List<GPUImageFilter> filters = new ArrayList<GPUImageFilter>();
+        filters.add(new GPUImageBrightnessFilter(0.1f));
+        filters.add(new GPUImageContrastFilter(1.3f));
+        filters.add(new GPUImageEmbossFilter(0.8f));
+        filters.add(new GPUImageSaturationFilter(1.4f));
+        filters.add(new GPUImageSharpenFilter(0.5f));
+        filters.add(new GPUImageGammaFilter(1.2f));
+        GPUImageFilterGroup group = new GPUImageFilterGroup(filters);
+
+        int[] src = randomImage(width, height, new Random(6), false);
+        int[] copy = src.clone();
+        GPUImageCpuRenderer single = new GPUImageCpuRenderer(1);
+        GPUImageCpuRenderer multiple = new GPUImageCpuRenderer(4);
+        try {
+            int[] expected = single.render(group, src, width, height);
+            assertArrayEquals(copy, src);
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(expected, multiple.render(group, src, width, height));
+            }
+            assertArrayEquals(copy, src);
+
+            // 与逐个内核处理整张图像的结果相同
+            int[] reference = src;
+            for (GPUImageFilter filter : filters) {
+                int[] output = new int[reference.length];
+                filter.createCpuKernel().process(reference, output, width, height, 0, height);
+                reference = output;
+            }
+            assertArrayEquals(reference, expected);
+        } finally {
+            single.shutdown();
+            multiple.shutdown();
+        }
+    }
+
+    /**
+     * 双精度的参考实现，颜色值为0到1之间
+     */
+    private interface Reference {
+        void apply(double[] rgba);
+    }
+
+    private interface BlendReference {
+        void blend(double[] base, double[] overlay);
+    }
+
+    /**
+     * 对随机颜色和各通道取极值的颜色逐个比较
+     */
+    private static void assertColorKernel(String name, GPUImageCpuKernel kernel, Reference reference,
+                                          int tolerance, boolean translucent) {
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(name.hashCode()), !translucent);
+        src[0] = 0xff000000;
+        src[1] = 0xffffffff;
+        src[2] = 0xffff0000;
+        src[3] = 0xff00ff00;
+        src[4] = 0xff0000ff;
+        int[] expected = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            double[] rgba = toRgba(src[i]);
+            reference.apply(rgba);
+            expected[i] = toColor(rgba);
+        }
+        assertImage(name, expected, run(kernel, src), tolerance);
+    }
+
+    /**
+     * 第二张图像与输入同样大小，透明的第二张图像按GL纹理中的预乘值参与混合
+     */
+    private static void assertBlend(GPUImageTwoInputFilter filter, BlendReference reference) {
+        String name = filter.getClass().getSimpleName();
+        Random random = new Random(name.hashCode());
+        int[] src = randomImage(WIDTH, HEIGHT, random, true);
+        int[] overlay = randomImage(WIDTH, HEIGHT, random, false);
+        for (int i = 0; i < overlay.length; i += 2) {
+            overlay[i] |= 0xff000000;
+        }
+        int[] expected = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            double[] base = toRgba(src[i]);
+            double[] top = toRgba(overlay[i]);
+            for (int c = 0; c < 3; c++) {
+                top[c] = Math.round(top[c] * top[3] * 255.0) / 255.0;
+            }
+            reference.blend(base, top);
+            expected[i] = toColor(base);
+        }
+        GPUImageCpuKernel kernel = GPUImageCpuKernel.blend(overlay, WIDTH, HEIGHT, filter.createCpuBlend());
+        assertImage(name, expected, run(kernel, src), 1);
+    }
+
+    /**
+     * 卷积核按行排列，第一行对应上一行像素，超出边界时取边缘像素
+     */
+    private static void assertConvolution(String name, float[] kernel, GPUImageCpuKernel actual) {
+        int[] src = randomImage(WIDTH, HEIGHT, new Random(name.hashCode()), false);
+        int[] expected = new int[src.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double[] result = new double[4];
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        double[] color = texel(src, x + dx, y + dy);
+                        double weight = kernel[(dy + 1) * 3 + dx + 1];
+                        for (int i = 0; i < 4; i++) {
+                            result[i] += color[i] * weight;
+                        }
+                    }
+                }
+                expected[y * WIDTH + x] = toColor(result);
+            }
+        }
+        assertImage(name, expected, run(actual, src), 1);
+    }
+
+    private static int[] run(GPUImageCpuKernel kernel, int[] src) {
+        int[] dst = new int[src.length];
+        // 分两段处理，检查分块边界
+        kernel.process(src, dst, WIDTH, HEIGHT, 0, HEIGHT / 2);
+        kernel.process(src, dst, WIDTH, HEIGHT, HEIGHT / 2, HEIGHT);
+        return dst;
+    }
+
+    private static void assertImage(String name, int[] expected, int[] actual, int tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int difference = Math.abs(((expected[i] >>> shift) & 0xff) - ((actual[i] >>> shift) & 0xff));
+                if (difference > tolerance) {
+                    fail(String.format("%s: pixel %d expected %08x but was %08x",
+                            name, i, expected[i], actual[i]));
+                }
+            }
+        }
+    }
+
+    private static int[] randomImage(int width, int height, Random random, boolean opaque) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() | (opaque ? 0xff000000 : 0);
+        }
+        return pixels;
+    }
+
+    /**
+     * 与GL_CLAMP_TO_EDGE一样取最近的边缘像素
+     */
+    private static double[] texel(int[] pixels, int x, int y) {
+        x = Math.min(Math.max(x, 0), WIDTH - 1);
+        y = Math.min(Math.max(y, 0), HEIGHT - 1);
+        return toRgba(pixels[y * WIDTH + x]);
+    }
+
+    private static double[] toRgba(int color) {
+        return new double[]{
+                ((color >> 16) & 0xff) / 255.0,
+                ((color >> 8) & 0xff) / 255.0,
+                (color & 0xff) / 255.0,
+                (color >>> 24) / 255.0
+        };
+    }
+
+    private static int toColor(double[] rgba) {
+        return toByte(rgba[3]) << 24 | toByte(rgba[0]) << 16 | toByte(rgba[1]) << 8 | toByte(rgba[2]);
+    }
+
+    private static int toByte(double value) {
+        return (int) Math.round(clamp(value, 0.0, 1.0) * 255.0);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.min(Math.max(value, min), max);
+    }
+
+    private static double mix(double x, double y, double a) {
+        return x * (1.0 - a) + y * a;
+    }
+
+    private static double dot(double[] c, double r, double g, double b) {
+        return c[0] * r + c[1] * g + c[2] * b;
+    }
+
+    /**
+     * GLSL中的mat3 * vec3，矩阵按列排列
+     */
+    private static double[] multiply(double[] m, double[] v) {
+        return new double[]{
+                m[0] * v[0] + m[3] * v[1] + m[6] * v[2],
+                m[1] * v[0] + m[4] * v[1] + m[7] * v[2],
+                m[2] * v[0] + m[5] * v[1] + m[8] * v[2]
+        };
+    }
+
+    /**
+     * 叠加和强光混合共用的公式，只有判断条件不同
+     */
+    private static double hardLight(double test, double alpha, double[] base, double[] overlay, int i) {
+        double rest = overlay[i] * (1.0 - base[3]) + base[i] * (1.0 - overlay[3]);
+        if (2.0 * test < alpha) {
+            return 2.0 * overlay[i] * base[i] + rest;
+        }
+        return overlay[3] * base[3] - 2.0 * (base[3] - base[i]) * (overlay[3] - overlay[i]) + rest;
+    }
+
+    private static double[] rgb(double[] c) {
+        return new double[]{c[0], c[1], c[2]};
+    }
+
+    private static void mixRgb(double[] base, double[] color, double alpha) {
+        for (int i = 0; i < 3; i++) {
+            base[i] = base[i] * (1.0 - alpha) + color[i] * alpha;
+        }
+    }
+
+    private static double lum(double[] c) {
+        return dot(c, 0.3, 0.59, 0.11);
+    }
+
+    private static double[] clipcolor(double[] c) {
+        double l = lum(c);
+        double n = Math.min(Math.min(c[0], c[1]), c[2]);
+        double x = Math.max(Math.max(c[0], c[1]), c[2]);
+        if (n < 0.0) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = l + ((c[i] - l) * l) / (l - n);
+            }
+        }
+        if (x > 1.0) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = l + ((c[i] - l) * (1.0 - l)) / (x - l);
+            }
+        }
+        return c;
+    }
+
+    private static double[] setlum(double[] c, double l) {
+        double d = l - lum(c);
+        return clipcolor(new double[]{c[0] + d, c[1] + d, c[2] + d});
+    }
+
+    private static double sat(double[] c) {
+        return Math.max(Math.max(c[0], c[1]), c[2]) - Math.min(Math.min(c[0], c[1]), c[2]);
+    }
+
+    private static double mid(double cmin, double cmid, double cmax, double s) {
+        return ((cmid - cmin) * s) / (cmax - cmin);
+    }
+
+    private static double[] setsat(double[] c, double s) {
+        double r = c[0];
+        double g = c[1];
+        double b = c[2];
+        if (r > g) {
+            if (r > b) {
+                if (g > b) {
+                    g = mid(b, g, r, s);
+                    b = 0.0;
+                } else {
+                    b = mid(g, b, r, s);
+                    g = 0.0;
+                }
+                r = s;
+            } else {
+                r = mid(g, r, b, s);
+                b = s;
+                r = 0.0;
+            }
+        } else if (r > b) {
+            r = mid(b, r, g, s);
+            g = s;
+            b = 0.0;
+        } else if (g > b) {
+            b = mid(r, b, g, s);
+            g = s;
+            r = 0.0;
+        } else if (b > g) {
+            g = mid(r, g, b, s);
+            b = s;
+            r = 0.0;
+        } else {
+            r = 0.0;
+            g = 0.0;
+            b = 0.0;
+        }
+        return new double[]{r, g, b};
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2012 CyberAgent
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 滤镜合并只处理字符串和滤镜列表，直接检查分组和生成的着色器
+ */
+public class GPUImageFilterFusionTest {
+
+    @Test
+    public void planPassesSplitsAtNeighbourhoodFilters() {
+        GPUImageFilter brightness = new GPUImageBrightnessFilter();
+        GPUImageFilter levels = new GPUImageLevelsFilter();
+        GPUImageFilter convolution = new GPUImage3x3ConvolutionFilter();
+        GPUImageFilter contrast = new GPUImageContrastFilter();
+        GPUImageFilter blur = new GPUImageGaussianBlurFilter();
+        GPUImageFilter gamma = new GPUImageGammaFilter();
+
+        List<List<GPUImageFilter>> passes = GPUImageFilterFusion.planPasses(
+                Arrays.asList(brightness, levels, convolution, contrast, blur, gamma));
+
+        assertEquals(5, passes.size());
+        assertEquals(Arrays.asList(brightness, levels), passes.get(0));
+        assertEquals(Collections.singletonList(convolution), passes.get(1));
+        assertEquals(Collections.singletonList(contrast), passes.get(2));
+        assertEquals(Collections.singletonList(blur), passes.get(3));
+        assertEquals(Collections.singletonList(gamma), passes.get(4));
+    }
+
+    @Test
+    public void planPassesSplitsAtTextureLimit() {
+        // 每个色调曲线使用一个额外的纹理
+        List<GPUImageFilter> filters = new ArrayList<GPUImageFilter>();
+        for (int i = 0; i < GPUImageFilterFusion.MAX_EXTRA_TEXTURES + 1; i++) {
+            filters.add(new GPUImageToneCurveFilter());
+        }
+
+        List<List<GPUImageFilter>> passes = GPUImageFilterFusion.planPasses(filters);
+
+        assertEquals(2, passes.size());
+        assertEquals(filters.subList(0, GPUImageFilterFusion.MAX_EXTRA_TEXTURES), passes.get(0));
+        assertEquals(filters.subList(GPUImageFilterFusion.MAX_EXTRA_TEXTURES, filters.size()),
+                passes.get(1));
+    }
+
+    @Test
+    public void planPassesSplitsAtSecondInputLimit() {
+        // 混合滤镜各使用一个额外纹理和一个第二输入，先达到第二输入的上限
+        List<GPUImageFilter> filters = new ArrayList<GPUImageFilter>();
+        for (int i = 0; i < GPUImageFilterFusion.MAX_SECOND_INPUTS + 1; i++) {
+            filters.add(new GPUImageMultiplyBlendFilter());
+        }
+
+        List<List<GPUImageFilter>> passes = GPUImageFilterFusion.planPasses(filters);
+
+        assertEquals(2, passes.size());
+        assertEquals(filters.subList(0, GPUImageFilterFusion.MAX_SECOND_INPUTS), passes.get(0));
+        assertEquals(filters.subList(GPUImageFilterFusion.MAX_SECOND_INPUTS, filters.size()),
+                passes.get(1));
+    }
+
+    @Test
+    public void parseRejectsNeighbourhoodShaders() {
+        assertNull(GPUImageFilterFusion.parse(new GPUImage3x3ConvolutionFilter(), "s0_"));
+        assertNull(GPUImageFilterFusion.parse(
+                GPUImage3x3ConvolutionFilter.THREE_X_THREE_TEXTURE_SAMPLING_FRAGMENT_SHADER, "s0_"));
+        assertNull(GPUImageFilterFusion.parse(GPUImageGaussianBlurFilter.FRAGMENT_SHADER, "s0_"));
+        assertNull(GPUImageFilterFusion.parse("" +
+                "varying highp vec2 textureCoordinate;\n" +
+                "uniform sampler2D inputImageTexture;\n" +
+                "void main()\n" +
+                "{\n" +
+                "    gl_FragColor = texture2D(inputImageTexture, textureCoordinate + vec2(0.01, 0.0));\n" +
+                "}", "s0_"));
+        assertNull(GPUImageFilterFusion.parse("" +
+                "varying highp vec2 textureCoordinate;\n" +
+                "uniform sampler2D inputImageTexture;\n" +
+                "void main()\n" +
+                "{\n" +
+                "    gl_FragColor = texture2D(inputImageTexture, gl_FragCoord.xy);\n" +
+                "}", "s0_"));
+    }
+
+    @Test
+    public void parseCollectsUniformsAndSamplers() {
+        GPUImageFilterFusion.Stage toneCurve = GPUImageFilterFusion.parse(new GPUImageToneCurveFilter(), "s0_");
+        assertNotNull(toneCurve);
+        assertEquals(Collections.<String>emptyList(), toneCurve.uniforms);
+        assertEquals(Collections.singletonList("toneCurveTexture"), toneCurve.samplers);
+        assertFalse(toneCurve.usesSecondInput);
+
+        GPUImageFilterFusion.Stage levels = GPUImageFilterFusion.parse(new GPUImageLevelsFilter(), "s1_");
+        assertNotNull(levels);
+        assertEquals(Arrays.asList("levelMinimum", "levelMiddle", "levelMaximum", "minOutput", "maxOutput"),
+                levels.uniforms);
+        assertEquals(Collections.<String>emptyList(), levels.samplers);
+
+        GPUImageFilterFusion.Stage blend = GPUImageFilterFusion.parse(new GPUImageMultiplyBlendFilter(), "s2_");
+        assertNotNull(blend);
+        assertEquals(Collections.singletonList("inputImageTexture2"), blend.samplers);
+        assertTrue(blend.usesSecondInput);
+        assertEquals("s2_main", blend.getFunctionName());
+    }
+
+    @Test
+    public void generateToneCurveLevelsBlendShaders() {
+        List<GPUImageFilterFusion.Stage> stages = GPUImageFilterFusion.parseStages(
+                Arrays.<GPUImageFilter>asList(new GPUImageToneCurveFilter(), new GPUImageLevelsFilter(),
+                        new GPUImageMultiplyBlendFilter()));
+
+        assertEquals("" +
+                "attribute vec4 position;\n" +
+                "attribute vec4 inputTextureCoordinate;\n" +
+                "attribute vec4 s2_inputTextureCoordinate2;\n" +
+                " \n" +
+                "varying vec2 textureCoordinate;\n" +
+                "varying vec2 s2_textureCoordinate2;\n" +
+                " \n" +
+                "void main()\n" +
+                "{\n" +
+                "    gl_Position = position;\n" +
+                "    textureCoordinate = inputTextureCoordinate.xy;\n" +
+                "    s2_textureCoordinate2 = s2_inputTextureCoordinate2.xy;\n" +
+                "}",
+                GPUImageFilterFusion.generateVertexShader(stages));
+        assertEquals("" +
+                "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+                "precision highp float;\n" +
+                "#else\n" +
+                "precision mediump float;\n" +
+                "#endif\n" +
+                "varying highp vec2 textureCoordinate;\n" +
+                "varying highp vec2 s2_textureCoordinate2;\n" +
+                " \n" +
+                "uniform sampler2D inputImageTexture;\n" +
+                " \n" +
+                "uniform sampler2D s0_toneCurveTexture;\n" +
+                "mediump vec4 s0_main(mediump vec4 s0_inputColor)\n" +
+                "{\n" +
+                "    mediump vec4 s0_outputColor = s0_inputColor;\n" +
+                "\n" +
+                "     lowp vec4 textureColor = s0_inputColor;\n" +
+                "     lowp float redCurveValue = texture2D(s0_toneCurveTexture, vec2(textureColor.r, 0.0)).r;\n" +
+                "     lowp float greenCurveValue = texture2D(s0_toneCurveTexture, vec2(textureColor.g, 0.0)).g;\n" +
+                "     lowp float blueCurveValue = texture2D(s0_toneCurveTexture, vec2(textureColor.b, 0.0)).b;\n" +
+                "\n" +
+                "     s0_outputColor = vec4(redCurveValue, greenCurveValue, blueCurveValue, textureColor.a);\n" +
+                " \n" +
+                "    return s0_outputColor;\n" +
+                "}\n" +
+                " \n" +
+                "uniform mediump vec3 s1_levelMinimum;\n" +
+                "uniform mediump vec3 s1_levelMiddle;\n" +
+                "uniform mediump vec3 s1_levelMaximum;\n" +
+                "uniform mediump vec3 s1_minOutput;\n" +
+                "uniform mediump vec3 s1_maxOutput;\n" +
+                "mediump vec4 s1_main(mediump vec4 s1_inputColor)\n" +
+                "{\n" +
+                "    mediump vec4 s1_outputColor = s1_inputColor;\n" +
+                "\n" +
+                "     mediump vec4 textureColor = s1_inputColor;\n" +
+                "     \n" +
+                "     s1_outputColor = vec4( mix(s1_minOutput, s1_maxOutput, pow(min(max(textureColor.rgb -s1_levelMinimum, vec3(0.0)) / (s1_levelMaximum - s1_levelMinimum  ), vec3(1.0)), 1.0 /s1_levelMiddle)) , textureColor.a);\n" +
+                " \n" +
+                "    return s1_outputColor;\n" +
+                "}\n" +
+                " \n" +
+                "uniform sampler2D s2_inputImageTexture2;\n" +
+                "mediump vec4 s2_main(mediump vec4 s2_inputColor)\n" +
+                "{\n" +
+                "    mediump vec4 s2_outputColor = s2_inputColor;\n" +
+                "\n" +
+                "     lowp vec4 base = s2_inputColor;\n" +
+                "     lowp vec4 overlayer = texture2D(s2_inputImageTexture2, s2_textureCoordinate2);\n" +
+                "          \n" +
+                "     s2_outputColor = overlayer * base + overlayer * (1.0 - base.a) + base * (1.0 - overlayer.a);\n" +
+                " \n" +
+                "    return s2_outputColor;\n" +
+                "}\n" +
+                " \n" +
+                "void main()\n" +
+                "{\n" +
+                "    mediump vec4 color = texture2D(inputImageTexture, textureCoordinate);\n" +
+                "    color = clamp(s0_main(color), 0.0, 1.0);\n" +
+                "    color = clamp(s1_main(color), 0.0, 1.0);\n" +
+                "    color = clamp(s2_main(color), 0.0, 1.0);\n" +
+                "    gl_FragColor = color;\n" +
+                "}",
+                GPUImageFilterFusion.generateFragmentShader(stages));
+    }
+}
@@ -6,18 +6,16 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 
 import com.github.skykai.stickercamera.R;
 import com.stickercamera.app.camera.effect.FilterEffect;
-import com.stickercamera.app.camera.util.GPUImageFilterTools;
+import com.stickercamera.app.camera.util.FilterThumbnailCache;
 
 import java.util.List;
 
-import jp.co.cyberagent.android.gpuimage.GPUImageFilter;
-import jp.co.cyberagent.android.gpuimage.GPUImageView;
-
 /**
  * @author tongqian.ni
  *
@@ -42,6 +40,16 @@ public class FilterAdapter extends BaseAdapter {
         filterUris = effects;
         mContext = context;
         this.background = backgroud;
+        if (background != null) {
+            //缩略图生成后刷新
+            FilterThumbnailCache.render(context, background, effects,
+                    new FilterThumbnailCache.Callback() {
+                        @Override
+                        public void onThumbnailsRendered() {
+                            notifyDataSetChanged();
+                        }
+                    });
+        }
     }
 
     @Override
@@ -66,7 +74,7 @@ public class FilterAdapter extends BaseAdapter {
             LayoutInflater layoutInflater = LayoutInflater.from(mContext);
             convertView = layoutInflater.inflate(R.layout.item_bottom_filter, null);
             holder = new EffectHolder();
-            holder.filteredImg = (GPUImageView) convertView.findViewById(R.id.small_filter);
+            holder.filteredImg = (ImageView) convertView.findViewById(R.id.small_filter);
             holder.filterName = (TextView) convertView.findViewById(R.id.filter_name);
             convertView.setTag(holder);
         } else {
@@ -75,17 +83,17 @@ public class FilterAdapter extends BaseAdapter {
 
         final FilterEffect effect = (FilterEffect) getItem(position);
 
-        holder.filteredImg.setImage(background);
+        //缩略图还没有生成时先显示原图
+        Bitmap thumbnail = background != null
+                ? FilterThumbnailCache.get(background, effect.getType()) : null;
+        holder.filteredImg.setImageBitmap(thumbnail != null ? thumbnail : background);
         holder.filterName.setText(effect.getTitle());
-        //if (!effect.isOri() && effect.getType() != null) {
-        GPUImageFilter filter = GPUImageFilterTools.createFilterForType(mContext, effect.getType());
-        holder.filteredImg.setFilter(filter);
 
         return convertView;
     }
 
     class EffectHolder {
-        GPUImageView filteredImg;
+        ImageView    filteredImg;
         TextView     filterName;
     }
 
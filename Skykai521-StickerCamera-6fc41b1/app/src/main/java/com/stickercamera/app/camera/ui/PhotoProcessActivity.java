@@ -39,6 +39,7 @@ import com.stickercamera.app.camera.adapter.FilterAdapter;
 import com.stickercamera.app.camera.adapter.StickerToolAdapter;
 import com.stickercamera.app.camera.effect.FilterEffect;
 import com.stickercamera.app.camera.util.EffectUtil;
+import com.stickercamera.app.camera.util.FilterThumbnailCache;
 import com.stickercamera.app.camera.util.GPUImageFilterTools;
 import com.stickercamera.app.model.Addon;
 import com.stickercamera.app.model.FeedItem;
@@ -121,6 +122,11 @@ public class PhotoProcessActivity extends CameraBaseActivity {
             @Override
             public void callback(Bitmap result) {
                 smallImageBackgroud = result;
+                //提前生成滤镜栏的缩略图，打开滤镜栏时可以直接显示
+                if (result != null) {
+                    FilterThumbnailCache.render(PhotoProcessActivity.this, result,
+                            EffectService.getInst().getLocalFilters(), null);
+                }
             }
         });
 
@@ -0,0 +1,64 @@
+package com.stickercamera.app.camera.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.PointF;
+import android.util.LruCache;
+
+import jp.co.cyberagent.android.gpuimage.GPUImageToneCurveFilter;
+
+/**
+ * 滤镜用到的资源，按资源ID缓存解码后的结果。
+ * 每次切换滤镜都会新建滤镜对象，有了缓存就不用每次都解码查找表图片、解析曲线文件。
+ * 缓存的图片由多个滤镜共用，不能回收
+ */
+public class FilterResourceCache {
+
+    //查找表和混合用的图片，最多占用十六分之一的可用内存
+    private static final LruCache<Integer, Bitmap> sBitmaps = new LruCache<Integer, Bitmap>(
+            (int) (Runtime.getRuntime().maxMemory() / 1024 / 16)) {
+        @Override
+        protected int sizeOf(Integer key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight() / 1024;
+        }
+    };
+
+    //解析后的.acv曲线，每个只有几十个控制点
+    private static final LruCache<Integer, PointF[][]> sCurves = new LruCache<Integer, PointF[][]>(32);
+
+    private FilterResourceCache() {
+    }
+
+    /**
+     * 获得解码后的图片
+     * @param resId drawable资源ID
+     */
+    public static Bitmap getBitmap(Context context, int resId) {
+        Bitmap bitmap = sBitmaps.get(resId);
+        if (bitmap == null) {
+            bitmap = BitmapFactory.decodeResource(context.getResources(), resId);
+            if (bitmap != null) {
+                sBitmaps.put(resId, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 获得曲线文件中的控制点
+     * @param resId raw资源ID
+     * @return 读取失败时返回null
+     */
+    public static PointF[][] getCurve(Context context, int resId) {
+        PointF[][] curve = sCurves.get(resId);
+        if (curve == null) {
+            curve = GPUImageToneCurveFilter.readCurveFile(
+                context.getResources().openRawResource(resId));
+            if (curve != null) {
+                sCurves.put(resId, curve);
+            }
+        }
+        return curve;
+    }
+}
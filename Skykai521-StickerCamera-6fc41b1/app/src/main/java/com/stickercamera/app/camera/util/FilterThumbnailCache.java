@@ -0,0 +1,124 @@
+package com.stickercamera.app.camera.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.util.LruCache;
+
+import com.stickercamera.app.camera.effect.FilterEffect;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jp.co.cyberagent.android.gpuimage.GPUImage;
+import jp.co.cyberagent.android.gpuimage.GPUImageFilter;
+
+/**
+ * 滤镜栏的缩略图，按图片和滤镜类型缓存。
+ * 缺少的缩略图在后台一次生成：图片只上传一次，所有滤镜在同一个离屏缓冲中依次渲染，
+ * 不需要每一行各自创建GL环境
+ */
+public class FilterThumbnailCache {
+
+    //最多占用八分之一的可用内存
+    private static final LruCache<String, Bitmap> sThumbnails = new LruCache<String, Bitmap>(
+            (int) (Runtime.getRuntime().maxMemory() / 1024 / 8)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight() / 1024;
+        }
+    };
+
+    //正在后台生成的缩略图，以及等它们完成的回调，只在主线程访问
+    private static final Set<String> sPendingKeys = new HashSet<String>();
+    private static final List<Callback> sWaitingCallbacks = new ArrayList<Callback>();
+
+    public interface Callback {
+        void onThumbnailsRendered();
+    }
+
+    private FilterThumbnailCache() {
+    }
+
+    /**
+     * 获得已经生成的缩略图
+     * @return 还没有生成时返回null
+     */
+    public static Bitmap get(Bitmap image, GPUImageFilterTools.FilterType type) {
+        return sThumbnails.get(getKey(image, type));
+    }
+
+    /**
+     * 在后台生成缓存中还没有的缩略图，必须在主线程调用
+     * @param callback 需要的缩略图都生成后在主线程回调，可以为null
+     */
+    public static void render(Context context, final Bitmap image, List<FilterEffect> effects,
+                              final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        final List<GPUImageFilterTools.FilterType> types = new ArrayList<GPUImageFilterTools.FilterType>();
+        final List<String> keys = new ArrayList<String>();
+        boolean waiting = false;
+        for (FilterEffect effect : effects) {
+            String key = getKey(image, effect.getType());
+            if (sPendingKeys.contains(key)) {
+                waiting = true;
+            } else if (sThumbnails.get(key) == null && !keys.contains(key)) {
+                types.add(effect.getType());
+                keys.add(key);
+            }
+        }
+        //其它缩略图已经在生成了，等它们一起完成
+        if (waiting && callback != null) {
+            sWaitingCallbacks.add(callback);
+        }
+        if (types.isEmpty()) {
+            return;
+        }
+        sPendingKeys.addAll(keys);
+        new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                final List<String> renderedKeys = new ArrayList<String>();
+                List<GPUImageFilter> filters = new ArrayList<GPUImageFilter>(types.size());
+                for (int i = 0; i < types.size(); i++) {
+                    GPUImageFilter filter = GPUImageFilterTools.createFilterForType(appContext, types.get(i));
+                    if (filter != null) {
+                        renderedKeys.add(keys.get(i));
+                        filters.add(filter);
+                    }
+                }
+                //结果按滤镜的顺序依次返回
+                final int[] index = {0};
+                GPUImage.getBitmapForMultipleFilters(image, filters,
+                        new GPUImage.ResponseListener<Bitmap>() {
+                            @Override
+                            public void response(Bitmap item) {
+                                sThumbnails.put(renderedKeys.get(index[0]++), item);
+                            }
+                        });
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                sPendingKeys.removeAll(keys);
+                if (callback != null && !sWaitingCallbacks.contains(callback)) {
+                    callback.onThumbnailsRendered();
+                }
+                if (sPendingKeys.isEmpty()) {
+                    List<Callback> callbacks = new ArrayList<Callback>(sWaitingCallbacks);
+                    sWaitingCallbacks.clear();
+                    for (Callback waitingCallback : callbacks) {
+                        waitingCallback.onThumbnailsRendered();
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    private static String getKey(Bitmap image, GPUImageFilterTools.FilterType type) {
+        return System.identityHashCode(image) + "_" + image.getGenerationId() + "_" + type.name();
+    }
+}
@@ -17,7 +17,6 @@
 package com.stickercamera.app.camera.util;
 
 import android.content.Context;
-import android.graphics.BitmapFactory;
 import android.graphics.PointF;
 
 import com.github.skykai.stickercamera.R;
@@ -106,59 +105,59 @@ public class GPUImageFilterTools {
             case NORMAL:
                 return new GPUImageFilter();
             case ACV_AIMEI:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.aimei));
                 return curveFilter;
             case ACV_DANLAN:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.danlan));
                 return curveFilter;
             case ACV_DANHUANG:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.danhuang));
                 return curveFilter;
             case  ACV_FUGU:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.fugu));
                 return curveFilter;
             case ACV_GAOLENG:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.gaoleng));
                 return curveFilter;
             case ACV_HUAIJIU:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.huaijiu));
                 return curveFilter;
             case ACV_JIAOPIAN:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.jiaopian));
                 return curveFilter;
             case ACV_KEAI:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.keai));
                 return curveFilter;
             case ACV_LOMO:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.lomo));
                 return curveFilter;
             case ACV_MORENJIAQIANG:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.morenjiaqiang));
                 return curveFilter;
             case ACV_NUANXIN:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.nuanxin));
                 return curveFilter;
             case ACV_QINGXIN:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.qingxin));
                 return curveFilter;
             case ACV_RIXI:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.rixi));
                 return curveFilter;
             case ACV_WENNUAN:
-                curveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                curveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.wennuan));
                 return curveFilter;
             case CONTRAST:
@@ -220,7 +219,7 @@ public class GPUImageFilterTools {
                     0.3f, 0.75f);
             case TONE_CURVE:
                 GPUImageToneCurveFilter toneCurveFilter = new GPUImageToneCurveFilter();
-                toneCurveFilter.setFromCurveFileInputStream(context.getResources().openRawResource(
+                toneCurveFilter.setControlPoints(FilterResourceCache.getCurve(context,
                     R.raw.tone_cuver_sample));
                 return toneCurveFilter;
             case BLEND_DIFFERENCE:
@@ -275,7 +274,7 @@ public class GPUImageFilterTools {
 
             case LOOKUP_AMATORKA:
                 GPUImageLookupFilter amatorka = new GPUImageLookupFilter();
-                amatorka.setBitmap(BitmapFactory.decodeResource(context.getResources(),
+                amatorka.setBitmap(FilterResourceCache.getBitmap(context,
                     R.drawable.lookup_amatorka));
                 return amatorka;
             case GAUSSIAN_BLUR:
@@ -331,7 +330,7 @@ public class GPUImageFilterTools {
                                                     Class<? extends GPUImageTwoInputFilter> filterClass) {
         try {
             GPUImageTwoInputFilter filter = filterClass.newInstance();
-            filter.setBitmap(BitmapFactory.decodeResource(context.getResources(),
+            filter.setBitmap(FilterResourceCache.getBitmap(context,
                 R.drawable.ic_launcher));
             return filter;
         } catch (Exception e) {
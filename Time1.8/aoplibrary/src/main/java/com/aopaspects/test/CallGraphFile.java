@@ -0,0 +1,175 @@
+package com.aopaspects.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * 调用图的二进制边表文件，以及到 DOT(AOP.txt) 和计数(CNT.txt) 文本的转换。
+ *
+ * 文件格式（大端）：
+ * int 魔数, int 版本,
+ * int 签名个数, 依次为 UTF 签名（下标即编号，0 为根）,
+ * int 边数, 依次为 int 调用者, int 被调用者, long 次数。
+ *
+ * 在电脑上转换：java com.aopaspects.test.CallGraphFile AOP.bin 输出目录
+ */
+public final class CallGraphFile {
+    private static final int MAGIC = 0x414F5047;                               /* "AOPG" */
+    private static final int VERSION = 1;
+
+    final String[] names;
+    final int[] callers;
+    final int[] callees;
+    final long[] counts;
+
+    CallGraphFile(String[] names, int[] callers, int[] callees, long[] counts) {
+        this.names = names;
+        this.callers = callers;
+        this.callees = callees;
+        this.counts = counts;
+    }
+
+    static long edge(int caller, int callee) {
+        return ((long) caller << 32) | (callee & 0xFFFFFFFFL);
+    }
+
+    static int caller(long edge) {
+        return (int) (edge >>> 32);
+    }
+
+    static int callee(long edge) {
+        return (int) edge;
+    }
+
+    /**
+     * 先写临时文件再改名，读者不会看到写了一半的文件
+     */
+    static void write(File file, String[] names, LongCountMap edges) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(edges.size());
+            final IOException[] error = new IOException[1];
+            edges.forEach(new LongCountMap.Visitor() {
+                @Override
+                public void visit(long key, long count) {
+                    if (error[0] != null) {
+                        return;
+                    }
+                    try {
+                        out.writeInt(caller(key));
+                        out.writeInt(callee(key));
+                        out.writeLong(count);
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    public static CallGraphFile read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a call graph file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported call graph version " + version);
+            }
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int edgeCount = in.readInt();
+            int[] callers = new int[edgeCount];
+            int[] callees = new int[edgeCount];
+            long[] counts = new long[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                callers[i] = in.readInt();
+                callees[i] = in.readInt();
+                counts[i] = in.readLong();
+            }
+            return new CallGraphFile(names, callers, callees, counts);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 输出 DOT 图，根调用单独成行，边的标签为调用次数
+     */
+    public void writeDot(Writer out) throws IOException {
+        out.write("digraph AOP {\r\n");
+        for (int i = 0; i < callers.length; i++) {
+            if (callers[i] == MethodTable.ROOT) {
+                out.write(names[callees[i]] + "\r\n");
+            }
+        }
+        for (int i = 0; i < callers.length; i++) {
+            if (callers[i] != MethodTable.ROOT) {
+                out.write(names[callers[i]] + "->" + names[callees[i]]);
+                out.write("[label=\"" + counts[i] + "\"]\r\n");
+            }
+        }
+        out.write("}\r\n");
+    }
+
+    /**
+     * 输出每个函数被调用的总次数，格式与原 CNT.txt 相同
+     */
+    public void writeCounts(Writer out) throws IOException {
+        long[] total = new long[names.length];
+        for (int i = 0; i < callees.length; i++) {
+            total[callees[i]] += counts[i];
+        }
+        for (int id = 1; id < names.length; id++) {
+            if (total[id] > 0) {
+                out.write(names[id] + "=" + total[id] + "\r\n");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CallGraphFile <AOP.bin> <output dir>");
+            return;
+        }
+        CallGraphFile graph = read(new File(args[0]));
+        Writer dot = new OutputStreamWriter(new FileOutputStream(new File(args[1], "AOP.txt")), "UTF-8");
+        try {
+            graph.writeDot(dot);
+        } finally {
+            dot.close();
+        }
+        Writer cnt = new OutputStreamWriter(new FileOutputStream(new File(args[1], "CNT.txt")), "UTF-8");
+        try {
+            graph.writeCounts(cnt);
+        } finally {
+            cnt.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.aopaspects.test;
+
+import android.util.Log;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 无锁的调用图记录器。
+ * 每个线程有自己的调用栈和边计数表，织入点只做一次编号查找、一次压栈和一次计数；
+ * 线程回到栈底时把计数表放进自己的交接槽，再次进入时取回，
+ * 后台写线程（或 flush()）随时可以从交接槽中取走计数表合并，不论该线程是否还活着，
+ * 因此短命线程和最后一段时间的调用都不会丢失。
+ * 一直不回到栈底的线程（如消息循环）在计数表过大或每次 flush() 之后的下一次调用时交出计数表。
+ * 写线程周期性地把累计的边表写成紧凑的二进制文件，由 CallGraphFile 转换为 DOT/CNT。
+ */
+public final class CallGraphRecorder {
+    private static final String LOG_TAG = "AOP";
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int HANDOFF_SIZE = 4096;                   /* 边数超过该值时不等回到栈底也交出 */
+
+    private static final MethodTable methods = new MethodTable();
+    private static final ConcurrentLinkedQueue<CallGraphRecorder> recorders = new ConcurrentLinkedQueue<CallGraphRecorder>();
+    private static final ConcurrentLinkedQueue<LongCountMap> pending = new ConcurrentLinkedQueue<LongCountMap>();
+    private static final ConcurrentLinkedQueue<LongCountMap> spare = new ConcurrentLinkedQueue<LongCountMap>();
+    private static final ThreadLocal<CallGraphRecorder> local = new ThreadLocal<CallGraphRecorder>() {
+        @Override
+        protected CallGraphRecorder initialValue() {
+            CallGraphRecorder recorder = new CallGraphRecorder(Thread.currentThread());
+            recorders.offer(recorder);
+            return recorder;
+        }
+    };
+    private static final LongCountMap total = new LongCountMap(1024);   /* 只在持有 total 的锁时访问 */
+    private static volatile Thread writer;
+    /* 每次 flush() 加一，栈中线程看到变化后交出计数表 */
+    private static volatile int flushCount;
+
+    private final WeakReference<Thread> owner;
+    /* 回到栈底时计数表放在这里，取走它的一方获得其所有权 */
+    private final AtomicReference<LongCountMap> parked = new AtomicReference<LongCountMap>();
+    private int[] stack = new int[64];
+    private int depth;
+    private LongCountMap edges;
+    private int handedFlushCount;
+
+    private CallGraphRecorder(Thread owner) {
+        this.owner = new WeakReference<Thread>(owner);
+    }
+
+    static CallGraphRecorder get() {
+        if (writer == null) {
+            startWriter();
+        }
+        return local.get();
+    }
+
+    static MethodTable methods() {
+        return methods;
+    }
+
+    void enter(int id) {
+        if (depth == 0) {
+            edges = parked.getAndSet(null);
+            if (edges == null) {
+                edges = takeSpare();
+            }
+            handedFlushCount = flushCount;
+        } else if (handedFlushCount != flushCount) {
+            handOff();
+        }
+        int caller = depth == 0 ? MethodTable.ROOT : stack[depth - 1];
+        edges.add(CallGraphFile.edge(caller, id), 1);
+        if (depth == stack.length) {
+            int[] grown = new int[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = id;
+    }
+
+    void exit() {
+        depth--;
+        if (depth == 0) {
+            parked.set(edges);
+            edges = null;
+        } else if (edges.size() >= HANDOFF_SIZE || handedFlushCount != flushCount) {
+            handOff();
+        }
+    }
+
+    /** 不回到栈底，直接把当前计数表交给写线程 */
+    private void handOff() {
+        handedFlushCount = flushCount;
+        if (!edges.isEmpty()) {
+            pending.offer(edges);
+            edges = takeSpare();
+        }
+    }
+
+    private boolean isOwnerAlive() {
+        Thread t = owner.get();
+        return t != null && t.isAlive();
+    }
+
+    private static LongCountMap takeSpare() {
+        LongCountMap map = spare.poll();
+        return map != null ? map : new LongCountMap(256);
+    }
+
+    private static void merge(LongCountMap map) {
+        total.addAll(map);
+        map.clear();
+        spare.offer(map);
+    }
+
+    /**
+     * 收集所有线程已交出或停在栈底的计数，有新数据时写入文件。
+     * 写线程每个周期调用一次，停止前也会调用；
+     * 还在栈中的线程会在下一次进入或退出方法时交出计数表，由下一次 flush() 收集。
+     */
+    public static void flush() {
+        File file = new File(AopClass.sFilePath, "AOP.bin");
+        synchronized (total) {
+            flushCount++;
+            boolean changed = false;
+            LongCountMap map;
+            while ((map = pending.poll()) != null) {
+                merge(map);
+                changed = true;
+            }
+            for (CallGraphRecorder recorder : recorders) {
+                //先判断线程是否结束：结束后不会再放入新的计数表，取完即可移除
+                boolean alive = recorder.isOwnerAlive();
+                map = recorder.parked.getAndSet(null);
+                if (map != null) {
+                    if (!map.isEmpty()) {
+                        changed = true;
+                    }
+                    merge(map);
+                }
+                if (!alive) {
+                    recorders.remove(recorder);
+                }
+            }
+            if (changed) {
+                try {
+                    CallGraphFile.write(file, methods.snapshot(), total);
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Error on write File.");
+                }
+            }
+        }
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        Thread thread = new Thread(new Writer(), "aop-callgraph");
+        thread.setDaemon(true);
+        thread.start();
+        writer = thread;
+        //进程正常退出时写出最后的数据
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, "aop-callgraph-exit"));
+    }
+
+    private static final class Writer implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Thread.sleep(FLUSH_INTERVAL_MS);
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                flush();
+                Log.d(LOG_TAG, "Call graph writer stopped");
+            }
+        }
+    }
+}
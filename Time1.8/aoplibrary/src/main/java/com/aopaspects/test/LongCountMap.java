@@ -0,0 +1,98 @@
+package com.aopaspects.test;
+
+import java.util.Arrays;
+
+/**
+ * long 键到 long 计数的开放定址哈希表，线性探测，不装箱。
+ * 非线程安全，调用边计数由各线程私有的实例完成。
+ */
+final class LongCountMap {
+    private static final long EMPTY = Long.MIN_VALUE;            /* 空槽标记，合法的边键不会取到 */
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    LongCountMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected * 2, 16) - 1) << 1;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void add(long key, long delta) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                counts[i] += delta;
+                return;
+            }
+            if (k == EMPTY) {
+                keys[i] = key;
+                counts[i] = delta;
+                if (++size * 2 > keys.length) {                          /* 装载因子超过 0.5 时扩容 */
+                    grow();
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    void addAll(LongCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * 依次把非空槽的键和计数交给 visitor
+     */
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    interface Visitor {
+        void visit(long key, long count);
+    }
+}
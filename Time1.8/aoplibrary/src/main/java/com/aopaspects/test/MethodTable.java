@@ -0,0 +1,52 @@
+package com.aopaspects.test;
+
+import org.aspectj.lang.JoinPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把函数签名驻留为整数编号，每个织入点只在第一次执行时生成一次签名字符串。
+ * 编号 0 保留给调用栈的根。
+ */
+final class MethodTable {
+    static final int ROOT = 0;
+
+    private final ConcurrentHashMap<JoinPoint.StaticPart, Integer> ids =
+            new ConcurrentHashMap<JoinPoint.StaticPart, Integer>();
+    private final ConcurrentHashMap<String, Integer> idsByName = new ConcurrentHashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+
+    MethodTable() {
+        names.add("");
+    }
+
+    /**
+     * 无竞争时只有一次 ConcurrentHashMap 读，不加锁也不分配对象
+     */
+    int idOf(JoinPoint.StaticPart site, String filter) {
+        Integer id = ids.get(site);
+        if (id != null) {
+            return id;
+        }
+        String name = "\"" + site.getSignature().toString().replace(filter, "") + "\"";
+        synchronized (this) {
+            id = idsByName.get(name);                                  /* 同一签名可能对应多个织入点 */
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                idsByName.put(name, id);
+            }
+        }
+        ids.put(site, id);
+        return id;
+    }
+
+    /**
+     * @return 当前全部签名的快照，下标即编号
+     */
+    synchronized String[] snapshot() {
+        return names.toArray(new String[names.size()]);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.provider;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.android.apps.muzei.api.MuzeiContract;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the artwork files cached by {@link MuzeiProvider} in a table of its own (file
+ * name, size, last access, source and whether it is pinned), so that deciding what to evict is a
+ * matter of a few indexed queries rather than a walk over the whole artwork history.
+ *
+ * <p>Artwork rows reference their file through the memoized {@link #COLUMN_NAME_FILE_NAME}
+ * column. Evicting a file deletes every artwork row that references it.
+ */
+class ArtworkCacheManager {
+    private static final String TAG = "ArtworkCacheManager";
+
+    static final String TABLE_NAME = "artwork_cache_files";
+    /**
+     * Name of the file in the artwork directory. Also memoized in each artwork row.
+     */
+    static final String COLUMN_NAME_FILE_NAME = "file_name";
+    static final String COLUMN_NAME_SOURCE_COMPONENT_NAME = "source_component_name";
+    static final String COLUMN_NAME_SIZE = "size";
+    static final String COLUMN_NAME_LAST_ACCESSED = "last_accessed";
+    /**
+     * Whether the artwork has a persisted permission and must never be evicted.
+     */
+    static final String COLUMN_NAME_PINNED = "pinned";
+
+    /**
+     * Maximum number of previous artwork to keep per source, in addition to the latest one and
+     * with the exception of artwork that has a persisted permission.
+     */
+    private static final int MAX_CACHE_SIZE = 10;
+    /**
+     * Maximum number of bytes of artwork to keep across all sources. The latest artwork of each
+     * source and artwork that has a persisted permission are kept regardless.
+     */
+    private static final long MAX_CACHE_BYTES = 100 * 1024 * 1024;
+
+    private final SQLiteOpenHelper databaseHelper;
+    private final File directory;
+
+    ArtworkCacheManager(SQLiteOpenHelper databaseHelper, File directory) {
+        this.databaseHelper = databaseHelper;
+        this.directory = directory;
+    }
+
+    static void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + COLUMN_NAME_FILE_NAME + " TEXT UNIQUE NOT NULL,"
+                + COLUMN_NAME_SOURCE_COMPONENT_NAME + " TEXT,"
+                + COLUMN_NAME_SIZE + " INTEGER,"
+                + COLUMN_NAME_LAST_ACCESSED + " INTEGER,"
+                + COLUMN_NAME_PINNED + " INTEGER DEFAULT 0);");
+        db.execSQL("CREATE INDEX " + TABLE_NAME + "_source_index ON " + TABLE_NAME + " ("
+                + COLUMN_NAME_SOURCE_COMPONENT_NAME + ","
+                + COLUMN_NAME_PINNED + ","
+                + COLUMN_NAME_LAST_ACCESSED + ");");
+        db.execSQL("CREATE INDEX " + TABLE_NAME + "_last_accessed_index ON " + TABLE_NAME + " ("
+                + COLUMN_NAME_PINNED + ","
+                + COLUMN_NAME_LAST_ACCESSED + ");");
+    }
+
+    /**
+     * Records a newly written artwork file, or a new artwork row reusing an existing file. The
+     * file is attributed to the source of the latest artwork referencing it.
+     */
+    void recordFile(String fileName, long size) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        String[] selectionArgs = new String[] { fileName };
+        Cursor artwork = db.query(MuzeiContract.Artwork.TABLE_NAME,
+                new String[] {MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME},
+                COLUMN_NAME_FILE_NAME + "=?", selectionArgs, null, null,
+                MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + " DESC", "1");
+        String sourceComponentName = artwork.moveToFirst() ? artwork.getString(0) : null;
+        artwork.close();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME_FILE_NAME, fileName);
+        values.put(COLUMN_NAME_SOURCE_COMPONENT_NAME, sourceComponentName);
+        values.put(COLUMN_NAME_SIZE, size);
+        values.put(COLUMN_NAME_LAST_ACCESSED, System.currentTimeMillis());
+        if (db.update(TABLE_NAME, values, COLUMN_NAME_FILE_NAME + "=?", selectionArgs) == 0) {
+            db.insert(TABLE_NAME, null, values);
+        }
+    }
+
+    /**
+     * Marks the given artwork file as just read, moving it to the back of the eviction order.
+     */
+    void touch(String fileName) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME_LAST_ACCESSED, System.currentTimeMillis());
+        databaseHelper.getWritableDatabase().update(TABLE_NAME, values,
+                COLUMN_NAME_FILE_NAME + "=?", new String[] { fileName });
+    }
+
+    /**
+     * Deletes those of the given files that no artwork row references anymore.
+     */
+    void deleteUnreferencedFiles(Collection<String> fileNames) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        for (String fileName : fileNames) {
+            String[] selectionArgs = new String[] { fileName };
+            if (DatabaseUtils.queryNumEntries(db, MuzeiContract.Artwork.TABLE_NAME,
+                    COLUMN_NAME_FILE_NAME + "=?", selectionArgs) > 0) {
+                continue;
+            }
+            File file = new File(directory, fileName);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Unable to delete " + file);
+                continue;
+            }
+            db.delete(TABLE_NAME, COLUMN_NAME_FILE_NAME + "=?", selectionArgs);
+        }
+    }
+
+    /**
+     * Evicts artwork beyond {@link #MAX_CACHE_SIZE} per source, least recently accessed first,
+     * and then beyond {@link #MAX_CACHE_BYTES} overall.
+     *
+     * @param persistedUris artwork URIs with a persisted permission, which are never evicted
+     * @return the number of artwork rows deleted
+     */
+    int evict(Set<Uri> persistedUris) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        updatePinned(db, persistedUris);
+        // Files whose artwork rows are already gone, for instance through their source
+        // being deleted
+        List<String> orphanedFiles = queryStrings(db, "SELECT " + COLUMN_NAME_FILE_NAME
+                + " FROM " + TABLE_NAME + " WHERE NOT EXISTS (SELECT 1 FROM "
+                + MuzeiContract.Artwork.TABLE_NAME + " WHERE "
+                + MuzeiContract.Artwork.TABLE_NAME + "." + COLUMN_NAME_FILE_NAME + "="
+                + TABLE_NAME + "." + COLUMN_NAME_FILE_NAME + ")", null);
+        deleteUnreferencedFiles(orphanedFiles);
+        // Artwork that never got its file written, other than the latest one of each source
+        // which may still be downloading. A row without a file name is still being inserted.
+        int numDeleted = db.delete(MuzeiContract.Artwork.TABLE_NAME,
+                COLUMN_NAME_FILE_NAME + " IS NOT NULL AND NOT EXISTS (SELECT 1 FROM "
+                + TABLE_NAME + " WHERE " + TABLE_NAME + "." + COLUMN_NAME_FILE_NAME + "="
+                + MuzeiContract.Artwork.TABLE_NAME + "." + COLUMN_NAME_FILE_NAME + ")"
+                + " AND NOT " + isLatestFileOfSource(MuzeiContract.Artwork.TABLE_NAME), null);
+
+        List<String> sources = queryStrings(db, "SELECT DISTINCT "
+                + COLUMN_NAME_SOURCE_COMPONENT_NAME + " FROM " + TABLE_NAME, null);
+        for (String source : sources) {
+            List<String> expiredFiles = queryStrings(db, "SELECT " + COLUMN_NAME_FILE_NAME
+                    + " FROM " + TABLE_NAME
+                    + " WHERE " + COLUMN_NAME_SOURCE_COMPONENT_NAME + "=?"
+                    + " AND " + COLUMN_NAME_PINNED + "=0"
+                    + " AND NOT " + isLatestFileOfSource(TABLE_NAME)
+                    + " ORDER BY " + COLUMN_NAME_LAST_ACCESSED + " DESC"
+                    + " LIMIT -1 OFFSET " + MAX_CACHE_SIZE, new String[] { source });
+            int deleted = evictFiles(db, expiredFiles);
+            if (deleted > 0) {
+                Log.d(TAG, "For " + source + " deleted " + deleted + " artwork");
+            }
+            numDeleted += deleted;
+        }
+
+        long totalBytes = DatabaseUtils.longForQuery(db, "SELECT IFNULL(SUM("
+                + COLUMN_NAME_SIZE + "),0) FROM " + TABLE_NAME, null);
+        if (totalBytes > MAX_CACHE_BYTES) {
+            List<String> oversizedFiles = new ArrayList<>();
+            Cursor data = db.rawQuery("SELECT " + COLUMN_NAME_FILE_NAME + "," + COLUMN_NAME_SIZE
+                    + " FROM " + TABLE_NAME
+                    + " WHERE " + COLUMN_NAME_PINNED + "=0"
+                    + " AND NOT " + isLatestFileOfSource(TABLE_NAME)
+                    + " ORDER BY " + COLUMN_NAME_LAST_ACCESSED, null);
+            while (totalBytes > MAX_CACHE_BYTES && data.moveToNext()) {
+                oversizedFiles.add(data.getString(0));
+                totalBytes -= data.getLong(1);
+            }
+            data.close();
+            int deleted = evictFiles(db, oversizedFiles);
+            if (deleted > 0) {
+                Log.d(TAG, "Over " + MAX_CACHE_BYTES + " bytes, deleted " + deleted + " artwork");
+            }
+            numDeleted += deleted;
+        }
+        return numDeleted;
+    }
+
+    /**
+     * @return a condition on rows of the given table, true if their file is referenced by the
+     * most recently added artwork of its source. Unlike a NOT IN over those files, its negation
+     * isn't defeated by a NULL file name.
+     */
+    private static String isLatestFileOfSource(String table) {
+        return "EXISTS (SELECT 1 FROM " + MuzeiContract.Artwork.TABLE_NAME + " AS latest WHERE "
+                + "latest." + COLUMN_NAME_FILE_NAME + "=" + table + "." + COLUMN_NAME_FILE_NAME
+                + " AND latest." + MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + "=(SELECT MAX("
+                + MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + ") FROM "
+                + MuzeiContract.Artwork.TABLE_NAME + " WHERE "
+                + MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + "=latest."
+                + MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + "))";
+    }
+
+    private static void updatePinned(SQLiteDatabase db, Set<Uri> persistedUris) {
+        List<String> persistedIds = new ArrayList<>();
+        for (Uri persistedUri : persistedUris) {
+            try {
+                persistedIds.add(Long.toString(ContentUris.parseId(persistedUri)));
+            } catch (NumberFormatException | UnsupportedOperationException e) {
+                Log.w(TAG, "Ignoring invalid persisted URI " + persistedUri);
+            }
+        }
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME_PINNED, 0);
+            db.update(TABLE_NAME, values, COLUMN_NAME_PINNED + "=1", null);
+            if (!persistedIds.isEmpty()) {
+                db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_NAME_PINNED + "=1"
+                        + " WHERE " + COLUMN_NAME_FILE_NAME + " IN (SELECT "
+                        + COLUMN_NAME_FILE_NAME + " FROM " + MuzeiContract.Artwork.TABLE_NAME
+                        + " WHERE " + BaseColumns._ID + " IN ("
+                        + TextUtils.join(",", persistedIds) + "))");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private int evictFiles(SQLiteDatabase db, List<String> fileNames) {
+        if (fileNames.isEmpty()) {
+            return 0;
+        }
+        int numDeleted = 0;
+        db.beginTransaction();
+        try {
+            for (String fileName : fileNames) {
+                numDeleted += db.delete(MuzeiContract.Artwork.TABLE_NAME,
+                        COLUMN_NAME_FILE_NAME + "=?", new String[] { fileName });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        deleteUnreferencedFiles(fileNames);
+        return numDeleted;
+    }
+
+    private static List<String> queryStrings(SQLiteDatabase db, String sql,
+            String[] selectionArgs) {
+        List<String> values = new ArrayList<>();
+        Cursor data = db.rawQuery(sql, selectionArgs);
+        while (data.moveToNext()) {
+            values.add(data.getString(0));
+        }
+        data.close();
+        return values;
+    }
+}
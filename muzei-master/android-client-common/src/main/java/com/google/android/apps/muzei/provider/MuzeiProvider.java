@@ -56,11 +56,17 @@ import java.net.URISyntaxException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides access to a the most recent artwork
@@ -68,11 +74,17 @@ import java.util.Set;
 public class MuzeiProvider extends ContentProvider {
     private static final String TAG = "MuzeiProvider";
     /**
-     * Maximum number of previous artwork to keep per source, with the exception of artwork that
-     * has a persisted permission.
+     * How long to wait after an artwork write for others before cleaning up, so that a burst of
+     * writes only triggers a single cleanup.
      * @see #cleanupCachedFiles
      */
-    private static final int MAX_CACHE_SIZE = 10;
+    private static final long CLEANUP_DELAY_MILLIS = 1000;
+    /**
+     * Maximum number of artwork downloaded ahead of being published.
+     * @see #getPrefetchFile
+     */
+    private static final int MAX_PREFETCH_SIZE = 3;
+    private static final String PREFETCH_DIRECTORY = "artwork_prefetch";
     /**
      * The incoming URI matches the ARTWORK URI pattern
      */
@@ -96,7 +108,7 @@ public class MuzeiProvider extends ContentProvider {
     /**
      * The database version
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 4;
     /**
      * A UriMatcher instance
      */
@@ -116,6 +128,19 @@ public class MuzeiProvider extends ContentProvider {
      * Handle to a new DatabaseHelper.
      */
     private DatabaseHelper databaseHelper;
+    /**
+     * Tracks the cached artwork files and decides which ones to evict
+     */
+    private ArtworkCacheManager cacheManager;
+    /**
+     * Runs cache cleanups off the binder and main threads
+     */
+    private final ScheduledExecutorService cleanupExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    /**
+     * Whether a cleanup is already scheduled and will pick up any newly written artwork
+     */
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
     /**
      * Whether we should hold notifyChange() calls due to an ongoing applyBatch operation
      */
@@ -303,85 +328,20 @@ public class MuzeiProvider extends ContentProvider {
                 finalWhere = finalWhere + " AND " + selection;
         }
         // We can't just simply delete the rows as that won't free up the space occupied by the
-        // artwork image files associated with each row being deleted. Instead we have to query
-        // and manually delete each artwork file
-        String[] projection = new String[] {
-                MuzeiContract.Artwork.TABLE_NAME + "." + BaseColumns._ID,
-                MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI,
-                MuzeiContract.Artwork.COLUMN_NAME_TOKEN};
-        Cursor rowsToDelete = queryArtwork(uri, projection, finalWhere, selectionArgs,
-                MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI);
-        if (rowsToDelete == null) {
-            return 0;
-        }
-        // First we build a list of IDs to be deleted. This will be used if we need to determine
-        // if a given image URI needs to be deleted
-        List<String> idsToDelete = new ArrayList<>();
-        rowsToDelete.moveToFirst();
-        while (!rowsToDelete.isAfterLast()) {
-            idsToDelete.add(Long.toString(rowsToDelete.getLong(0)));
-            rowsToDelete.moveToNext();
-        }
-        String notInDeleteIds = MuzeiContract.Artwork.TABLE_NAME + "." + BaseColumns._ID +
-                " NOT IN (" + TextUtils.join(",", idsToDelete) + ")";
-        // Now we actually go through the list of rows to be deleted
-        // and check if we can delete the artwork image file associated with each one
-        rowsToDelete.moveToFirst();
-        while (!rowsToDelete.isAfterLast()) {
-            Uri artworkUri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI,
-                    rowsToDelete.getLong(0));
-            String imageUri = rowsToDelete.getString(1);
-            String token = rowsToDelete.getString(2);
-            if (TextUtils.isEmpty(imageUri) && TextUtils.isEmpty(token)) {
-                // An empty image URI and token means the artwork is unique to this specific row
-                // so we can always delete it when the associated row is deleted
-                File artwork = getCacheFileForArtworkUri(artworkUri);
-                if (artwork != null && artwork.exists()) {
-                    artwork.delete();
-                }
-            } else if (TextUtils.isEmpty(imageUri)) {
-                // Check if there are other rows using this same token that aren't
-                // in the list of ids to delete
-                Cursor otherArtwork = queryArtwork(MuzeiContract.Artwork.CONTENT_URI,
-                        new String[] {MuzeiContract.Artwork.TABLE_NAME + "." + BaseColumns._ID},
-                        MuzeiContract.Artwork.COLUMN_NAME_TOKEN + "=? AND " + notInDeleteIds,
-                        new String[] { token }, null);
-                if (otherArtwork == null) {
-                    continue;
-                }
-                if (otherArtwork.getCount() == 0) {
-                    // There's no non-deleted rows that reference this same artwork URI
-                    // so we can delete the artwork
-                    File artwork = getCacheFileForArtworkUri(artworkUri);
-                    if (artwork != null && artwork.exists()) {
-                        artwork.delete();
-                    }
-                }
-                otherArtwork.close();
-            } else {
-                // Check if there are other rows using this same image URI that aren't
-                // in the list of ids to delete
-                Cursor otherArtwork = queryArtwork(MuzeiContract.Artwork.CONTENT_URI,
-                        new String[] {MuzeiContract.Artwork.TABLE_NAME + "." + BaseColumns._ID},
-                        MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI + "=? AND " + notInDeleteIds,
-                        new String[] { imageUri }, null);
-                if (otherArtwork == null) {
-                    continue;
-                }
-                if (otherArtwork.getCount() == 0) {
-                    // There's no non-deleted rows that reference this same artwork URI
-                    // so we can delete the artwork
-                    File artwork = getCacheFileForArtworkUri(artworkUri);
-                    if (artwork != null && artwork.exists()) {
-                        artwork.delete();
-                    }
-                }
-                otherArtwork.close();
+        // artwork image files associated with each row being deleted. Instead we collect their
+        // file names and delete the files that no remaining row references afterwards
+        List<String> fileNames = new ArrayList<>();
+        Cursor rowsToDelete = db.query(true, MuzeiContract.Artwork.TABLE_NAME,
+                new String[] {ArtworkCacheManager.COLUMN_NAME_FILE_NAME},
+                finalWhere, selectionArgs, null, null, null, null);
+        while (rowsToDelete.moveToNext()) {
+            if (!rowsToDelete.isNull(0)) {
+                fileNames.add(rowsToDelete.getString(0));
             }
-            rowsToDelete.moveToNext();
         }
         rowsToDelete.close();
         int count = db.delete(MuzeiContract.Artwork.TABLE_NAME, finalWhere, selectionArgs);
+        cacheManager.deleteUnreferencedFiles(fileNames);
         if (count > 0) {
             notifyChange(uri);
         }
@@ -536,12 +496,29 @@ public class MuzeiProvider extends ContentProvider {
         }
 
         values.put(MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED, System.currentTimeMillis());
+        // The file name is memoized in the row so that it never has to be derived again
+        String imageUri = values.getAsString(MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI);
+        String token = values.getAsString(MuzeiContract.Artwork.COLUMN_NAME_TOKEN);
+        boolean uniqueArtwork = TextUtils.isEmpty(imageUri) && TextUtils.isEmpty(token);
+        if (uniqueArtwork) {
+            // Named after the row ID, which is only known after the insert
+            values.remove(ArtworkCacheManager.COLUMN_NAME_FILE_NAME);
+        } else {
+            values.put(ArtworkCacheManager.COLUMN_NAME_FILE_NAME,
+                    getArtworkFileName(null, imageUri, token));
+        }
         final SQLiteDatabase db = databaseHelper.getWritableDatabase();
         long rowId = db.insert(MuzeiContract.Artwork.TABLE_NAME,
                 MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI, values);
         // If the insert succeeded, the row ID exists.
         if (rowId > 0)
         {
+            if (uniqueArtwork) {
+                ContentValues fileNameValues = new ContentValues();
+                fileNameValues.put(ArtworkCacheManager.COLUMN_NAME_FILE_NAME, Long.toString(rowId));
+                db.update(MuzeiContract.Artwork.TABLE_NAME, fileNameValues,
+                        BaseColumns._ID + "=" + rowId, null);
+            }
             // Creates a URI with the artwork ID pattern and the new row ID appended to it.
             final Uri artworkUri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI, rowId);
             File artwork = getCacheFileForArtworkUri(artworkUri);
@@ -549,6 +526,7 @@ public class MuzeiProvider extends ContentProvider {
                 // The image already exists so we'll notifyChange() to say the new artwork is ready
                 // Otherwise, this will be called when the file is written with openFile()
                 // using this Uri and the actual artwork is written successfully
+                cacheManager.recordFile(artwork.getName(), artwork.length());
                 notifyChange(artworkUri);
             }
             return artworkUri;
@@ -629,6 +607,8 @@ public class MuzeiProvider extends ContentProvider {
     public boolean onCreate() {
         openFileHandler = new Handler();
         databaseHelper = new DatabaseHelper(getContext());
+        cacheManager = new ArtworkCacheManager(databaseHelper,
+                new File(getContext().getFilesDir(), "artwork"));
         // Schedule a job that will update the latest artwork in the Direct Boot cache directory
         // whenever the artwork changes
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
@@ -763,6 +743,13 @@ public class MuzeiProvider extends ContentProvider {
         if (file == null) {
             throw new FileNotFoundException("Could not create artwork file");
         }
+        if (isWriteOperation && !file.exists() && adoptPrefetchedFile(file)) {
+            // The artwork was downloaded ahead of time, so it is ready right away
+            cacheManager.recordFile(file.getName(), file.length());
+            notifyChange(uri);
+            cleanupCachedFiles();
+            return null;
+        }
         if (file.exists() && file.length() > 0 && isWriteOperation) {
             Context context = getContext();
             if (context == null) {
@@ -774,6 +761,9 @@ public class MuzeiProvider extends ContentProvider {
             cleanupCachedFiles();
             return null;
         }
+        if (!isWriteOperation && UserManagerCompat.isUserUnlocked(getContext())) {
+            cacheManager.touch(file.getName());
+        }
         try {
             return ParcelFileDescriptor.open(file, ParcelFileDescriptor.parseMode(mode), openFileHandler,
                     new ParcelFileDescriptor.OnCloseListener() {
@@ -789,6 +779,7 @@ public class MuzeiProvider extends ContentProvider {
                                     }
                                 } else {
                                     // The file was successfully written, notify listeners of the new artwork
+                                    cacheManager.recordFile(file.getName(), file.length());
                                     notifyChange(uri);
                                     cleanupCachedFiles();
                                 }
@@ -811,23 +802,38 @@ public class MuzeiProvider extends ContentProvider {
         if (!directory.exists() && !directory.mkdirs()) {
             return null;
         }
-        String[] projection = { BaseColumns._ID, MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI,
-                MuzeiContract.Artwork.COLUMN_NAME_TOKEN };
-        Cursor data = queryArtwork(artworkUri, projection, null, null, null);
-        if (data == null) {
-            return null;
-        }
-        if (!data.moveToFirst()) {
+        String id;
+        if (MuzeiProvider.uriMatcher.match(artworkUri) == ARTWORK_ID) {
+            id = artworkUri.getLastPathSegment();
+        } else {
+            Cursor data = queryArtwork(artworkUri, new String[] { BaseColumns._ID },
+                    null, null, null);
+            if (data == null) {
+                return null;
+            }
+            // While normally we'd use data.getLong(), we need this as a String so the automatic conversion helps here
+            id = data.moveToFirst() ? data.getString(0) : null;
+            data.close();
+        }
+        String fileName = null;
+        if (id != null) {
+            Cursor data = databaseHelper.getReadableDatabase().query(
+                    MuzeiContract.Artwork.TABLE_NAME,
+                    new String[] { ArtworkCacheManager.COLUMN_NAME_FILE_NAME },
+                    BaseColumns._ID + "=?", new String[] { id }, null, null, null);
+            fileName = data.moveToFirst() ? data.getString(0) : null;
+            data.close();
+        }
+        if (fileName == null) {
             Log.e(TAG, "Invalid artwork URI " + artworkUri);
             return null;
         }
-        // While normally we'd use data.getLong(), we later need this as a String so the automatic conversion helps here
-        String id = data.getString(0);
-        String imageUri = data.getString(1);
-        String token = data.getString(2);
-        data.close();
+        return new File(directory, fileName);
+    }
+
+    private static String getArtworkFileName(String id, String imageUri, String token) {
         if (TextUtils.isEmpty(imageUri) && TextUtils.isEmpty(token)) {
-            return new File(directory, id);
+            return id;
         }
         // Otherwise, create a unique filename based on the imageUri and token
         StringBuilder filename = new StringBuilder();
@@ -861,89 +867,92 @@ public class MuzeiProvider extends ContentProvider {
         } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
             filename.append(unique.hashCode());
         }
-        return new File(directory, filename.toString());
+        return filename.toString();
     }
 
     /**
-     * Limit the number of cached files per art source to {@link #MAX_CACHE_SIZE}.
-     * @see #MAX_CACHE_SIZE
+     * Returns where artwork that a source has announced as upcoming should be downloaded to.
+     * When artwork with the same image URI is published later, the file is moved into place
+     * instead of being downloaded again. At most {@link #MAX_PREFETCH_SIZE} files are kept.
+     *
+     * @return the file to write, or null if the prefetch directory can't be created
      */
-    private void cleanupCachedFiles() {
+    public static File getPrefetchFile(Context context, String imageUri) {
+        File directory = new File(context.getFilesDir(), PREFETCH_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            return null;
+        }
+        return new File(directory, getArtworkFileName(null, imageUri, null));
+    }
+
+    /**
+     * Moves a prefetched copy of the given artwork file into place, if there is one.
+     */
+    private boolean adoptPrefetchedFile(File file) {
         Context context = getContext();
         if (context == null) {
-            return;
+            return false;
         }
-        Cursor sources = querySource(MuzeiContract.Sources.CONTENT_URI,
-                new String[] {MuzeiContract.Sources.COLUMN_NAME_COMPONENT_NAME},
-                null, null, null);
-        if (sources == null) {
+        File prefetchedFile = new File(new File(context.getFilesDir(), PREFETCH_DIRECTORY),
+                file.getName());
+        return prefetchedFile.exists() && prefetchedFile.length() > 0
+                && prefetchedFile.renameTo(file);
+    }
+
+    /**
+     * Keeps only the {@link #MAX_PREFETCH_SIZE} most recently prefetched files.
+     */
+    private void cleanupPrefetchedFiles(Context context) {
+        File[] files = new File(context.getFilesDir(), PREFETCH_DIRECTORY).listFiles();
+        if (files == null || files.length <= MAX_PREFETCH_SIZE) {
             return;
         }
-        // Access to certain artwork can be persisted through MuzeiDocumentsProvider
-        // We never want to delete these artwork as that would break other apps
-        Set<Uri> persistedUris = MuzeiDocumentsProvider.getPersistedArtworkUris(context);
-        // Loop through each source, cleaning up old artwork
-        while (sources.moveToNext()) {
-            String componentName = sources.getString(0);
-            // Now use that ComponentName to look through the past artwork from that source
-            Cursor artworkBySource = queryArtwork(MuzeiContract.Artwork.CONTENT_URI,
-                    new String[] {BaseColumns._ID, MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI,
-                        MuzeiContract.Artwork.COLUMN_NAME_TOKEN},
-                    MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + "=?",
-                    new String[] {componentName},
-                    MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + " DESC");
-            if (artworkBySource == null) {
-                continue;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified > rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
             }
-            List<String> artworkIdsToKeep = new ArrayList<>();
-            List<String> artworkToKeep = new ArrayList<>();
-            // First find all of the persisted artwork from this source and mark them as artwork to keep
-            while (artworkBySource.moveToNext()) {
-                long id = artworkBySource.getLong(0);
-                Uri uri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI, id);
-                String artworkUri = artworkBySource.getString(1);
-                String artworkToken = artworkBySource.getString(2);
-                String unique = !TextUtils.isEmpty(artworkUri) ? artworkUri : artworkToken;
-                if (persistedUris.contains(uri)) {
-                    // Always keep artwork that is persisted
-                    artworkIdsToKeep.add(Long.toString(id));
-                    artworkToKeep.add(unique);
-                }
+        });
+        for (int i = MAX_PREFETCH_SIZE; i < files.length; i++) {
+            if (!files[i].delete()) {
+                Log.w(TAG, "Unable to delete " + files[i]);
             }
-            // Now go through the artwork from this source and find the most recent artwork
-            // and mark them as artwork to keep
-            int count = 0;
-            artworkBySource.moveToPosition(-1);
-            while (artworkBySource.moveToNext()) {
-                // BaseColumns._ID is a long, but we need it as a String later anyways
-                String id = artworkBySource.getString(0);
-                String artworkUri = artworkBySource.getString(1);
-                String artworkToken = artworkBySource.getString(2);
-                String unique = !TextUtils.isEmpty(artworkUri) ? artworkUri : artworkToken;
-                if (artworkToKeep.contains(unique)) {
-                    // This ensures we are double counting the same artwork in our count
-                    artworkIdsToKeep.add(id);
-                    continue;
+        }
+    }
+
+    /**
+     * Schedules evicting old artwork through the {@link ArtworkCacheManager} and limiting the
+     * number of prefetched files to {@link #MAX_PREFETCH_SIZE}. Calls made while a cleanup is
+     * already scheduled are folded into it.
+     * @see #CLEANUP_DELAY_MILLIS
+     */
+    private void cleanupCachedFiles() {
+        if (!cleanupScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        cleanupExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                cleanupScheduled.set(false);
+                Context context = getContext();
+                if (context == null) {
+                    return;
                 }
-                if (count++ < MAX_CACHE_SIZE) {
-                    // Keep artwork below the MAX_CACHE_SIZE
-                    artworkIdsToKeep.add(id);
-                    artworkToKeep.add(unique);
+                try {
+                    // Access to certain artwork can be persisted through MuzeiDocumentsProvider
+                    // We never want to delete these artwork as that would break other apps
+                    Set<Uri> persistedUris = MuzeiDocumentsProvider.getPersistedArtworkUris(context);
+                    if (cacheManager.evict(persistedUris) > 0) {
+                        notifyChange(MuzeiContract.Artwork.CONTENT_URI);
+                    }
+                } catch (SQLException e) {
+                    Log.e(TAG, "Error cleaning up cached artwork", e);
                 }
+                cleanupPrefetchedFiles(context);
             }
-            // Now delete all artwork not in the keep list
-            int numDeleted = deleteArtwork(MuzeiContract.Artwork.CONTENT_URI,
-                    MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + "=?"
-                    + " AND " + MuzeiContract.Artwork.TABLE_NAME + "." + BaseColumns._ID
-                    + " NOT IN (" + TextUtils.join(",", artworkIdsToKeep) + ")",
-                    new String[] {componentName});
-            if (numDeleted > 0) {
-                Log.d(TAG, "For " + componentName + " kept " + artworkToKeep.size()
-                        + " artwork, deleted " + numDeleted);
-            }
-            artworkBySource.close();
-        }
-        sources.close();
+        }, CLEANUP_DELAY_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -1006,6 +1015,8 @@ public class MuzeiProvider extends ContentProvider {
      * This class helps open, create, and upgrade the database file.
      */
     static class DatabaseHelper extends SQLiteOpenHelper {
+        private final Context context;
+
         /**
          * Creates a new DatabaseHelper
          *
@@ -1013,6 +1024,7 @@ public class MuzeiProvider extends ContentProvider {
          */
         DatabaseHelper(final Context context) {
             super(context, MuzeiProvider.DATABASE_NAME, null, MuzeiProvider.DATABASE_VERSION);
+            this.context = context;
         }
 
         /**
@@ -1039,10 +1051,58 @@ public class MuzeiProvider extends ContentProvider {
                     + MuzeiContract.Artwork.COLUMN_NAME_META_FONT + " TEXT,"
                     + MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + " INTEGER,"
                     + MuzeiContract.Artwork.COLUMN_NAME_VIEW_INTENT + " TEXT,"
+                    + ArtworkCacheManager.COLUMN_NAME_FILE_NAME + " TEXT,"
                     + " CONSTRAINT fk_source_artwork FOREIGN KEY ("
                     + MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + ") REFERENCES "
                     + MuzeiContract.Sources.TABLE_NAME + " ("
                     + MuzeiContract.Sources.COLUMN_NAME_COMPONENT_NAME + ") ON DELETE CASCADE);");
+            createArtworkIndices(db);
+            ArtworkCacheManager.onCreate(db);
+        }
+
+        private static void createArtworkIndices(final SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX artwork_file_name_index ON "
+                    + MuzeiContract.Artwork.TABLE_NAME + " ("
+                    + ArtworkCacheManager.COLUMN_NAME_FILE_NAME + ");");
+            db.execSQL("CREATE INDEX artwork_source_date_added_index ON "
+                    + MuzeiContract.Artwork.TABLE_NAME + " ("
+                    + MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME + ","
+                    + MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED + ");");
+        }
+
+        /**
+         * Memoizes the file name of every existing artwork row and registers the files that are
+         * already cached, oldest first so that shared files end up with their latest source.
+         */
+        private void migrateCachedFiles(final SQLiteDatabase db) {
+            File directory = new File(context.getFilesDir(), "artwork");
+            Cursor artwork = db.query(MuzeiContract.Artwork.TABLE_NAME,
+                    new String[] {BaseColumns._ID, MuzeiContract.Artwork.COLUMN_NAME_IMAGE_URI,
+                            MuzeiContract.Artwork.COLUMN_NAME_TOKEN,
+                            MuzeiContract.Artwork.COLUMN_NAME_SOURCE_COMPONENT_NAME,
+                            MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED},
+                    null, null, null, null, MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED);
+            while (artwork.moveToNext()) {
+                String id = artwork.getString(0);
+                String fileName = getArtworkFileName(id, artwork.getString(1), artwork.getString(2));
+                ContentValues values = new ContentValues();
+                values.put(ArtworkCacheManager.COLUMN_NAME_FILE_NAME, fileName);
+                db.update(MuzeiContract.Artwork.TABLE_NAME, values,
+                        BaseColumns._ID + "=?", new String[] { id });
+                File file = new File(directory, fileName);
+                if (file.exists()) {
+                    ContentValues fileValues = new ContentValues();
+                    fileValues.put(ArtworkCacheManager.COLUMN_NAME_FILE_NAME, fileName);
+                    fileValues.put(ArtworkCacheManager.COLUMN_NAME_SOURCE_COMPONENT_NAME,
+                            artwork.getString(3));
+                    fileValues.put(ArtworkCacheManager.COLUMN_NAME_SIZE, file.length());
+                    fileValues.put(ArtworkCacheManager.COLUMN_NAME_LAST_ACCESSED,
+                            artwork.getLong(4));
+                    db.insertWithOnConflict(ArtworkCacheManager.TABLE_NAME, null, fileValues,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+            artwork.close();
         }
 
         /**
@@ -1055,6 +1115,12 @@ public class MuzeiProvider extends ContentProvider {
                 // at this point anyways so we'll wipe and recreate the artwork table
                 db.execSQL("DROP TABLE " + MuzeiContract.Artwork.TABLE_NAME);
                 onCreate(db);
+            } else if (oldVersion < 4) {
+                db.execSQL("ALTER TABLE " + MuzeiContract.Artwork.TABLE_NAME + " ADD COLUMN "
+                        + ArtworkCacheManager.COLUMN_NAME_FILE_NAME + " TEXT");
+                createArtworkIndices(db);
+                ArtworkCacheManager.onCreate(db);
+                migrateCachedFiles(db);
             }
         }
     }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Process-wide pool of mutable bitmaps, so that decoding, scaling and rotating artwork reuses
+ * memory instead of allocating a new large bitmap every time.
+ *
+ * <p>Bitmaps are kept in size classes by allocation size (powers of two) and handed back out
+ * through {@link Bitmap#reconfigure}, so any released bitmap that is big enough can serve a
+ * request. {@link #acquire} and {@link #release} must be paired explicitly: a bitmap must not be
+ * used once it has been released. The pool never holds more than its byte budget; the least
+ * recently released bitmaps are recycled first.
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    // Largest size class, in log2 of bytes, that is worth pooling (256 MB)
+    private static final int MAX_SIZE_CLASS = 28;
+    // Fraction of the heap that the shared pool may keep
+    private static final int HEAP_FRACTION = 8;
+    // How much of a stream can be re-read if the decoder rejects the pooled bitmap; that
+    // happens while the header is parsed, long before the pixel data is read
+    private static final int DECODE_MARK_LIMIT = 64 * 1024;
+
+    private static BitmapPool sInstance;
+
+    private final long mMaxBytes;
+    private long mBytes;
+    private final List<List<Bitmap>> mSizeClasses = new ArrayList<>();
+    // Every pooled bitmap, least recently released first
+    private final LinkedHashSet<Bitmap> mLru = new LinkedHashSet<>();
+
+    private final Canvas mCanvas = new Canvas();
+    // Pooled bitmaps still hold their previous contents, so the copies replace every pixel
+    // (including translucent ones) instead of blending over them
+    private final Paint mFilterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mCopyPaint = new Paint();
+    private final Rect mTempRect = new Rect();
+    private final Matrix mTempMatrix = new Matrix();
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+        }
+        return sInstance;
+    }
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+        PorterDuffXfermode src = new PorterDuffXfermode(PorterDuff.Mode.SRC);
+        mFilterPaint.setXfermode(src);
+        mCopyPaint.setXfermode(src);
+        for (int i = 0; i <= MAX_SIZE_CLASS; i++) {
+            mSizeClasses.add(new ArrayList<Bitmap>());
+        }
+    }
+
+    /**
+     * @return a mutable bitmap of exactly the given size and config, reused from the pool if
+     * possible. Its contents are undefined.
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        long byteCount = (long) width * height * bytesPerPixel(config);
+        int sizeClass = sizeClass(byteCount);
+        // The next class up is allowed too, so a request never wastes more than 4x its size
+        for (int c = sizeClass; c <= Math.min(sizeClass + 1, MAX_SIZE_CLASS); c++) {
+            List<Bitmap> bitmaps = mSizeClasses.get(c);
+            for (int i = bitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = bitmaps.get(i);
+                if (bitmap.getAllocationByteCount() >= byteCount) {
+                    bitmaps.remove(i);
+                    mLru.remove(bitmap);
+                    mBytes -= bitmap.getAllocationByteCount();
+                    bitmap.reconfigure(width, height, config);
+                    bitmap.setHasAlpha(true);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. Bitmaps that can't be reused are recycled instead.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || mLru.contains(bitmap)) {
+            return;
+        }
+        int byteCount = bitmap.getAllocationByteCount();
+        int sizeClass = sizeClass(byteCount);
+        if (!bitmap.isMutable() || sizeClass > MAX_SIZE_CLASS || byteCount > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        mSizeClasses.get(sizeClass).add(bitmap);
+        mLru.add(bitmap);
+        mBytes += byteCount;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Recycles pooled bitmaps, least recently released first, until the pool holds at most
+     * {@code maxBytes}. Pass 0 to empty it, for example when the system is low on memory.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Bitmap> iterator = mLru.iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            mSizeClasses.get(sizeClass(bitmap.getAllocationByteCount())).remove(bitmap);
+            mBytes -= bitmap.getAllocationByteCount();
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Decodes a stream into a pooled bitmap. {@code options} must already hold the image size
+     * from an {@link BitmapFactory.Options#inJustDecodeBounds} pass and the sample size to use.
+     * If the pooled bitmap is rejected by the decoder, the stream is rewound and decoded once
+     * more into a newly allocated bitmap. Only the first {@value #DECODE_MARK_LIMIT} bytes are
+     * kept for that, rather than buffering the whole image.
+     *
+     * @return the decoded bitmap, or null if the image couldn't be decoded
+     */
+    public Bitmap decodeStream(InputStream in, BitmapFactory.Options options) {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        in.mark(DECODE_MARK_LIMIT);
+        int sampleSize = Math.max(1, options.inSampleSize);
+        // Rounded up, as decoders may round the sampled size either way
+        Bitmap inBitmap = acquire(
+                Math.max(1, MathUtil.intDivideRoundUp(options.outWidth, sampleSize)),
+                Math.max(1, MathUtil.intDivideRoundUp(options.outHeight, sampleSize)),
+                options.inPreferredConfig);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = inBitmap;
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Couldn't decode into a pooled bitmap, retrying without one", e);
+            options.inBitmap = null;
+            try {
+                in.reset();
+                bitmap = BitmapFactory.decodeStream(in, null, options);
+            } catch (IOException resetException) {
+                Log.w(TAG, "Couldn't rewind the stream", resetException);
+            }
+        } finally {
+            options.inBitmap = null;
+        }
+        if (bitmap != inBitmap) {
+            release(inBitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link Bitmap#createScaledBitmap}, but draws into a pooled bitmap. {@code src} is
+     * left untouched.
+     */
+    public Bitmap acquireScaled(Bitmap src, int width, int height) {
+        Bitmap dest = acquire(width, height, src.getConfig());
+        synchronized (mCanvas) {
+            mTempRect.set(0, 0, width, height);
+            mCanvas.setBitmap(dest);
+            mCanvas.drawBitmap(src, null, mTempRect, mFilterPaint);
+            mCanvas.setBitmap(null);
+        }
+        return dest;
+    }
+
+    /**
+     * Like {@link Bitmap#createBitmap(Bitmap, int, int, int, int, Matrix, boolean)} with a
+     * rotation of a multiple of 90 degrees, but draws into a pooled bitmap. {@code src} is
+     * left untouched.
+     */
+    public Bitmap acquireRotated(Bitmap src, int degrees) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        boolean swap = degrees == 90 || degrees == 270;
+        Bitmap dest = acquire(swap ? height : width, swap ? width : height, src.getConfig());
+        synchronized (mCanvas) {
+            mTempMatrix.setRotate(degrees);
+            switch (degrees) {
+                case 90:
+                    mTempMatrix.postTranslate(height, 0);
+                    break;
+                case 180:
+                    mTempMatrix.postTranslate(width, height);
+                    break;
+                case 270:
+                    mTempMatrix.postTranslate(0, width);
+                    break;
+            }
+            mCanvas.setBitmap(dest);
+            mCanvas.drawBitmap(src, mTempMatrix, mCopyPaint);
+            mCanvas.setBitmap(null);
+        }
+        return dest;
+    }
+
+    /**
+     * Like {@link Bitmap#createBitmap(Bitmap, int, int, int, int)}, but copies the region into a
+     * pooled bitmap. {@code src} is left untouched.
+     */
+    public Bitmap acquireCropped(Bitmap src, Rect region) {
+        Bitmap dest = acquire(region.width(), region.height(), src.getConfig());
+        synchronized (mCanvas) {
+            mTempRect.set(0, 0, region.width(), region.height());
+            mCanvas.setBitmap(dest);
+            mCanvas.drawBitmap(src, region, mTempRect, mCopyPaint);
+            mCanvas.setBitmap(null);
+        }
+        return dest;
+    }
+
+    private static int sizeClass(long byteCount) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(0, byteCount - 1));
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
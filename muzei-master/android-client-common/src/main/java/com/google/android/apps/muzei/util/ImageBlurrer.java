@@ -16,31 +16,32 @@
 
 package com.google.android.apps.muzei.util;
 
-import android.content.Context;
 import android.graphics.Bitmap;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.Matrix3f;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
-import android.renderscript.ScriptIntrinsicColorMatrix;
 
+/**
+ * Blurs and desaturates a bitmap on the CPU through {@link PixelBlurrer}. Blurred bitmaps come
+ * from {@link BitmapPool} and can be released to it when no longer needed.
+ */
 public class ImageBlurrer {
     public static final int MAX_SUPPORTED_BLUR_PIXELS = 25;
 
-    private final RenderScript mRS;
-    private final ScriptIntrinsicBlur mSIBlur;
-    private final ScriptIntrinsicColorMatrix mSIGrey;
     private final Bitmap mSourceBitmap;
-    private final Allocation mAllocationSrc;
-
-    public ImageBlurrer(Context context, Bitmap src) {
-        mRS = RenderScript.create(context);
-        mSIBlur = ScriptIntrinsicBlur.create(mRS, Element.U8_4(mRS));
-        mSIGrey = ScriptIntrinsicColorMatrix.create(mRS);
+    private final PixelBlurrer mPixelBlurrer;
+    private final int[] mPixels;
 
+    public ImageBlurrer(Bitmap src) {
         mSourceBitmap = src;
-        mAllocationSrc = src != null ? Allocation.createFromBitmap(mRS, src) : null;
+        if (src != null) {
+            int width = src.getWidth();
+            int height = src.getHeight();
+            int[] pixels = new int[width * height];
+            src.getPixels(pixels, 0, width, 0, 0, width, height);
+            mPixelBlurrer = new PixelBlurrer(pixels, width, height);
+            mPixels = new int[width * height];
+        } else {
+            mPixelBlurrer = null;
+            mPixels = null;
+        }
     }
 
     public Bitmap blurBitmap(float radius, float desaturateAmount) {
@@ -48,58 +49,35 @@ public class ImageBlurrer {
             return null;
         }
 
-        Bitmap dest = mSourceBitmap.copy(mSourceBitmap.getConfig(), true);
         if (radius == 0f && desaturateAmount == 0f) {
-            return dest;
-        }
-
-        Allocation allocationDest = Allocation.createFromBitmap(mRS, dest);
-
-        if (radius > 0f && desaturateAmount > 0f) {
-            doBlur(radius, mAllocationSrc, allocationDest);
-            doDesaturate(MathUtil.constrain(0, 1, desaturateAmount), allocationDest, mAllocationSrc);
-            mAllocationSrc.copyTo(dest);
-        } else if (radius > 0f) {
-            doBlur(radius, mAllocationSrc, allocationDest);
-            allocationDest.copyTo(dest);
-        } else {
-            doDesaturate(MathUtil.constrain(0, 1, desaturateAmount), mAllocationSrc, allocationDest);
-            allocationDest.copyTo(dest);
+            return mSourceBitmap.copy(mSourceBitmap.getConfig(), true);
         }
-        allocationDest.destroy();
-        return dest;
-    }
 
-    private void doBlur(float amount, Allocation input, Allocation output) {
-        mSIBlur.setRadius(amount);
-        mSIBlur.setInput(input);
-        mSIBlur.forEach(output);
+        mPixelBlurrer.blur(radius, desaturateAmount, mPixels);
+        return createBitmap();
     }
 
-    private void doDesaturate(float normalizedAmount, Allocation input, Allocation output) {
-        Matrix3f m = new Matrix3f(new float[]{
-                MathUtil.interpolate(1, 0.299f, normalizedAmount),
-                MathUtil.interpolate(0, 0.299f, normalizedAmount),
-                MathUtil.interpolate(0, 0.299f, normalizedAmount),
-
-                MathUtil.interpolate(0, 0.587f, normalizedAmount),
-                MathUtil.interpolate(1, 0.587f, normalizedAmount),
-                MathUtil.interpolate(0, 0.587f, normalizedAmount),
+    /**
+     * Like {@link #blurBitmap}, but starts from the previous keyframe rather than from the source
+     * bitmap. Call it with increasing radii to build a series of keyframes.
+     */
+    public Bitmap blurNextKeyframe(float radius, float desaturateAmount) {
+        if (mSourceBitmap == null) {
+            return null;
+        }
 
-                MathUtil.interpolate(0, 0.114f, normalizedAmount),
-                MathUtil.interpolate(0, 0.114f, normalizedAmount),
-                MathUtil.interpolate(1, 0.114f, normalizedAmount),
-        });
-        mSIGrey.setColorMatrix(m);
-        mSIGrey.forEach(input, output);
+        mPixelBlurrer.blurNext(radius, desaturateAmount, mPixels);
+        return createBitmap();
     }
 
-    public void destroy() {
-        mSIBlur.destroy();
-        mSIGrey.destroy();
-        if (mAllocationSrc != null) {
-            mAllocationSrc.destroy();
-        }
-        mRS.destroy();
+    private Bitmap createBitmap() {
+        int width = mPixelBlurrer.getWidth();
+        int height = mPixelBlurrer.getHeight();
+        Bitmap.Config config = mSourceBitmap.getConfig() != null
+                ? mSourceBitmap.getConfig()
+                : Bitmap.Config.ARGB_8888;
+        Bitmap dest = BitmapPool.getInstance().acquire(width, height, config);
+        dest.setPixels(mPixels, 0, width, 0, 0, width, height);
+        return dest;
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Blurs and desaturates ARGB pixels held in an {@code int[]}. Nothing here touches android.*, so
+ * the same code runs in the app and on a plain JVM.
+ *
+ * <p>The blur is three box blurs per axis, which approximates a Gaussian. Blurring by sigma1 and
+ * then by sigma2 is the same as blurring once by sqrt(sigma1^2 + sigma2^2), so
+ * {@link #blurNext} builds a series of increasingly blurred keyframes by only applying the
+ * difference from the previous keyframe. Rows, and then stripes of columns, are split across a
+ * shared pool; desaturation is folded into the pass that writes the output.
+ */
+public class PixelBlurrer {
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+    // Below this many lines per stripe the hand-off costs more than it saves
+    private static final int MIN_LINES_PER_STRIPE = 32;
+    // 16 pixels are 64 bytes, a cache line on current ARM and x86 cores
+    private static final int COLUMN_BLOCK = 16;
+    // Blurs that would move pixels by less than this are skipped
+    private static final float MIN_SIGMA = 0.5f;
+
+    private static ExecutorService sExecutor;
+
+    private final int[] mSource;
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mWorking;
+    // Sigma of the blur currently in mWorking, or -1 if it doesn't hold anything yet
+    private float mWorkingSigma = -1;
+    private int mMaxThreads = MAX_THREADS;
+
+    /**
+     * @param pixels source pixels, row by row. They are read but never modified.
+     */
+    public PixelBlurrer(int[] pixels, int width, int height) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Expected at least " + width * height
+                    + " pixels, got " + pixels.length);
+        }
+        mSource = pixels;
+        mWidth = width;
+        mHeight = height;
+        mWorking = new int[width * height];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Limits how many threads (including the calling one) a single pass is split across.
+     */
+    public void setMaxThreads(int maxThreads) {
+        mMaxThreads = Math.max(1, maxThreads);
+    }
+
+    /**
+     * Blurs the source pixels from scratch.
+     *
+     * @param radius blur radius in pixels, as understood by {@code ScriptIntrinsicBlur}
+     * @param desaturateAmount 0 to keep the colors, 1 for fully grey
+     * @param out receives {@code width * height} pixels
+     */
+    public void blur(float radius, float desaturateAmount, int[] out) {
+        reset();
+        blurNext(radius, desaturateAmount, out);
+    }
+
+    /**
+     * Makes the next {@link #blurNext} start over from the source pixels.
+     */
+    public void reset() {
+        mWorkingSigma = -1;
+    }
+
+    /**
+     * Produces the next keyframe by continuing from the previous one. This is only cheaper than
+     * {@link #blur} while radii keep growing; a smaller radius restarts from the source.
+     *
+     * <p>The desaturation is applied to {@code out} only, so it doesn't accumulate from one
+     * keyframe to the next.
+     */
+    public void blurNext(float radius, float desaturateAmount, int[] out) {
+        float sigma = sigmaForRadius(radius);
+        if (mWorkingSigma < 0 || sigma < mWorkingSigma) {
+            System.arraycopy(mSource, 0, mWorking, 0, mWidth * mHeight);
+            mWorkingSigma = 0;
+        }
+        float delta = (float) Math.sqrt(sigma * sigma - mWorkingSigma * mWorkingSigma);
+        int amount = Math.round(MathUtil.constrain(0, 1, desaturateAmount) * 256);
+        if (delta < MIN_SIGMA) {
+            desaturate(amount, out);
+            return;
+        }
+        int[] radii = boxRadii(delta);
+        blurRows(radii);
+        blurColumns(radii, amount, out);
+        mWorkingSigma = sigma;
+    }
+
+    /**
+     * Same mapping from radius to standard deviation as RenderScript's blur intrinsic.
+     */
+    static float sigmaForRadius(float radius) {
+        return radius <= 0 ? 0 : 0.4f * radius + 0.6f;
+    }
+
+    /**
+     * Radii of three box blurs whose combined variance is closest to sigma^2.
+     */
+    static int[] boxRadii(float sigma) {
+        int lower = (int) Math.sqrt(4 * sigma * sigma + 1);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        // Number of passes that use the lower width
+        int m = Math.round((12 * sigma * sigma - 3 * lower * lower - 12 * lower - 9)
+                / (-4f * lower - 4));
+        int[] radii = new int[3];
+        for (int i = 0; i < 3; i++) {
+            radii[i] = ((i < m ? lower : upper) - 1) / 2;
+        }
+        return radii;
+    }
+
+    private void blurRows(final int[] radii) {
+        runStriped(mHeight, new Stripe() {
+            @Override
+            public void run(int from, int to) {
+                int[] a = new int[mWidth];
+                int[] b = new int[mWidth];
+                for (int y = from; y < to; y++) {
+                    int offset = y * mWidth;
+                    boxLine(mWorking, offset, 1, a, mWidth, radii[0]);
+                    boxLine(a, 0, 1, b, mWidth, radii[1]);
+                    boxLine(b, 0, 1, a, mWidth, radii[2]);
+                    System.arraycopy(a, 0, mWorking, offset, mWidth);
+                }
+            }
+        });
+    }
+
+    private void blurColumns(final int[] radii, final int amount, final int[] out) {
+        runStriped(mWidth, new Stripe() {
+            @Override
+            public void run(int from, int to) {
+                // Columns are copied in and out COLUMN_BLOCK at a time so that every row
+                // access reads a whole cache line instead of a single pixel
+                int[] block = new int[COLUMN_BLOCK * mHeight];
+                int[] a = new int[mHeight];
+                int[] b = new int[mHeight];
+                for (int x = from; x < to; x += COLUMN_BLOCK) {
+                    int columns = Math.min(COLUMN_BLOCK, to - x);
+                    for (int y = 0, row = x; y < mHeight; y++, row += mWidth) {
+                        for (int j = 0; j < columns; j++) {
+                            block[j * mHeight + y] = mWorking[row + j];
+                        }
+                    }
+                    for (int j = 0; j < columns; j++) {
+                        boxLine(block, j * mHeight, 1, a, mHeight, radii[0]);
+                        boxLine(a, 0, 1, b, mHeight, radii[1]);
+                        boxLine(b, 0, 1, block, j * mHeight, mHeight, radii[2]);
+                    }
+                    for (int y = 0, row = x; y < mHeight; y++, row += mWidth) {
+                        for (int j = 0; j < columns; j++) {
+                            int pixel = block[j * mHeight + y];
+                            mWorking[row + j] = pixel;
+                            out[row + j] = amount == 0 ? pixel : desaturate(pixel, amount);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void desaturate(final int amount, final int[] out) {
+        runStriped(mHeight, new Stripe() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from * mWidth; i < to * mWidth; i++) {
+                    out[i] = amount == 0 ? mWorking[i] : desaturate(mWorking[i], amount);
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves each channel towards the pixel's luminance.
+     *
+     * @param amount 0 to 256
+     */
+    private static int desaturate(int pixel, int amount) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        int luma = (r * 306 + g * 601 + b * 117) >> 10;
+        r += ((luma - r) * amount) >> 8;
+        g += ((luma - g) * amount) >> 8;
+        b += ((luma - b) * amount) >> 8;
+        return (pixel & 0xff000000) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Box blurs n pixels read from {@code src} at {@code offset}, {@code offset + stride}, ...
+     * into the start of {@code dst}. Pixels past either end repeat the edge pixel.
+     */
+    private static void boxLine(int[] src, int offset, int stride, int[] dst, int n, int radius) {
+        boxLine(src, offset, stride, dst, 0, n, radius);
+    }
+
+    private static void boxLine(int[] src, int offset, int stride, int[] dst, int dstOffset,
+            int n, int radius) {
+        if (radius == 0) {
+            for (int i = 0; i < n; i++) {
+                dst[dstOffset + i] = src[offset + i * stride];
+            }
+            return;
+        }
+        // Fixed point 1 / (2 * radius + 1), rounded down so a full window can't exceed 255
+        int scale = (1 << 16) / (2 * radius + 1);
+        int first = src[offset];
+        int last = src[offset + (n - 1) * stride];
+        int sa = (radius + 1) * (first >>> 24);
+        int sr = (radius + 1) * ((first >> 16) & 0xff);
+        int sg = (radius + 1) * ((first >> 8) & 0xff);
+        int sb = (radius + 1) * (first & 0xff);
+        for (int i = 1; i <= radius; i++) {
+            int p = i < n ? src[offset + i * stride] : last;
+            sa += p >>> 24;
+            sr += (p >> 16) & 0xff;
+            sg += (p >> 8) & 0xff;
+            sb += p & 0xff;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[dstOffset + i] = (((sa * scale + 0x8000) >>> 16) << 24)
+                    | (((sr * scale + 0x8000) >>> 16) << 16)
+                    | (((sg * scale + 0x8000) >>> 16) << 8)
+                    | ((sb * scale + 0x8000) >>> 16);
+            int in = i + radius + 1;
+            int pin = in < n ? src[offset + in * stride] : last;
+            int outIndex = i - radius;
+            int pout = outIndex > 0 ? src[offset + outIndex * stride] : first;
+            sa += (pin >>> 24) - (pout >>> 24);
+            sr += ((pin >> 16) & 0xff) - ((pout >> 16) & 0xff);
+            sg += ((pin >> 8) & 0xff) - ((pout >> 8) & 0xff);
+            sb += (pin & 0xff) - (pout & 0xff);
+        }
+    }
+
+    private interface Stripe {
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits [0, count) into contiguous stripes, runs the first on the calling thread and the
+     * rest on the shared pool, and waits for all of them.
+     */
+    private void runStriped(int count, final Stripe stripe) {
+        int stripes = Math.min(mMaxThreads, Math.max(1, count / MIN_LINES_PER_STRIPE));
+        if (stripes == 1) {
+            stripe.run(0, count);
+            return;
+        }
+        ExecutorService executor = getExecutor();
+        final CountDownLatch done = new CountDownLatch(stripes - 1);
+        final Throwable[] failure = new Throwable[1];
+        for (int s = 1; s < stripes; s++) {
+            final int from = count * s / stripes;
+            final int to = count * (s + 1) / stripes;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stripe.run(from, to);
+                    } catch (RuntimeException | Error e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        stripe.run(0, count / stripes);
+
+        // The other stripes are still writing into our buffers, so wait for them even if
+        // interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new RuntimeException("Blur stripe failed", failure[0]);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(Math.max(1, MAX_THREADS - 1),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "PixelBlurrer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.aoplibrary;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 直接读取 /proc/self 下的 stat、statm 和 smaps_rollup 采集本进程的 CPU 与内存信息，
+ * 代替每次调用都 su 执行 top/procrank 的做法。
+ * 文件句柄和读缓冲区在整个生命周期内复用，采样结果按时间顺序保存在环形数组中。
+ * 非线程安全，只允许采样线程访问。
+ */
+final class ProcSampler {
+    private static final int PAGE_KB = 4;
+    //每隔多少次采样读取一次 smaps_rollup，内核遍历全部映射的代价较高
+    private static final int SMAPS_EVERY = 10;
+
+    private static final byte[] PSS = "Pss:".getBytes();
+    private static final byte[] PRIVATE_CLEAN = "Private_Clean:".getBytes();
+    private static final byte[] PRIVATE_DIRTY = "Private_Dirty:".getBytes();
+
+    private final byte[] buffer = new byte[4096];
+    private RandomAccessFile stat;
+    private RandomAccessFile statm;
+    private RandomAccessFile smaps;
+
+    private final int mask;
+    final long[] time;          //System.nanoTime()
+    final long[] cpuTicks;      //utime + stime，单位为 clock tick
+    final long[] virtualKb;
+    final long[] realKb;
+    final long[] pssKb;
+    final long[] ussKb;
+    //已采样次数
+    private long count;
+    private long lastPss;
+    private long lastUss;
+
+    ProcSampler(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        time = new long[size];
+        cpuTicks = new long[size];
+        virtualKb = new long[size];
+        realKb = new long[size];
+        pssKb = new long[size];
+        ussKb = new long[size];
+        stat = open("/proc/self/stat");
+        statm = open("/proc/self/statm");
+        smaps = open("/proc/self/smaps_rollup");
+    }
+
+    private static RandomAccessFile open(String path) {
+        try {
+            return new RandomAccessFile(path, "r");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 采样一次并追加到环形数组
+     */
+    void sample() {
+        int i = (int) (count & mask);
+        time[i] = System.nanoTime();
+
+        long ticks = 0;
+        int n = read(stat);
+        if (n > 0) {
+            //comm 字段可能含有空格，从最后一个 ')' 之后开始数，utime/stime 是第 14、15 项
+            int pos = n - 1;
+            while (pos > 0 && buffer[pos] != ')') {
+                pos--;
+            }
+            pos = skipFields(pos + 1, n, 11);
+            ticks = parseLong(pos, n);
+            pos = skipFields(pos, n, 1);
+            ticks += parseLong(pos, n);
+        } else {
+            stat = null;
+        }
+        cpuTicks[i] = ticks;
+
+        n = read(statm);
+        if (n > 0) {
+            int pos = skipFields(0, n, 0);
+            virtualKb[i] = parseLong(pos, n) * PAGE_KB;
+            pos = skipFields(pos, n, 1);
+            realKb[i] = parseLong(pos, n) * PAGE_KB;
+        } else {
+            statm = null;
+        }
+
+        if (smaps != null && count % SMAPS_EVERY == 0) {
+            n = read(smaps);
+            if (n > 0) {
+                lastPss = valueOf(PSS, n);
+                lastUss = valueOf(PRIVATE_CLEAN, n) + valueOf(PRIVATE_DIRTY, n);
+            } else {
+                smaps = null;
+            }
+        }
+        pssKb[i] = lastPss;
+        ussKb[i] = lastUss;
+
+        count++;
+    }
+
+    /**
+     * @return 当前保存的最早一次采样的序号
+     */
+    long oldest() {
+        return Math.max(0, count - mask - 1);
+    }
+
+    /**
+     * @return 最近一次采样的序号，尚未采样时为 -1
+     */
+    long newest() {
+        return count - 1;
+    }
+
+    int slot(long seq) {
+        return (int) (seq & mask);
+    }
+
+    /**
+     * @return 时间不晚于 t 的最后一次采样的序号，没有时返回最早的序号
+     */
+    long atOrBefore(long t) {
+        long lo = oldest();
+        long hi = newest();
+        long found = lo;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (time[slot(mid)] - t <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return 时间不早于 t 的第一次采样的序号，没有时返回最近的序号
+     */
+    long atOrAfter(long t) {
+        long lo = oldest();
+        long hi = newest();
+        long found = hi;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (time[slot(mid)] - t >= 0) {
+                found = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return found;
+    }
+
+    void close() {
+        closeQuietly(stat);
+        closeQuietly(statm);
+        closeQuietly(smaps);
+        stat = statm = smaps = null;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * 从头重新读取 proc 文件到复用缓冲区
+     * @return 读到的字节数，失败时为 -1
+     */
+    private int read(RandomAccessFile file) {
+        if (file == null) {
+            return -1;
+        }
+        try {
+            file.seek(0);
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = file.read(buffer, total, buffer.length - total)) > 0) {
+                total += n;
+            }
+            return total;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 跳过 skip 个以空白分隔的字段，返回下一个字段的起始位置
+     */
+    private int skipFields(int pos, int end, int skip) {
+        while (pos < end && buffer[pos] == ' ') {
+            pos++;
+        }
+        for (int k = 0; k < skip; k++) {
+            while (pos < end && buffer[pos] != ' ') {
+                pos++;
+            }
+            while (pos < end && buffer[pos] == ' ') {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    private long parseLong(int pos, int end) {
+        long value = 0;
+        while (pos < end && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            value = value * 10 + (buffer[pos] - '0');
+            pos++;
+        }
+        return value;
+    }
+
+    /**
+     * 在 smaps_rollup 中查找以 key 开头的行并解析其 kB 数值
+     */
+    private long valueOf(byte[] key, int end) {
+        int pos = 0;
+        while (pos < end) {
+            if (startsWith(key, pos, end)) {
+                pos += key.length;
+                while (pos < end && buffer[pos] == ' ') {
+                    pos++;
+                }
+                return parseLong(pos, end);
+            }
+            while (pos < end && buffer[pos] != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        return 0;
+    }
+
+    private boolean startsWith(byte[] key, int pos, int end) {
+        if (end - pos < key.length) {
+            return false;
+        }
+        for (int k = 0; k < key.length; k++) {
+            if (buffer[pos + k] != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.aoplibrary;
+
+import android.util.Log;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.Signature;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 低开销的函数性能统计后端，代替每次调用创建一个 FuncPerformance 线程。
+ * 织入点只调用 begin()/end() 把一对 nanoTime 写入本线程预分配的环形缓冲区；
+ * 一个常驻的采样线程按固定频率读取 /proc/self，并在事后按时间戳把 CPU 和内存数据归属到每次调用。
+ * 结果按织入点汇总，每个汇报间隔只为每个被调用过的织入点输出一行日志。
+ */
+public final class SamplingProfiler {
+    private static final String LOG_TAG = "auto";
+    private static final int RING_CAPACITY = 4096;
+    private static final int SAMPLE_CAPACITY = 4096;
+    private static final int DEFAULT_INTERVAL_MS = 10;
+    private static final int DEFAULT_REPORT_INTERVAL_MS = 1000;
+    //绝大多数设备的 USER_HZ 都是 100
+    private static final long NANOS_PER_TICK = 1000000000L / 100;
+
+    private static final CopyOnWriteArrayList<CallRing> rings = new CopyOnWriteArrayList<CallRing>();
+    private static final ThreadLocal<CallRing> localRing = new ThreadLocal<CallRing>() {
+        @Override
+        protected CallRing initialValue() {
+            CallRing ring = new CallRing(Thread.currentThread(), RING_CAPACITY);
+            rings.add(ring);
+            return ring;
+        }
+    };
+
+    private static volatile int intervalMs = DEFAULT_INTERVAL_MS;
+    private static volatile int reportIntervalMs = DEFAULT_REPORT_INTERVAL_MS;
+    private static volatile Thread sampler;
+
+    private SamplingProfiler() {
+    }
+
+    /**
+     * 设置采样间隔，可在运行中修改
+     * @param millis 采样间隔 (ms)
+     */
+    public static void setSampleInterval(int millis) {
+        intervalMs = Math.max(1, millis);
+    }
+
+    /**
+     * 设置输出汇总日志的间隔，可在运行中修改
+     * @param millis 汇报间隔 (ms)
+     */
+    public static void setReportInterval(int millis) {
+        reportIntervalMs = Math.max(1, millis);
+    }
+
+    /**
+     * @return 调用开始时间，传给 end()
+     */
+    public static long begin() {
+        if (sampler == null) {
+            start();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一次调用
+     * @param site 织入点的静态部分，每个织入点只有一个实例，事后再解析出函数名
+     * @param start begin() 的返回值
+     */
+    public static void end(JoinPoint.StaticPart site, long start) {
+        long end = System.nanoTime();
+        localRing.get().record(site, start, end);
+    }
+
+    private static synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        Thread thread = new Thread(new Worker(), "aop-sampler");
+        thread.setDaemon(true);
+        thread.start();
+        sampler = thread;
+    }
+
+    private static final class Worker implements Runnable, CallRing.Visitor {
+        private final ProcSampler samples = new ProcSampler(SAMPLE_CAPACITY);
+        private final StringBuilder line = new StringBuilder(256);
+        //织入点的静态部分每个只有一个实例，按引用区分即可
+        private final Map<Object, SiteStats> stats = new IdentityHashMap<Object, SiteStats>();
+        private long lastReport = System.nanoTime();
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    samples.sample();
+                    long until = samples.time[samples.slot(samples.newest())];
+                    for (CallRing ring : rings) {
+                        long lost = ring.lost;
+                        ring.drain(until, this);
+                        if (ring.lost != lost) {
+                            Log.w(LOG_TAG, ring.threadName + " dropped " + (ring.lost - lost) + " calls");
+                        }
+                        if (ring.isDrained() && !ring.isOwnerAlive()) {
+                            rings.remove(ring);
+                        }
+                    }
+                    long now = System.nanoTime();
+                    if (now - lastReport >= reportIntervalMs * 1000000L) {
+                        report();
+                        lastReport = now;
+                    }
+                    Thread.sleep(intervalMs);
+                }
+            } catch (InterruptedException e) {
+                report();
+                samples.close();
+            }
+        }
+
+        @Override
+        public void visit(CallRing ring, Object site, long start, long end) {
+            long first = samples.atOrBefore(start);
+            long last = samples.atOrAfter(end);
+            int from = samples.slot(first);
+            int to = samples.slot(last);
+
+            SiteStats siteStats = stats.get(site);
+            if (siteStats == null) {
+                siteStats = new SiteStats();
+                stats.put(site, siteStats);
+            }
+            long window = samples.time[to] - samples.time[from];
+            if (window > 0) {
+                siteStats.cpuNanos += (samples.cpuTicks[to] - samples.cpuTicks[from]) * NANOS_PER_TICK;
+                siteStats.windowNanos += window;
+            }
+            for (long seq = first; seq <= last; seq++) {
+                int i = samples.slot(seq);
+                siteStats.maxVirtual = Math.max(siteStats.maxVirtual, samples.virtualKb[i]);
+                siteStats.maxReal = Math.max(siteStats.maxReal, samples.realKb[i]);
+                siteStats.maxPss = Math.max(siteStats.maxPss, samples.pssKb[i]);
+                siteStats.maxUss = Math.max(siteStats.maxUss, samples.ussKb[i]);
+            }
+            siteStats.calls++;
+            siteStats.totalNanos += end - start;
+            siteStats.maxNanos = Math.max(siteStats.maxNanos, end - start);
+        }
+
+        /**
+         * 为上次汇报以来被调用过的织入点各输出一行，然后清零
+         */
+        private void report() {
+            for (Map.Entry<Object, SiteStats> entry : stats.entrySet()) {
+                SiteStats site = entry.getValue();
+                if (site.calls == 0) {
+                    continue;
+                }
+                double cpu = site.windowNanos > 0 ? site.cpuNanos * 100.0 / site.windowNanos : 0;
+                Signature signature = ((JoinPoint.StaticPart) entry.getKey()).getSignature();
+                line.setLength(0);
+                line.append("FuncName: ")
+                        .append(signature.getDeclaringTypeName()).append("..").append(signature.getName())
+                        .append(" --> calls: ").append(site.calls)
+                        .append(" --> memoryInfo: ")
+                        .append(FuncPerformance.formatByte(site.maxVirtual, site.maxReal, site.maxPss, site.maxUss))
+                        .append(" --> cpuInfo: ").append(cpu)
+                        .append(" --> cpuTime: ").append(site.totalNanos / site.calls)
+                        .append(" (max ").append(site.maxNanos).append(");\n");
+                Log.d(LOG_TAG, line.toString());
+                site.reset();
+            }
+        }
+    }
+
+    /**
+     * 一个织入点在一个汇报间隔内的汇总，只由采样线程访问
+     */
+    private static final class SiteStats {
+        long calls;
+        long totalNanos;
+        long maxNanos;
+        //调用期间的进程 CPU 时间和对应的采样时间窗口，相除即为平均占用率
+        long cpuNanos;
+        long windowNanos;
+        long maxVirtual;
+        long maxReal;
+        long maxPss;
+        long maxUss;
+
+        void reset() {
+            calls = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+            cpuNanos = 0;
+            windowNanos = 0;
+            maxVirtual = 0;
+            maxReal = 0;
+            maxPss = 0;
+            maxUss = 0;
+        }
+    }
+}
@@ -573,6 +573,23 @@ public abstract class MuzeiArtSource extends Service {
         mServiceHandler.post(mPublishStateRunnable);
     }
 
+    /**
+     * Announces the artwork this source expects to {@linkplain #publishArtwork publish} next, in
+     * order. Subscribers may download it ahead of time (for example, while the device is charging
+     * on an unmetered network) so that switching to it later doesn't wait on the network. Only
+     * the {@link Artwork#getImageUri() image URI} of each artwork is used for this.
+     *
+     * <p>Announcing artwork is only a hint: it doesn't have to be published, and the list can be
+     * replaced at any time. Pass null or an empty list to clear it.
+     *
+     * @param upcomingArtwork the artwork expected to be published next, soonest first.
+     */
+    protected final void setUpcomingArtwork(List<Artwork> upcomingArtwork) {
+        mCurrentState.setUpcomingArtwork(upcomingArtwork);
+        mServiceHandler.removeCallbacks(mPublishStateRunnable);
+        mServiceHandler.post(mPublishStateRunnable);
+    }
+
     /**
      * Returns the most recently {@linkplain #publishArtwork published} artwork.
      *
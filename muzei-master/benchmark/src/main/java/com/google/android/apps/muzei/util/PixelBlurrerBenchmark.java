@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the full set of blur keyframes for one artwork.
+ *
+ * <p>{@code fromSource} keeps the old shape of GLPictureSet.load: every keyframe is blurred from
+ * the source on one thread. {@code progressive} continues each keyframe from the previous one,
+ * and {@code progressiveParallel} also splits the passes across all cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PixelBlurrerBenchmark {
+    // Same as MuzeiBlurRenderer on devices that aren't low on RAM
+    private static final int KEYFRAMES = 2;
+    // ImageBlurrer.MAX_SUPPORTED_BLUR_PIXELS
+    private static final int MAX_BLUR_PIXELS = 25;
+    private static final float GREY = 0.5f;
+
+    @Param({"1920x1080", "3840x2160"})
+    public String size;
+
+    private PixelBlurrer blurrer;
+    private int[] out;
+    private float[] radii;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        int[] pixels = new int[width * height];
+        Random random = new Random(width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        blurrer = new PixelBlurrer(pixels, width, height);
+        out = new int[width * height];
+
+        // MuzeiBlurRenderer.blurRadiusAtFrame with the AccelerateDecelerateInterpolator
+        radii = new float[KEYFRAMES + 1];
+        for (int f = 1; f <= KEYFRAMES; f++) {
+            float t = (float) f / KEYFRAMES;
+            radii[f] = MAX_BLUR_PIXELS
+                    * (float) (Math.cos((t + 1) * Math.PI) / 2 + 0.5);
+        }
+    }
+
+    @Benchmark
+    public int[] fromSource() {
+        blurrer.setMaxThreads(1);
+        for (int f = 1; f <= KEYFRAMES; f++) {
+            blurrer.blur(radii[f], GREY * f / KEYFRAMES, out);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public int[] progressive() {
+        blurrer.setMaxThreads(1);
+        return keyframes();
+    }
+
+    @Benchmark
+    public int[] progressiveParallel() {
+        blurrer.setMaxThreads(Runtime.getRuntime().availableProcessors());
+        return keyframes();
+    }
+
+    private int[] keyframes() {
+        blurrer.reset();
+        for (int f = 1; f <= KEYFRAMES; f++) {
+            blurrer.blurNext(radii[f], GREY * f / KEYFRAMES, out);
+        }
+        return out;
+    }
+}
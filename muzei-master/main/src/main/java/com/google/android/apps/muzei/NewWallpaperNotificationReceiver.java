@@ -26,7 +26,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
@@ -41,11 +40,10 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
 import com.google.android.apps.muzei.api.MuzeiContract;
 import com.google.android.apps.muzei.api.UserCommand;
 import com.google.android.apps.muzei.event.ArtDetailOpenedClosedEvent;
-import com.google.android.apps.muzei.render.ImageUtil;
+import com.google.android.apps.muzei.render.ArtworkDerivatives;
 
 import net.nurik.roman.muzei.R;
 
-import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
 import java.util.List;
 
@@ -189,30 +187,18 @@ public class NewWallpaperNotificationReceiver extends BroadcastReceiver {
             return;
         }
 
-        Bitmap largeIcon;
-        Bitmap background;
-        try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(contentResolver.openInputStream(
-                    MuzeiContract.Artwork.CONTENT_URI), null, options);
-            int width = options.outWidth;
-            int height = options.outHeight;
-            int shortestLength = Math.min(width, height);
-            options.inJustDecodeBounds = false;
-            int largeIconHeight = context.getResources()
-                    .getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
-            options.inSampleSize = ImageUtil.calculateSampleSize(shortestLength, largeIconHeight);
-            largeIcon = BitmapFactory.decodeStream(contentResolver.openInputStream(
-                    MuzeiContract.Artwork.CONTENT_URI), null, options);
-
-            // Use the suggested 400x400 for Android Wear background images per
-            // http://developer.android.com/training/wearables/notifications/creating.html#AddWearableFeatures
-            options.inSampleSize = ImageUtil.calculateSampleSize(height, 400);
-            background = BitmapFactory.decodeStream(contentResolver.openInputStream(
-                    MuzeiContract.Artwork.CONTENT_URI), null, options);
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "Unable to read artwork to show notification", e);
+        // Usually already generated along with the other sizes of this artwork
+        int largeIconHeight = context.getResources()
+                .getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+        Bitmap largeIcon = ArtworkDerivatives.decode(context,
+                ArtworkDerivatives.FIT_SHORTEST_SIDE, largeIconHeight);
+        // Use the suggested 400x400 for Android Wear background images per
+        // http://developer.android.com/training/wearables/notifications/creating.html#AddWearableFeatures
+        Bitmap background = ArtworkDerivatives.decode(context,
+                ArtworkDerivatives.FIT_SHORTEST_SIDE, 400);
+        if (largeIcon == null || background == null) {
+            Log.e(TAG, "Unable to read artwork to show notification");
+            artwork.close();
             return;
         }
 
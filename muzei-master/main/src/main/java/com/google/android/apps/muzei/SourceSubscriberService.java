@@ -24,6 +24,7 @@ import android.content.ContentValues;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
@@ -34,6 +35,7 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
 import com.google.android.apps.muzei.api.MuzeiContract;
 import com.google.android.apps.muzei.api.UserCommand;
 import com.google.android.apps.muzei.api.internal.SourceState;
+import com.google.android.apps.muzei.sync.PrefetchArtworkHelper;
 import com.google.android.apps.muzei.sync.TaskQueueService;
 
 import static com.google.android.apps.muzei.api.internal.ProtocolConstants.ACTION_PUBLISH_STATE;
@@ -124,5 +126,10 @@ public class SourceSubscriberService extends IntentService {
             // Download the artwork contained from the newly published SourceState
             startService(TaskQueueService.getDownloadCurrentArtworkIntent(this));
         }
+
+        // Download whatever the source expects to publish next while it's cheap to do so
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PrefetchArtworkHelper.setUpcomingArtwork(this, state);
+        }
     }
 }
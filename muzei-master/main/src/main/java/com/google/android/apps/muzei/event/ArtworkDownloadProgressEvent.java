@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.event;
+
+public class ArtworkDownloadProgressEvent {
+    private long mBytesDownloaded;
+    private long mTotalBytes;
+    private long mBytesPerSecond;
+
+    public ArtworkDownloadProgressEvent(long bytesDownloaded, long totalBytes,
+            long bytesPerSecond) {
+        mBytesDownloaded = bytesDownloaded;
+        mTotalBytes = totalBytes;
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    public long getBytesDownloaded() {
+        return mBytesDownloaded;
+    }
+
+    /**
+     * @return the full size of the artwork, or -1 if unknown
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+}
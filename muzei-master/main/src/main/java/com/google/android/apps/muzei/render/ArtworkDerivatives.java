@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.render;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.media.ExifInterface;
+import android.util.Log;
+
+import com.google.android.apps.muzei.api.MuzeiContract;
+import com.google.android.apps.muzei.util.BitmapPool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Smaller copies of the current artwork for the widgets, Android Wear and the notification.
+ *
+ * <p>All sizes that were asked for during the previous artwork are generated together the first
+ * time any of them is asked for, from a single decode of the artwork at the largest size needed.
+ * They are kept as files keyed by artwork id and size, already rotated right side up, so every
+ * other consumer just reads its file.
+ */
+public class ArtworkDerivatives {
+    private static final String TAG = "ArtworkDerivatives";
+
+    /**
+     * Scales the artwork so that its shortest side matches the requested size
+     */
+    public static final int FIT_SHORTEST_SIDE = 0;
+    /**
+     * Scales the artwork so that its longest side matches the requested size
+     */
+    public static final int FIT_LONGEST_SIDE = 1;
+
+    private static final String DIRECTORY = "artwork_derivatives";
+    private static final String PREF_ARTWORK_ID = "artwork_id";
+    private static final String PREF_REQUESTED_SIZES = "requested_sizes";
+    private static final int JPEG_QUALITY = 90;
+
+    private ArtworkDerivatives() {
+    }
+
+    /**
+     * Returns the current artwork scaled down to the given size, generating it along with all
+     * other recently used sizes if needed. Smaller artwork isn't scaled up.
+     *
+     * @param fit either {@link #FIT_SHORTEST_SIDE} or {@link #FIT_LONGEST_SIDE}
+     * @return the JPEG file, or null if there is no readable current artwork
+     */
+    public static synchronized File getFile(Context context, int fit, int size) {
+        if (size <= 0) {
+            return null;
+        }
+        long artworkId = getCurrentArtworkId(context);
+        if (artworkId < 0) {
+            return null;
+        }
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        String sizeKey = (fit == FIT_LONGEST_SIDE ? "l" : "s") + size;
+        File file = getDerivativeFile(directory, artworkId, sizeKey);
+
+        SharedPreferences sp = context.getSharedPreferences(DIRECTORY, Context.MODE_PRIVATE);
+        Set<String> requestedSizes = new HashSet<>(sp.getStringSet(PREF_REQUESTED_SIZES,
+                Collections.<String>emptySet()));
+        if (file.exists()) {
+            if (requestedSizes.add(sizeKey)) {
+                sp.edit().putStringSet(PREF_REQUESTED_SIZES, requestedSizes).apply();
+            }
+            return file;
+        }
+
+        Set<String> sizeKeys = new HashSet<>();
+        sizeKeys.add(sizeKey);
+        if (sp.getLong(PREF_ARTWORK_ID, -1) != artworkId) {
+            // New artwork: whoever needed a size for the last one will most likely need it again
+            sizeKeys.addAll(requestedSizes);
+            requestedSizes.clear();
+            deleteOtherArtwork(directory, artworkId);
+        }
+        requestedSizes.add(sizeKey);
+        sp.edit()
+                .putLong(PREF_ARTWORK_ID, artworkId)
+                .putStringSet(PREF_REQUESTED_SIZES, requestedSizes)
+                .apply();
+        generate(context, artworkId, directory, sizeKeys);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Like {@link #getFile}, but decodes the file into a bitmap of the {@link BitmapPool}.
+     *
+     * @return the bitmap, which the caller may release to the pool, or null if there is no
+     * readable current artwork
+     */
+    public static Bitmap decode(Context context, int fit, int size) {
+        File file = getFile(context, fit, size);
+        if (file == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        try (InputStream in = new FileInputStream(file)) {
+            return BitmapPool.getInstance().decodeStream(in, options);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file, e);
+            return null;
+        }
+    }
+
+    private static long getCurrentArtworkId(Context context) {
+        Cursor artwork = context.getContentResolver().query(MuzeiContract.Artwork.CONTENT_URI,
+                new String[] {BaseColumns._ID}, null, null, null);
+        if (artwork == null) {
+            return -1;
+        }
+        long artworkId = artwork.moveToFirst() ? artwork.getLong(0) : -1;
+        artwork.close();
+        return artworkId;
+    }
+
+    private static File getDerivativeFile(File directory, long artworkId, String sizeKey) {
+        return new File(directory, artworkId + "_" + sizeKey + ".jpg");
+    }
+
+    private static void generate(Context context, long artworkId, File directory,
+            Set<String> sizeKeys) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return;
+        }
+        ContentResolver contentResolver = context.getContentResolver();
+        Uri artworkUri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI, artworkId);
+        BitmapPool bitmapPool = BitmapPool.getInstance();
+        Bitmap image;
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = contentResolver.openInputStream(artworkUri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.w(TAG, "Unable to read the bounds of artwork " + artworkId);
+                return;
+            }
+            // Decode only once, at the sample size of the largest derivative
+            int shortestSide = Math.min(options.outWidth, options.outHeight);
+            int longestSide = Math.max(options.outWidth, options.outHeight);
+            int sampleSize = Integer.MAX_VALUE;
+            for (String sizeKey : sizeKeys) {
+                sampleSize = Math.min(sampleSize, ImageUtil.calculateSampleSize(
+                        isLongestSide(sizeKey) ? longestSide : shortestSide, getSize(sizeKey)));
+            }
+            options.inSampleSize = sampleSize;
+            try (InputStream in = contentResolver.openInputStream(artworkUri)) {
+                image = bitmapPool.decodeStream(in, options);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read artwork " + artworkId, e);
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        int rotation = getRotation(contentResolver, artworkUri);
+        if (rotation != 0) {
+            Bitmap rotatedImage = bitmapPool.acquireRotated(image, rotation);
+            bitmapPool.release(image);
+            image = rotatedImage;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (String sizeKey : sizeKeys) {
+            float scale = (float) getSize(sizeKey)
+                    / (isLongestSide(sizeKey) ? Math.max(width, height) : Math.min(width, height));
+            Bitmap derivative = scale < 1
+                    ? bitmapPool.acquireScaled(image, Math.max(1, Math.round(width * scale)),
+                            Math.max(1, Math.round(height * scale)))
+                    : image;
+            File file = getDerivativeFile(directory, artworkId, sizeKey);
+            // Written under a temporary name so that readers never see a partial file
+            File tempFile = new File(directory, file.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                derivative.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write " + file, e);
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+            if (derivative != image) {
+                bitmapPool.release(derivative);
+            }
+        }
+        bitmapPool.release(image);
+    }
+
+    private static boolean isLongestSide(String sizeKey) {
+        return sizeKey.charAt(0) == 'l';
+    }
+
+    private static int getSize(String sizeKey) {
+        return Integer.parseInt(sizeKey.substring(1));
+    }
+
+    private static void deleteOtherArtwork(File directory, long artworkId) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().startsWith(artworkId + "_")) {
+                file.delete();
+            }
+        }
+    }
+
+    private static int getRotation(ContentResolver contentResolver, Uri artworkUri) {
+        int rotation = 0;
+        try (InputStream in = contentResolver.openInputStream(artworkUri)) {
+            if (in == null) {
+                return 0;
+            }
+            ExifInterface exifInterface = new ExifInterface(in);
+            int orientation = exifInterface.getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90: rotation = 90; break;
+                case ExifInterface.ORIENTATION_ROTATE_180: rotation = 180; break;
+                case ExifInterface.ORIENTATION_ROTATE_270: rotation = 270; break;
+            }
+        } catch (IOException|NumberFormatException|StackOverflowError ignored) {
+        }
+        return rotation;
+    }
+}
@@ -18,9 +18,10 @@ package com.google.android.apps.muzei.render;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapRegionDecoder;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 
+import com.google.android.apps.muzei.util.BitmapPool;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -35,14 +36,32 @@ public class BitmapRegionLoader {
     private int mOriginalWidth;
     private int mOriginalHeight;
     private Rect mTempRect = new Rect();
+    private Rect mCropRect = new Rect();
     private InputStream mInputStream;
     private volatile BitmapRegionDecoder mBitmapRegionDecoder;
-    private Matrix mRotateMatrix;
+    private String mCacheKey;
+    private InputStreamProvider mInputStreamProvider;
+
+    /**
+     * Reopens the image, so that more than one loader can decode it at the same time.
+     */
+    public interface InputStreamProvider {
+        InputStream openInputStream() throws IOException;
+    }
 
     public static BitmapRegionLoader newInstance(InputStream in) throws IOException {
         return newInstance(in, 0);
     }
 
+    public static BitmapRegionLoader newInstance(InputStreamProvider provider, int rotation)
+            throws IOException {
+        BitmapRegionLoader loader = newInstance(provider.openInputStream(), rotation);
+        if (loader != null) {
+            loader.mInputStreamProvider = provider;
+        }
+        return loader;
+    }
+
     public static BitmapRegionLoader newInstance(InputStream in, int rotation) throws IOException {
         if (in == null) {
             return null;
@@ -51,10 +70,6 @@ public class BitmapRegionLoader {
         BitmapRegionLoader loader = new BitmapRegionLoader(in);
         if (loader.mValid) {
             loader.mRotation = rotation;
-            if (loader.mRotation != 0) {
-                loader.mRotateMatrix = new Matrix();
-                loader.mRotateMatrix.postRotate(rotation);
-            }
             return loader;
         }
 
@@ -77,15 +92,17 @@ public class BitmapRegionLoader {
      * Key difference, aside from support for rotation, from
      * {@link BitmapRegionDecoder#decodeRegion(Rect, Options)} in this implementation is that even
      * if <code>inBitmap</code> is given, a sub-bitmap might be returned.
+     *
+     * <p>Without an <code>inBitmap</code>, the region is decoded into a bitmap from
+     * {@link BitmapPool}. Either way, the returned bitmap should be given back with
+     * {@link BitmapPool#release} once it's no longer needed, unless it is the
+     * <code>inBitmap</code>.
      */
     public synchronized Bitmap decodeRegion(Rect rect, Options options) {
-        int unsampledInBitmapWidth = -1;
-        int unsampledInBitmapHeight = -1;
-        int sampleSize = Math.max(1, options != null ? options.inSampleSize : 1);
-        if (options != null && options.inBitmap != null) {
-            unsampledInBitmapWidth = options.inBitmap.getWidth() * sampleSize;
-            unsampledInBitmapHeight = options.inBitmap.getHeight() * sampleSize;
+        if (options == null) {
+            options = new Options();
         }
+        int sampleSize = Math.max(1, options.inSampleSize);
 
         // Decode with rotation
         switch (mRotation) {
@@ -111,33 +128,50 @@ public class BitmapRegionLoader {
                 mTempRect.set(rect);
         }
 
-        Bitmap bitmap = mBitmapRegionDecoder.decodeRegion(mTempRect, options);
+        BitmapPool bitmapPool = BitmapPool.getInstance();
+        int decodedWidth = Math.max(1, mTempRect.width() / sampleSize);
+        int decodedHeight = Math.max(1, mTempRect.height() / sampleSize);
+        Bitmap inBitmap = options.inBitmap;
+        Bitmap pooledInBitmap = null;
+        if (inBitmap == null) {
+            pooledInBitmap = bitmapPool.acquire(decodedWidth, decodedHeight,
+                    options.inPreferredConfig);
+            options.inBitmap = pooledInBitmap;
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = mBitmapRegionDecoder.decodeRegion(mTempRect, options);
+        } catch (IllegalArgumentException e) {
+            if (pooledInBitmap == null) {
+                throw e;
+            }
+            // The decoder rejected the pooled bitmap, let it allocate one instead
+            options.inBitmap = null;
+            bitmap = mBitmapRegionDecoder.decodeRegion(mTempRect, options);
+        } finally {
+            options.inBitmap = inBitmap;
+        }
+        if (pooledInBitmap != null && bitmap != pooledInBitmap) {
+            bitmapPool.release(pooledInBitmap);
+        }
         if (bitmap == null) {
             return null;
         }
 
-        if (options != null && options.inBitmap != null &&
-                ((mTempRect.width() != unsampledInBitmapWidth
-                        || mTempRect.height() != unsampledInBitmapHeight))) {
+        if (inBitmap != null && bitmap == inBitmap
+                && (decodedWidth != inBitmap.getWidth()
+                        || decodedHeight != inBitmap.getHeight())) {
             // Need to extract the sub-bitmap
-            Bitmap subBitmap = Bitmap.createBitmap(
-                    bitmap, 0, 0,
-                    mTempRect.width() / sampleSize,
-                    mTempRect.height() / sampleSize);
-            if (bitmap != options.inBitmap && bitmap != subBitmap) {
-                bitmap.recycle();
-            }
-            bitmap = subBitmap;
+            mCropRect.set(0, 0, decodedWidth, decodedHeight);
+            bitmap = bitmapPool.acquireCropped(bitmap, mCropRect);
         }
 
-        if (mRotateMatrix != null) {
+        if (mRotation != 0) {
             // Rotate decoded bitmap
-            Bitmap rotatedBitmap = Bitmap.createBitmap(
-                    bitmap, 0, 0,
-                    bitmap.getWidth(), bitmap.getHeight(),
-                    mRotateMatrix, true);
-            if ((options == null || bitmap != options.inBitmap) && bitmap != rotatedBitmap) {
-                bitmap.recycle();
+            Bitmap rotatedBitmap = bitmapPool.acquireRotated(bitmap, mRotation);
+            if (bitmap != inBitmap) {
+                bitmapPool.release(bitmap);
             }
             bitmap = rotatedBitmap;
         }
@@ -145,6 +179,45 @@ public class BitmapRegionLoader {
         return bitmap;
     }
 
+    /**
+     * Sets a key that identifies this image across loaders, for caches of work derived from it.
+     * It must be usable as a file name.
+     */
+    public void setCacheKey(String cacheKey) {
+        mCacheKey = cacheKey;
+    }
+
+    /**
+     * @return the key set by {@link #setCacheKey}, or null if results shouldn't be cached
+     */
+    public String getCacheKey() {
+        return mCacheKey;
+    }
+
+    /**
+     * {@link #decodeRegion} is synchronized, so decoding on several threads needs one loader
+     * per thread.
+     *
+     * @return a new loader over the same image that must be destroyed separately, or null if
+     * the image can't be reopened
+     */
+    public BitmapRegionLoader newCopy() throws IOException {
+        if (mInputStreamProvider == null) {
+            return null;
+        }
+        BitmapRegionLoader copy = newInstance(mInputStreamProvider, mRotation);
+        if (copy == null) {
+            return null;
+        }
+        if (copy.getWidth() != getWidth() || copy.getHeight() != getHeight()) {
+            // The image changed under us
+            copy.destroy();
+            return null;
+        }
+        copy.mCacheKey = mCacheKey;
+        return copy;
+    }
+
     public synchronized int getWidth() {
         return (mRotation == 90 || mRotation == 270) ? mOriginalHeight : mOriginalWidth;
     }
@@ -24,6 +24,7 @@ import android.os.Handler;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 public class DemoRenderController extends RenderController {
     private static final String TAG = "DemoRenderController";
@@ -92,7 +93,17 @@ public class DemoRenderController extends RenderController {
     @Override
     protected BitmapRegionLoader openDownloadedCurrentArtwork(boolean forceReload) {
         try {
-            return BitmapRegionLoader.newInstance(mContext.getAssets().open("starrynight.jpg"));
+            BitmapRegionLoader loader = BitmapRegionLoader.newInstance(
+                    new BitmapRegionLoader.InputStreamProvider() {
+                        @Override
+                        public InputStream openInputStream() throws IOException {
+                            return mContext.getAssets().open("starrynight.jpg");
+                        }
+                    }, 0);
+            if (loader != null) {
+                loader.setCacheKey("demo_starrynight");
+            }
+            return loader;
         } catch (IOException e) {
             Log.e(TAG, "Error opening demo image.", e);
             return null;
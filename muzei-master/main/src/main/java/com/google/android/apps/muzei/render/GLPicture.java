@@ -20,10 +20,19 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.opengl.GLES20;
+import android.util.Log;
 
+import com.google.android.apps.muzei.util.BitmapPool;
 import com.google.android.apps.muzei.util.MathUtil;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 class GLPicture {
     private static final String VERTEX_SHADER_CODE = "" +
@@ -52,6 +61,17 @@ class GLPicture {
     private static final int COORDS_PER_VERTEX = 3;
     private static final int VERTEX_STRIDE_BYTES = COORDS_PER_VERTEX * GLUtil.BYTES_PER_FLOAT;
     private static final int VERTICES = 6; // TL, BL, BR, TL, BR, TR
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final String TAG = "GLPicture";
+    // Smaller pictures load fast enough in one go
+    private static final int PROGRESSIVE_MIN_TILES = 4;
+    // Preview resolution relative to the full picture
+    private static final int PREVIEW_SAMPLE_SIZE = 4;
+    private static final int DECODER_THREADS = Math.max(1,
+            Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    // Keeps uploads from stalling any one frame
+    private static final int MAX_TILE_UPLOADS_PER_FRAME = 2;
 
     // S, T (or X, Y)
     private static final int COORDS_PER_TEXTURE_VERTEX = 2;
@@ -87,9 +107,26 @@ class GLPicture {
     private int mRows = 1;
     private int mWidth = 0;
     private int mHeight = 0;
+    private int mSampleSize = 1;
     private int mTileSize = sMaxTextureSize;
     private int[] mTextureHandles;
 
+    // Progressive loading. Tiles without a texture yet are drawn from the preview.
+    private static ExecutorService sDecoderExecutor;
+    private int mPreviewTextureHandle;
+    private float[] mTextureCoords = new float[COORDS_PER_TEXTURE_VERTEX * VERTICES];
+    private volatile BitmapRegionLoader mLoader;
+    private Runnable mOnTileDecoded;
+    private ConcurrentLinkedQueue<DecodedTile> mDecodedTiles;
+    private boolean[] mTileClaimed;
+    private int mTilesPending;
+    private boolean mDecodingStarted;
+    private volatile boolean mDestroyed;
+    private volatile float mVisibleLeft = -1;
+    private volatile float mVisibleTop = 1;
+    private volatile float mVisibleRight = 1;
+    private volatile float mVisibleBottom = -1;
+
     public static void initGl() {
         // Initialize shaders and create/link program
         int vertexShaderHandle = GLUtil.loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_CODE);
@@ -109,6 +146,20 @@ class GLPicture {
     }
 
     public GLPicture(BitmapRegionLoader bitmapRegionLoader, int maxHeight) {
+        this(bitmapRegionLoader, maxHeight, null);
+    }
+
+    /**
+     * With a non-null {@code onTileDecoded}, large pictures are shown progressively: a low
+     * resolution copy of the whole picture is uploaded right away, and full resolution tiles are
+     * then decoded in the background, closest to the {@link #setVisibleRegion visible region}
+     * first, and uploaded by {@link #draw} as they arrive.
+     *
+     * @param onTileDecoded called on a decoder thread whenever a tile is waiting to be uploaded,
+     *                      typically to request a render
+     */
+    public GLPicture(BitmapRegionLoader bitmapRegionLoader, int maxHeight,
+            Runnable onTileDecoded) {
         if (bitmapRegionLoader == null || maxHeight == 0) {
             return;
         }
@@ -126,10 +177,9 @@ class GLPicture {
 
         mWidth = originalWidth / sampleSize;
         mHeight = originalHeight / sampleSize;
+        mSampleSize = sampleSize;
 
-        mTileSize = Math.min(512, sMaxTextureSize);
-        int unsampledTileSize = mTileSize * sampleSize;
-        int leftoverHeight = originalHeight % unsampledTileSize;
+        mTileSize = getTileSize();
 
         // Load m x n textures
         mCols = MathUtil.intDivideRoundUp(mWidth, mTileSize);
@@ -137,32 +187,231 @@ class GLPicture {
 
         mTextureHandles = new int[mCols * mRows];
 
-        Bitmap tileBitmap = Bitmap.createBitmap(mTileSize, mTileSize, Bitmap.Config.ARGB_8888);
+        if (onTileDecoded != null && mCols * mRows >= PROGRESSIVE_MIN_TILES
+                && loadPreview(bitmapRegionLoader)) {
+            mLoader = bitmapRegionLoader;
+            mOnTileDecoded = onTileDecoded;
+            mDecodedTiles = new ConcurrentLinkedQueue<>();
+            mTileClaimed = new boolean[mCols * mRows];
+            mTilesPending = mCols * mRows;
+            return;
+        }
+
+        BitmapPool bitmapPool = BitmapPool.getInstance();
+        Bitmap tileBitmap = bitmapPool.acquire(mTileSize, mTileSize, Bitmap.Config.ARGB_8888);
         Rect rect = new Rect();
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inSampleSize = sampleSize;
         options.inBitmap = tileBitmap;
         for (int y = 0; y < mRows; y++) {
             for (int x = 0; x < mCols; x++) {
-                rect.set(x * unsampledTileSize,
-                        (mRows - y - 1) * unsampledTileSize,
-                        (x + 1) * unsampledTileSize,
-                        (mRows - y) * unsampledTileSize);
-                // The bottom tiles must be full tiles for drawing, so only allow edge tiles
-                // at the top
-                if (leftoverHeight > 0) {
-                    rect.offset(0, -unsampledTileSize + leftoverHeight);
-                }
-                rect.intersect(0, 0, originalWidth, originalHeight);
+                getUnsampledTileRect(x, y, originalWidth, originalHeight, rect);
                 Bitmap useBitmap = bitmapRegionLoader.decodeRegion(rect, options);
                 if (useBitmap != null) {
                     mTextureHandles[y * mCols + x] = GLUtil.loadTexture(useBitmap);
                     if (useBitmap != tileBitmap) {
-                        useBitmap.recycle();
+                        bitmapPool.release(useBitmap);
                     }
                 }
             }
         }
+        bitmapPool.release(tileBitmap);
+    }
+
+    /**
+     * Decodes and uploads the whole picture as a single low resolution texture.
+     */
+    private boolean loadPreview(BitmapRegionLoader bitmapRegionLoader) {
+        int originalWidth = bitmapRegionLoader.getWidth();
+        int originalHeight = bitmapRegionLoader.getHeight();
+        int previewSampleSize = mSampleSize * PREVIEW_SAMPLE_SIZE;
+        while (originalWidth / previewSampleSize > sMaxTextureSize
+                || originalHeight / previewSampleSize > sMaxTextureSize) {
+            previewSampleSize <<= 1;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = previewSampleSize;
+        Bitmap preview = bitmapRegionLoader.decodeRegion(
+                new Rect(0, 0, originalWidth, originalHeight), options);
+        if (preview == null) {
+            return false;
+        }
+        mPreviewTextureHandle = GLUtil.loadTexture(preview);
+        BitmapPool.getInstance().release(preview);
+        return mPreviewTextureHandle != 0;
+    }
+
+    private void getUnsampledTileRect(int x, int y, int originalWidth, int originalHeight,
+            Rect rect) {
+        int unsampledTileSize = mTileSize * mSampleSize;
+        int leftoverHeight = originalHeight % unsampledTileSize;
+        rect.set(x * unsampledTileSize,
+                (mRows - y - 1) * unsampledTileSize,
+                (x + 1) * unsampledTileSize,
+                (mRows - y) * unsampledTileSize);
+        // The bottom tiles must be full tiles for drawing, so only allow edge tiles
+        // at the top
+        if (leftoverHeight > 0) {
+            rect.offset(0, -unsampledTileSize + leftoverHeight);
+        }
+        rect.intersect(0, 0, originalWidth, originalHeight);
+    }
+
+    /**
+     * Sets the part of the picture currently on screen, in the same [-1, 1] coordinates the
+     * picture is drawn in, so that progressive loading can decode those tiles first.
+     */
+    public void setVisibleRegion(float left, float top, float right, float bottom) {
+        mVisibleLeft = left;
+        mVisibleTop = top;
+        mVisibleRight = right;
+        mVisibleBottom = bottom;
+    }
+
+    private void startDecoding() {
+        mDecodingStarted = true;
+        ExecutorService executor = getDecoderExecutor();
+        for (int i = 0; i < DECODER_THREADS; i++) {
+            executor.execute(new TileDecoder());
+        }
+    }
+
+    /**
+     * Decodes tiles with its own copy of the loader until none are left.
+     */
+    private class TileDecoder implements Runnable {
+        @Override
+        public void run() {
+            BitmapRegionLoader loader = mLoader;
+            if (loader == null) {
+                return;
+            }
+            BitmapRegionLoader copy = null;
+            try {
+                copy = loader.newCopy();
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't reopen picture, decoding on a shared loader", e);
+            }
+            try {
+                int originalWidth = loader.getWidth();
+                int originalHeight = loader.getHeight();
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mSampleSize;
+                Rect rect = new Rect();
+                int tile;
+                while ((tile = claimNextTile()) >= 0) {
+                    getUnsampledTileRect(tile % mCols, tile / mCols,
+                            originalWidth, originalHeight, rect);
+                    Bitmap bitmap = (copy != null ? copy : loader).decodeRegion(rect, options);
+                    // destroy() drains the queue under the same lock, so nothing added
+                    // here can be missed by it
+                    synchronized (mTileClaimed) {
+                        if (mDestroyed) {
+                            BitmapPool.getInstance().release(bitmap);
+                            return;
+                        }
+                        mDecodedTiles.add(new DecodedTile(tile, bitmap));
+                    }
+                    mOnTileDecoded.run();
+                }
+            } finally {
+                if (copy != null) {
+                    copy.destroy();
+                }
+            }
+        }
+    }
+
+    private static class DecodedTile {
+        final int mIndex;
+        // Null if the tile couldn't be decoded
+        final Bitmap mBitmap;
+
+        DecodedTile(int index, Bitmap bitmap) {
+            mIndex = index;
+            mBitmap = bitmap;
+        }
+    }
+
+    /**
+     * @return the unclaimed tile closest to the visible region, or -1 if there are none left
+     */
+    private int claimNextTile() {
+        synchronized (mTileClaimed) {
+            if (mDestroyed) {
+                return -1;
+            }
+            int best = -1;
+            float bestDistance = Float.MAX_VALUE;
+            for (int y = 0; y < mRows; y++) {
+                for (int x = 0; x < mCols; x++) {
+                    int index = y * mCols + x;
+                    if (mTileClaimed[index]) {
+                        continue;
+                    }
+                    float left = -1 + 2f * x * mTileSize / mWidth;
+                    float right = Math.min(-1 + 2f * (x + 1) * mTileSize / mWidth, 1);
+                    float bottom = -1 + 2f * y * mTileSize / mHeight;
+                    float top = Math.min(-1 + 2f * (y + 1) * mTileSize / mHeight, 1);
+                    float dx = Math.max(0, Math.max(mVisibleLeft - right, left - mVisibleRight));
+                    float dy = Math.max(0, Math.max(mVisibleBottom - top, bottom - mVisibleTop));
+                    float distance = dx * dx + dy * dy;
+                    if (distance < bestDistance) {
+                        best = index;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (best >= 0) {
+                mTileClaimed[best] = true;
+            }
+            return best;
+        }
+    }
+
+    private void uploadDecodedTiles() {
+        for (int i = 0; i < MAX_TILE_UPLOADS_PER_FRAME; i++) {
+            DecodedTile tile = mDecodedTiles.poll();
+            if (tile == null) {
+                break;
+            }
+            if (tile.mBitmap != null) {
+                mTextureHandles[tile.mIndex] = GLUtil.loadTexture(tile.mBitmap);
+                BitmapPool.getInstance().release(tile.mBitmap);
+            }
+            --mTilesPending;
+        }
+        if (mTilesPending == 0) {
+            // Every tile is covered now, the preview is no longer needed
+            deletePreview();
+            mLoader = null;
+        } else if (!mDecodedTiles.isEmpty()) {
+            mOnTileDecoded.run();
+        }
+    }
+
+    private void deletePreview() {
+        if (mPreviewTextureHandle != 0) {
+            GLES20.glDeleteTextures(1, new int[]{mPreviewTextureHandle}, 0);
+            mPreviewTextureHandle = 0;
+            // Tiles no longer rewrite the coordinates, so drop the last preview sub-rect
+            mTextureCoordsBuffer.put(SQUARE_TEXTURE_VERTICES);
+            mTextureCoordsBuffer.position(0);
+        }
+    }
+
+    private static synchronized ExecutorService getDecoderExecutor() {
+        if (sDecoderExecutor == null) {
+            sDecoderExecutor = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "GLPicture decoder");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+        }
+        return sDecoderExecutor;
     }
 
     public GLPicture(Bitmap bitmap) {
@@ -170,43 +419,129 @@ class GLPicture {
             return;
         }
 
-        mTileSize = Math.min(512, sMaxTextureSize);
+        initTiles(bitmap.getWidth(), bitmap.getHeight());
+        if (mCols == 1 && mRows == 1) {
+            mTextureHandles[0] = GLUtil.loadTexture(bitmap);
+        } else {
+            BitmapPool bitmapPool = BitmapPool.getInstance();
+            Rect rect = new Rect();
+            for (int y = 0; y < mRows; y++) {
+                for (int x = 0; x < mCols; x++) {
+                    getTileRect(x, y, mWidth, mHeight, mTileSize, rect);
+                    Bitmap subBitmap = bitmapPool.acquireCropped(bitmap, rect);
+                    mTextureHandles[y * mCols + x] = GLUtil.loadTexture(subBitmap);
+                    bitmapPool.release(subBitmap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads a picture previously laid out by {@link #writeTiles}.
+     */
+    public GLPicture(ByteBuffer tiles, int width, int height) {
+        if (tiles == null) {
+            return;
+        }
+
+        initTiles(width, height);
+        Rect rect = new Rect();
+        ByteBuffer tile = tiles.duplicate();
+        for (int y = 0; y < mRows; y++) {
+            for (int x = 0; x < mCols; x++) {
+                getTileRect(x, y, mWidth, mHeight, mTileSize, rect);
+                tile.limit(tile.position() + rect.width() * rect.height() * BYTES_PER_PIXEL);
+                mTextureHandles[y * mCols + x] = GLUtil.loadTexture(tile.slice(),
+                        rect.width(), rect.height());
+                tile.position(tile.limit());
+            }
+        }
+    }
+
+    public static int getTileSize() {
+        return Math.min(512, sMaxTextureSize);
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTiles} writes for a bitmap of the given size
+     */
+    public static int getTiledByteCount(int width, int height) {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Writes the bitmap as premultiplied RGBA, one tile after another in the order the
+     * {@link #GLPicture(ByteBuffer, int, int)} constructor uploads them.
+     */
+    public static void writeTiles(Bitmap bitmap, ByteBuffer out) {
+        int tileSize = getTileSize();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int cols = MathUtil.intDivideRoundUp(width, tileSize);
+        int rows = MathUtil.intDivideRoundUp(height, tileSize);
+
+        int[] pixels = new int[tileSize * tileSize];
+        Rect rect = new Rect();
+        ByteBuffer bigEndian = out.duplicate().order(ByteOrder.BIG_ENDIAN);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                getTileRect(x, y, width, height, tileSize, rect);
+                int count = rect.width() * rect.height();
+                bitmap.getPixels(pixels, 0, rect.width(),
+                        rect.left, rect.top, rect.width(), rect.height());
+                for (int i = 0; i < count; i++) {
+                    pixels[i] = toPremultipliedRgba(pixels[i]);
+                }
+                bigEndian.asIntBuffer().put(pixels, 0, count);
+                bigEndian.position(bigEndian.position() + count * BYTES_PER_PIXEL);
+            }
+        }
+        out.position(bigEndian.position());
+    }
+
+    private static int toPremultipliedRgba(int argb) {
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        if (a != 0xff) {
+            r = r * a / 0xff;
+            g = g * a / 0xff;
+            b = b * a / 0xff;
+        }
+        return (r << 24) | (g << 16) | (b << 8) | a;
+    }
+
+    private void initTiles(int width, int height) {
+        mTileSize = getTileSize();
         mHasContent = true;
         mVertexBuffer = GLUtil.newFloatBuffer(mVertices.length);
         mTextureCoordsBuffer = GLUtil.asFloatBuffer(SQUARE_TEXTURE_VERTICES);
 
-        mWidth = bitmap.getWidth();
-        mHeight = bitmap.getHeight();
-        int leftoverHeight = mHeight % mTileSize;
+        mWidth = width;
+        mHeight = height;
 
         // Load m x n textures
         mCols = MathUtil.intDivideRoundUp(mWidth, mTileSize);
         mRows = MathUtil.intDivideRoundUp(mHeight, mTileSize);
 
         mTextureHandles = new int[mCols * mRows];
-        if (mCols == 1 && mRows == 1) {
-            mTextureHandles[0] = GLUtil.loadTexture(bitmap);
-        } else {
-            Rect rect = new Rect();
-            for (int y = 0; y < mRows; y++) {
-                for (int x = 0; x < mCols; x++) {
-                    rect.set(x * mTileSize,
-                            (mRows - y - 1) * mTileSize,
-                            (x + 1) * mTileSize,
-                            (mRows - y) * mTileSize);
-                    // The bottom tiles must be full tiles for drawing, so only allow edge tiles
-                    // at the top
-                    if (leftoverHeight > 0) {
-                        rect.offset(0, -mTileSize + leftoverHeight);
-                    }
-                    rect.intersect(0, 0, mWidth, mHeight);
-                    Bitmap subBitmap = Bitmap.createBitmap(bitmap,
-                            rect.left, rect.top, rect.width(), rect.height());
-                    mTextureHandles[y * mCols + x] = GLUtil.loadTexture(subBitmap);
-                    subBitmap.recycle();
-                }
-            }
+    }
+
+    private static void getTileRect(int x, int y, int width, int height, int tileSize,
+            Rect rect) {
+        int rows = MathUtil.intDivideRoundUp(height, tileSize);
+        rect.set(x * tileSize,
+                (rows - y - 1) * tileSize,
+                (x + 1) * tileSize,
+                (rows - y) * tileSize);
+        // The bottom tiles must be full tiles for drawing, so only allow edge tiles
+        // at the top
+        int leftoverHeight = height % tileSize;
+        if (leftoverHeight > 0) {
+            rect.offset(0, -tileSize + leftoverHeight);
         }
+        rect.intersect(0, 0, width, height);
     }
 
     public void draw(float[] mvpMatrix, float alpha) {
@@ -214,6 +549,15 @@ class GLPicture {
             return;
         }
 
+        if (mTilesPending > 0) {
+            if (!mDecodingStarted) {
+                // Started here rather than in the constructor so the first tiles picked already
+                // know the visible region
+                startDecoding();
+            }
+            uploadDecodedTiles();
+        }
+
         // Add program to OpenGL ES environment
         GLES20.glUseProgram(sProgramHandle);
 
@@ -253,8 +597,27 @@ class GLPicture {
                 mVertexBuffer.put(mVertices);
                 mVertexBuffer.position(0);
 
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D,
-                        mTextureHandles[y * mCols + x]);
+                int textureHandle = mTextureHandles[y * mCols + x];
+                if (mPreviewTextureHandle != 0) {
+                    if (textureHandle != 0) {
+                        mTextureCoordsBuffer.put(SQUARE_TEXTURE_VERTICES);
+                    } else {
+                        // Not decoded yet, draw this tile's part of the preview instead
+                        textureHandle = mPreviewTextureHandle;
+                        mTextureCoords[0] = mTextureCoords[2] = mTextureCoords[6]
+                                = (float) x * mTileSize / mWidth; // left
+                        mTextureCoords[1] = mTextureCoords[7] = mTextureCoords[11]
+                                = 1 - Math.min((float) (y + 1) * mTileSize / mHeight, 1); // top
+                        mTextureCoords[4] = mTextureCoords[8] = mTextureCoords[10]
+                                = Math.min((float) (x + 1) * mTileSize / mWidth, 1); // right
+                        mTextureCoords[3] = mTextureCoords[5] = mTextureCoords[9]
+                                = 1 - (float) y * mTileSize / mHeight; // bottom
+                        mTextureCoordsBuffer.put(mTextureCoords);
+                    }
+                    mTextureCoordsBuffer.position(0);
+                }
+
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
                 GLUtil.checkGlError("glBindTexture");
 
                 // Draw the two triangles
@@ -267,6 +630,19 @@ class GLPicture {
     }
 
     public void destroy() {
+        mLoader = null;
+        if (mDecodedTiles != null) {
+            synchronized (mTileClaimed) {
+                mDestroyed = true;
+                DecodedTile tile;
+                while ((tile = mDecodedTiles.poll()) != null) {
+                    BitmapPool.getInstance().release(tile.mBitmap);
+                }
+            }
+        } else {
+            mDestroyed = true;
+        }
+        deletePreview();
         if (mTextureHandles != null) {
             GLES20.glDeleteTextures(mTextureHandles.length, mTextureHandles, 0);
             GLUtil.checkGlError("Destroy picture");
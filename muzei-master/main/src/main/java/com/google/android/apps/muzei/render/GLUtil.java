@@ -64,6 +64,30 @@ public class GLUtil {
     }
 
     public static int loadTexture(Bitmap bitmap) {
+        int textureHandle = createTexture();
+        if (textureHandle != 0) {
+            // Load the bitmap into the bound texture.
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+            GLUtil.checkGlError("texImage2D");
+        }
+        return textureHandle;
+    }
+
+    /**
+     * Loads tightly packed, premultiplied RGBA_8888 pixels, such as those written by
+     * {@link Bitmap#copyPixelsToBuffer}, without going through a {@link Bitmap}.
+     */
+    public static int loadTexture(ByteBuffer pixels, int width, int height) {
+        int textureHandle = createTexture();
+        if (textureHandle != 0) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+            GLUtil.checkGlError("glTexImage2D");
+        }
+        return textureHandle;
+    }
+
+    private static int createTexture() {
         final int[] textureHandle = new int[1];
 
         GLES20.glGenTextures(1, textureHandle, 0);
@@ -82,10 +106,6 @@ public class GLUtil {
                     GLES20.GL_LINEAR);
             GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
                     GLES20.GL_LINEAR);
-
-            // Load the bitmap into the bound texture.
-            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-            GLUtil.checkGlError("texImage2D");
         }
 
         if (textureHandle[0] == 0) {
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.render;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Size-bounded disk cache of blurred keyframes, so that recreating the wallpaper surface doesn't
+ * have to decode and blur the artwork again when nothing relevant has changed.
+ *
+ * <p>Each entry is a single file holding a small header followed by the keyframes already split
+ * into {@link GLPicture} tiles, so a hit is memory mapped and uploaded straight to GL. Entries
+ * are evicted least recently used first, using the file's modification time as the last use.
+ */
+class KeyframeCache {
+    private static final String TAG = "KeyframeCache";
+
+    private static final String DIRECTORY = "blur_keyframes";
+    private static final long MAX_SIZE_BYTES = 16 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4d5a4b46; // MZKF
+    // Bump whenever the file layout or the way keyframes are generated changes
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 7 * 4;
+
+    private static KeyframeCache sInstance;
+
+    private final File mDirectory;
+
+    static synchronized KeyframeCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new KeyframeCache(
+                    new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    private KeyframeCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Keyframes read back from the cache. The pixel data stays valid for as long as this object
+     * is reachable, even if the entry is evicted in the meantime.
+     */
+    static class Keyframes {
+        private final ByteBuffer mBuffer;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mCount;
+        private final float mDarkness;
+
+        private Keyframes(ByteBuffer buffer, int width, int height, int count, float darkness) {
+            mBuffer = buffer;
+            mWidth = width;
+            mHeight = height;
+            mCount = count;
+            mDarkness = darkness;
+        }
+
+        int getWidth() {
+            return mWidth;
+        }
+
+        int getHeight() {
+            return mHeight;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return {@link ImageUtil#calculateDarkness} of the artwork
+         */
+        float getDarkness() {
+            return mDarkness;
+        }
+
+        /**
+         * @return the tiles of the given keyframe, as laid out by {@link GLPicture#writeTiles}
+         */
+        ByteBuffer getKeyframe(int index) {
+            int size = GLPicture.getTiledByteCount(mWidth, mHeight);
+            ByteBuffer keyframe = mBuffer.duplicate();
+            keyframe.position(HEADER_BYTES + index * size);
+            keyframe.limit(keyframe.position() + size);
+            return keyframe.slice();
+        }
+    }
+
+    /**
+     * @param key a file name that identifies the artwork and every setting that affects the blur
+     * @return the cached keyframes, or null if there are none or they can't be read
+     */
+    synchronized Keyframes get(String key) {
+        File file = new File(mDirectory, key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.capacity() < HEADER_BYTES
+                    || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) != GLPicture.getTileSize()) {
+                Log.w(TAG, "Discarding unreadable keyframes " + key);
+                file.delete();
+                return null;
+            }
+            int width = buffer.getInt(12);
+            int height = buffer.getInt(16);
+            int count = buffer.getInt(20);
+            float darkness = buffer.getFloat(24);
+            if (buffer.capacity() != HEADER_BYTES
+                    + count * GLPicture.getTiledByteCount(width, height)) {
+                Log.w(TAG, "Discarding truncated keyframes " + key);
+                file.delete();
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new Keyframes(buffer, width, height, count, darkness);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read keyframes " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores keyframes of equal size, replacing any previous entry for the key.
+     */
+    synchronized void put(String key, float darkness, Bitmap[] keyframes) {
+        if (keyframes.length == 0 || keyframes[0] == null) {
+            return;
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + mDirectory);
+            return;
+        }
+        int width = keyframes[0].getWidth();
+        int height = keyframes[0].getHeight();
+        long size = HEADER_BYTES
+                + (long) keyframes.length * GLPicture.getTiledByteCount(width, height);
+        if (size > MAX_SIZE_BYTES) {
+            return;
+        }
+
+        // Written to a temporary file and renamed so a crash can't leave a partial entry
+        File tempFile = new File(mDirectory, key + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(GLPicture.getTileSize());
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(keyframes.length);
+            buffer.putFloat(darkness);
+            for (Bitmap keyframe : keyframes) {
+                if (keyframe == null
+                        || keyframe.getWidth() != width || keyframe.getHeight() != height) {
+                    throw new IOException("Keyframes must all have the same size");
+                }
+                GLPicture.writeTiles(keyframe, buffer);
+            }
+            buffer.force();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write keyframes " + key, e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(new File(mDirectory, key))) {
+            Log.w(TAG, "Couldn't move keyframes into place " + key);
+            tempFile.delete();
+            return;
+        }
+        trim();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in {@link #MAX_SIZE_BYTES}.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_SIZE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_SIZE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
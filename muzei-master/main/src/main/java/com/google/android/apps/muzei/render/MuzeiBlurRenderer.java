@@ -35,6 +35,7 @@ import com.google.android.apps.muzei.ArtDetailViewport;
 import com.google.android.apps.muzei.event.ArtworkSizeChangedEvent;
 import com.google.android.apps.muzei.event.SwitchingPhotosStateChangedEvent;
 import com.google.android.apps.muzei.settings.Prefs;
+import com.google.android.apps.muzei.util.BitmapPool;
 import com.google.android.apps.muzei.util.ImageBlurrer;
 import com.google.android.apps.muzei.util.MathUtil;
 import com.google.android.apps.muzei.util.TickingFloatAnimator;
@@ -71,6 +72,12 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
     private final float[] mVMatrix = new float[16];
 
     private Callbacks mCallbacks;
+    private final Runnable mRequestRenderRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mCallbacks.requestRender();
+        }
+    };
 
     private float mAspectRatio;
     private int mHeight;
@@ -87,6 +94,8 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
     private volatile RectF mCurrentViewport = new RectF(); // [-1, -1] to [1, 1], flipped
 
     private Context mContext;
+    private KeyframeCache mKeyframeCache;
+    private BitmapPool mBitmapPool;
 
     private boolean mIsBlurred = true;
     private boolean mBlurRelatedToArtDetailMode = false;
@@ -97,6 +106,8 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
     public MuzeiBlurRenderer(Context context, Callbacks callbacks) {
         mContext = context;
         mCallbacks = callbacks;
+        mKeyframeCache = KeyframeCache.getInstance(context);
+        mBitmapPool = BitmapPool.getInstance();
 
         mBlurKeyframes = getNumberOfKeyframes();
         mBlurAnimator = TickingFloatAnimator.create().from(mBlurKeyframes);
@@ -231,6 +242,23 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
         }
     }
 
+    /**
+     * @return the name keyframes of this artwork are cached under with the current settings,
+     * or null if they shouldn't be cached
+     */
+    private String getKeyframeCacheKey(BitmapRegionLoader bitmapRegionLoader) {
+        String artworkKey = bitmapRegionLoader.getCacheKey();
+        if (artworkKey == null) {
+            return null;
+        }
+        return artworkKey
+                + "_b" + mMaxPrescaledBlurPixels
+                + "_s" + mBlurredSampleSize
+                + "_g" + mMaxGrey
+                + "_k" + mBlurKeyframes
+                + "_h" + mHeight;
+    }
+
     private float blurRadiusAtFrame(float f) {
         return mMaxPrescaledBlurPixels * mBlurInterpolator.getInterpolation(f / mBlurKeyframes);
     }
@@ -328,24 +356,41 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
                 int originalWidth = bitmapRegionLoader.getWidth();
                 int originalHeight = bitmapRegionLoader.getHeight();
 
+                boolean blurred = mMaxPrescaledBlurPixels > 0 || mMaxGrey > 0;
+                String cacheKey = blurred ? getKeyframeCacheKey(bitmapRegionLoader) : null;
+                KeyframeCache.Keyframes cachedKeyframes = cacheKey != null
+                        ? mKeyframeCache.get(cacheKey)
+                        : null;
+
                 // Calculate image darkness to determine dim amount
-                rect.set(0, 0, originalWidth, originalHeight);
-                options.inSampleSize = ImageUtil.calculateSampleSize(originalHeight, 64);
-                Bitmap tempBitmap = bitmapRegionLoader.decodeRegion(rect, options);
-                float darkness = ImageUtil.calculateDarkness(tempBitmap);
+                Bitmap tempBitmap;
+                float darkness;
+                if (cachedKeyframes != null) {
+                    darkness = cachedKeyframes.getDarkness();
+                } else {
+                    rect.set(0, 0, originalWidth, originalHeight);
+                    options.inSampleSize = ImageUtil.calculateSampleSize(originalHeight, 64);
+                    tempBitmap = bitmapRegionLoader.decodeRegion(rect, options);
+                    darkness = ImageUtil.calculateDarkness(tempBitmap);
+                    mBitmapPool.release(tempBitmap);
+                }
                 mDimAmount = mDemoMode
                         ? DEMO_DIM
                         : (int) (mMaxDim * ((1 - DIM_RANGE) + DIM_RANGE * Math.sqrt(darkness)));
-                if (tempBitmap != null) {
-                    tempBitmap.recycle();
-                }
 
                 // Create the GLPicture objects
-                mPictures[0] = new GLPicture(bitmapRegionLoader, mHeight);
-                if (mMaxPrescaledBlurPixels == 0 && mMaxGrey == 0) {
+                mPictures[0] = new GLPicture(bitmapRegionLoader, mHeight, mRequestRenderRunnable);
+                if (!blurred) {
                     for (int f = 1; f <= mBlurKeyframes; f++) {
                         mPictures[f] = mPictures[0];
                     }
+                } else if (cachedKeyframes != null) {
+                    // Everything the keyframes depend on is part of the cache key, so they can
+                    // be uploaded as they are
+                    for (int f = 1; f <= mBlurKeyframes; f++) {
+                        mPictures[f] = new GLPicture(cachedKeyframes.getKeyframe(f - 1),
+                                cachedKeyframes.getWidth(), cachedKeyframes.getHeight());
+                    }
                 } else {
                     int sampleSizeTargetHeight, scaledHeight, scaledWidth;
                     if (mMaxPrescaledBlurPixels > 0) {
@@ -354,8 +399,6 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
                         sampleSizeTargetHeight = mHeight;
                     }
 
-                    // Note that image width should be a multiple of 4 to avoid
-                    // issues with RenderScript allocations.
                     scaledHeight = Math.max(2, MathUtil.floorEven(
                             sampleSizeTargetHeight));
                     scaledWidth = Math.max(4, MathUtil.roundMult4(
@@ -374,32 +417,32 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
                         // looks appropriate (tempBitmap will likely be bigger than the final
                         // blurred bitmap, and thus the blur may look smaller if we just used
                         // tempBitmap as the final blurred bitmap).
-
-                        // Note that image width should be a multiple of 4 to avoid
-                        // issues with RenderScript allocations.
-                        Bitmap scaledBitmap = Bitmap.createScaledBitmap(
-                                tempBitmap, scaledWidth, scaledHeight, true);
-                        if (tempBitmap != scaledBitmap) {
-                            tempBitmap.recycle();
-                        }
-
-                        // And finally, create a blurred copy for each keyframe.
-                        ImageBlurrer blurrer = new ImageBlurrer(mContext, scaledBitmap);
+                        Bitmap scaledBitmap = mBitmapPool.acquireScaled(
+                                tempBitmap, scaledWidth, scaledHeight);
+                        mBitmapPool.release(tempBitmap);
+
+                        // And finally, create a blurred copy for each keyframe. Radii grow
+                        // with f, so each keyframe only adds blur on top of the previous one.
+                        ImageBlurrer blurrer = new ImageBlurrer(scaledBitmap);
+                        Bitmap[] keyframes = new Bitmap[mBlurKeyframes];
                         for (int f = 1; f <= mBlurKeyframes; f++) {
                             float desaturateAmount = mMaxGrey / 500f * f / mBlurKeyframes;
                             float blurRadius = 0f;
                             if (mMaxPrescaledBlurPixels > 0) {
                                 blurRadius = blurRadiusAtFrame(f);
                             }
-                            Bitmap blurredBitmap = blurrer.blurBitmap(blurRadius, desaturateAmount);
+                            Bitmap blurredBitmap = blurrer.blurNextKeyframe(blurRadius,
+                                    desaturateAmount);
                             mPictures[f] = new GLPicture(blurredBitmap);
-                            if (blurredBitmap != null) {
-                                blurredBitmap.recycle();
-                            }
+                            keyframes[f - 1] = blurredBitmap;
                         }
-                        blurrer.destroy();
-
-                        scaledBitmap.recycle();
+                        if (cacheKey != null) {
+                            mKeyframeCache.put(cacheKey, darkness, keyframes);
+                        }
+                        for (Bitmap keyframe : keyframes) {
+                            mBitmapPool.release(keyframe);
+                        }
+                        mBitmapPool.release(scaledBitmap);
                     } else {
                         Log.e(TAG, "BitmapRegionLoader failed to decode the region, rect="
                                 + rect.toShortString());
@@ -478,6 +521,12 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
                     mCurrentViewport.left, mCurrentViewport.right,
                     mCurrentViewport.bottom, mCurrentViewport.top,
                     1, 10);
+
+            if (mPictures[0] != null) {
+                mPictures[0].setVisibleRegion(
+                        mCurrentViewport.left, mCurrentViewport.top,
+                        mCurrentViewport.right, mCurrentViewport.bottom);
+            }
         }
 
         public void drawFrame(float globalAlpha) {
@@ -543,6 +592,8 @@ public class MuzeiBlurRenderer implements GLSurfaceView.Renderer {
     public void destroy() {
         mCurrentGLPictureSet.destroyPictures();
         mNextGLPictureSet.destroyPictures();
+        // Nothing will be decoded until the next surface, so don't hold on to pooled memory
+        mBitmapPool.trimToSize(0);
     }
 
     public boolean isBlurred() {
@@ -105,9 +105,8 @@ public class MuzeiRendererFragment extends Fragment implements
         public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
             if (!mDemoFocus) {
                 // Blur
-                ImageBlurrer blurrer = new ImageBlurrer(getActivity(), bitmap);
+                ImageBlurrer blurrer = new ImageBlurrer(bitmap);
                 Bitmap blurred = blurrer.blurBitmap(ImageBlurrer.MAX_SUPPORTED_BLUR_PIXELS, 0);
-                blurrer.destroy();
 
                 // Dim
                 Canvas c = new Canvas(blurred);
@@ -16,10 +16,13 @@
 
 package com.google.android.apps.muzei.render;
 
+import android.content.ContentUris;
 import android.content.Context;
 import android.database.ContentObserver;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
+import android.provider.BaseColumns;
 import android.support.media.ExifInterface;
 import android.util.Log;
 
@@ -55,11 +58,28 @@ public class RealRenderController extends RenderController {
 
     @Override
     protected BitmapRegionLoader openDownloadedCurrentArtwork(boolean forceReload) {
+        // Pin the current artwork by id, so that every stream opened for it reads the same image
+        // even if a new artwork arrives in the meantime
+        Uri artworkUri = MuzeiContract.Artwork.CONTENT_URI;
+        String cacheKey = null;
+        Cursor data = mContext.getContentResolver().query(MuzeiContract.Artwork.CONTENT_URI,
+                new String[] {BaseColumns._ID, MuzeiContract.Artwork.COLUMN_NAME_DATE_ADDED},
+                null, null, null);
+        if (data != null) {
+            if (data.moveToFirst()) {
+                artworkUri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI,
+                        data.getLong(0));
+                cacheKey = "artwork_" + data.getLong(0) + "_" + data.getLong(1);
+            }
+            data.close();
+        }
+        final Uri uri = artworkUri;
+
         // Load the stream
         try {
             // Check if there's rotation
             int rotation = 0;
-            try (InputStream in = mContext.getContentResolver().openInputStream(MuzeiContract.Artwork.CONTENT_URI)) {
+            try (InputStream in = mContext.getContentResolver().openInputStream(uri)) {
                 if (in == null) {
                     return null;
                 }
@@ -74,8 +94,17 @@ public class RealRenderController extends RenderController {
             } catch (IOException|NumberFormatException|StackOverflowError e) {
                 Log.w(TAG, "Couldn't open EXIF interface on artwork", e);
             }
-            return BitmapRegionLoader.newInstance(
-                    mContext.getContentResolver().openInputStream(MuzeiContract.Artwork.CONTENT_URI), rotation);
+            BitmapRegionLoader loader = BitmapRegionLoader.newInstance(
+                    new BitmapRegionLoader.InputStreamProvider() {
+                        @Override
+                        public InputStream openInputStream() throws IOException {
+                            return mContext.getContentResolver().openInputStream(uri);
+                        }
+                    }, rotation);
+            if (loader != null) {
+                loader.setCacheKey(cacheKey);
+            }
+            return loader;
         } catch (IOException e) {
             Log.e(TAG, "Error loading image", e);
             return null;
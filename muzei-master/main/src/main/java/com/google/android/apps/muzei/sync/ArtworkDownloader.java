@@ -0,0 +1,347 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+
+/**
+ * Downloads artwork over HTTP into a partial file that survives failed attempts, so that a retry
+ * resumes with a Range request instead of starting over. The server's ETag or Last-Modified date
+ * is sent back as If-Range, so a changed image is downloaded again from the start rather than
+ * spliced together.
+ *
+ * <p>A finished download is checked against the length the server announced and, when the server
+ * sends one, against its SHA-256 or MD5 digest. Only plain Java and OkHttp are used here, so it
+ * can be exercised against a local MockWebServer.
+ */
+public class ArtworkDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern CONTENT_RANGE_PATTERN =
+            Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final Pattern UNSATISFIED_RANGE_PATTERN = Pattern.compile("bytes \\*/(\\d+)");
+
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_LENGTH = "length";
+    private static final String META_SHA256 = "sha256";
+    private static final String META_MD5 = "md5";
+
+    private final OkHttpClient mClient;
+    private final File mDirectory;
+    private ProgressListener mProgressListener;
+
+    public interface ProgressListener {
+        /**
+         * Called after every chunk written to the partial file. When a download is resumed,
+         * {@code bytesDownloaded} includes the bytes kept from earlier attempts.
+         *
+         * @param totalBytes the full size of the artwork, or -1 if the server didn't say
+         * @param bytesPerSecond average throughput of the current attempt
+         */
+        void onProgress(long bytesDownloaded, long totalBytes, long bytesPerSecond);
+    }
+
+    /**
+     * @param directory where partial downloads are kept between attempts
+     */
+    public ArtworkDownloader(OkHttpClient client, File directory) {
+        mClient = client;
+        mDirectory = directory;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    /**
+     * Downloads the given URL, resuming any earlier attempt. The returned file belongs to the
+     * downloader: copy it with {@link #transferTo} and then {@link #discard} it.
+     */
+    public File download(String url) throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mDirectory);
+        }
+        String name = ByteString.encodeUtf8(url).sha1().hex();
+        File partFile = new File(mDirectory, name + ".part");
+        File metaFile = new File(mDirectory, name + ".meta");
+        deleteOtherDownloads(name);
+
+        Properties meta = readMeta(metaFile);
+        long offset = partFile.exists() ? partFile.length() : 0;
+        String validator = meta.getProperty(META_ETAG, meta.getProperty(META_LAST_MODIFIED));
+        if (offset > 0 && validator == null) {
+            // Without a validator there's no telling if the rest still belongs to the same image
+            offset = 0;
+        }
+
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                // Byte offsets must be of the image itself, not of a compressed transfer
+                .header("Accept-Encoding", "identity");
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-")
+                    .header("If-Range", validator);
+        }
+
+        try (Response response = mClient.newCall(request.build()).execute()) {
+            int responseCode = response.code();
+            long totalBytes;
+            if (offset > 0 && responseCode == 416) {
+                // Nothing left to download if the partial file is already complete
+                Matcher matcher = UNSATISFIED_RANGE_PATTERN.matcher(
+                        String.valueOf(response.header("Content-Range")));
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) == offset) {
+                    verify(partFile, meta);
+                    if (mProgressListener != null) {
+                        mProgressListener.onProgress(offset, offset, 0);
+                    }
+                    return partFile;
+                }
+                discard(url);
+                throw new IOException("Partial download no longer matches " + url);
+            } else if (offset > 0 && responseCode == 206) {
+                Matcher matcher = CONTENT_RANGE_PATTERN.matcher(
+                        String.valueOf(response.header("Content-Range")));
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) != offset) {
+                    discard(url);
+                    throw new IOException("Unexpected Content-Range "
+                            + response.header("Content-Range"));
+                }
+                totalBytes = "*".equals(matcher.group(3))
+                        ? -1 : Long.parseLong(matcher.group(3));
+                if (totalBytes >= 0 && meta.getProperty(META_LENGTH) == null) {
+                    meta.setProperty(META_LENGTH, Long.toString(totalBytes));
+                }
+            } else if (responseCode >= 200 && responseCode < 300) {
+                // The server ignored the range or the image changed: start over
+                offset = 0;
+                ResponseBody body = response.body();
+                totalBytes = body != null ? body.contentLength() : -1;
+                meta = new Properties();
+                putIfNotNull(meta, META_ETAG, strongETag(response.header("ETag")));
+                putIfNotNull(meta, META_LAST_MODIFIED, response.header("Last-Modified"));
+                putIfNotNull(meta, META_SHA256, parseDigest(response, "SHA-256"));
+                putIfNotNull(meta, META_MD5, response.header("Content-MD5"));
+                if (totalBytes >= 0) {
+                    meta.setProperty(META_LENGTH, Long.toString(totalBytes));
+                }
+                // Saved before the body, so that an interrupted download can be resumed
+                writeMeta(metaFile, meta);
+            } else {
+                throw new IOException("HTTP error response " + responseCode);
+            }
+
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Empty response for " + url);
+            }
+            try (InputStream in = body.byteStream();
+                 FileOutputStream out = new FileOutputStream(partFile, offset > 0)) {
+                copy(Channels.newChannel(in), out.getChannel(), offset, totalBytes);
+            }
+        }
+        verify(partFile, meta);
+        return partFile;
+    }
+
+    /**
+     * Deletes the partial or finished download of the given URL.
+     */
+    public void discard(String url) {
+        String name = ByteString.encodeUtf8(url).sha1().hex();
+        new File(mDirectory, name + ".part").delete();
+        new File(mDirectory, name + ".meta").delete();
+    }
+
+    /**
+     * Copies a file to a channel without passing its bytes through the Java heap.
+     */
+    public static void transferTo(File file, FileChannel out) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Streams everything from {@code in} to {@code out} through a direct buffer.
+     */
+    public static void copy(InputStream in, OutputStream out) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        WritableByteChannel sink = Channels.newChannel(out);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                sink.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private void copy(ReadableByteChannel in, FileChannel out, long offset, long totalBytes)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long startTime = System.currentTimeMillis();
+        long downloaded = offset;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            downloaded += read;
+            if (mProgressListener != null && read > 0) {
+                mProgressListener.onProgress(downloaded, totalBytes, bytesPerSecond(
+                        downloaded - offset, System.currentTimeMillis() - startTime));
+            }
+        }
+    }
+
+    private static long bytesPerSecond(long bytes, long millis) {
+        return millis > 0 ? bytes * 1000 / millis : 0;
+    }
+
+    private void verify(File partFile, Properties meta) throws IOException {
+        String length = meta.getProperty(META_LENGTH);
+        if (length != null && partFile.length() != Long.parseLong(length)) {
+            if (partFile.length() > Long.parseLong(length)) {
+                partFile.delete();
+            }
+            // A short file is kept, the next attempt resumes it
+            throw new IOException("Expected " + length + " bytes but have " + partFile.length());
+        }
+        String sha256 = meta.getProperty(META_SHA256);
+        String md5 = meta.getProperty(META_MD5);
+        if ((sha256 != null && !sha256.equals(digest(partFile, "SHA-256")))
+                || (md5 != null && !md5.equals(digest(partFile, "MD5")))) {
+            partFile.delete();
+            throw new IOException("Downloaded artwork doesn't match its digest");
+        }
+    }
+
+    /**
+     * @return the base64 digest of the file, as sent in Digest and Content-MD5 headers
+     */
+    private static String digest(File file, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ByteString.of(digest.digest()).base64();
+    }
+
+    /**
+     * @return the value for the given algorithm of an RFC 3230 Digest header, if any
+     */
+    private static String parseDigest(Response response, String algorithm) {
+        String header = response.header("Digest");
+        if (header == null) {
+            return null;
+        }
+        for (String part : header.split(",")) {
+            int separator = part.indexOf('=');
+            if (separator > 0
+                    && part.substring(0, separator).trim().equalsIgnoreCase(algorithm)) {
+                return part.substring(separator + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the ETag, or null if it is a weak one, which If-Range doesn't accept
+     */
+    private static String strongETag(String eTag) {
+        return eTag != null && !eTag.startsWith("W/") ? eTag : null;
+    }
+
+    private static void putIfNotNull(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private void deleteOtherDownloads(String name) {
+        // Only the current artwork is worth resuming
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().startsWith(name + ".")) {
+                file.delete();
+            }
+        }
+    }
+
+    private static Properties readMeta(File metaFile) {
+        Properties meta = new Properties();
+        if (metaFile.exists()) {
+            try (FileInputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                meta.clear();
+            }
+        }
+        return meta;
+    }
+
+    private static void writeMeta(File metaFile, Properties meta) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(metaFile)) {
+            meta.store(out, null);
+        }
+    }
+}
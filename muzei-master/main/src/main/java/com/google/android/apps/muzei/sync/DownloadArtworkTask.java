@@ -23,11 +23,13 @@ import android.content.res.AssetManager;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.android.apps.muzei.api.MuzeiContract;
+import com.google.android.apps.muzei.event.ArtworkDownloadProgressEvent;
 import com.google.android.apps.muzei.event.ArtworkLoadingStateChangedEvent;
 
 import org.greenrobot.eventbus.EventBus;
@@ -35,18 +37,14 @@ import org.greenrobot.eventbus.EventBus;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
 import java.util.List;
 
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
 public class DownloadArtworkTask extends AsyncTask<Void, Void, Boolean> {
     private static final String TAG = "DownloadArtworkTask";
+    private static final String PARTIAL_DOWNLOADS_DIRECTORY = "artwork_downloads";
     private final Context mApplicationContext;
 
     public DownloadArtworkTask(Context context) {
@@ -78,23 +76,58 @@ public class DownloadArtworkTask extends AsyncTask<Void, Void, Boolean> {
         }
         Uri imageUri = Uri.parse(imageUriString);
         data.close();
-        try (OutputStream out = resolver.openOutputStream(artworkUri);
-             InputStream in = out != null ? openUri(mApplicationContext, imageUri) : null) {
-            if (out == null) {
-                // We've already downloaded the file
-                return true;
-            }
-            // Only publish progress (i.e., say we've started loading the artwork)
-            // if we actually need to download the artwork
-            publishProgress();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
+        ParcelFileDescriptor pfd;
+        try {
+            pfd = resolver.openFileDescriptor(artworkUri, "w");
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, "Error opening artwork for writing", e);
+            return false;
+        }
+        if (pfd == null) {
+            // We've already downloaded the file
+            return true;
+        }
+        // Only publish progress (i.e., say we've started loading the artwork)
+        // if we actually need to download the artwork
+        publishProgress();
+        // Doesn't own the descriptor: pfd is closed separately depending on the outcome
+        FileOutputStream out = new FileOutputStream(pfd.getFileDescriptor());
+        try {
+            String scheme = imageUri.getScheme();
+            if ("http".equals(scheme) || "https".equals(scheme)) {
+                ArtworkDownloader downloader = new ArtworkDownloader(
+                        OkHttpClientFactory.getNewOkHttpsSafeClient(),
+                        new File(mApplicationContext.getCacheDir(), PARTIAL_DOWNLOADS_DIRECTORY));
+                downloader.setProgressListener(new ArtworkDownloader.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesDownloaded, long totalBytes,
+                            long bytesPerSecond) {
+                        EventBus.getDefault().post(new ArtworkDownloadProgressEvent(
+                                bytesDownloaded, totalBytes, bytesPerSecond));
+                    }
+                });
+                File file = downloader.download(imageUri.toString());
+                ArtworkDownloader.transferTo(file, out.getChannel());
+                downloader.discard(imageUri.toString());
+            } else {
+                try (InputStream in = openUri(mApplicationContext, imageUri)) {
+                    ArtworkDownloader.copy(in, out);
+                }
             }
             out.flush();
         } catch (IOException e) {
             Log.e(TAG, "Error downloading artwork", e);
+            try {
+                // Lets MuzeiProvider delete the incomplete file rather than publish it
+                pfd.closeWithError(e.getMessage());
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+        try {
+            pfd.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving artwork", e);
             return false;
         }
         return true;
@@ -145,18 +178,6 @@ public class DownloadArtworkTask extends AsyncTask<Void, Void, Boolean> {
             } else {
                 in = new FileInputStream(new File(uri.getPath()));
             }
-
-        } else if ("http".equals(scheme) || "https".equals(scheme)) {
-            OkHttpClient client = OkHttpClientFactory.getNewOkHttpsSafeClient();
-            Request request;
-            request = new Request.Builder().url(new URL(uri.toString())).build();
-
-            Response response = client.newCall(request).execute();
-            int responseCode = response.code();
-            if (!(responseCode >= 200 && responseCode < 300)) {
-                throw new IOException("HTTP error response " + responseCode);
-            }
-            in = response.body().byteStream();
         }
 
         if (in == null) {
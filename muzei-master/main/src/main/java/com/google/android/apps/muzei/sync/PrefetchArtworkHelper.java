@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.google.android.apps.muzei.api.Artwork;
+import com.google.android.apps.muzei.api.internal.SourceState;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the upcoming artwork that {@link PrefetchArtworkJobService} downloads. This is
+ * a plain class rather than part of the job service so that callers don't load
+ * {@link android.app.job.JobService} on devices older than Lollipop.
+ */
+public class PrefetchArtworkHelper {
+    private static final String TAG = "PrefetchArtworkHelper";
+    private static final int PREFETCH_ARTWORK_JOB_ID = 2;
+    // Matches the number of prefetched files MuzeiProvider keeps
+    private static final int MAX_PREFETCH = 3;
+    private static final String PREF_UPCOMING_IMAGE_URIS = "upcoming_image_uris";
+
+    private PrefetchArtworkHelper() {
+    }
+
+    /**
+     * Remembers the upcoming artwork of the given source state and schedules downloading it.
+     * Callers must check for {@link Build.VERSION_CODES#LOLLIPOP} first.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static void setUpcomingArtwork(Context context, SourceState state) {
+        JSONArray imageUris = new JSONArray();
+        for (int i = 0; i < state.getNumUpcomingArtwork()
+                && imageUris.length() < MAX_PREFETCH; i++) {
+            Artwork artwork = state.getUpcomingArtworkAt(i);
+            Uri imageUri = artwork != null ? artwork.getImageUri() : null;
+            // Local images are already fast to load
+            if (imageUri != null && ("http".equals(imageUri.getScheme())
+                    || "https".equals(imageUri.getScheme()))) {
+                imageUris.put(imageUri.toString());
+            }
+        }
+        getSharedPreferences(context).edit()
+                .putString(PREF_UPCOMING_IMAGE_URIS, imageUris.toString())
+                .apply();
+        JobScheduler jobScheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (imageUris.length() == 0) {
+            jobScheduler.cancel(PREFETCH_ARTWORK_JOB_ID);
+            return;
+        }
+        jobScheduler.schedule(new JobInfo.Builder(PREFETCH_ARTWORK_JOB_ID,
+                new ComponentName(context, PrefetchArtworkJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .build());
+    }
+
+    static List<String> getUpcomingImageUris(Context context) {
+        List<String> imageUris = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(getSharedPreferences(context)
+                    .getString(PREF_UPCOMING_IMAGE_URIS, "[]"));
+            for (int i = 0; i < array.length(); i++) {
+                imageUris.add(array.getString(i));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Couldn't read upcoming artwork", e);
+        }
+        return imageUris;
+    }
+
+    private static SharedPreferences getSharedPreferences(Context context) {
+        return context.getSharedPreferences("muzei_prefetch", 0);
+    }
+}
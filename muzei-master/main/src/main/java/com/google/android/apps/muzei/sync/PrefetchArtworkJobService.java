@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.Log;
+
+import com.google.android.apps.muzei.provider.MuzeiProvider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Downloads the artwork that the selected source announced as upcoming, as recorded by
+ * {@link PrefetchArtworkHelper}, so that switching to it later doesn't have to wait on the
+ * network. Runs only on unmetered networks while charging, and leaves the files where
+ * {@link MuzeiProvider} picks them up when the artwork is published.
+ *
+ * <p>Only third-party sources announce upcoming artwork for now. The featured art feed describes
+ * just the current artwork, so {@code FeaturedArtSource} doesn't know the next image until it is
+ * published, and {@code GalleryArtSource} only shows local images, which aren't prefetched.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PrefetchArtworkJobService extends JobService {
+    private static final String TAG = "PrefetchArtworkJS";
+    private static final String PARTIAL_DOWNLOADS_DIRECTORY = "artwork_prefetch_downloads";
+
+    private AsyncTask<Void, Void, Boolean> mPrefetchTask = null;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        mPrefetchTask = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... voids) {
+                Context context = PrefetchArtworkJobService.this;
+                ArtworkDownloader downloader = new ArtworkDownloader(
+                        OkHttpClientFactory.getNewOkHttpsSafeClient(),
+                        new File(getCacheDir(), PARTIAL_DOWNLOADS_DIRECTORY));
+                boolean success = true;
+                for (String imageUri : PrefetchArtworkHelper.getUpcomingImageUris(context)) {
+                    if (isCancelled()) {
+                        return false;
+                    }
+                    File file = MuzeiProvider.getPrefetchFile(context, imageUri);
+                    if (file == null) {
+                        return false;
+                    }
+                    if (file.exists()) {
+                        continue;
+                    }
+                    try {
+                        prefetch(downloader, imageUri, file);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Error prefetching " + imageUri, e);
+                        success = false;
+                    }
+                }
+                return success;
+            }
+
+            @Override
+            protected void onPostExecute(Boolean success) {
+                jobFinished(params, !success);
+            }
+        };
+        mPrefetchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return true;
+    }
+
+    private static void prefetch(ArtworkDownloader downloader, String imageUri, File file)
+            throws IOException {
+        File downloaded = downloader.download(imageUri);
+        // Only keep what can actually be shown
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(downloaded.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            downloader.discard(imageUri);
+            throw new IOException("Not an image");
+        }
+        // Written under a temporary name so MuzeiProvider never adopts a partial file
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            ArtworkDownloader.transferTo(downloaded, out.getChannel());
+        }
+        downloader.discard(imageUri);
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Couldn't move " + tempFile + " into place");
+        }
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mPrefetchTask != null) {
+            mPrefetchTask.cancel(true);
+        }
+        return true;
+    }
+}
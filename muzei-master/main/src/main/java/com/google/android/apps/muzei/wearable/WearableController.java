@@ -16,17 +16,13 @@
 
 package com.google.android.apps.muzei.wearable;
 
-import android.content.ContentResolver;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.support.media.ExifInterface;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiContract;
-import com.google.android.apps.muzei.render.ImageUtil;
+import com.google.android.apps.muzei.render.ArtworkDerivatives;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -35,10 +31,9 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -62,63 +57,29 @@ public class WearableController {
             }
             return;
         }
-        ContentResolver contentResolver = context.getContentResolver();
-        Bitmap image = null;
+        // The derivative is already right side up, so Wear can show it as is
+        File image = ArtworkDerivatives.getFile(context,
+                ArtworkDerivatives.FIT_SHORTEST_SIDE, 320);
+        ParcelFileDescriptor imageFd = null;
         try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(contentResolver.openInputStream(
-                    MuzeiContract.Artwork.CONTENT_URI), null, options);
-            options.inJustDecodeBounds = false;
-            if (options.outWidth > options.outHeight) {
-                options.inSampleSize = ImageUtil.calculateSampleSize(options.outHeight, 320);
-            } else {
-                options.inSampleSize = ImageUtil.calculateSampleSize(options.outWidth, 320);
-            }
-            image = BitmapFactory.decodeStream(contentResolver.openInputStream(
-                    MuzeiContract.Artwork.CONTENT_URI), null, options);
+            imageFd = image != null
+                    ? ParcelFileDescriptor.open(image, ParcelFileDescriptor.MODE_READ_ONLY)
+                    : null;
         } catch (FileNotFoundException e) {
             Log.e(TAG, "Unable to read artwork to update Android Wear", e);
         }
-        if (image != null) {
-            int rotation = getRotation(context);
-            if (rotation != 0) {
-                // Rotate the image so that Wear always gets a right side up image
-                Matrix matrix = new Matrix();
-                matrix.postRotate(rotation);
-                image = Bitmap.createBitmap(image, 0, 0, image.getWidth(), image.getHeight(),
-                        matrix, true);
-            }
-            final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            image.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-            Asset asset = Asset.createFromBytes(byteStream.toByteArray());
+        if (imageFd != null) {
+            Asset asset = Asset.createFromFd(imageFd);
             PutDataMapRequest dataMapRequest = PutDataMapRequest.create("/artwork");
             Artwork artwork = MuzeiContract.Artwork.getCurrentArtwork(context);
             dataMapRequest.getDataMap().putDataMap("artwork", DataMap.fromBundle(artwork.toBundle()));
             dataMapRequest.getDataMap().putAsset("image", asset);
             Wearable.DataApi.putDataItem(googleApiClient, dataMapRequest.asPutDataRequest().setUrgent()).await();
-        }
-        googleApiClient.disconnect();
-    }
-
-    private static int getRotation(Context context) {
-        ContentResolver contentResolver = context.getContentResolver();
-        int rotation = 0;
-        try (InputStream in = contentResolver.openInputStream(
-                MuzeiContract.Artwork.CONTENT_URI)) {
-            if (in == null) {
-                return 0;
+            try {
+                imageFd.close();
+            } catch (IOException ignored) {
             }
-            ExifInterface exifInterface = new ExifInterface(in);
-            int orientation = exifInterface.getAttributeInt(
-                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90: rotation = 90; break;
-                case ExifInterface.ORIENTATION_ROTATE_180: rotation = 180; break;
-                case ExifInterface.ORIENTATION_ROTATE_270: rotation = 270; break;
-            }
-        } catch (IOException|NumberFormatException|StackOverflowError ignored) {
         }
-        return rotation;
+        googleApiClient.disconnect();
     }
 }
@@ -20,17 +20,13 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.provider.BaseColumns;
 import android.support.annotation.LayoutRes;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
@@ -40,12 +36,11 @@ import android.view.View;
 import android.widget.RemoteViews;
 
 import com.google.android.apps.muzei.api.MuzeiContract;
-import com.google.android.apps.muzei.render.ImageUtil;
+import com.google.android.apps.muzei.render.ArtworkDerivatives;
+import com.google.android.apps.muzei.util.BitmapPool;
 
 import net.nurik.roman.muzei.R;
 
-import java.io.FileNotFoundException;
-
 /**
  * Async operation used to update the AppWidget.
  */
@@ -68,7 +63,7 @@ class AppWidgetUpdateTask extends AsyncTask<Void,Void,Boolean> {
             Log.i(TAG, "No AppWidgets found");
             return true;
         }
-        String[] projection = new String[] {BaseColumns._ID,
+        String[] projection = new String[] {
             MuzeiContract.Artwork.COLUMN_NAME_TITLE,
             MuzeiContract.Artwork.COLUMN_NAME_BYLINE,
         MuzeiContract.Sources.COLUMN_NAME_SUPPORTS_NEXT_ARTWORK_COMMAND};
@@ -86,8 +81,6 @@ class AppWidgetUpdateTask extends AsyncTask<Void,Void,Boolean> {
         String contentDescription = !TextUtils.isEmpty(title)
                 ? title
                 : byline;
-        Uri imageUri = ContentUris.withAppendedId(MuzeiContract.Artwork.CONTENT_URI,
-                artwork.getLong(artwork.getColumnIndex(BaseColumns._ID)));
         boolean supportsNextArtwork = artwork.getInt(
                 artwork.getColumnIndex(MuzeiContract.Sources.COLUMN_NAME_SUPPORTS_NEXT_ARTWORK_COMMAND)) != 0;
         artwork.close();
@@ -104,37 +97,27 @@ class AppWidgetUpdateTask extends AsyncTask<Void,Void,Boolean> {
         DisplayMetrics displayMetrics = mContext.getResources().getDisplayMetrics();
         int smallWidgetHeight = mContext.getResources().getDimensionPixelSize(
                 R.dimen.widget_small_height_breakpoint);
+        BitmapPool bitmapPool = BitmapPool.getInstance();
         for (int widgetId : appWidgetIds) {
             Bundle extras = appWidgetManager.getAppWidgetOptions(widgetId);
             int widgetWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
                     extras.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH), displayMetrics);
             int widgetHeight = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
                     extras.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT), displayMetrics);
-            Bitmap image;
-            try {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeStream(contentResolver.openInputStream(imageUri), null, options);
-                int width = options.outWidth;
-                int height = options.outHeight;
-                options.inJustDecodeBounds = false;
-                options.inSampleSize = Math.min(ImageUtil.calculateSampleSize(width, widgetWidth),
-                        ImageUtil.calculateSampleSize(height, widgetHeight));
-                image = BitmapFactory.decodeStream(
-                        contentResolver.openInputStream(imageUri), null, options);
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, "Could not find current artwork image", e);
+            // Fitting the longest side keeps the image below the maximum bitmap memory usage
+            // for widgets, and is shared with any other widget of the same size
+            Bitmap image = ArtworkDerivatives.decode(mContext,
+                    ArtworkDerivatives.FIT_LONGEST_SIDE, Math.max(widgetWidth, widgetHeight));
+            if (image == null && widgetWidth > 0 && widgetHeight > 0) {
+                Log.e(TAG, "Could not read current artwork image");
                 return false;
             }
-            // Even after using sample size to scale an image down, it might be larger than the
-            // maximum bitmap memory usage for widgets
-            Bitmap scaledImage = scaleBitmap(image, widgetWidth, widgetHeight);
             @LayoutRes int widgetLayout = widgetHeight < smallWidgetHeight
                     ? R.layout.widget_small
                     : R.layout.widget;
             RemoteViews remoteViews = new RemoteViews(mContext.getPackageName(), widgetLayout);
             remoteViews.setContentDescription(R.id.widget_background, contentDescription);
-            remoteViews.setImageViewBitmap(R.id.widget_background, scaledImage);
+            remoteViews.setImageViewBitmap(R.id.widget_background, image);
             remoteViews.setOnClickPendingIntent(R.id.widget_background, launchPendingIntent);
             remoteViews.setOnClickPendingIntent(R.id.widget_next_artwork, nextArtworkPendingIntent);
             if (supportsNextArtwork) {
@@ -143,32 +126,11 @@ class AppWidgetUpdateTask extends AsyncTask<Void,Void,Boolean> {
                 remoteViews.setViewVisibility(R.id.widget_next_artwork, View.GONE);
             }
             appWidgetManager.updateAppWidget(widgetId, remoteViews);
+            // The bitmap has been parceled into the update, so it can be reused
+            if (image != null) {
+                bitmapPool.release(image);
+            }
         }
         return true;
     }
-
-    private Bitmap scaleBitmap(Bitmap image, int widgetWidth, int widgetHeight) {
-        if (image == null || image.getWidth() == 0 || image.getHeight() == 0 ||
-                widgetWidth == 0 || widgetHeight == 0) {
-            return null;
-        }
-        int largestDimension = Math.max(widgetWidth, widgetHeight);
-        int width = image.getWidth();
-        int height = image.getHeight();
-        if (width > height) {
-            // landscape
-            float ratio = (float) width / largestDimension;
-            width = largestDimension;
-            height = (int) (height / ratio);
-        } else if (height > width) {
-            // portrait
-            float ratio = (float) height / largestDimension;
-            height = largestDimension;
-            width = (int) (width / ratio);
-        } else {
-            height = largestDimension;
-            width = largestDimension;
-        }
-        return Bitmap.createScaledBitmap(image, width, height, true);
-    }
 }
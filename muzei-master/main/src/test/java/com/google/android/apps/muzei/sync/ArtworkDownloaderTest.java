@@ -0,0 +1,290 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link ArtworkDownloader} against a local MockWebServer.
+ */
+public class ArtworkDownloaderTest {
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private File mDirectory;
+    private ArtworkDownloader mDownloader;
+    private String mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mDirectory = mFolder.newFolder("partial");
+        mDownloader = new ArtworkDownloader(new OkHttpClient(), mDirectory);
+        mUrl = mServer.url("/artwork.jpg").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void resumesWithRangeAndIfRange() throws Exception {
+        byte[] artwork = artwork(100000, 1);
+        long partial = downloadTruncated(artwork);
+
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("ETag", ETAG)
+                .setHeader("Content-Range", "bytes " + partial + "-" + (artwork.length - 1)
+                        + "/" + artwork.length)
+                .setBody(body(Arrays.copyOfRange(artwork, (int) partial, artwork.length))));
+        File file = mDownloader.download(mUrl);
+
+        mServer.takeRequest();
+        RecordedRequest resume = mServer.takeRequest();
+        assertEquals("bytes=" + partial + "-", resume.getHeader("Range"));
+        assertEquals(ETAG, resume.getHeader("If-Range"));
+        assertArrayEquals(artwork, readFile(file));
+    }
+
+    @Test
+    public void startsOverWhenValidatorChanged() throws Exception {
+        byte[] artwork = artwork(100000, 1);
+        long partial = downloadTruncated(artwork);
+
+        // The server answers a stale If-Range with the whole new image
+        byte[] newArtwork = artwork(80000, 2);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v2\"")
+                .setBody(body(newArtwork)));
+        File file = mDownloader.download(mUrl);
+
+        mServer.takeRequest();
+        RecordedRequest retry = mServer.takeRequest();
+        assertEquals("bytes=" + partial + "-", retry.getHeader("Range"));
+        assertEquals(ETAG, retry.getHeader("If-Range"));
+        assertArrayEquals(newArtwork, readFile(file));
+    }
+
+    @Test
+    public void completeFileSatisfiedBy416() throws Exception {
+        byte[] artwork = artwork(50000, 1);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setBody(body(artwork)));
+        mDownloader.download(mUrl);
+
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(416)
+                .setHeader("Content-Range", "bytes */" + artwork.length));
+        File file = mDownloader.download(mUrl);
+
+        mServer.takeRequest();
+        assertEquals("bytes=" + artwork.length + "-", mServer.takeRequest().getHeader("Range"));
+        assertArrayEquals(artwork, readFile(file));
+    }
+
+    @Test
+    public void truncatedBodyKeepsPartialFile() throws Exception {
+        byte[] artwork = artwork(100000, 1);
+        long partial = downloadTruncated(artwork);
+
+        assertTrue(partial > 0);
+        assertTrue(partial < artwork.length);
+        assertArrayEquals(Arrays.copyOf(artwork, (int) partial), readFile(partFile()));
+    }
+
+    @Test
+    public void digestMismatchDeletesPartialFile() throws Exception {
+        byte[] artwork = artwork(50000, 1);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Digest", "SHA-256=" + ByteString.of(artwork(10, 3)).sha256().base64())
+                .setBody(body(artwork)));
+
+        assertDownloadFails();
+        assertNull(partFile());
+    }
+
+    @Test
+    public void contentMd5MismatchDeletesPartialFile() throws Exception {
+        byte[] artwork = artwork(50000, 1);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Content-MD5", ByteString.of(artwork(10, 3)).md5().base64())
+                .setBody(body(artwork)));
+
+        assertDownloadFails();
+        assertNull(partFile());
+    }
+
+    @Test
+    public void matchingDigestsAreAccepted() throws Exception {
+        byte[] artwork = artwork(50000, 1);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Digest", "SHA-256=" + ByteString.of(artwork).sha256().base64())
+                .setHeader("Content-MD5", ByteString.of(artwork).md5().base64())
+                .setBody(body(artwork)));
+
+        assertArrayEquals(artwork, readFile(mDownloader.download(mUrl)));
+    }
+
+    @Test
+    public void reportsProgressPerChunk() throws Exception {
+        byte[] artwork = artwork(300000, 1);
+        RecordingListener listener = new RecordingListener();
+        mDownloader.setProgressListener(listener);
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setBody(body(artwork)));
+        mDownloader.download(mUrl);
+
+        listener.assertProgress(0, artwork.length);
+    }
+
+    @Test
+    public void reportsProgressAcrossResume() throws Exception {
+        byte[] artwork = artwork(300000, 1);
+        long partial = downloadTruncated(artwork);
+
+        RecordingListener listener = new RecordingListener();
+        mDownloader.setProgressListener(listener);
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("ETag", ETAG)
+                .setHeader("Content-Range", "bytes " + partial + "-" + (artwork.length - 1)
+                        + "/" + artwork.length)
+                .setBody(body(Arrays.copyOfRange(artwork, (int) partial, artwork.length))));
+        mDownloader.download(mUrl);
+
+        // Counts carry on from the partial file rather than starting over at 0
+        listener.assertProgress(partial, artwork.length);
+    }
+
+    /**
+     * Serves the artwork with a connection that drops halfway through the body.
+     *
+     * @return the size of the partial file left behind
+     */
+    private long downloadTruncated(byte[] artwork) throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("ETag", ETAG)
+                .setBody(body(artwork))
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        assertDownloadFails();
+        File partFile = partFile();
+        assertFalse(partFile == null);
+        return partFile.length();
+    }
+
+    private static class RecordingListener implements ArtworkDownloader.ProgressListener {
+        private final List<long[]> mCalls = new ArrayList<>();
+
+        @Override
+        public void onProgress(long bytesDownloaded, long totalBytes, long bytesPerSecond) {
+            mCalls.add(new long[]{bytesDownloaded, totalBytes, bytesPerSecond});
+        }
+
+        /**
+         * Checks that every chunk was reported with the full size, growing from {@code offset}
+         * up to the whole artwork.
+         */
+        void assertProgress(long offset, long totalBytes) {
+            assertFalse(mCalls.isEmpty());
+            long previous = offset;
+            for (long[] call : mCalls) {
+                assertTrue(call[0] > previous);
+                assertEquals(totalBytes, call[1]);
+                assertTrue(call[2] >= 0);
+                previous = call[0];
+            }
+            assertEquals(totalBytes, previous);
+        }
+    }
+
+    private void assertDownloadFails() {
+        try {
+            mDownloader.download(mUrl);
+            fail("Expected the download to fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    private File partFile() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".part")) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] artwork(int size, int seed) {
+        byte[] artwork = new byte[size];
+        for (int i = 0; i < size; i++) {
+            artwork[i] = (byte) (i * 31 + seed);
+        }
+        return artwork;
+    }
+
+    private static Buffer body(byte[] bytes) {
+        return new Buffer().write(bytes);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+}
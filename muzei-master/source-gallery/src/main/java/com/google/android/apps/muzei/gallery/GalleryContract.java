@@ -108,6 +108,12 @@ public class GalleryContract {
          * The table name offered by this provider.
          */
         static final String TABLE_NAME = "metadata_cache";
+        /**
+         * Method for {@link android.content.ContentResolver#call} on {@link #CONTENT_URI} that
+         * queues the image passed as the argument for metadata extraction, in case it isn't
+         * in the image index.
+         */
+        static final String METHOD_EXTRACT_METADATA = "extract_metadata";
 
         /**
          * This class cannot be instantiated
@@ -121,4 +127,101 @@ public class GalleryContract {
         static final Uri CONTENT_URI = Uri.parse(GalleryContract.SCHEME + GalleryContract.AUTHORITY
                 + "/" + MetadataCache.TABLE_NAME);
     }
+
+    /**
+     * Every image under the chosen photos, with chosen directories expanded, kept up to date
+     * incrementally so that picking the next image doesn't require walking the directories.
+     */
+    static final class ImageIndex implements BaseColumns {
+        /**
+         * Column name of the ID of the chosen photo the image was found through.
+         * <p>Type: INTEGER
+         */
+        static final String COLUMN_NAME_CHOSEN_PHOTO_ID = "chosen_photo_id";
+        /**
+         * Column name of the image's URI: the chosen photo's own URI, or the document URI of an
+         * image within a chosen directory.
+         * <p>Type: TEXT (URI)
+         */
+        static final String COLUMN_NAME_URI = "uri";
+        /**
+         * Column name of the document ID of the directory containing the image, or null for
+         * images chosen individually.
+         * <p>Type: TEXT
+         */
+        static final String COLUMN_NAME_PARENT_DOCUMENT_ID = "parent_document_id";
+        /**
+         * Column name for the image's random position in the current shuffle.
+         * <p>Type: INTEGER
+         */
+        static final String COLUMN_NAME_SHUFFLE_ORDER = "shuffle_order";
+        /**
+         * Column name for the flag indicating the image was already shown in the current shuffle.
+         * <p>Type: INTEGER (boolean)
+         */
+        static final String COLUMN_NAME_SHOWN = "shown";
+        /**
+         * Method for {@link android.content.ContentResolver#call} that brings the index up to
+         * date with the chosen photos. Returns the number of images in
+         * {@link #EXTRA_IMAGE_COUNT}.
+         */
+        static final String METHOD_REFRESH = "refresh_image_index";
+        /**
+         * Method for {@link android.content.ContentResolver#call} that picks the next image to
+         * show, given the last shown image's URI as the argument. No image is picked again until
+         * all others were shown. Returns the image's URI in {@link #EXTRA_URI}.
+         */
+        static final String METHOD_NEXT_IMAGE = "next_image";
+        static final String EXTRA_IMAGE_COUNT = "image_count";
+        static final String EXTRA_URI = "uri";
+        /**
+         * The table name used by this provider.
+         */
+        static final String TABLE_NAME = "image_index";
+
+        /**
+         * This class cannot be instantiated
+         */
+        private ImageIndex() {
+        }
+
+        /**
+         * The content:// style URL to {@link android.content.ContentResolver#call} the index.
+         */
+        static final Uri CONTENT_URI = Uri.parse(GalleryContract.SCHEME + GalleryContract.AUTHORITY
+                + "/" + ImageIndex.TABLE_NAME);
+    }
+
+    /**
+     * The directories covered by the {@link ImageIndex}, with the last modified time they had
+     * when they were listed, so that only changed directories are listed again.
+     */
+    static final class IndexedDirectories implements BaseColumns {
+        /**
+         * Column name of the ID of the chosen photo the directory was found through.
+         * <p>Type: INTEGER
+         */
+        static final String COLUMN_NAME_CHOSEN_PHOTO_ID = "chosen_photo_id";
+        /**
+         * Column name of the directory's document ID within the chosen tree.
+         * <p>Type: TEXT
+         */
+        static final String COLUMN_NAME_DOCUMENT_ID = "document_id";
+        /**
+         * Column name for the directory's last modified time when it was listed, or 0 if the
+         * provider didn't report one.
+         * <p>Type: LONG (in milliseconds)
+         */
+        static final String COLUMN_NAME_LAST_MODIFIED = "last_modified";
+        /**
+         * The table name used by this provider.
+         */
+        static final String TABLE_NAME = "indexed_directories";
+
+        /**
+         * This class cannot be instantiated
+         */
+        private IndexedDirectories() {
+        }
+    }
 }
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.gallery;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.support.annotation.RequiresApi;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains the {@link GalleryContract.ImageIndex} of {@link GalleryProvider}.
+ *
+ * <p>The index is only refreshed once it may be stale: after the chosen photos changed, or after
+ * the MediaStore or a chosen directory reported a change. A refresh then checks the last
+ * modified time of each indexed directory and only lists the directories that changed.
+ */
+class GalleryImageIndex {
+    private static final String TAG = "GalleryImageIndex";
+
+    private final Context mContext;
+    private final SQLiteOpenHelper mDatabaseHelper;
+    private final Random mRandom = new Random();
+    private final AtomicBoolean mStale = new AtomicBoolean(true);
+    private final Set<Uri> mObservedTreeUris = new HashSet<>();
+    private final ContentObserver mContentObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mStale.set(true);
+        }
+    };
+
+    GalleryImageIndex(Context context, SQLiteOpenHelper databaseHelper) {
+        mContext = context;
+        mDatabaseHelper = databaseHelper;
+        // Most images on the device go through the MediaStore, so any change there may be a
+        // change to a chosen directory
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, mContentObserver);
+    }
+
+    /**
+     * Marks the index as stale, so that the next {@link #refresh} looks for changes.
+     */
+    void invalidate() {
+        mStale.set(true);
+    }
+
+    /**
+     * Brings the index up to date with the chosen photos, if anything may have changed since
+     * the last refresh.
+     *
+     * @return the IDs of chosen photos whose images can no longer be read
+     */
+    synchronized List<Long> refresh() {
+        List<Long> invalidChosenPhotoIds = new ArrayList<>();
+        if (!mStale.getAndSet(false)) {
+            return invalidChosenPhotoIds;
+        }
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        List<String> chosenPhotoIds = new ArrayList<>();
+        Cursor chosenPhotos = db.query(GalleryContract.ChosenPhotos.TABLE_NAME,
+                new String[] { BaseColumns._ID, GalleryContract.ChosenPhotos.COLUMN_NAME_URI,
+                        GalleryContract.ChosenPhotos.COLUMN_NAME_IS_TREE_URI },
+                null, null, null, null, null);
+        while (chosenPhotos.moveToNext()) {
+            long chosenPhotoId = chosenPhotos.getLong(0);
+            boolean isTreeUri = chosenPhotos.getInt(2) != 0;
+            chosenPhotoIds.add(Long.toString(chosenPhotoId));
+            if (isTreeUri && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                Uri treeUri = Uri.parse(chosenPhotos.getString(1));
+                try {
+                    refreshTree(db, chosenPhotoId, treeUri);
+                } catch (SecurityException e) {
+                    Log.w(TAG, "Unable to load images from " + treeUri, e);
+                    invalidChosenPhotoIds.add(chosenPhotoId);
+                }
+            } else {
+                Uri imageUri = ContentUris.withAppendedId(
+                        GalleryContract.ChosenPhotos.CONTENT_URI, chosenPhotoId);
+                db.insertWithOnConflict(GalleryContract.ImageIndex.TABLE_NAME, null,
+                        newImageValues(chosenPhotoId, null, imageUri.toString()),
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        }
+        chosenPhotos.close();
+        // Drop anything that was found through chosen photos that are gone
+        String notChosen = GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID
+                + " NOT IN (" + TextUtils.join(",", chosenPhotoIds) + ")";
+        db.delete(GalleryContract.ImageIndex.TABLE_NAME, notChosen, null);
+        db.delete(GalleryContract.IndexedDirectories.TABLE_NAME, notChosen, null);
+        return invalidChosenPhotoIds;
+    }
+
+    /**
+     * Removes everything that was found through the given chosen photos.
+     */
+    void remove(Collection<Long> chosenPhotoIds) {
+        if (chosenPhotoIds.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        String inChosen = GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID
+                + " IN (" + TextUtils.join(",", chosenPhotoIds) + ")";
+        db.delete(GalleryContract.ImageIndex.TABLE_NAME, inChosen, null);
+        db.delete(GalleryContract.IndexedDirectories.TABLE_NAME, inChosen, null);
+    }
+
+    int getImageCount() {
+        return (int) DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(),
+                GalleryContract.ImageIndex.TABLE_NAME);
+    }
+
+    /**
+     * @return the indexed images that don't have a row in the
+     * {@link GalleryContract.MetadataCache} yet
+     */
+    List<Uri> getImagesWithoutMetadata() {
+        List<Uri> imageUris = new ArrayList<>();
+        Cursor images = mDatabaseHelper.getReadableDatabase().rawQuery("SELECT DISTINCT "
+                + GalleryContract.ImageIndex.COLUMN_NAME_URI
+                + " FROM " + GalleryContract.ImageIndex.TABLE_NAME
+                + " WHERE " + GalleryContract.ImageIndex.COLUMN_NAME_URI + " NOT IN (SELECT "
+                + GalleryContract.MetadataCache.COLUMN_NAME_URI
+                + " FROM " + GalleryContract.MetadataCache.TABLE_NAME + ")", null);
+        while (images.moveToNext()) {
+            imageUris.add(Uri.parse(images.getString(0)));
+        }
+        images.close();
+        return imageUris;
+    }
+
+    /**
+     * Picks the next image of the current shuffle, starting a new shuffle once every image was
+     * shown.
+     *
+     * @param lastImageUri the image shown last, which won't be picked first in a new shuffle
+     * @return the image's URI, or null if the index is empty
+     */
+    synchronized Uri next(String lastImageUri) {
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        String imageUri = nextUnshownImage(db);
+        if (imageUri == null) {
+            db.execSQL("UPDATE " + GalleryContract.ImageIndex.TABLE_NAME + " SET "
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHOWN + "=0,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHUFFLE_ORDER + "=RANDOM()");
+            if (lastImageUri != null) {
+                setShown(db, lastImageUri, true);
+            }
+            imageUri = nextUnshownImage(db);
+            if (imageUri == null && lastImageUri != null) {
+                // The last image is the only one
+                setShown(db, lastImageUri, false);
+                imageUri = nextUnshownImage(db);
+            }
+        }
+        if (imageUri == null) {
+            return null;
+        }
+        setShown(db, imageUri, true);
+        return Uri.parse(imageUri);
+    }
+
+    private static String nextUnshownImage(SQLiteDatabase db) {
+        Cursor data = db.query(GalleryContract.ImageIndex.TABLE_NAME,
+                new String[] { GalleryContract.ImageIndex.COLUMN_NAME_URI },
+                GalleryContract.ImageIndex.COLUMN_NAME_SHOWN + "=0", null, null, null,
+                GalleryContract.ImageIndex.COLUMN_NAME_SHUFFLE_ORDER, "1");
+        String imageUri = data.moveToFirst() ? data.getString(0) : null;
+        data.close();
+        return imageUri;
+    }
+
+    private static void setShown(SQLiteDatabase db, String imageUri, boolean shown) {
+        ContentValues values = new ContentValues();
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_SHOWN, shown);
+        db.update(GalleryContract.ImageIndex.TABLE_NAME, values,
+                GalleryContract.ImageIndex.COLUMN_NAME_URI + "=?", new String[] { imageUri });
+    }
+
+    private ContentValues newImageValues(long chosenPhotoId, String parentDocumentId,
+            String imageUri) {
+        ContentValues values = new ContentValues();
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID, chosenPhotoId);
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_PARENT_DOCUMENT_ID, parentDocumentId);
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_URI, imageUri);
+        // New images join the current shuffle at a random position
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_SHUFFLE_ORDER, mRandom.nextLong());
+        values.put(GalleryContract.ImageIndex.COLUMN_NAME_SHOWN, false);
+        return values;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void refreshTree(SQLiteDatabase db, long chosenPhotoId, Uri treeUri) {
+        String rootDocumentId = DocumentsContract.getTreeDocumentId(treeUri);
+        if (mObservedTreeUris.add(treeUri)) {
+            mContext.getContentResolver().registerContentObserver(
+                    DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, rootDocumentId),
+                    true, mContentObserver);
+        }
+        Map<String, Long> indexedDirectories = new HashMap<>();
+        Cursor directories = db.query(GalleryContract.IndexedDirectories.TABLE_NAME,
+                new String[] { GalleryContract.IndexedDirectories.COLUMN_NAME_DOCUMENT_ID,
+                        GalleryContract.IndexedDirectories.COLUMN_NAME_LAST_MODIFIED },
+                GalleryContract.IndexedDirectories.COLUMN_NAME_CHOSEN_PHOTO_ID + "=?",
+                new String[] { Long.toString(chosenPhotoId) }, null, null, null);
+        while (directories.moveToNext()) {
+            indexedDirectories.put(directories.getString(0), directories.getLong(1));
+        }
+        directories.close();
+
+        Set<String> listedDirectories = new HashSet<>();
+        db.beginTransaction();
+        try {
+            if (!indexedDirectories.containsKey(rootDocumentId)) {
+                Long lastModified = getLastModified(treeUri, rootDocumentId);
+                if (lastModified != null) {
+                    indexDirectory(db, chosenPhotoId, treeUri, rootDocumentId, lastModified,
+                            indexedDirectories, listedDirectories);
+                }
+            }
+            for (Map.Entry<String, Long> directory : indexedDirectories.entrySet()) {
+                String documentId = directory.getKey();
+                if (listedDirectories.contains(documentId)) {
+                    continue;
+                }
+                Long lastModified = getLastModified(treeUri, documentId);
+                if (lastModified == null) {
+                    removeDirectory(db, chosenPhotoId, documentId);
+                } else if (lastModified == 0 || lastModified != (long) directory.getValue()) {
+                    // A directory's last modified time changes when entries are added or removed
+                    indexDirectory(db, chosenPhotoId, treeUri, documentId, lastModified,
+                            indexedDirectories, listedDirectories);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Lists the given directory, updating its images in the index, and indexes any
+     * subdirectories that aren't indexed yet.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void indexDirectory(SQLiteDatabase db, long chosenPhotoId, Uri treeUri,
+            String documentId, long lastModified, Map<String, Long> indexedDirectories,
+            Set<String> listedDirectories) {
+        listedDirectories.add(documentId);
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, documentId);
+        Cursor children = null;
+        try {
+            children = mContext.getContentResolver().query(childrenUri,
+                    new String[] { DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+                            DocumentsContract.Document.COLUMN_MIME_TYPE,
+                            DocumentsContract.Document.COLUMN_LAST_MODIFIED },
+                    null, null, null);
+        } catch (NullPointerException | IllegalArgumentException e) {
+            Log.e(TAG, "Error reading " + childrenUri, e);
+        }
+        if (children == null) {
+            return;
+        }
+        Set<String> imageUris = new HashSet<>();
+        while (children.moveToNext()) {
+            String childDocumentId = children.getString(0);
+            String mimeType = children.getString(1);
+            if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                // Subdirectories that are already indexed are checked on their own
+                if (!indexedDirectories.containsKey(childDocumentId)
+                        && !listedDirectories.contains(childDocumentId)) {
+                    indexDirectory(db, chosenPhotoId, treeUri, childDocumentId,
+                            children.getLong(2), indexedDirectories, listedDirectories);
+                }
+            } else if (mimeType != null && mimeType.startsWith("image/")) {
+                imageUris.add(DocumentsContract.buildDocumentUriUsingTree(treeUri,
+                        childDocumentId).toString());
+            }
+        }
+        children.close();
+
+        String selection = GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + "=? AND "
+                + GalleryContract.ImageIndex.COLUMN_NAME_PARENT_DOCUMENT_ID + "=?";
+        String[] selectionArgs = new String[] { Long.toString(chosenPhotoId), documentId };
+        Cursor indexedImages = db.query(GalleryContract.ImageIndex.TABLE_NAME,
+                new String[] { GalleryContract.ImageIndex.COLUMN_NAME_URI },
+                selection, selectionArgs, null, null, null);
+        while (indexedImages.moveToNext()) {
+            String imageUri = indexedImages.getString(0);
+            if (!imageUris.remove(imageUri)) {
+                db.delete(GalleryContract.ImageIndex.TABLE_NAME,
+                        GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + "=? AND "
+                                + GalleryContract.ImageIndex.COLUMN_NAME_URI + "=?",
+                        new String[] { Long.toString(chosenPhotoId), imageUri });
+            }
+        }
+        indexedImages.close();
+        for (String imageUri : imageUris) {
+            db.insertWithOnConflict(GalleryContract.ImageIndex.TABLE_NAME, null,
+                    newImageValues(chosenPhotoId, documentId, imageUri),
+                    SQLiteDatabase.CONFLICT_IGNORE);
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(GalleryContract.IndexedDirectories.COLUMN_NAME_CHOSEN_PHOTO_ID, chosenPhotoId);
+        values.put(GalleryContract.IndexedDirectories.COLUMN_NAME_DOCUMENT_ID, documentId);
+        values.put(GalleryContract.IndexedDirectories.COLUMN_NAME_LAST_MODIFIED, lastModified);
+        db.insertWithOnConflict(GalleryContract.IndexedDirectories.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static void removeDirectory(SQLiteDatabase db, long chosenPhotoId,
+            String documentId) {
+        String[] selectionArgs = new String[] { Long.toString(chosenPhotoId), documentId };
+        db.delete(GalleryContract.ImageIndex.TABLE_NAME,
+                GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + "=? AND "
+                        + GalleryContract.ImageIndex.COLUMN_NAME_PARENT_DOCUMENT_ID + "=?",
+                selectionArgs);
+        db.delete(GalleryContract.IndexedDirectories.TABLE_NAME,
+                GalleryContract.IndexedDirectories.COLUMN_NAME_CHOSEN_PHOTO_ID + "=? AND "
+                        + GalleryContract.IndexedDirectories.COLUMN_NAME_DOCUMENT_ID + "=?",
+                selectionArgs);
+    }
+
+    /**
+     * @return the document's last modified time, 0 if the provider doesn't report it, or null
+     * if the document no longer exists
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private Long getLastModified(Uri treeUri, String documentId) {
+        Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+        Cursor document;
+        try {
+            document = mContext.getContentResolver().query(documentUri,
+                    new String[] { DocumentsContract.Document.COLUMN_LAST_MODIFIED },
+                    null, null, null);
+        } catch (NullPointerException | IllegalArgumentException e) {
+            return null;
+        }
+        if (document == null) {
+            return null;
+        }
+        Long lastModified = document.moveToFirst() ? document.getLong(0) : null;
+        document.close();
+        return lastModified;
+    }
+}
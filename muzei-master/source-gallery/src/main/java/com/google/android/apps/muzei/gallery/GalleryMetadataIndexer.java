@@ -0,0 +1,372 @@
+/*
+ * Copyright 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.muzei.gallery;
+
+import android.annotation.SuppressLint;
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.location.Address;
+import android.location.Geocoder;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.media.ExifInterface;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fills the {@link GalleryContract.MetadataCache} in the background, so that publishing an
+ * image never has to wait on its EXIF data or on the geocoder.
+ *
+ * <p>Images are read on a small thread pool, and only as far as their EXIF header. Reverse
+ * geocoding results are shared between all photos taken in the same grid cell, and the rows
+ * are written in batches through {@link GalleryProvider#applyBatch}.
+ */
+class GalleryMetadataIndexer {
+    private static final String TAG = "GalleryMetadataIndexer";
+    private static final int THREAD_COUNT = 3;
+    private static final int BATCH_SIZE = 25;
+    // EXIF has to fit into a single JPEG APP1 segment, so this is more than enough
+    private static final int MAX_HEADER_BYTES = 128 * 1024;
+    // Roughly a kilometer, well within the locality that ends up in the byline
+    private static final double GRID_CELL_DEGREES = 0.01;
+    private static final int MAX_CACHED_LOCATIONS = 256;
+    // LruCache doesn't take null values, so this marks places without an address
+    private static final String NO_LOCATION = "";
+    // An image that couldn't be read or geocoded is skipped for this long, doubling with each
+    // further failure
+    private static final long MIN_RETRY_DELAY_MILLIS = 15 * 60 * 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final ThreadLocal<SimpleDateFormat> sExifDateFormat =
+            new ThreadLocal<SimpleDateFormat>() {
+                @SuppressLint("SimpleDateFormat")
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+                }
+            };
+
+    private static final Set<String> sOmitCountryCodes = new HashSet<>();
+    static {
+        sOmitCountryCodes.add("US");
+    }
+
+    private final Context mContext;
+    private final Geocoder mGeocoder;
+    private final LruCache<String, String> mLocationCache = new LruCache<>(MAX_CACHED_LOCATIONS);
+    private final Set<Uri> mPendingImageUris = Collections.synchronizedSet(new HashSet<Uri>());
+    // Kept for the life of the process only, after a restart every image gets one more try
+    private final Map<Uri, Failure> mFailures = new HashMap<>();
+    private volatile long mGeocoderRetryTime;
+    private final ExecutorService mBatchExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService mImageExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    GalleryMetadataIndexer(Context context) {
+        mContext = context;
+        mGeocoder = new Geocoder(context);
+    }
+
+    /**
+     * Queues the given images for metadata extraction. Images that are already queued, or
+     * that failed recently, are skipped.
+     */
+    void index(Collection<Uri> imageUris) {
+        final List<Uri> newImageUris = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Uri imageUri : imageUris) {
+            if (!isBackingOff(imageUri, now) && mPendingImageUris.add(imageUri)) {
+                newImageUris.add(imageUri);
+            }
+        }
+        if (newImageUris.isEmpty()) {
+            return;
+        }
+        mBatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                indexBatch(newImageUris);
+            }
+        });
+    }
+
+    private void indexBatch(List<Uri> imageUris) {
+        CompletionService<ContentValues> completionService =
+                new ExecutorCompletionService<>(mImageExecutor);
+        for (final Uri imageUri : imageUris) {
+            completionService.submit(new Callable<ContentValues>() {
+                @Override
+                public ContentValues call() {
+                    ContentValues values = extractMetadata(imageUri);
+                    recordResult(imageUri, values != null);
+                    return values;
+                }
+            });
+        }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < imageUris.size(); i++) {
+            try {
+                ContentValues values = completionService.take().get();
+                if (values != null) {
+                    operations.add(ContentProviderOperation
+                            .newInsert(GalleryContract.MetadataCache.CONTENT_URI)
+                            .withValues(values)
+                            .build());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Couldn't read image metadata.", e);
+            }
+            if (operations.size() >= BATCH_SIZE) {
+                applyBatch(operations);
+            }
+        }
+        applyBatch(operations);
+        mPendingImageUris.removeAll(imageUris);
+    }
+
+    private void applyBatch(ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try {
+            mContext.getContentResolver().applyBatch(GalleryContract.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.w(TAG, "Error writing image metadata", e);
+        }
+        operations.clear();
+    }
+
+    /**
+     * @return the metadata of the image, or null if it should be tried again later
+     */
+    private ContentValues extractMetadata(Uri imageUri) {
+        ContentValues values = new ContentValues();
+        values.put(GalleryContract.MetadataCache.COLUMN_NAME_URI, imageUri.toString());
+        ExifInterface exifInterface;
+        try (InputStream in = mContext.getContentResolver().openInputStream(imageUri)) {
+            if (in == null) {
+                return null;
+            }
+            exifInterface = new ExifInterface(new HeaderInputStream(in, MAX_HEADER_BYTES));
+        } catch (EOFException | NumberFormatException | StackOverflowError e) {
+            Log.w(TAG, "Couldn't parse image metadata.", e);
+            // No EXIF data within the header, or malformed EXIF data, don't try again
+            return values;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read " + imageUri, e);
+            return null;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Couldn't open " + imageUri, e);
+            return null;
+        }
+
+        String dateString = exifInterface.getAttribute(ExifInterface.TAG_DATETIME);
+        if (!TextUtils.isEmpty(dateString)) {
+            try {
+                Date date = sExifDateFormat.get().parse(dateString);
+                values.put(GalleryContract.MetadataCache.COLUMN_NAME_DATETIME, date.getTime());
+            } catch (ParseException e) {
+                Log.w(TAG, "Couldn't parse image date " + dateString, e);
+            }
+        }
+
+        double[] latlong = exifInterface.getLatLong();
+        if (latlong != null) {
+            String location;
+            try {
+                location = getLocation(latlong[0], latlong[1]);
+            } catch (IOException e) {
+                // The geocoder needs the network, try again next time
+                Log.w(TAG, "Couldn't reverse geocode image location", e);
+                return null;
+            }
+            if (!TextUtils.isEmpty(location)) {
+                values.put(GalleryContract.MetadataCache.COLUMN_NAME_LOCATION, location);
+            }
+        }
+        return values;
+    }
+
+    private String getLocation(double latitude, double longitude) throws IOException {
+        String gridCell = Math.round(latitude / GRID_CELL_DEGREES) + ","
+                + Math.round(longitude / GRID_CELL_DEGREES);
+        String location = mLocationCache.get(gridCell);
+        if (location != null) {
+            return location;
+        }
+        if (System.currentTimeMillis() < mGeocoderRetryTime) {
+            throw new IOException("Geocoder failed recently");
+        }
+        // Reverse geocode
+        List<Address> addresses = null;
+        try {
+            addresses = mGeocoder.getFromLocation(latitude, longitude, 1);
+        } catch (IOException e) {
+            // Spares the rest of the batch a request that would most likely fail as well
+            mGeocoderRetryTime = System.currentTimeMillis() + MIN_RETRY_DELAY_MILLIS;
+            throw e;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid latitude/longitude, skipping location metadata", e);
+        }
+        location = NO_LOCATION;
+        if (addresses != null && addresses.size() > 0) {
+            Address addr = addresses.get(0);
+            String locality = addr.getLocality();
+            String adminArea = addr.getAdminArea();
+            String countryCode = addr.getCountryCode();
+            StringBuilder sb = new StringBuilder();
+            if (!TextUtils.isEmpty(locality)) {
+                sb.append(locality);
+            }
+            if (!TextUtils.isEmpty(adminArea)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(adminArea);
+            }
+            if (!TextUtils.isEmpty(countryCode)
+                    && !sOmitCountryCodes.contains(countryCode)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(countryCode);
+            }
+            location = sb.toString();
+        }
+        mLocationCache.put(gridCell, location);
+        return location;
+    }
+
+    private boolean isBackingOff(Uri imageUri, long now) {
+        synchronized (mFailures) {
+            Failure failure = mFailures.get(imageUri);
+            return failure != null && now < failure.mRetryTime;
+        }
+    }
+
+    private void recordResult(Uri imageUri, boolean success) {
+        synchronized (mFailures) {
+            if (success) {
+                mFailures.remove(imageUri);
+                return;
+            }
+            Failure failure = mFailures.get(imageUri);
+            if (failure == null) {
+                failure = new Failure();
+                mFailures.put(imageUri, failure);
+            }
+            long delay = Math.min(MIN_RETRY_DELAY_MILLIS << Math.min(failure.mCount, 16),
+                    MAX_RETRY_DELAY_MILLIS);
+            failure.mCount++;
+            failure.mRetryTime = System.currentTimeMillis() + delay;
+        }
+    }
+
+    private static class Failure {
+        int mCount;
+        long mRetryTime;
+    }
+
+    /**
+     * Ends the stream after the given number of bytes, so that reading the EXIF data of an
+     * image without any can't go through the whole file.
+     */
+    private static class HeaderInputStream extends FilterInputStream {
+        private long mRemaining;
+        private long mMarkedRemaining;
+
+        HeaderInputStream(InputStream in, long maxBytes) {
+            super(in);
+            mRemaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int result = super.read();
+            if (result != -1) {
+                mRemaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int result = super.read(buffer, offset, (int) Math.min(count, mRemaining));
+            if (result > 0) {
+                mRemaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long result = super.skip(Math.min(count, mRemaining));
+            mRemaining -= result;
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), mRemaining);
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            super.mark(readLimit);
+            mMarkedRemaining = mRemaining;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            mRemaining = mMarkedRemaining;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
 import android.provider.DocumentsContract;
@@ -54,6 +55,7 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -83,7 +85,7 @@ public class GalleryProvider extends ContentProvider {
     /**
      * The database version
      */
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 6;
     /**
      * A UriMatcher instance
      */
@@ -102,6 +104,14 @@ public class GalleryProvider extends ContentProvider {
      * Handle to a new DatabaseHelper.
      */
     private DatabaseHelper databaseHelper;
+    /**
+     * Index of all images under the chosen photos
+     */
+    private GalleryImageIndex imageIndex;
+    /**
+     * Extracts the metadata of indexed images in the background
+     */
+    private GalleryMetadataIndexer metadataIndexer;
     /**
      * Whether we should hold notifyChange() calls due to an ongoing applyBatch operation
      */
@@ -164,9 +174,15 @@ public class GalleryProvider extends ContentProvider {
     public ContentProviderResult[] applyBatch(@NonNull final ArrayList<ContentProviderOperation> operations)
             throws OperationApplicationException {
         holdNotifyChange = true;
+        // All operations go to our own database, so they can share a single transaction
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        db.beginTransaction();
         try {
-            return super.applyBatch(operations);
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
         } finally {
+            db.endTransaction();
             holdNotifyChange = false;
             Context context = getContext();
             if (context != null) {
@@ -183,6 +199,29 @@ public class GalleryProvider extends ContentProvider {
         }
     }
 
+    @Override
+    public Bundle call(@NonNull final String method, final String arg, final Bundle extras) {
+        if (GalleryContract.ImageIndex.METHOD_REFRESH.equals(method)) {
+            for (long chosenPhotoId : imageIndex.refresh()) {
+                Log.w(TAG, "Unable to load images from chosen photo " + chosenPhotoId + ", deleting row");
+                deleteChosenPhotos(ContentUris.withAppendedId(GalleryContract.ChosenPhotos.CONTENT_URI,
+                        chosenPhotoId), null, null);
+            }
+            metadataIndexer.index(imageIndex.getImagesWithoutMetadata());
+            Bundle result = new Bundle();
+            result.putInt(GalleryContract.ImageIndex.EXTRA_IMAGE_COUNT, imageIndex.getImageCount());
+            return result;
+        } else if (GalleryContract.ImageIndex.METHOD_NEXT_IMAGE.equals(method)) {
+            Bundle result = new Bundle();
+            result.putParcelable(GalleryContract.ImageIndex.EXTRA_URI, imageIndex.next(arg));
+            return result;
+        } else if (GalleryContract.MetadataCache.METHOD_EXTRACT_METADATA.equals(method)) {
+            metadataIndexer.index(Collections.singletonList(Uri.parse(arg)));
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
     private void notifyChange(Uri uri) {
         if (holdNotifyChange) {
             synchronized (pendingNotifyChange) {
@@ -220,14 +259,16 @@ public class GalleryProvider extends ContentProvider {
         // chosen image files for each row being deleted. Instead we have to query
         // and manually delete each chosen image file
         String[] projection = new String[] {
-                GalleryContract.ChosenPhotos.COLUMN_NAME_URI};
+                GalleryContract.ChosenPhotos.COLUMN_NAME_URI, BaseColumns._ID};
         Cursor rowsToDelete = queryChosenPhotos(uri, projection, selection, selectionArgs, null);
         if (rowsToDelete == null) {
             return 0;
         }
+        List<Long> chosenPhotoIds = new ArrayList<>();
         rowsToDelete.moveToFirst();
         while (!rowsToDelete.isAfterLast()) {
             String imageUri = rowsToDelete.getString(0);
+            chosenPhotoIds.add(rowsToDelete.getLong(1));
             File file = getCacheFileForUri(getContext(), imageUri);
             if (file != null && file.exists()) {
                 if (!file.delete()) {
@@ -269,6 +310,7 @@ public class GalleryProvider extends ContentProvider {
                     BaseColumns._ID + "=" + uri.getLastPathSegment());
         }
         int count = db.delete(GalleryContract.ChosenPhotos.TABLE_NAME, finalSelection, selectionArgs);
+        imageIndex.remove(chosenPhotoIds);
         if (count > 0) {
             notifyChange(uri);
         }
@@ -384,6 +426,7 @@ public class GalleryProvider extends ContentProvider {
         {
             // Creates a URI with the chosen photos ID pattern and the new row ID appended to it.
             final Uri chosenPhotoUri = ContentUris.withAppendedId(GalleryContract.ChosenPhotos.CONTENT_URI, rowId);
+            imageIndex.invalidate();
             notifyChange(chosenPhotoUri);
             return chosenPhotoUri;
         }
@@ -457,6 +500,8 @@ public class GalleryProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         databaseHelper = new DatabaseHelper(getContext());
+        imageIndex = new GalleryImageIndex(getContext(), databaseHelper);
+        metadataIndexer = new GalleryMetadataIndexer(getContext());
         return true;
     }
 
@@ -625,6 +670,7 @@ public class GalleryProvider extends ContentProvider {
         public void onCreate(SQLiteDatabase db) {
             onCreateChosenPhotos(db);
             onCreateMetadataCache(db);
+            onCreateImageIndex(db);
         }
 
         private void onCreateChosenPhotos(SQLiteDatabase db) {
@@ -644,6 +690,33 @@ public class GalleryProvider extends ContentProvider {
                     + "UNIQUE (" + GalleryContract.MetadataCache.COLUMN_NAME_URI + ") ON CONFLICT REPLACE)");
         }
 
+        private void onCreateImageIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + GalleryContract.ImageIndex.TABLE_NAME + " ("
+                    + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + " INTEGER NOT NULL,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_URI + " TEXT NOT NULL,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_PARENT_DOCUMENT_ID + " TEXT,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHUFFLE_ORDER + " INTEGER,"
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHOWN + " INTEGER,"
+                    + "UNIQUE (" + GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + ","
+                    + GalleryContract.ImageIndex.COLUMN_NAME_URI + "))");
+            db.execSQL("CREATE INDEX " + GalleryContract.ImageIndex.TABLE_NAME + "_shuffle_index ON "
+                    + GalleryContract.ImageIndex.TABLE_NAME + " ("
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHOWN + ","
+                    + GalleryContract.ImageIndex.COLUMN_NAME_SHUFFLE_ORDER + ")");
+            db.execSQL("CREATE INDEX " + GalleryContract.ImageIndex.TABLE_NAME + "_parent_index ON "
+                    + GalleryContract.ImageIndex.TABLE_NAME + " ("
+                    + GalleryContract.ImageIndex.COLUMN_NAME_CHOSEN_PHOTO_ID + ","
+                    + GalleryContract.ImageIndex.COLUMN_NAME_PARENT_DOCUMENT_ID + ")");
+            db.execSQL("CREATE TABLE " + GalleryContract.IndexedDirectories.TABLE_NAME + " ("
+                    + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + GalleryContract.IndexedDirectories.COLUMN_NAME_CHOSEN_PHOTO_ID + " INTEGER NOT NULL,"
+                    + GalleryContract.IndexedDirectories.COLUMN_NAME_DOCUMENT_ID + " TEXT NOT NULL,"
+                    + GalleryContract.IndexedDirectories.COLUMN_NAME_LAST_MODIFIED + " INTEGER,"
+                    + "UNIQUE (" + GalleryContract.IndexedDirectories.COLUMN_NAME_CHOSEN_PHOTO_ID + ","
+                    + GalleryContract.IndexedDirectories.COLUMN_NAME_DOCUMENT_ID + "))");
+        }
+
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             if (oldVersion < 2) {
@@ -705,6 +778,9 @@ public class GalleryProvider extends ContentProvider {
                 }
                 data.close();
             }
+            if (oldVersion < 6) {
+                onCreateImageIndex(db);
+            }
         }
     }
 
@@ -336,10 +336,9 @@ public class MuzeiWatchFace extends CanvasWatchFaceService {
                         (int) (scalingFactor * mBackgroundBitmap.getHeight()),
                         true /* filter */);
             }
-            ImageBlurrer blurrer = new ImageBlurrer(MuzeiWatchFace.this, mBackgroundScaledBitmap);
+            ImageBlurrer blurrer = new ImageBlurrer(mBackgroundScaledBitmap);
             mBackgroundScaledBlurredBitmap = blurrer.blurBitmap(
                     ImageBlurrer.MAX_SUPPORTED_BLUR_PIXELS / 2, 0f);
-            blurrer.destroy();
         }
 
         @Override
@@ -146,9 +146,8 @@ public class PanView extends View {
             int scaledHeight = Math.max(1, (int) (scalingFactor * height));
             mScaledImage = Bitmap.createScaledBitmap(mImage, mWidth, scaledHeight, true);
         }
-        ImageBlurrer blurrer = new ImageBlurrer(getContext(), mScaledImage);
+        ImageBlurrer blurrer = new ImageBlurrer(mScaledImage);
         mBlurredImage = blurrer.blurBitmap(ImageBlurrer.MAX_SUPPORTED_BLUR_PIXELS, 0f);
-        blurrer.destroy();
         // Center the image
         mOffsetX = (mWidth - mScaledImage.getWidth()) / 2;
         mOffsetY = (mHeight - mScaledImage.getHeight()) / 2;